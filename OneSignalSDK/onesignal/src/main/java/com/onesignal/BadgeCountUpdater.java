@@ -30,7 +30,6 @@ package com.onesignal;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
 import android.content.pm.PackageManager;
-import android.database.Cursor;
 import android.os.Build;
 import android.os.Bundle;
 import android.service.notification.StatusBarNotification;
@@ -40,6 +39,8 @@ import com.onesignal.OneSignalDbContract.NotificationTable;
 import com.onesignal.shortcutbadger.ShortcutBadgeException;
 import com.onesignal.shortcutbadger.ShortcutBadger;
 
+import java.util.ArrayList;
+
 import static com.onesignal.NotificationLimitManager.MAX_NUMBER_OF_NOTIFICATIONS_STR;
 
 class BadgeCountUpdater {
@@ -97,21 +98,18 @@ class BadgeCountUpdater {
    }
 
    private static void updateFallback(OneSignalDb db, Context context) {
-      Cursor cursor = db.query(
-         NotificationTable.TABLE_NAME,
-         null,
-         OneSignalDbHelper.recentUninteractedWithNotificationsWhere().toString(),
-         null,                                                    // Where args
-         null,                                                    // group by
-         null,                                                    // filter by row groups
-         null,                                                     // sort order, new to old
-         MAX_NUMBER_OF_NOTIFICATIONS_STR
+      ArrayList<String> whereArgs = new ArrayList<>();
+      String whereStr = OneSignalDbHelper.recentUninteractedWithNotificationsWhere(whereArgs).toString();
+
+      // Count in SQL instead of loading every row into a cursor
+      Long notificationCount = db.queryForLong(
+         "SELECT COUNT(*) FROM (SELECT 1 FROM " + NotificationTable.TABLE_NAME +
+            " WHERE " + whereStr +
+            " LIMIT " + MAX_NUMBER_OF_NOTIFICATIONS_STR + ")",
+         whereArgs.toArray(new String[0])
       );
 
-      int notificationCount = cursor.getCount();
-      cursor.close();
-
-      updateCount(notificationCount, context);
+      updateCount(notificationCount == null ? 0 : notificationCount.intValue(), context);
    }
 
    static void updateCount(int count, Context context) {
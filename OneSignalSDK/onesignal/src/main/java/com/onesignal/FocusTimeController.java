@@ -14,6 +14,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Entry points that could cause on_focus to fire:
@@ -23,6 +24,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
  */
 
 class FocusTimeController {
+   private static final long RETRY_BASE_DELAY_MS = 15_000, RETRY_MAX_DELAY_MS = 60_000;
 
    @Nullable
    // Only present if app is currently in focus.
@@ -138,7 +140,7 @@ class FocusTimeController {
       protected List<OSInfluence> getInfluences() {
          List<OSInfluence> influences = new ArrayList<>();
          Set<String> influenceJSONs = OneSignalPrefs.getStringSet(
-                 OneSignalPrefs.PREFS_ONESIGNAL,
+                 OneSignalPrefs.PREFS_INFLUENCES,
                  OneSignalPrefs.PREFS_OS_ATTRIBUTED_INFLUENCES,
                  new HashSet<String>()
          );
@@ -165,7 +167,7 @@ class FocusTimeController {
          }
 
          OneSignalPrefs.saveStringSet(
-                 OneSignalPrefs.PREFS_ONESIGNAL,
+                 OneSignalPrefs.PREFS_INFLUENCES,
                  OneSignalPrefs.PREFS_OS_ATTRIBUTED_INFLUENCES,
                  setInfluences
          );
@@ -268,6 +270,8 @@ class FocusTimeController {
       }
 
       @NonNull private final AtomicBoolean runningOnFocusTime = new AtomicBoolean();
+      // on_focus retries since the last one that went through
+      @NonNull private final AtomicInteger onFocusRetries = new AtomicInteger();
       @WorkerThread
       protected void syncOnFocusTime() {
          if (runningOnFocusTime.get())
@@ -282,24 +286,39 @@ class FocusTimeController {
       }
 
       private void sendOnFocusToPlayer(@NonNull String userId, @NonNull JSONObject jsonBody) {
+         final String url = "players/" + userId + "/on_focus";
          OneSignalRestClient.ResponseHandler responseHandler = new OneSignalRestClient.ResponseHandler() {
             @Override
             void onFailure(int statusCode, String response, Throwable throwable) {
                OneSignal.logHttpError("sending on_focus Failed", statusCode, throwable, response);
+               scheduleOnFocusRetry(url, statusCode);
             }
 
             @Override
             void onSuccess(String response) {
+               onFocusRetries.set(0);
                // TODO: PRE-EXISTING: This time is shared between the email + push player and
                //          is cleared no matter which one is successful.
                // TODO: PRE-EXISTING: This could be clearing time more then was persisted while the network call was in flight
                saveUnsentActiveTime(0);
             }
          };
-         String url = "players/" + userId + "/on_focus";
          OneSignalRestClient.postSync(url, jsonBody, responseHandler);
       }
 
+      /**
+       * The time of a failed on_focus stays unsent, a sync job sends it again once the retry policy allows it
+       */
+      private void scheduleOnFocusRetry(@NonNull String url, int statusCode) {
+         int retry = onFocusRetries.incrementAndGet();
+         if (!OSRetryPolicy.shouldRetryInSession(url, statusCode, retry))
+            return;
+
+         long delay = OSRetryPolicy.getRetryDelay(url, retry, RETRY_BASE_DELAY_MS, RETRY_MAX_DELAY_MS);
+         OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, this.getClass().getSimpleName() + ": Retrying on_focus in " + (delay / 1_000) + " seconds");
+         OSSyncService.getInstance().scheduleSyncTask(OneSignal.appContext, delay);
+      }
+
       // Override Optional
       protected void additionalFieldsToAddToOnFocusPayload(@NonNull JSONObject jsonBody) { }
 
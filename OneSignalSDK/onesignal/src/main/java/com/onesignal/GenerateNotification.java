@@ -527,8 +527,11 @@ class GenerateNotification {
          String[] whereArgs = { group };
          
          // Make sure to omit any old existing matching android ids in-case we are replacing it.
-         if (!updateSummary && notificationJob.getAndroidId() != -1)
-            whereStr += " AND " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " <> " + notificationJob.getAndroidId();
+         // Bound instead of inlined so the same compiled query serves every notification in the group
+         if (!updateSummary && notificationJob.getAndroidId() != -1) {
+            whereStr += " AND " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " <> ?";
+            whereArgs = new String[] { group, String.valueOf(notificationJob.getAndroidId()) };
+         }
          
          cursor = dbHelper.query(
              NotificationTable.TABLE_NAME,
@@ -21,6 +21,7 @@ class JSONUtils {
      * Returns a JSONObject of the differences between cur and changedTo.
      * If baseOutput is added changes will be applied to this JSONObject.
      * includeFields will always be added to the returned JSONObject if they are in cur.
+     * Objects only found in changedTo are deep copied into the output, so later changes to either don't affect the other.
      */
     static JSONObject generateJsonDiff(JSONObject cur, JSONObject changedTo, JSONObject baseOutput, Set<String> includeFields) {
         if (cur == null)
@@ -50,9 +51,9 @@ class JSONUtils {
                         if (baseOutput != null && baseOutput.has(key))
                             outValue = baseOutput.getJSONObject(key);
                         JSONObject returnedJson = generateJsonDiff(curValue, (JSONObject) value, outValue, includeFields);
-                        String returnedJsonStr = returnedJson.toString();
-                        if (!returnedJsonStr.equals("{}"))
-                            output.put(key, new JSONObject(returnedJsonStr));
+                        // Nested diffs are new objects, or baseOutput's own child which is already in place
+                        if (returnedJson.length() > 0)
+                            output.put(key, returnedJson);
                     }
                     else if (value instanceof JSONArray)
                         handleJsonArray(key, (JSONArray) value, cur.getJSONArray(key), output);
@@ -73,7 +74,7 @@ class JSONUtils {
                 }
                 else {
                     if (value instanceof JSONObject)
-                        output.put(key, new JSONObject(value.toString()));
+                        output.put(key, deepCopy((JSONObject) value));
                     else if (value instanceof JSONArray)
                         handleJsonArray(key, (JSONArray) value, null, output);
                     else
@@ -113,21 +114,159 @@ class JSONUtils {
             }
         }
 
-        if (!newOutArray.toString().equals("[]"))
+        if (newOutArray.length() > 0)
             output.put(key + "_a", newOutArray);
-        if (!remOutArray.toString().equals("[]"))
+        if (remOutArray.length() > 0)
             output.put(key + "_d", remOutArray);
     }
 
     static String toStringNE(JSONArray jsonArray) {
-        String strArray = "[";
+        StringBuilder strArray = new StringBuilder("[");
 
         try {
             for (int i = 0; i < jsonArray.length(); i++)
-                strArray += "\"" + jsonArray.getString(i) + "\"";
+                strArray.append('"').append(jsonArray.getString(i)).append('"');
         } catch (JSONException ignored) {}
 
-        return strArray + "]";
+        return strArray.append(']').toString();
+    }
+
+    /**
+     * Copies nested objects and arrays, the same as parsing jsonObject.toString() but without the round trip.
+     * Whole doubles become ints or longs since that is what they would be read back as.
+     */
+    static JSONObject deepCopy(JSONObject jsonObject) throws JSONException {
+        JSONObject copy = new JSONObject();
+        Iterator<String> keys = jsonObject.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            copy.put(key, deepCopyValue(jsonObject.get(key)));
+        }
+        return copy;
+    }
+
+    private static JSONArray deepCopy(JSONArray jsonArray) throws JSONException {
+        JSONArray copy = new JSONArray();
+        for (int i = 0; i < jsonArray.length(); i++)
+            copy.put(deepCopyValue(jsonArray.get(i)));
+        return copy;
+    }
+
+    private static Object deepCopyValue(Object value) throws JSONException {
+        if (value instanceof JSONObject)
+            return deepCopy((JSONObject) value);
+        if (value instanceof JSONArray)
+            return deepCopy((JSONArray) value);
+        if ((value instanceof Double || value instanceof Float) && isWholeNumber(((Number) value).doubleValue()))
+            return readBackWholeNumber(((Number) value).doubleValue());
+        if (value instanceof Float)
+            return ((Float) value).doubleValue();
+        return value;
+    }
+
+    private static boolean isWholeNumber(double number) {
+        return !Double.isInfinite(number) && number == (long) number;
+    }
+
+    // JSONObject writes whole doubles without a fraction and reads them back as the smallest fitting integer type
+    private static Object readBackWholeNumber(double number) {
+        long longValue = (long) number;
+        if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE)
+            return (int) longValue;
+        return longValue;
+    }
+
+    /**
+     * Serializes like JSONObject.toString() in a single pass, except String values of unescapedSlashKeys,
+     *  at any depth, keep their '/' as is instead of writing it as "\/".
+     */
+    static String toStringWithUnescapedSlashes(@NonNull JSONObject jsonObject, @NonNull Set<String> unescapedSlashKeys) throws JSONException {
+        StringBuilder out = new StringBuilder();
+        writeJSONObject(out, jsonObject, unescapedSlashKeys);
+        return out.toString();
+    }
+
+    private static void writeJSONObject(StringBuilder out, JSONObject jsonObject, Set<String> unescapedSlashKeys) throws JSONException {
+        out.append('{');
+        Iterator<String> keys = jsonObject.keys();
+        boolean first = true;
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!first)
+                out.append(',');
+            first = false;
+
+            writeString(out, key, true);
+            out.append(':');
+            writeValue(out, jsonObject.opt(key), unescapedSlashKeys.contains(key), unescapedSlashKeys);
+        }
+        out.append('}');
+    }
+
+    private static void writeJSONArray(StringBuilder out, JSONArray jsonArray, Set<String> unescapedSlashKeys) throws JSONException {
+        out.append('[');
+        for (int i = 0; i < jsonArray.length(); i++) {
+            if (i > 0)
+                out.append(',');
+            writeValue(out, jsonArray.opt(i), false, unescapedSlashKeys);
+        }
+        out.append(']');
+    }
+
+    private static void writeValue(StringBuilder out, Object value, boolean unescapedSlashes, Set<String> unescapedSlashKeys) throws JSONException {
+        if (value == null || value == JSONObject.NULL)
+            out.append("null");
+        else if (value instanceof JSONObject)
+            writeJSONObject(out, (JSONObject) value, unescapedSlashKeys);
+        else if (value instanceof JSONArray)
+            writeJSONArray(out, (JSONArray) value, unescapedSlashKeys);
+        else if (value instanceof Boolean)
+            out.append(value);
+        else if (value instanceof Number)
+            out.append(JSONObject.numberToString((Number) value));
+        else
+            writeString(out, value.toString(), !unescapedSlashes);
+    }
+
+    // Same escaping as org.json's JSONStringer
+    private static void writeString(StringBuilder out, String value, boolean escapeSlashes) {
+        out.append('"');
+        for (int i = 0, length = value.length(); i < length; i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '/':
+                    if (escapeSlashes)
+                        out.append('\\');
+                    out.append(c);
+                    break;
+                case '"':
+                case '\\':
+                    out.append('\\').append(c);
+                    break;
+                case '\t':
+                    out.append("\\t");
+                    break;
+                case '\b':
+                    out.append("\\b");
+                    break;
+                case '\n':
+                    out.append("\\n");
+                    break;
+                case '\r':
+                    out.append("\\r");
+                    break;
+                case '\f':
+                    out.append("\\f");
+                    break;
+                default:
+                    if (c <= 0x1F)
+                        out.append(String.format("\\u%04x", (int) c));
+                    else
+                        out.append(c);
+                    break;
+            }
+        }
+        out.append('"');
     }
 
     static JSONObject getJSONObjectWithoutBlankValues(ImmutableJSONObject jsonObject, String getKey) {
@@ -32,7 +32,6 @@ import static com.onesignal.OSUtils.isStringNotEmpty;
 
 import android.content.ContentValues;
 import android.content.Context;
-import android.database.Cursor;
 import android.os.Bundle;
 
 import androidx.annotation.NonNull;
@@ -65,6 +64,15 @@ class NotificationBundleProcessor {
     static final String IAM_PREVIEW_KEY = "os_in_app_message_preview_id";
     static final String DEFAULT_ACTION = "__DEFAULT__";
 
+    // Fixed SQL so the compiled statement is reused for every collapse id
+    private static final String SQL_COLLAPSED_ANDROID_NOTIFICATION_ID =
+            "SELECT " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID +
+            " FROM " + NotificationTable.TABLE_NAME +
+            " WHERE " + NotificationTable.COLUMN_NAME_COLLAPSE_ID + " = ? AND " +
+            NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
+            NotificationTable.COLUMN_NAME_OPENED + " = 0" +
+            " LIMIT 1";
+
     static void processFromFCMIntentService(final Context context, BundleCompat bundle) {
         OneSignal.initWithContext(context);
         try {
@@ -206,20 +214,8 @@ class NotificationBundleProcessor {
 
          OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(notificationJob.getContext());
 
-         // Count any notifications with duplicated android notification ids as dismissed.
-         // -1 is used to note never displayed
-         if (notificationJob.isNotificationToDisplay()) {
-            String whereStr = NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + notificationJob.getAndroidIdWithoutCreate();
-
-            ContentValues values = new ContentValues();
-            values.put(NotificationTable.COLUMN_NAME_DISMISSED, 1);
-
-            dbHelper.update(NotificationTable.TABLE_NAME, values, whereStr, null);
-            BadgeCountUpdater.update(dbHelper, context);
-         }
-
          // Save just received notification to DB
-         ContentValues values = new ContentValues();
+         final ContentValues values = new ContentValues();
          values.put(NotificationTable.COLUMN_NAME_NOTIFICATION_ID, customJSON.optString("i"));
          if (jsonPayload.has("grp"))
             values.put(NotificationTable.COLUMN_NAME_GROUP_ID, jsonPayload.optString("grp"));
@@ -243,9 +239,27 @@ class NotificationBundleProcessor {
 
          values.put(NotificationTable.COLUMN_NAME_FULL_DATA, jsonPayload.toString());
 
-         dbHelper.insertOrThrow(NotificationTable.TABLE_NAME, null, values);
-         OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "Notification saved values: " + values.toString());
-         if (!opened)
+         // A notification reusing an android notification id (collapse id or restored) replaces the
+         // previous one, mark it dismissed and save the new one in a single transaction
+         final boolean dismissReplaced = notificationJob.isNotificationToDisplay();
+         final String[] dismissWhereArgs = { String.valueOf(notificationJob.getAndroidIdWithoutCreate()) };
+
+         boolean saved = dbHelper.runInTransaction(new OneSignalDb.Transaction() {
+            @Override
+            public void run(@NonNull OneSignalDb.Batch batch) {
+               // Count any notifications with duplicated android notification ids as dismissed.
+               // -1 is used to note never displayed
+               if (dismissReplaced) {
+                  ContentValues dismissedValues = new ContentValues();
+                  dismissedValues.put(NotificationTable.COLUMN_NAME_DISMISSED, 1);
+                  batch.update(NotificationTable.TABLE_NAME, dismissedValues, NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = ?", dismissWhereArgs);
+               }
+               batch.insert(NotificationTable.TABLE_NAME, null, values);
+            }
+         });
+         if (saved)
+            OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "Notification saved values: " + values.toString());
+         if (dismissReplaced || !opened)
             BadgeCountUpdater.update(dbHelper, context);
       } catch (JSONException e) {
          e.printStackTrace();
@@ -257,14 +271,15 @@ class NotificationBundleProcessor {
             return;
 
         OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "Marking restored or disabled notifications as dismissed: " + notifiJob.toString());
-        String whereStr = NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + notifiJob.getAndroidIdWithoutCreate();
+        String whereStr = NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = ?";
+        String[] whereArgs = { String.valueOf(notifiJob.getAndroidIdWithoutCreate()) };
 
         OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(notifiJob.getContext());
 
         ContentValues values = new ContentValues();
         values.put(NotificationTable.COLUMN_NAME_DISMISSED, 1);
 
-        dbHelper.update(NotificationTable.TABLE_NAME, values, whereStr, null);
+        dbHelper.update(NotificationTable.TABLE_NAME, values, whereStr, whereArgs);
         BadgeCountUpdater.update(dbHelper, notifiJob.getContext());
    }
 
@@ -340,21 +355,9 @@ class NotificationBundleProcessor {
         String collapse_id = notificationJob.getJsonPayload().optString("collapse_key");
 
         OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(notificationJob.getContext());
-        Cursor cursor = dbHelper.query(
-                NotificationTable.TABLE_NAME,
-                new String[]{NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID}, // retColumn
-                NotificationTable.COLUMN_NAME_COLLAPSE_ID + " = ? AND " +
-                        NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
-                        NotificationTable.COLUMN_NAME_OPENED + " = 0 ",
-                new String[]{collapse_id},
-                null, null, null);
-
-        if (cursor.moveToFirst()) {
-            int androidNotificationId = cursor.getInt(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID));
-            notificationJob.setAndroidIdWithoutOverriding(androidNotificationId);
-        }
-
-        cursor.close();
+        Long androidNotificationId = dbHelper.queryForLong(SQL_COLLAPSED_ANDROID_NOTIFICATION_ID, new String[]{collapse_id});
+        if (androidNotificationId != null)
+            notificationJob.setAndroidIdWithoutOverriding(androidNotificationId.intValue());
     }
 
     /**
@@ -9,6 +9,7 @@ import androidx.annotation.RequiresApi;
 
 import com.onesignal.OneSignalDbContract.NotificationTable;
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
@@ -81,11 +82,13 @@ class NotificationLimitManager {
 
       Cursor cursor = null;
       try {
+         ArrayList<String> whereArgs = new ArrayList<>();
+         String whereStr = OneSignalDbHelper.recentUninteractedWithNotificationsWhere(whereArgs).toString();
          cursor = dbHelper.query(
             NotificationTable.TABLE_NAME,
             new String[] { NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID },
-            OneSignalDbHelper.recentUninteractedWithNotificationsWhere().toString(),
-            null,
+            whereStr,
+            whereArgs.toArray(new String[0]),
             null,
             null,
             OneSignalDbContract.NotificationTable._ID, // sort order, old to new
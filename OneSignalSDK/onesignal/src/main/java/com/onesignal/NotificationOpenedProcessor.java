@@ -208,8 +208,10 @@ class NotificationOpenedProcessor {
                        new String[]{ summaryGroup, mostRecentId };
             }
          }
-      } else
-         whereStr = NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + intent.getIntExtra(BUNDLE_KEY_ANDROID_NOTIFICATION_ID, 0);
+      } else {
+         whereStr = NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = ?";
+         whereArgs = new String[]{ String.valueOf(intent.getIntExtra(BUNDLE_KEY_ANDROID_NOTIFICATION_ID, 0)) };
+      }
 
       clearStatusBarNotifications(context, writableDb, summaryGroup);
       writableDb.update(NotificationTable.TABLE_NAME, newContentValuesWithConsumed(intent), whereStr, whereArgs);
@@ -11,14 +11,25 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 class NotificationSummaryManager {
+
+   // Fixed SQL so the compiled statement is reused for every group
+   private static final String SQL_SUMMARY_NOTIFICATION_ID =
+         "SELECT " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID +
+         " FROM " + NotificationTable.TABLE_NAME +
+         " WHERE " + NotificationTable.COLUMN_NAME_GROUP_ID + " = ? AND " +
+         NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
+         NotificationTable.COLUMN_NAME_OPENED + " = 0 AND " +
+         NotificationTable.COLUMN_NAME_IS_SUMMARY + " = 1" +
+         " LIMIT 1";
    
    // A notification was just dismissed, check if it was a child to a summary notification and update it.
    static void updatePossibleDependentSummaryOnDismiss(Context context, OneSignalDb db, int androidNotificationId) {
       Cursor cursor = db.query(
           NotificationTable.TABLE_NAME,
           new String[] { NotificationTable.COLUMN_NAME_GROUP_ID }, // retColumn
-          NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + androidNotificationId,
-          null, null, null, null);
+          NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = ?",
+          new String[] { String.valueOf(androidNotificationId) },
+          null, null, null);
       
       if (cursor.moveToFirst()) {
          String group = cursor.getString(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_GROUP_ID));
@@ -81,8 +92,8 @@ class NotificationSummaryManager {
          values.put(dismissed ? NotificationTable.COLUMN_NAME_DISMISSED : NotificationTable.COLUMN_NAME_OPENED, 1);
          db.update(NotificationTable.TABLE_NAME,
              values,
-             NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + androidNotifId,
-             null);
+             NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = ?",
+             new String[] { String.valueOf(androidNotifId) });
          return cursor;
       }
    
@@ -156,41 +167,14 @@ class NotificationSummaryManager {
    }
    
    static Integer getSummaryNotificationId(OneSignalDb db, String group) {
-      Integer androidNotifId = null;
-      Cursor cursor = null;
-
-      String whereStr = NotificationTable.COLUMN_NAME_GROUP_ID + " = ? AND " +
-              NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
-              NotificationTable.COLUMN_NAME_OPENED + " = 0 AND " +
-              NotificationTable.COLUMN_NAME_IS_SUMMARY + " = 1";
-      String[] whereArgs = new String[] { group };
-
       try {
          // Get the Android Notification ID of the summary notification
-         cursor = db.query(
-             NotificationTable.TABLE_NAME,
-                 new String[] { NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID }, // retColumn
-                 whereStr,
-                 whereArgs,
-                 null,
-                 null,
-                 null);
-      
-         boolean hasRecord = cursor.moveToFirst();
-         if (!hasRecord) {
-            cursor.close();
-            return null;
-         }
-         androidNotifId = cursor.getInt(cursor.getColumnIndex(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID));
-         cursor.close();
+         Long androidNotifId = db.queryForLong(SQL_SUMMARY_NOTIFICATION_ID, new String[] { group });
+         return androidNotifId == null ? null : androidNotifId.intValue();
       } catch (Throwable t) {
          OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Error getting android notification id for summary notification group: " + group, t);
-      } finally {
-         if (cursor != null && !cursor.isClosed())
-            cursor.close();
       }
-      
-      return androidNotifId;
+      return null;
    }
 
    /**
@@ -0,0 +1,201 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.net.HttpURLConnection;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip encoding of REST request and response bodies.
+ * Request bodies over the threshold are compressed unless turned off or the endpoint rejected a gzip body before,
+ *   responses are decoded here since setting Accept-Encoding ourselves turns off the platform's transparent decoding.
+ * Bytes saved either way are counted per endpoint in {@link OSTransportMetrics}.
+ */
+class OSGzipEncoding {
+
+   static final String GZIP = "gzip";
+   static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+   static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+
+   // Below this the gzip header and trailer outweigh what compression saves
+   private static final int REQUEST_THRESHOLD = 1024;
+
+   private static volatile boolean requestCompressionEnabled = true;
+
+   private static final Set<String> rejectedEndpoints = OSUtils.newConcurrentSet();
+
+   static void setRequestCompressionEnabled(boolean enabled) {
+      requestCompressionEnabled = enabled;
+   }
+
+   /**
+    * @return the compressed body, or null if the body should be sent as is
+    */
+   @Nullable
+   static byte[] compressRequest(@NonNull String url, @NonNull byte[] body) {
+      if (!requestCompressionEnabled || body.length < REQUEST_THRESHOLD || rejectedEndpoints.contains(OneSignalRestClient.endpointKey(url)))
+         return null;
+
+      byte[] compressed;
+      try {
+         ByteArrayOutputStream outputStream = new ByteArrayOutputStream(body.length / 2);
+         GZIPOutputStream gzipStream = new GZIPOutputStream(outputStream);
+         gzipStream.write(body);
+         gzipStream.close();
+         compressed = outputStream.toByteArray();
+      } catch (IOException e) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OSGzipEncoding: Could not compress request body, sending it as is", e);
+         return null;
+      }
+
+      if (compressed.length >= body.length)
+         return null;
+
+      return compressed;
+   }
+
+   /**
+    * Counts what a gzip request body saved, once the endpoint accepted it
+    */
+   static void onRequestAccepted(@NonNull String url, long plainLength, long compressedLength) {
+      OSTransportMetrics.recordBytesSaved(url, plainLength - compressedLength, 0);
+   }
+
+   /**
+    * Response to a gzip request body.
+    * A 415 says the endpoint doesn't accept them. Servers and proxies that don't decode Content-Encoding mostly answer
+    *   a 400 instead, but so does a request that is wrong in itself, so that endpoint is only marked once the plain
+    *   request is accepted, see {@link #onFallbackAccepted(String)}. Other errors aren't about the encoding.
+    * @return true if the request should be sent again without compression
+    */
+   static boolean shouldFallBack(@NonNull String url, int statusCode) {
+      if (statusCode == HttpURLConnection.HTTP_UNSUPPORTED_TYPE) {
+         reject(url, statusCode);
+         return true;
+      }
+      return statusCode == HttpURLConnection.HTTP_BAD_REQUEST;
+   }
+
+   /**
+    * The endpoint accepted the plain body of a request whose gzip body it rejected
+    */
+   static void onFallbackAccepted(@NonNull String url) {
+      if (!isRejected(url))
+         reject(url, HttpURLConnection.HTTP_BAD_REQUEST);
+   }
+
+   private static void reject(@NonNull String url, int statusCode) {
+      OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OSGzipEncoding: " + statusCode + " for gzip body, no longer compressing requests to " + OneSignalRestClient.endpointKey(url));
+      rejectedEndpoints.add(OneSignalRestClient.endpointKey(url));
+   }
+
+   static boolean isRejected(@NonNull String url) {
+      return rejectedEndpoints.contains(OneSignalRestClient.endpointKey(url));
+   }
+
+   /**
+    * Wraps the body stream of a gzip encoded response, other responses are returned as is
+    */
+   @Nullable
+   static InputStream decodeResponse(@NonNull String url, @NonNull HttpURLConnection con, @Nullable InputStream inputStream) {
+      if (inputStream == null || !GZIP.equalsIgnoreCase(con.getHeaderField(HEADER_CONTENT_ENCODING)))
+         return inputStream;
+
+      return new GzipResponseStream(url, new OSCountingInputStream(inputStream));
+   }
+
+   /**
+    * Decodes the body once it is first read, so an empty body, like the one of a 204, reads as empty instead of
+    *   failing on the missing gzip header. Records how much smaller the body was on the wire once it is closed.
+    */
+   private static class GzipResponseStream extends InputStream {
+      private final String url;
+      private final OSCountingInputStream compressedStream;
+      @Nullable
+      private InputStream decodedStream;
+      private long decodedCount;
+      private boolean closed;
+
+      GzipResponseStream(String url, OSCountingInputStream compressedStream) {
+         this.url = url;
+         this.compressedStream = compressedStream;
+      }
+
+      private InputStream getDecodedStream() throws IOException {
+         if (decodedStream == null) {
+            PushbackInputStream pushbackStream = new PushbackInputStream(compressedStream, 1);
+            int firstByte = pushbackStream.read();
+            if (firstByte == -1)
+               decodedStream = pushbackStream;
+            else {
+               pushbackStream.unread(firstByte);
+               decodedStream = new GZIPInputStream(pushbackStream);
+            }
+         }
+         return decodedStream;
+      }
+
+      @Override
+      public int read() throws IOException {
+         int read = getDecodedStream().read();
+         if (read != -1)
+            decodedCount++;
+         return read;
+      }
+
+      @Override
+      public int read(byte[] buffer, int offset, int length) throws IOException {
+         int read = getDecodedStream().read(buffer, offset, length);
+         if (read > 0)
+            decodedCount += read;
+         return read;
+      }
+
+      @Override
+      public void close() throws IOException {
+         if (!closed) {
+            closed = true;
+            OSTransportMetrics.recordBytesSaved(url, 0, Math.max(0, decodedCount - compressedStream.getCount()));
+         }
+         if (decodedStream != null)
+            decodedStream.close();
+         else
+            compressedStream.close();
+      }
+   }
+}
@@ -0,0 +1,221 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.onesignal.OneSignalDbContract.HttpResponseCacheTable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bodies of GET responses that came with an ETag or Last-Modified header, keyed by the request's cache key.
+ * Kept in the DB instead of SharedPreferences since the prefs XML is loaded whole into memory and rewritten on every apply.
+ * Entries are evicted least recently used first once the cache goes over MAX_ENTRIES or MAX_TOTAL_LENGTH.
+ */
+class OSHttpResponseCache {
+
+    static final int MAX_ENTRIES = 16;
+    static final int MAX_TOTAL_LENGTH = 512 * 1024;
+    // Bodies longer than this are not cached at all
+    static final int MAX_ENTRY_LENGTH = 256 * 1024;
+
+    // Cache keys that were stored in SharedPreferences before this cache existed
+    private static final String[] PREFS_CACHE_KEYS = {
+            OneSignalRestClient.CACHE_KEY_GET_TAGS,
+            OneSignalRestClient.CACHE_KEY_REMOTE_PARAMS
+    };
+
+    static class Validators {
+        @Nullable final String eTag;
+        @Nullable final String lastModified;
+
+        Validators(@Nullable String eTag, @Nullable String lastModified) {
+            this.eTag = eTag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private final OneSignalDb dbHelper;
+    private final OSLogger logger;
+    private final OSTime time;
+
+    OSHttpResponseCache(OneSignalDb dbHelper, OSLogger logger, OSTime time) {
+        this.dbHelper = dbHelper;
+        this.logger = logger;
+        this.time = time;
+    }
+
+    /**
+     * @return the ETag and Last-Modified of the cached response, null if nothing is cached for cacheKey
+     */
+    @WorkerThread
+    @Nullable
+    Validators getValidators(@NonNull String cacheKey) {
+        Cursor cursor = dbHelper.query(
+                HttpResponseCacheTable.TABLE_NAME,
+                new String[] { HttpResponseCacheTable.COLUMN_NAME_ETAG, HttpResponseCacheTable.COLUMN_NAME_LAST_MODIFIED },
+                HttpResponseCacheTable.COLUMN_NAME_CACHE_KEY + " = ?",
+                new String[] { cacheKey },
+                null,
+                null,
+                null
+        );
+
+        try {
+            if (!cursor.moveToFirst())
+                return null;
+            return new Validators(cursor.getString(0), cursor.getString(1));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Body of the cached response, reading it counts as a use for LRU eviction
+     */
+    @WorkerThread
+    @Nullable
+    String getBody(@NonNull String cacheKey) {
+        Cursor cursor = dbHelper.query(
+                HttpResponseCacheTable.TABLE_NAME,
+                new String[] { HttpResponseCacheTable.COLUMN_NAME_BODY },
+                HttpResponseCacheTable.COLUMN_NAME_CACHE_KEY + " = ?",
+                new String[] { cacheKey },
+                null,
+                null,
+                null
+        );
+
+        String body;
+        try {
+            if (!cursor.moveToFirst())
+                return null;
+            body = cursor.getString(0);
+        } finally {
+            cursor.close();
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(HttpResponseCacheTable.COLUMN_NAME_LAST_ACCESS_TIME, time.getCurrentTimeMillis());
+        dbHelper.update(HttpResponseCacheTable.TABLE_NAME, values, HttpResponseCacheTable.COLUMN_NAME_CACHE_KEY + " = ?", new String[] { cacheKey });
+        return body;
+    }
+
+    @WorkerThread
+    synchronized void put(@NonNull String cacheKey, @Nullable String eTag, @Nullable String lastModified, @NonNull String body) {
+        if (body.length() > MAX_ENTRY_LENGTH) {
+            logger.debug("OSHttpResponseCache: Response for " + cacheKey + " is too large to cache, length: " + body.length());
+            remove(cacheKey);
+            return;
+        }
+
+        ContentValues values = new ContentValues();
+        values.put(HttpResponseCacheTable.COLUMN_NAME_ETAG, eTag);
+        values.put(HttpResponseCacheTable.COLUMN_NAME_LAST_MODIFIED, lastModified);
+        values.put(HttpResponseCacheTable.COLUMN_NAME_BODY, body);
+        values.put(HttpResponseCacheTable.COLUMN_NAME_BODY_LENGTH, body.length());
+        values.put(HttpResponseCacheTable.COLUMN_NAME_LAST_ACCESS_TIME, time.getCurrentTimeMillis());
+
+        int updated = dbHelper.update(HttpResponseCacheTable.TABLE_NAME, values, HttpResponseCacheTable.COLUMN_NAME_CACHE_KEY + " = ?", new String[] { cacheKey });
+        if (updated == 0) {
+            values.put(HttpResponseCacheTable.COLUMN_NAME_CACHE_KEY, cacheKey);
+            dbHelper.insert(HttpResponseCacheTable.TABLE_NAME, null, values);
+        }
+
+        trim();
+    }
+
+    @WorkerThread
+    void remove(@NonNull String cacheKey) {
+        dbHelper.delete(HttpResponseCacheTable.TABLE_NAME, HttpResponseCacheTable.COLUMN_NAME_CACHE_KEY + " = ?", new String[] { cacheKey });
+    }
+
+    // Evicts least recently used entries until the cache is within its limits
+    private void trim() {
+        Cursor cursor = dbHelper.query(
+                HttpResponseCacheTable.TABLE_NAME,
+                new String[] { HttpResponseCacheTable.COLUMN_NAME_CACHE_KEY, HttpResponseCacheTable.COLUMN_NAME_BODY_LENGTH },
+                null,
+                null,
+                null,
+                null,
+                HttpResponseCacheTable.COLUMN_NAME_LAST_ACCESS_TIME + " DESC"
+        );
+
+        List<String> evictedKeys = new ArrayList<>();
+        try {
+            int entries = 0;
+            long totalLength = 0;
+            while (cursor.moveToNext()) {
+                entries++;
+                totalLength += cursor.getInt(1);
+                // Most recently used entries are kept, everything past a limit goes
+                if (entries > MAX_ENTRIES || totalLength > MAX_TOTAL_LENGTH)
+                    evictedKeys.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        for (String cacheKey : evictedKeys) {
+            logger.debug("OSHttpResponseCache: Evicting cached response for " + cacheKey);
+            remove(cacheKey);
+        }
+    }
+
+    /**
+     * Moves responses cached in SharedPreferences by earlier SDK versions into this cache, only runs once
+     */
+    @WorkerThread
+    void migrateFromPrefs() {
+        if (OneSignalPrefs.getBool(OneSignalPrefs.PREFS_ONESIGNAL, OneSignalPrefs.PREFS_OS_HTTP_CACHE_MIGRATED, false))
+            return;
+
+        for (String cacheKey : PREFS_CACHE_KEYS) {
+            String eTag = OneSignalPrefs.getString(OneSignalPrefs.PREFS_ONESIGNAL, OneSignalPrefs.PREFS_OS_ETAG_PREFIX + cacheKey, null);
+            String body = OneSignalPrefs.getString(OneSignalPrefs.PREFS_ONESIGNAL, OneSignalPrefs.PREFS_OS_HTTP_CACHE_PREFIX + cacheKey, null);
+            if (eTag != null && body != null) {
+                logger.debug("OSHttpResponseCache: Moving cached response for " + cacheKey + " out of SharedPreferences");
+                put(cacheKey, eTag, null, body);
+            }
+
+            OneSignalPrefs.saveString(OneSignalPrefs.PREFS_ONESIGNAL, OneSignalPrefs.PREFS_OS_ETAG_PREFIX + cacheKey, null);
+            OneSignalPrefs.saveString(OneSignalPrefs.PREFS_ONESIGNAL, OneSignalPrefs.PREFS_OS_HTTP_CACHE_PREFIX + cacheKey, null);
+        }
+
+        OneSignalPrefs.saveBool(OneSignalPrefs.PREFS_ONESIGNAL, OneSignalPrefs.PREFS_OS_HTTP_CACHE_MIGRATED, true);
+    }
+}
@@ -3,6 +3,7 @@ package com.onesignal;
 import android.content.ContentValues;
 import android.database.Cursor;
 
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.annotation.WorkerThread;
 
@@ -48,18 +49,22 @@ class OSInAppMessageRepository {
                     put("first_click", true);
             }};
 
-            OneSignalRestClient.post("in_app_messages/" + messageId + "/click", json, new OneSignalRestClient.ResponseHandler() {
+            // Persisted as sent once journaled, a request cut off by process death is replayed on the next start
+            //   and must not be sent again the next time the message is clicked.
+            // Id already added to set before making the network call
+            saveClickedMessagesId(clickedMessagesId);
+            OneSignal.getOutboundRequestJournal().post("in_app_messages/" + messageId + "/click", json, false, new OneSignalRestClient.ResponseHandler() {
                 @Override
                 void onSuccess(String response) {
                     printHttpSuccessForInAppMessageRequest("engagement", response);
-                    // Persist success click to disk. Id already added to set before making the network call
-                    saveClickedMessagesId(clickedMessagesId);
                 }
 
                 @Override
                 void onFailure(int statusCode, String response, Throwable throwable) {
                     printHttpErrorForInAppMessageRequest("engagement", statusCode, response);
                     requestResponse.onFailure(response);
+                    // The id was removed from the set so another post can be attempted
+                    saveClickedMessagesId(clickedMessagesId);
                 }
             });
         } catch (JSONException e) {
@@ -79,17 +84,19 @@ class OSInAppMessageRepository {
                 put("page_id", pageId);
             }};
 
-            OneSignalRestClient.post("in_app_messages/" + messageId + "/pageImpression", json, new OneSignalRestClient.ResponseHandler() {
+            // Persisted as sent once journaled, see sendIAMClick
+            saveViewPageImpressionedIds(viewedPageIds);
+            OneSignal.getOutboundRequestJournal().post("in_app_messages/" + messageId + "/pageImpression", json, false, new OneSignalRestClient.ResponseHandler() {
                 @Override
                 void onSuccess(String response) {
                     printHttpSuccessForInAppMessageRequest("page impression", response);
-                    saveViewPageImpressionedIds(viewedPageIds);
                 }
 
                 @Override
                 void onFailure(int statusCode, String response, Throwable throwable) {
                     printHttpErrorForInAppMessageRequest("page impression", statusCode, response);
                     requestResponse.onFailure(response);
+                    saveViewPageImpressionedIds(viewedPageIds);
                 }
             });
         } catch (JSONException e) {
@@ -109,17 +116,19 @@ class OSInAppMessageRepository {
                 put("first_impression", true);
             }};
 
-            OneSignalRestClient.post("in_app_messages/" + messageId + "/impression", json, new OneSignalRestClient.ResponseHandler() {
+            // Persisted as sent once journaled, see sendIAMClick
+            saveImpressionedMessages(impressionedMessages);
+            OneSignal.getOutboundRequestJournal().post("in_app_messages/" + messageId + "/impression", json, false, new OneSignalRestClient.ResponseHandler() {
                 @Override
                 void onSuccess(String response) {
                     printHttpSuccessForInAppMessageRequest("impression", response);
-                    saveImpressionedMessages(impressionedMessages);
                 }
 
                 @Override
                 void onFailure(int statusCode, String response, Throwable throwable) {
                     printHttpErrorForInAppMessageRequest("impression", statusCode, response);
                     requestResponse.onFailure(response);
+                    saveImpressionedMessages(impressionedMessages);
                 }
             });
         } catch (JSONException e) {
@@ -145,14 +154,18 @@ class OSInAppMessageRepository {
     }
 
     void getIAMData(String appId, String messageId, String variantId, final OSInAppMessageRequestResponse requestResponse) {
-        String htmlPath = htmlPathForMessage(messageId, variantId, appId);
+        final String htmlPath = htmlPathForMessage(messageId, variantId, appId);
         OneSignalRestClient.get(htmlPath, new OneSignalRestClient.ResponseHandler() {
             @Override
             void onFailure(int statusCode, String response, Throwable throwable) {
                 printHttpErrorForInAppMessageRequest("html", statusCode, response);
                 JSONObject jsonObject = new JSONObject();
 
-                if (!OSUtils.shouldRetryNetworkRequest(statusCode) || htmlNetworkRequestAttemptCount >= OSUtils.MAX_NETWORK_REQUEST_ATTEMPT_COUNT) {
+                // A backed off endpoint fails fast, retrying it right away would only spend the retry budget
+                if (statusCode == OSRetryPolicy.BACKED_OFF
+                        || !OSUtils.shouldRetryNetworkRequest(statusCode)
+                        || htmlNetworkRequestAttemptCount >= OSUtils.MAX_NETWORK_REQUEST_ATTEMPT_COUNT
+                        || !OSRetryPolicy.tryAcquireRetry(htmlPath)) {
                     // Failure limit reached, reset
                     htmlNetworkRequestAttemptCount = 0;
                     try {
@@ -183,18 +196,24 @@ class OSInAppMessageRepository {
     }
 
     @WorkerThread
-    synchronized void saveInAppMessage(OSInAppMessageInternal inAppMessage) {
-        ContentValues values = new ContentValues();
+    synchronized void saveInAppMessage(final OSInAppMessageInternal inAppMessage) {
+        final ContentValues values = new ContentValues();
         values.put(OneSignalDbContract.InAppMessageTable.COLUMN_NAME_MESSAGE_ID, inAppMessage.messageId);
         values.put(OneSignalDbContract.InAppMessageTable.COLUMN_NAME_DISPLAY_QUANTITY, inAppMessage.getRedisplayStats().getDisplayQuantity());
         values.put(OneSignalDbContract.InAppMessageTable.COLUMN_NAME_LAST_DISPLAY, inAppMessage.getRedisplayStats().getLastDisplayTime());
         values.put(OneSignalDbContract.InAppMessageTable.COLUMN_CLICK_IDS, inAppMessage.getClickedClickIds().toString());
         values.put(OneSignalDbContract.InAppMessageTable.COLUMN_DISPLAYED_IN_SESSION, inAppMessage.isDisplayedInSession());
 
-        int rowsUpdated = dbHelper.update(OneSignalDbContract.InAppMessageTable.TABLE_NAME, values,
-                OneSignalDbContract.InAppMessageTable.COLUMN_NAME_MESSAGE_ID + " = ?", new String[]{inAppMessage.messageId});
-        if (rowsUpdated == 0)
-            dbHelper.insert(OneSignalDbContract.InAppMessageTable.TABLE_NAME, null, values);
+        // Update or insert in one transaction instead of one per statement
+        dbHelper.runInTransaction(new OneSignalDb.Transaction() {
+            @Override
+            public void run(@NonNull OneSignalDb.Batch batch) {
+                int rowsUpdated = batch.update(OneSignalDbContract.InAppMessageTable.TABLE_NAME, values,
+                        OneSignalDbContract.InAppMessageTable.COLUMN_NAME_MESSAGE_ID + " = ?", new String[]{inAppMessage.messageId});
+                if (rowsUpdated == 0)
+                    batch.insert(OneSignalDbContract.InAppMessageTable.TABLE_NAME, null, values);
+            }
+        });
     }
 
     @WorkerThread
@@ -240,59 +259,68 @@ class OSInAppMessageRepository {
     @WorkerThread
     synchronized void cleanCachedInAppMessages() {
         // 1. Query for all old message ids and old clicked click ids
-        String[] retColumns = new String[]{
+        final String[] retColumns = new String[]{
                 OneSignalDbContract.InAppMessageTable.COLUMN_NAME_MESSAGE_ID,
                 OneSignalDbContract.InAppMessageTable.COLUMN_CLICK_IDS
         };
 
-        String whereStr = OneSignalDbContract.InAppMessageTable.COLUMN_NAME_LAST_DISPLAY + " < ?";
+        final String whereStr = OneSignalDbContract.InAppMessageTable.COLUMN_NAME_LAST_DISPLAY + " < ?";
 
         String sixMonthsAgoInSeconds = String.valueOf((System.currentTimeMillis() / 1_000L) - IAM_CACHE_DATA_LIFETIME);
-        String[] whereArgs = new String[]{sixMonthsAgoInSeconds};
+        final String[] whereArgs = new String[]{sixMonthsAgoInSeconds};
 
-        Set<String> oldMessageIds = OSUtils.newConcurrentSet();
-        Set<String> oldClickedClickIds = OSUtils.newConcurrentSet();
+        final Set<String> oldMessageIds = OSUtils.newConcurrentSet();
+        final Set<String> oldClickedClickIds = OSUtils.newConcurrentSet();
 
-        Cursor cursor = null;
-        try {
-            cursor = dbHelper.query(OneSignalDbContract.InAppMessageTable.TABLE_NAME,
-                    retColumns,
-                    whereStr,
-                    whereArgs,
-                    null,
-                    null,
-                    null);
+        // Read and delete in the same transaction so the ids cleaned below match the deleted rows
+        boolean deleted = dbHelper.runInTransaction(new OneSignalDb.Transaction() {
+            @Override
+            public void run(@NonNull OneSignalDb.Batch batch) {
+                Cursor cursor = null;
+                try {
+                    cursor = batch.query(OneSignalDbContract.InAppMessageTable.TABLE_NAME,
+                            retColumns,
+                            whereStr,
+                            whereArgs,
+                            null,
+                            null,
+                            null);
+
+                    if (cursor == null || cursor.getCount() == 0) {
+                        OneSignal.onesignalLog(OneSignal.LOG_LEVEL.DEBUG, "Attempted to clean 6 month old IAM data, but none exists!");
+                        return;
+                    }
 
-            if (cursor == null || cursor.getCount() == 0) {
-                OneSignal.onesignalLog(OneSignal.LOG_LEVEL.DEBUG, "Attempted to clean 6 month old IAM data, but none exists!");
-                return;
-            }
+                    // From cursor get all of the old message ids and old clicked click ids
+                    if (cursor.moveToFirst()) {
+                        do {
+                            String oldMessageId = cursor.getString(
+                                    cursor.getColumnIndex(
+                                            OneSignalDbContract.InAppMessageTable.COLUMN_NAME_MESSAGE_ID));
+                            String oldClickIds = cursor.getString(
+                                    cursor.getColumnIndex(
+                                            OneSignalDbContract.InAppMessageTable.COLUMN_CLICK_IDS));
+
+                            oldMessageIds.add(oldMessageId);
+                            oldClickedClickIds.addAll(OSUtils.newStringSetFromJSONArray(new JSONArray(oldClickIds)));
+                        } while (cursor.moveToNext());
+                    }
+                } catch (JSONException e) {
+                    e.printStackTrace();
+                } finally {
+                    if (cursor != null && !cursor.isClosed())
+                        cursor.close();
+                }
 
-            // From cursor get all of the old message ids and old clicked click ids
-            if (cursor.moveToFirst()) {
-                do {
-                    String oldMessageId = cursor.getString(
-                            cursor.getColumnIndex(
-                                    OneSignalDbContract.InAppMessageTable.COLUMN_NAME_MESSAGE_ID));
-                    String oldClickIds = cursor.getString(
-                            cursor.getColumnIndex(
-                                    OneSignalDbContract.InAppMessageTable.COLUMN_CLICK_IDS));
-
-                    oldMessageIds.add(oldMessageId);
-                    oldClickedClickIds.addAll(OSUtils.newStringSetFromJSONArray(new JSONArray(oldClickIds)));
-                } while (cursor.moveToNext());
+                // 2. Delete old IAMs from SQL
+                batch.delete(
+                        OneSignalDbContract.InAppMessageTable.TABLE_NAME,
+                        whereStr,
+                        whereArgs);
             }
-        } catch (JSONException e) {
-            e.printStackTrace();
-        } finally {
-            if (cursor != null && !cursor.isClosed())
-                cursor.close();
-        }
-        // 2. Delete old IAMs from SQL
-        dbHelper.delete(
-                OneSignalDbContract.InAppMessageTable.TABLE_NAME,
-                whereStr,
-                whereArgs);
+        });
+        if (!deleted)
+            return;
 
         // 3. Use queried data to clean SharedPreferences
         cleanInAppMessageIds(oldMessageIds);
@@ -312,19 +340,19 @@ class OSInAppMessageRepository {
     private void cleanInAppMessageIds(Set<String> oldMessageIds) {
         if (oldMessageIds != null && oldMessageIds.size() > 0) {
             Set<String> dismissedMessages = OneSignalPrefs.getStringSet(
-                    OneSignalPrefs.PREFS_ONESIGNAL,
+                    OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                     OneSignalPrefs.PREFS_OS_DISMISSED_IAMS,
                     null);
 
             Set<String> impressionedMessages = OneSignalPrefs.getStringSet(
-                    OneSignalPrefs.PREFS_ONESIGNAL,
+                    OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                     OneSignalPrefs.PREFS_OS_IMPRESSIONED_IAMS,
                     null);
 
             if (dismissedMessages != null && dismissedMessages.size() > 0) {
                 dismissedMessages.removeAll(oldMessageIds);
                 OneSignalPrefs.saveStringSet(
-                        OneSignalPrefs.PREFS_ONESIGNAL,
+                        OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                         OneSignalPrefs.PREFS_OS_DISMISSED_IAMS,
                         dismissedMessages);
             }
@@ -332,7 +360,7 @@ class OSInAppMessageRepository {
             if (impressionedMessages != null && impressionedMessages.size() > 0) {
                 impressionedMessages.removeAll(oldMessageIds);
                 OneSignalPrefs.saveStringSet(
-                        OneSignalPrefs.PREFS_ONESIGNAL,
+                        OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                         OneSignalPrefs.PREFS_OS_IMPRESSIONED_IAMS,
                         impressionedMessages);
             }
@@ -351,14 +379,14 @@ class OSInAppMessageRepository {
     private void cleanInAppMessageClickedClickIds(Set<String> oldClickedClickIds) {
         if (oldClickedClickIds != null && oldClickedClickIds.size() > 0) {
             Set<String> clickedClickIds = OneSignalPrefs.getStringSet(
-                    OneSignalPrefs.PREFS_ONESIGNAL,
+                    OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                     OneSignalPrefs.PREFS_OS_CLICKED_CLICK_IDS_IAMS,
                     null);
 
             if (clickedClickIds != null && clickedClickIds.size() > 0) {
                 clickedClickIds.removeAll(oldClickedClickIds);
                 OneSignalPrefs.saveStringSet(
-                        OneSignalPrefs.PREFS_ONESIGNAL,
+                        OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                         OneSignalPrefs.PREFS_OS_CLICKED_CLICK_IDS_IAMS,
                         clickedClickIds);
             }
@@ -377,7 +405,7 @@ class OSInAppMessageRepository {
 
     Set<String> getClickedMessagesId() {
         return sharedPreferences.getStringSet(
-                OneSignalPrefs.PREFS_ONESIGNAL,
+                OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 OneSignalPrefs.PREFS_OS_CLICKED_CLICK_IDS_IAMS,
                 null
         );
@@ -385,7 +413,7 @@ class OSInAppMessageRepository {
 
     private void saveClickedMessagesId(final Set<String> clickedClickIds) {
         sharedPreferences.saveStringSet(
-                OneSignalPrefs.PREFS_ONESIGNAL,
+                OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 OneSignalPrefs.PREFS_OS_CLICKED_CLICK_IDS_IAMS,
                 clickedClickIds
         );
@@ -393,7 +421,7 @@ class OSInAppMessageRepository {
 
     Set<String> getImpressionesMessagesId() {
         return sharedPreferences.getStringSet(
-                OneSignalPrefs.PREFS_ONESIGNAL,
+                OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 OneSignalPrefs.PREFS_OS_IMPRESSIONED_IAMS,
                 null
         );
@@ -401,14 +429,14 @@ class OSInAppMessageRepository {
 
     private void saveImpressionedMessages(final Set<String> impressionedMessages) {
         sharedPreferences.saveStringSet(
-                OneSignalPrefs.PREFS_ONESIGNAL,
+                OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 OneSignalPrefs.PREFS_OS_IMPRESSIONED_IAMS,
                 impressionedMessages);
     }
 
     Set<String> getViewPageImpressionedIds() {
         return sharedPreferences.getStringSet(
-                OneSignalPrefs.PREFS_ONESIGNAL,
+                OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 OneSignalPrefs.PREFS_OS_PAGE_IMPRESSIONED_IAMS,
                 null
         );
@@ -416,14 +444,14 @@ class OSInAppMessageRepository {
 
     void saveViewPageImpressionedIds(final Set<String> viewedPageIds) {
         sharedPreferences.saveStringSet(
-                OneSignalPrefs.PREFS_ONESIGNAL,
+                OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 OneSignalPrefs.PREFS_OS_PAGE_IMPRESSIONED_IAMS,
                 viewedPageIds);
     }
 
     Set<String> getDismissedMessagesId() {
         return sharedPreferences.getStringSet(
-                OneSignalPrefs.PREFS_ONESIGNAL,
+                OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 OneSignalPrefs.PREFS_OS_DISMISSED_IAMS,
                 null
         );
@@ -431,14 +459,14 @@ class OSInAppMessageRepository {
 
     void saveDismissedMessagesId(final Set<String> dismissedMessages) {
         sharedPreferences.saveStringSet(
-                OneSignalPrefs.PREFS_ONESIGNAL,
+                OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 OneSignalPrefs.PREFS_OS_DISMISSED_IAMS,
                 dismissedMessages);
     }
 
     String getSavedIAMs() {
         return sharedPreferences.getString(
-                OneSignalPrefs.PREFS_ONESIGNAL,
+                OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 OneSignalPrefs.PREFS_OS_CACHED_IAMS,
                 null
         );
@@ -446,7 +474,7 @@ class OSInAppMessageRepository {
 
     void saveIAMs(final String inAppMessages) {
         sharedPreferences.saveString(
-                OneSignalPrefs.PREFS_ONESIGNAL,
+                OneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 OneSignalPrefs.PREFS_OS_CACHED_IAMS,
                 inAppMessages);
     }
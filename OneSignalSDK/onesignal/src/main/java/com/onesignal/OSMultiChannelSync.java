@@ -0,0 +1,184 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import androidx.annotation.Nullable;
+
+import com.onesignal.UserStateSynchronizer.PendingSync;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Syncs the pending changes of several channels (push, email and SMS) together.
+ * Each channel is still its own player on OneSignal so it still needs its own PUT, but every channel is diffed from
+ *   one snapshot of the user state, holding the locks of all of them, and the PUTs are sent at once.
+ * The burst costs one round trip instead of one per channel and its completion handler is called once for all of them.
+ */
+class OSMultiChannelSync {
+
+    interface CompletionHandler {
+        /**
+         * Called once every channel of the burst handled its response, from the thread of the last response
+         *
+         * @param results {"channel": {"success": boolean}} of each channel that sent changes in the burst
+         */
+        void onComplete(JSONObject results);
+    }
+
+    // Longest a PUT can take before the REST client's watchdog aborts it
+    private static final long BURST_TIMEOUT_MS = OneSignalRestClient.getThreadTimeout(OneSignalRestClient.TIMEOUT);
+
+    private static final AtomicLong burstCount = new AtomicLong();
+    private static final AtomicLong burstRequestCount = new AtomicLong();
+
+    // Locks are always taken in channel order so two syncs can't deadlock
+    private static final Comparator<UserStateSynchronizer> CHANNEL_ORDER = new Comparator<UserStateSynchronizer>() {
+        @Override
+        public int compare(UserStateSynchronizer first, UserStateSynchronizer second) {
+            return first.getChannelType().compareTo(second.getChannelType());
+        }
+    };
+
+    /**
+     * Channels whose next sync isn't a plain PUT (creates, sessions and email logouts) sync on their own first.
+     * Blocks until every request of the burst was answered or timed out, so it must not be called from the main thread.
+     */
+    static void sync(List<UserStateSynchronizer> synchronizers, @Nullable CompletionHandler completionHandler) {
+        List<UserStateSynchronizer> sorted = new ArrayList<>(synchronizers);
+        Collections.sort(sorted, CHANNEL_ORDER);
+
+        List<UserStateSynchronizer> joining = new ArrayList<>();
+        for (UserStateSynchronizer synchronizer : sorted) {
+            if (synchronizer.canJoinMultiChannelSync())
+                joining.add(synchronizer);
+            else
+                synchronizer.runScheduledSync();
+        }
+
+        Map<UserStateSynchronizer, PendingSync> pendingSyncs = new LinkedHashMap<>();
+        takePendingSyncs(joining, 0, pendingSyncs);
+
+        if (!pendingSyncs.isEmpty())
+            sendBurst(pendingSyncs, completionHandler);
+        else if (completionHandler != null)
+            completionHandler.onComplete(new JSONObject());
+    }
+
+    static long getBurstCount() {
+        return burstCount.get();
+    }
+
+    static long getBurstRequestCount() {
+        return burstRequestCount.get();
+    }
+
+    /**
+     * Nests the LOCK of every channel so all of them are diffed from the same snapshot
+     */
+    private static void takePendingSyncs(List<UserStateSynchronizer> synchronizers, int index, Map<UserStateSynchronizer, PendingSync> pendingSyncs) {
+        if (index < synchronizers.size()) {
+            synchronized (synchronizers.get(index).LOCK) {
+                takePendingSyncs(synchronizers, index + 1, pendingSyncs);
+            }
+            return;
+        }
+
+        for (UserStateSynchronizer synchronizer : synchronizers) {
+            PendingSync pendingSync = synchronizer.beginMultiChannelSync();
+            if (pendingSync != null)
+                pendingSyncs.put(synchronizer, pendingSync);
+        }
+    }
+
+    /**
+     * Each channel's sync ends once it handled its own response, so a channel still waiting for it when the burst
+     *   stops waiting can't send the same changes again
+     */
+    private static void sendBurst(Map<UserStateSynchronizer, PendingSync> pendingSyncs, @Nullable final CompletionHandler completionHandler) {
+        burstCount.incrementAndGet();
+        burstRequestCount.addAndGet(pendingSyncs.size());
+        OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OSMultiChannelSync: Sending changes of " + pendingSyncs.size() + " channels together");
+
+        final JSONObject results = new JSONObject();
+        // Unlike the latch this doesn't give up after BURST_TIMEOUT_MS, the completion handler waits for every response
+        final AtomicInteger remaining = new AtomicInteger(pendingSyncs.size());
+        final CountDownLatch latch = new CountDownLatch(pendingSyncs.size());
+        for (Map.Entry<UserStateSynchronizer, PendingSync> entry : pendingSyncs.entrySet()) {
+            final UserStateSynchronizer synchronizer = entry.getKey();
+            synchronizer.sendMultiChannelSync(entry.getValue(), new OneSignalRestClient.ResponseHandler() {
+                @Override
+                void onFailure(int statusCode, String response, Throwable throwable) {
+                    onChannelDone(false);
+                }
+
+                @Override
+                void onSuccess(String response) {
+                    onChannelDone(true);
+                }
+
+                private void onChannelDone(boolean success) {
+                    synchronizer.endMultiChannelSync();
+                    putResult(results, synchronizer.getChannelString(), success);
+                    if (remaining.decrementAndGet() == 0 && completionHandler != null)
+                        completionHandler.onComplete(results);
+                    latch.countDown();
+                }
+            });
+        }
+
+        try {
+            if (!latch.await(BURST_TIMEOUT_MS, TimeUnit.MILLISECONDS))
+                OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "OSMultiChannelSync: Timed out waiting for the responses of the burst");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void putResult(JSONObject results, String channel, boolean success) {
+        synchronized (results) {
+            try {
+                results.put(channel, new JSONObject().put("success", success));
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
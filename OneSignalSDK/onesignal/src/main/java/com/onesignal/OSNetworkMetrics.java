@@ -0,0 +1,280 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Snapshot of the network requests the SDK made since the app process started, grouped by endpoint.
+ * Ids in request paths are collapsed, so all requests for players/{id} share one endpoint.
+ */
+public class OSNetworkMetrics {
+
+    private final List<EndpointMetrics> endpoints;
+    private final long handshakeCount;
+    private final long reusedConnectionCount;
+
+    OSNetworkMetrics(List<EndpointMetrics> endpoints, long handshakeCount, long reusedConnectionCount) {
+        this.endpoints = Collections.unmodifiableList(endpoints);
+        this.handshakeCount = handshakeCount;
+        this.reusedConnectionCount = reusedConnectionCount;
+    }
+
+    /**
+     * Get the metrics of every endpoint the SDK made a request to
+     */
+    @NonNull
+    public List<EndpointMetrics> getEndpoints() {
+        return endpoints;
+    }
+
+    /**
+     * Get the metrics of a single endpoint
+     *
+     * @param endpoint request path with ids replaced by {id}, for example "players/{id}/on_session"
+     * @return null if no request was made to the endpoint
+     */
+    @Nullable
+    public EndpointMetrics getEndpoint(@NonNull String endpoint) {
+        for (EndpointMetrics metrics : endpoints) {
+            if (metrics.endpoint.equals(endpoint))
+                return metrics;
+        }
+        return null;
+    }
+
+    /**
+     * Get the number of requests that had to open a new TLS connection to the OneSignal API
+     */
+    public long getHandshakeCount() {
+        return handshakeCount;
+    }
+
+    /**
+     * Get the number of requests that got their response over a connection a previous request left open
+     */
+    public long getReusedConnectionCount() {
+        return reusedConnectionCount;
+    }
+
+    public JSONObject toJSONObject() {
+        JSONObject mainObj = new JSONObject();
+
+        try {
+            mainObj.put("handshakeCount", handshakeCount);
+            mainObj.put("reusedConnectionCount", reusedConnectionCount);
+
+            JSONArray endpointsArray = new JSONArray();
+            for (EndpointMetrics metrics : endpoints)
+                endpointsArray.put(metrics.toJSONObject());
+            mainObj.put("endpoints", endpointsArray);
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+
+        return mainObj;
+    }
+
+    public static class EndpointMetrics {
+
+        private final String endpoint;
+        private final long requestCount;
+        private final long bytesSent;
+        private final long bytesReceived;
+        private final long cacheHits;
+        private final long timeouts;
+        private final long networkErrors;
+        private final long mergedWrites;
+        private final long requestBytesSaved;
+        private final long responseBytesSaved;
+        private final long averageLatency;
+        private final long latencyP50;
+        private final long latencyP90;
+        private final long latencyP99;
+        private final Map<Integer, Integer> statusCodes;
+
+        EndpointMetrics(String endpoint, long requestCount, long bytesSent, long bytesReceived,
+                        long cacheHits, long timeouts, long networkErrors, long mergedWrites,
+                        long requestBytesSaved, long responseBytesSaved,
+                        long averageLatency, long latencyP50, long latencyP90, long latencyP99,
+                        Map<Integer, Integer> statusCodes) {
+            this.endpoint = endpoint;
+            this.requestCount = requestCount;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.cacheHits = cacheHits;
+            this.timeouts = timeouts;
+            this.networkErrors = networkErrors;
+            this.mergedWrites = mergedWrites;
+            this.requestBytesSaved = requestBytesSaved;
+            this.responseBytesSaved = responseBytesSaved;
+            this.averageLatency = averageLatency;
+            this.latencyP50 = latencyP50;
+            this.latencyP90 = latencyP90;
+            this.latencyP99 = latencyP99;
+            this.statusCodes = Collections.unmodifiableMap(statusCodes);
+        }
+
+        /**
+         * Get the request path with ids replaced by {id}
+         */
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public long getRequestCount() {
+            return requestCount;
+        }
+
+        /**
+         * Get the request body bytes sent, after compression
+         */
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        /**
+         * Get the response body bytes received, before decompression
+         */
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        /**
+         * Get the number of requests answered with a 304, served from the SDK's response cache
+         */
+        public long getCacheHits() {
+            return cacheHits;
+        }
+
+        /**
+         * Get the number of requests that timed out
+         */
+        public long getTimeouts() {
+            return timeouts;
+        }
+
+        /**
+         * Get the number of requests that failed without a response for reasons other than a timeout, such as no network
+         */
+        public long getNetworkErrors() {
+            return networkErrors;
+        }
+
+        /**
+         * Get the number of changes merged into a request already waiting to be sent instead of being sent on their own.
+         * Only player updates are merged, see {@link OneSignal#setPlayerUpdateMergeable(OneSignal.PlayerUpdateType, boolean)}
+         */
+        public long getMergedWrites() {
+            return mergedWrites;
+        }
+
+        /**
+         * Get the request body bytes gzip kept off the wire, see {@link OneSignal#setRequestCompressionEnabled(boolean)}
+         */
+        public long getRequestBytesSaved() {
+            return requestBytesSaved;
+        }
+
+        /**
+         * Get the response body bytes gzip kept off the wire
+         */
+        public long getResponseBytesSaved() {
+            return responseBytesSaved;
+        }
+
+        /**
+         * Get the average request latency in milliseconds
+         */
+        public long getAverageLatency() {
+            return averageLatency;
+        }
+
+        /**
+         * Get the median request latency in milliseconds.
+         * Latencies are kept in buckets, so percentiles are the upper bound of their bucket.
+         */
+        public long getLatencyP50() {
+            return latencyP50;
+        }
+
+        public long getLatencyP90() {
+            return latencyP90;
+        }
+
+        public long getLatencyP99() {
+            return latencyP99;
+        }
+
+        /**
+         * Get the number of responses for each HTTP status code
+         */
+        public Map<Integer, Integer> getStatusCodes() {
+            return statusCodes;
+        }
+
+        public JSONObject toJSONObject() {
+            JSONObject mainObj = new JSONObject();
+
+            try {
+                mainObj.put("endpoint", endpoint);
+                mainObj.put("requestCount", requestCount);
+                mainObj.put("bytesSent", bytesSent);
+                mainObj.put("bytesReceived", bytesReceived);
+                mainObj.put("cacheHits", cacheHits);
+                mainObj.put("timeouts", timeouts);
+                mainObj.put("networkErrors", networkErrors);
+                mainObj.put("mergedWrites", mergedWrites);
+                mainObj.put("requestBytesSaved", requestBytesSaved);
+                mainObj.put("responseBytesSaved", responseBytesSaved);
+                mainObj.put("averageLatency", averageLatency);
+                mainObj.put("latencyP50", latencyP50);
+                mainObj.put("latencyP90", latencyP90);
+                mainObj.put("latencyP99", latencyP99);
+
+                JSONObject statusCodesObj = new JSONObject();
+                for (Map.Entry<Integer, Integer> entry : statusCodes.entrySet())
+                    statusCodesObj.put(String.valueOf(entry.getKey()), entry.getValue());
+                mainObj.put("statusCodes", statusCodesObj);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+
+            return mainObj;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.os.Build;
+import android.os.SystemClock;
+import android.text.TextUtils;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import com.onesignal.OneSignalDbContract.NotificationTable;
+import com.onesignal.influence.domain.OSInfluenceChannel;
+
+import java.util.ArrayList;
+
+import static com.onesignal.outcomes.data.OutcomesDbContract.CACHE_UNIQUE_OUTCOME_COLUMN_CHANNEL_INFLUENCE_ID;
+import static com.onesignal.outcomes.data.OutcomesDbContract.CACHE_UNIQUE_OUTCOME_COLUMN_CHANNEL_TYPE;
+import static com.onesignal.outcomes.data.OutcomesDbContract.CACHE_UNIQUE_OUTCOME_TABLE;
+
+/**
+ * Deletes notifications older than 7 days, and the unique outcomes cached for them, while the device is idle.
+ * Rows are deleted in chunks of {@link #CLEAN_CHUNK_SIZE}, each in its own short transaction, sleeping in between
+ * so notification display and other writers never wait long on the DB.
+ * Once done, tables over their row cap are trimmed, see {@link OSStorageLimits}.
+ */
+class OSNotificationCacheCleaner {
+
+    static final long NOTIFICATION_CACHE_DATA_LIFETIME = 604_800L; // 7 days in seconds
+    // Notification ids are bound once per row so this must stay below SQLite's 999 bound args limit
+    static final int CLEAN_CHUNK_SIZE = 200;
+    static final long YIELD_BETWEEN_CHUNKS_MS = 50;
+
+    static final String NOTIFICATION_CACHE_CLEANER_WORKER_IDENTIFIER = NotificationCacheCleanerWorker.class.getCanonicalName();
+
+    interface StopSignal {
+        boolean isStopped();
+    }
+
+    static class CleanResult {
+        final int deletedNotifications;
+        final int deletedUniqueOutcomes;
+        final int chunks;
+        final long durationMs;
+        final boolean completed;
+
+        CleanResult(int deletedNotifications, int deletedUniqueOutcomes, int chunks, long durationMs, boolean completed) {
+            this.deletedNotifications = deletedNotifications;
+            this.deletedUniqueOutcomes = deletedUniqueOutcomes;
+            this.chunks = chunks;
+            this.durationMs = durationMs;
+            this.completed = completed;
+        }
+
+        @Override
+        public String toString() {
+            return "CleanResult{" +
+                    "deletedNotifications=" + deletedNotifications +
+                    ", deletedUniqueOutcomes=" + deletedUniqueOutcomes +
+                    ", chunks=" + chunks +
+                    ", durationMs=" + durationMs +
+                    ", completed=" + completed +
+                    '}';
+        }
+    }
+
+    static void beginEnqueueingWork(Context context) {
+        Constraints.Builder constraints = new Constraints.Builder();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M)
+            constraints.setRequiresDeviceIdle(true);
+        else
+            // No idle signal before M, charging is the closest sign the device isn't in use
+            constraints.setRequiresCharging(true);
+
+        OneTimeWorkRequest workRequest = new OneTimeWorkRequest.Builder(NotificationCacheCleanerWorker.class)
+                .setConstraints(constraints.build())
+                .build();
+
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(NOTIFICATION_CACHE_CLEANER_WORKER_IDENTIFIER, ExistingWorkPolicy.KEEP, workRequest);
+    }
+
+    public static class NotificationCacheCleanerWorker extends Worker {
+
+        public NotificationCacheCleanerWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+            super(context, workerParams);
+        }
+
+        @NonNull
+        @Override
+        public Result doWork() {
+            Context context = getApplicationContext();
+
+            if (OneSignal.appContext == null)
+                OneSignal.initWithContext(context);
+
+            OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(context);
+            CleanResult result = cleanExpiredNotifications(dbHelper, new StopSignal() {
+                @Override
+                public boolean isStopped() {
+                    return NotificationCacheCleanerWorker.this.isStopped();
+                }
+            });
+
+            // Device left idle, pick up where it stopped next time it is idle
+            if (!result.completed)
+                return Result.retry();
+
+            // Chunks only cascade to the notifications they delete, sweep once for
+            // unique outcomes orphaned by notification rows removed elsewhere
+            OneSignal.getOutcomeEventsController().cleanCachedUniqueOutcomes();
+            OSStorageLimits.enforceRowCaps(dbHelper);
+            return Result.success();
+        }
+    }
+
+    static CleanResult cleanExpiredNotifications(OneSignalDb db, StopSignal stopSignal) {
+        long startTime = SystemClock.elapsedRealtime();
+        final String[] whereArgs = {
+                String.valueOf((OneSignal.getTime().getCurrentTimeMillis() / 1_000L) - NOTIFICATION_CACHE_DATA_LIFETIME)
+        };
+
+        int deletedNotifications = 0;
+        int deletedUniqueOutcomes = 0;
+        int chunks = 0;
+        boolean completed = false;
+        while (!stopSignal.isStopped()) {
+            final int[] deleted = new int[2];
+            boolean committed = db.runInTransaction(new OneSignalDb.Transaction() {
+                @Override
+                public void run(@NonNull OneSignalDb.Batch batch) {
+                    deleteNotifications(
+                            batch,
+                            NotificationTable.COLUMN_NAME_CREATED_TIME + " < ?",
+                            whereArgs,
+                            NotificationTable.COLUMN_NAME_CREATED_TIME,
+                            CLEAN_CHUNK_SIZE,
+                            deleted);
+                }
+            });
+            if (!committed)
+                break;
+
+            chunks++;
+            deletedNotifications += deleted[0];
+            deletedUniqueOutcomes += deleted[1];
+            if (deleted[0] < CLEAN_CHUNK_SIZE) {
+                completed = true;
+                break;
+            }
+
+            SystemClock.sleep(YIELD_BETWEEN_CHUNKS_MS);
+        }
+
+        CleanResult result = new CleanResult(deletedNotifications, deletedUniqueOutcomes, chunks, SystemClock.elapsedRealtime() - startTime, completed);
+        OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "Notification cache cleaned: " + result);
+        OneSignalPrefs.saveLong(OneSignalPrefs.PREFS_ONESIGNAL, OneSignalPrefs.PREFS_OS_NOTIFICATION_CACHE_CLEAN_DURATION, result.durationMs);
+        OneSignalPrefs.saveInt(OneSignalPrefs.PREFS_ONESIGNAL, OneSignalPrefs.PREFS_OS_NOTIFICATION_CACHE_CLEAN_DELETED, result.deletedNotifications);
+        return result;
+    }
+
+    /**
+     * Deletes up to limit notifications matching the selection, in orderBy order, and their cached unique outcomes
+     * @param deleted gets the number of notifications and unique outcomes deleted
+     */
+    static void deleteNotifications(OneSignalDb.Batch batch, String selection, String[] selectionArgs, String orderBy, int limit, int[] deleted) {
+        ArrayList<String> rowIds = new ArrayList<>();
+        ArrayList<String> notificationIds = new ArrayList<>();
+
+        Cursor cursor = batch.query(
+                NotificationTable.TABLE_NAME,
+                new String[] { NotificationTable._ID, NotificationTable.COLUMN_NAME_NOTIFICATION_ID },
+                selection,
+                selectionArgs,
+                null,
+                null,
+                orderBy,
+                String.valueOf(limit));
+        try {
+            while (cursor.moveToNext()) {
+                rowIds.add(cursor.getString(0));
+                String notificationId = cursor.getString(1);
+                if (notificationId != null)
+                    notificationIds.add(notificationId);
+            }
+        } finally {
+            cursor.close();
+        }
+
+        if (rowIds.isEmpty())
+            return;
+
+        deleted[0] = batch.delete(
+                NotificationTable.TABLE_NAME,
+                NotificationTable._ID + " IN (" + placeholders(rowIds.size()) + ")",
+                rowIds.toArray(new String[0]));
+
+        if (notificationIds.isEmpty())
+            return;
+
+        notificationIds.add(0, OSInfluenceChannel.NOTIFICATION.toString());
+        deleted[1] = batch.delete(
+                CACHE_UNIQUE_OUTCOME_TABLE,
+                CACHE_UNIQUE_OUTCOME_COLUMN_CHANNEL_TYPE + " = ? AND " +
+                        CACHE_UNIQUE_OUTCOME_COLUMN_CHANNEL_INFLUENCE_ID + " IN (" + placeholders(notificationIds.size() - 1) + ")",
+                notificationIds.toArray(new String[0]));
+    }
+
+    private static String placeholders(int count) {
+        ArrayList<String> placeholders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            placeholders.add("?");
+        return TextUtils.join(", ", placeholders);
+    }
+}
@@ -17,8 +17,6 @@ import java.lang.ref.WeakReference;
 
 class OSNotificationDataController extends OSBackgroundManager {
 
-    private final static long NOTIFICATION_CACHE_DATA_LIFETIME = 604_800L; // 7 days in second
-
     private final static String OS_NOTIFICATIONS_THREAD = "OS_NOTIFICATIONS_THREAD";
 
     private final OneSignalDbHelper dbHelper;
@@ -32,36 +30,38 @@ class OSNotificationDataController extends OSBackgroundManager {
     /**
      * We clean outdated cache from several places within the OneSignal SDK here
      * 1. Notifications & unique outcome events linked to notification ids (1 week)
-     * 2. Cached In App Messaging Sets in SharedPreferences (impressions, clicks, views) and SQL IAMs
+     * 2. Rows over the cap of their table
+     * 3. Cached In App Messaging Sets in SharedPreferences (impressions, clicks, views) and SQL IAMs
+     */
+    void cleanOldCachedData(Context context) {
+        cleanNotificationCache(context);
+        enforceStorageRowCaps();
+    }
+
+    /**
+     * Schedules deletion of notifications with created timestamps older than 7 days, and the unique outcomes
+     *  cached for them, for the next time the device is idle.
+     * See {@link OSNotificationCacheCleaner}
      */
-    void cleanOldCachedData() {
-        cleanNotificationCache();
+    private void cleanNotificationCache(Context context) {
+        OSNotificationCacheCleaner.beginEnqueueingWork(context);
     }
 
     /**
-     * Deletes notifications with created timestamps older than 7 days
-     * Cleans notification tables
-     * 1. NotificationTable.TABLE_NAME
+     * Evicts rows from the SDK tables over their cap
+     * See {@link OSStorageLimits}
      */
-    private void cleanNotificationCache() {
-        Runnable notificationCacheCleaner = new BackgroundRunnable() {
+    private void enforceStorageRowCaps() {
+        Runnable storageRowCapsEnforcer = new BackgroundRunnable() {
             @Override
             public void run() {
                 super.run();
 
-                String whereStr = NotificationTable.COLUMN_NAME_CREATED_TIME + " < ?";
-
-                String sevenDaysAgoInSeconds = String.valueOf((OneSignal.getTime().getCurrentTimeMillis() / 1_000L) - NOTIFICATION_CACHE_DATA_LIFETIME);
-                String[] whereArgs = new String[]{sevenDaysAgoInSeconds};
-
-                dbHelper.delete(
-                        NotificationTable.TABLE_NAME,
-                        whereStr,
-                        whereArgs);
+                OSStorageLimits.enforceRowCaps(dbHelper);
             }
         };
 
-        runRunnableOnThread(notificationCacheCleaner, OS_NOTIFICATIONS_THREAD);
+        runRunnableOnThread(storageRowCapsEnforcer, OS_NOTIFICATIONS_THREAD);
     }
 
     void clearOneSignalNotifications(final WeakReference<Context> weakReference) {
@@ -170,14 +170,15 @@ class OSNotificationDataController extends OSBackgroundManager {
                 if (appContext == null)
                     return;
 
-                String whereStr = NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + id + " AND " +
+                String whereStr = NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = ? AND " +
                         NotificationTable.COLUMN_NAME_OPENED + " = 0 AND " +
                         NotificationTable.COLUMN_NAME_DISMISSED + " = 0";
+                String[] whereArgs = new String[]{ String.valueOf(id) };
 
                 ContentValues values = new ContentValues();
                 values.put(NotificationTable.COLUMN_NAME_DISMISSED, 1);
 
-                int records = dbHelper.update(NotificationTable.TABLE_NAME, values, whereStr, null);
+                int records = dbHelper.update(NotificationTable.TABLE_NAME, values, whereStr, whereArgs);
 
                 if (records > 0)
                     NotificationSummaryManager.updatePossibleDependentSummaryOnDismiss(appContext, dbHelper, id);
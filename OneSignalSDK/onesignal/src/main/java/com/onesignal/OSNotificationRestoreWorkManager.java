@@ -14,6 +14,7 @@ import androidx.work.Worker;
 import androidx.work.WorkerParameters;
 
 import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 class OSNotificationRestoreWorkManager {
@@ -74,10 +75,11 @@ class OSNotificationRestoreWorkManager {
 
             OneSignalDbHelper dbHelper = OneSignalDbHelper.getInstance(context);
 
-            StringBuilder dbQuerySelection = OneSignalDbHelper.recentUninteractedWithNotificationsWhere();
-            skipVisibleNotifications(context, dbQuerySelection);
+            ArrayList<String> whereArgs = new ArrayList<>();
+            StringBuilder dbQuerySelection = OneSignalDbHelper.recentUninteractedWithNotificationsWhere(whereArgs);
+            skipVisibleNotifications(context, dbQuerySelection, whereArgs);
 
-            queryAndRestoreNotificationsAndBadgeCount(context, dbHelper, dbQuerySelection);
+            queryAndRestoreNotificationsAndBadgeCount(context, dbHelper, dbQuerySelection, whereArgs);
 
             return Result.success();
         }
@@ -87,7 +89,8 @@ class OSNotificationRestoreWorkManager {
     private static void queryAndRestoreNotificationsAndBadgeCount(
             Context context,
             OneSignalDbHelper dbHelper,
-            StringBuilder dbQuerySelection) {
+            StringBuilder dbQuerySelection,
+            List<String> whereArgs) {
 
         OneSignal.Log(OneSignal.LOG_LEVEL.INFO,
                 "Querying DB for notifications to restore: " + dbQuerySelection.toString());
@@ -98,7 +101,7 @@ class OSNotificationRestoreWorkManager {
                     OneSignalDbContract.NotificationTable.TABLE_NAME,
                     COLUMNS_FOR_RESTORE,
                     dbQuerySelection.toString(),
-                    null,
+                    whereArgs.toArray(new String[0]),
                     null, // group by
                     null, // filter by row groups
                     OneSignalDbContract.NotificationTable._ID + " DESC", // sort order, new to old
@@ -121,7 +124,7 @@ class OSNotificationRestoreWorkManager {
      *    they are displayed under a different channel which isn't ideal.
      * For pre-O devices this still have the benefit of being more efficient
      */
-    private static void skipVisibleNotifications(Context context, StringBuilder dbQuerySelection) {
+    private static void skipVisibleNotifications(Context context, StringBuilder dbQuerySelection, List<String> whereArgs) {
         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.M)
             return;
 
@@ -129,13 +132,15 @@ class OSNotificationRestoreWorkManager {
         if (activeNotifs.length == 0)
             return;
 
-        ArrayList<Integer> activeNotifIds = new ArrayList<>();
-        for (StatusBarNotification activeNotif : activeNotifs)
-            activeNotifIds.add(activeNotif.getId());
+        ArrayList<String> placeholders = new ArrayList<>();
+        for (StatusBarNotification activeNotif : activeNotifs) {
+            placeholders.add("?");
+            whereArgs.add(String.valueOf(activeNotif.getId()));
+        }
 
         dbQuerySelection
                 .append(" AND " + OneSignalDbContract.NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " NOT IN (")
-                .append(TextUtils.join(",", activeNotifIds))
+                .append(TextUtils.join(",", placeholders))
                 .append(")");
     }
 
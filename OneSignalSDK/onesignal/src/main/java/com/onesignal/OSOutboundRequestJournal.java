@@ -0,0 +1,259 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.onesignal.OneSignalDbContract.OutboundRequestTable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Crash-safe journal of the notification opened, receive receipt and in-app message REST calls.
+ * A request is written to the DB before it is sent and removed once it gets a response, so a request
+ * still in the journal on the next start never got one and is replayed.
+ * The replay runs on the REST request pool and sends one request at a time, oldest first, so the server
+ * gets them in the order they were made.
+ * Replayed requests have no caller left to retry them, so the journal retries them with backoff on later starts,
+ * unless the request was journaled with retryOnFailure false.
+ * Player syncs, on_focus and outcomes aren't journaled. They are rebuilt from the persisted user state and the
+ * outcomes cache on the next start and keep their own retries.
+ */
+class OSOutboundRequestJournal extends OSBackgroundManager {
+
+    private static final String OS_OUTBOUND_REQUEST_JOURNAL = "OS_OUTBOUND_REQUEST_JOURNAL";
+
+    static final int MAX_REPLAY_ATTEMPTS = 5;
+    private static final long REPLAY_BACKOFF_BASE = 60_000;
+    private static final long REPLAY_BACKOFF_MAX = 6 * 60 * 60 * 1_000;
+
+    private static final String PUT = "PUT";
+    private static final String POST = "POST";
+
+    private final OneSignalDb dbHelper;
+    private final OSLogger logger;
+    private final OSTime time;
+    // Requests sent by this process, the replay skips them since their response is still on the way
+    private final Set<String> inFlightRequestIds = OSUtils.newConcurrentSet();
+
+    OSOutboundRequestJournal(OneSignalDb dbHelper, OSLogger logger, OSTime time) {
+        this.dbHelper = dbHelper;
+        this.logger = logger;
+        this.time = time;
+    }
+
+    /**
+     * @param retryOnFailure false if the caller retries on its own after a failure,
+     *                       the journal then only keeps the request in case the process dies before the response
+     *                       and replays it once
+     */
+    void put(@NonNull String url, @NonNull JSONObject jsonBody, boolean retryOnFailure, @Nullable OneSignalRestClient.ResponseHandler responseHandler) {
+        appendAndSend(PUT, url, jsonBody, retryOnFailure, responseHandler);
+    }
+
+    void post(@NonNull String url, @NonNull JSONObject jsonBody, boolean retryOnFailure, @Nullable OneSignalRestClient.ResponseHandler responseHandler) {
+        appendAndSend(POST, url, jsonBody, retryOnFailure, responseHandler);
+    }
+
+    private void appendAndSend(final String method, final String url, final JSONObject jsonBody, final boolean retryOnFailure, final OneSignalRestClient.ResponseHandler responseHandler) {
+        Runnable appendAndSend = new BackgroundRunnable() {
+            @Override
+            public void run() {
+                super.run();
+
+                String requestId = UUID.randomUUID().toString();
+                inFlightRequestIds.add(requestId);
+
+                ContentValues values = new ContentValues();
+                values.put(OutboundRequestTable.COLUMN_NAME_REQUEST_ID, requestId);
+                values.put(OutboundRequestTable.COLUMN_NAME_METHOD, method);
+                values.put(OutboundRequestTable.COLUMN_NAME_URL, url);
+                values.put(OutboundRequestTable.COLUMN_NAME_BODY, jsonBody.toString());
+                values.put(OutboundRequestTable.COLUMN_NAME_RETRY_ON_FAILURE, retryOnFailure ? 1 : 0);
+                dbHelper.insert(OutboundRequestTable.TABLE_NAME, null, values);
+
+                send(method, url, jsonBody, new JournalResponseHandler(requestId, 0, retryOnFailure, responseHandler));
+            }
+        };
+
+        runRunnableOnThread(appendAndSend, OS_OUTBOUND_REQUEST_JOURNAL);
+    }
+
+    /**
+     * Sends every journaled request left over from a previous process, oldest first
+     */
+    void replayPendingRequests() {
+        OneSignalRestClient.executeOnRequestPool(new Runnable() {
+            @Override
+            public void run() {
+                replay();
+            }
+        });
+    }
+
+    @WorkerThread
+    private void replay() {
+        String[] columns = {
+                OutboundRequestTable.COLUMN_NAME_REQUEST_ID,
+                OutboundRequestTable.COLUMN_NAME_METHOD,
+                OutboundRequestTable.COLUMN_NAME_URL,
+                OutboundRequestTable.COLUMN_NAME_BODY,
+                OutboundRequestTable.COLUMN_NAME_ATTEMPTS,
+                OutboundRequestTable.COLUMN_NAME_RETRY_ON_FAILURE
+        };
+        String where = OutboundRequestTable.COLUMN_NAME_NEXT_ATTEMPT_TIME + " <= ?";
+        String[] whereArgs = {String.valueOf(time.getCurrentTimeMillis())};
+
+        Cursor cursor = dbHelper.query(
+                OutboundRequestTable.TABLE_NAME,
+                columns,
+                where,
+                whereArgs,
+                null,
+                null,
+                OutboundRequestTable._ID + " ASC"
+        );
+
+        try {
+            if (cursor.getCount() > 0)
+                logger.debug("Replaying " + cursor.getCount() + " journaled outbound requests");
+
+            while (cursor.moveToNext()) {
+                String requestId = cursor.getString(cursor.getColumnIndex(OutboundRequestTable.COLUMN_NAME_REQUEST_ID));
+                if (inFlightRequestIds.contains(requestId))
+                    continue;
+
+                String method = cursor.getString(cursor.getColumnIndex(OutboundRequestTable.COLUMN_NAME_METHOD));
+                String url = cursor.getString(cursor.getColumnIndex(OutboundRequestTable.COLUMN_NAME_URL));
+                String body = cursor.getString(cursor.getColumnIndex(OutboundRequestTable.COLUMN_NAME_BODY));
+                int attempts = cursor.getInt(cursor.getColumnIndex(OutboundRequestTable.COLUMN_NAME_ATTEMPTS));
+                boolean retryOnFailure = cursor.getInt(cursor.getColumnIndex(OutboundRequestTable.COLUMN_NAME_RETRY_ON_FAILURE)) == 1;
+
+                JSONObject jsonBody;
+                try {
+                    jsonBody = new JSONObject(body);
+                } catch (JSONException e) {
+                    logger.error("Dropping journaled request to " + url + " with invalid body", e);
+                    removeRequest(requestId);
+                    continue;
+                }
+
+                inFlightRequestIds.add(requestId);
+                // Waits for the response so the next row isn't sent before this one
+                sendSync(method, url, jsonBody, new JournalResponseHandler(requestId, attempts, retryOnFailure, null));
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private void send(String method, String url, JSONObject jsonBody, OneSignalRestClient.ResponseHandler responseHandler) {
+        if (PUT.equals(method))
+            OneSignalRestClient.put(url, jsonBody, responseHandler);
+        else
+            OneSignalRestClient.post(url, jsonBody, responseHandler);
+    }
+
+    @WorkerThread
+    private void sendSync(String method, String url, JSONObject jsonBody, OneSignalRestClient.ResponseHandler responseHandler) {
+        if (PUT.equals(method))
+            OneSignalRestClient.putSync(url, jsonBody, responseHandler);
+        else
+            OneSignalRestClient.postSync(url, jsonBody, responseHandler);
+    }
+
+    private void removeRequest(String requestId) {
+        dbHelper.delete(
+                OutboundRequestTable.TABLE_NAME,
+                OutboundRequestTable.COLUMN_NAME_REQUEST_ID + " = ?",
+                new String[]{requestId}
+        );
+    }
+
+    private void scheduleRetry(String requestId, int attempts) {
+        long backoff = OSRetryPolicy.getBackoff(REPLAY_BACKOFF_BASE, REPLAY_BACKOFF_MAX, attempts + 1);
+
+        ContentValues values = new ContentValues();
+        values.put(OutboundRequestTable.COLUMN_NAME_ATTEMPTS, attempts);
+        values.put(OutboundRequestTable.COLUMN_NAME_NEXT_ATTEMPT_TIME, time.getCurrentTimeMillis() + backoff);
+        dbHelper.update(
+                OutboundRequestTable.TABLE_NAME,
+                values,
+                OutboundRequestTable.COLUMN_NAME_REQUEST_ID + " = ?",
+                new String[]{requestId}
+        );
+    }
+
+    private class JournalResponseHandler extends OneSignalRestClient.ResponseHandler {
+        private final String requestId;
+        private final int attempts;
+        private final boolean retryOnFailure;
+        @Nullable
+        private final OneSignalRestClient.ResponseHandler responseHandler;
+
+        JournalResponseHandler(String requestId, int attempts, boolean retryOnFailure, @Nullable OneSignalRestClient.ResponseHandler responseHandler) {
+            this.requestId = requestId;
+            this.attempts = attempts;
+            this.retryOnFailure = retryOnFailure;
+            this.responseHandler = responseHandler;
+        }
+
+        @Override
+        void onSuccess(String response) {
+            removeRequest(requestId);
+            inFlightRequestIds.remove(requestId);
+
+            if (responseHandler != null)
+                responseHandler.onSuccess(response);
+        }
+
+        @Override
+        void onFailure(int statusCode, String response, Throwable throwable) {
+            int attempted = attempts + 1;
+            if (retryOnFailure && OSUtils.shouldRetryNetworkRequest(statusCode) && attempted < MAX_REPLAY_ATTEMPTS) {
+                logger.debug("Journaled request " + requestId + " failed, keeping it to replay on a later start");
+                scheduleRetry(requestId, attempted);
+            } else
+                removeRequest(requestId);
+            inFlightRequestIds.remove(requestId);
+
+            if (responseHandler != null)
+                responseHandler.onFailure(statusCode, response, throwable);
+        }
+    }
+}
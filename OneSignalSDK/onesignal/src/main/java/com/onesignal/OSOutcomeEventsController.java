@@ -4,6 +4,7 @@ import android.os.Process;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 import com.onesignal.influence.domain.OSInfluence;
 import com.onesignal.influence.domain.OSInfluenceType;
@@ -21,8 +22,7 @@ class OSOutcomeEventsController {
     private static final String OS_SAVE_OUTCOMES = "OS_SAVE_OUTCOMES";
     private static final String OS_SEND_SAVED_OUTCOMES = "OS_SEND_SAVED_OUTCOMES";
     private static final String OS_SAVE_UNIQUE_OUTCOME_NOTIFICATIONS = "OS_SAVE_UNIQUE_OUTCOME_NOTIFICATIONS";
-
-    private final static String OS_DELETE_CACHED_UNIQUE_OUTCOMES_NOTIFICATIONS_THREAD = "OS_DELETE_CACHED_UNIQUE_OUTCOMES_NOTIFICATIONS_THREAD";
+    private static final long RETRY_BASE_DELAY_MS = 15_000, RETRY_MAX_DELAY_MS = 60_000;
 
     // Keeps track of unique outcome events sent for UNATTRIBUTED sessions on a per session level
     private Set<String> unattributedUniqueOutcomeEventsSentOnSession;
@@ -62,16 +62,10 @@ class OSOutcomeEventsController {
     /**
      * Deletes cached unique outcome notifications whose ids do not exist inside of the NotificationTable.TABLE_NAME
      */
+    @WorkerThread
     void cleanCachedUniqueOutcomes() {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                Thread.currentThread().setPriority(Process.THREAD_PRIORITY_BACKGROUND);
-
-                outcomeEventsFactory.getRepository().cleanCachedUniqueOutcomeEventNotifications(
-                        OneSignalDbContract.NotificationTable.TABLE_NAME, OneSignalDbContract.NotificationTable.COLUMN_NAME_NOTIFICATION_ID);
-            }
-        }, OS_DELETE_CACHED_UNIQUE_OUTCOMES_NOTIFICATIONS_THREAD).start();
+        outcomeEventsFactory.getRepository().cleanCachedUniqueOutcomeEventNotifications(
+                OneSignalDbContract.NotificationTable.TABLE_NAME, OneSignalDbContract.NotificationTable.COLUMN_NAME_NOTIFICATION_ID);
     }
 
     /**
@@ -86,13 +80,16 @@ class OSOutcomeEventsController {
 
                 List<OSOutcomeEventParams> outcomeEvents = outcomeEventsFactory.getRepository().getSavedOutcomeEvents();
                 for (OSOutcomeEventParams event : outcomeEvents) {
-                    sendSavedOutcomeEvent(event);
+                    sendSavedOutcomeEvent(event, 0);
                 }
             }
         }, OS_SEND_SAVED_OUTCOMES).start();
     }
 
-    private void sendSavedOutcomeEvent(@NonNull final OSOutcomeEventParams event) {
+    /**
+     * @param retry 0 unless the outcome already failed in this session
+     */
+    private void sendSavedOutcomeEvent(@NonNull final OSOutcomeEventParams event, final int retry) {
         int deviceType = new OSUtils().getDeviceType();
         String appId = OneSignal.appId;
 
@@ -104,12 +101,33 @@ class OSOutcomeEventsController {
 
             @Override
             public void onFailure(int statusCode, String response, Throwable throwable) {
+                retrySavedOutcomeEvent(event, statusCode, retry + 1);
             }
         };
 
         outcomeEventsFactory.getRepository().requestMeasureOutcomeEvent(appId, deviceType, event, responseHandler);
     }
 
+    /**
+     * Sends a saved outcome that failed again later in the session, if the retry policy allows it.
+     * It stays saved until a retry succeeds, so it is still sent on the next cold start if every retry fails.
+     * @param retry 1 for the first retry
+     */
+    private void retrySavedOutcomeEvent(@NonNull final OSOutcomeEventParams event, int statusCode, final int retry) {
+        String endpoint = outcomeEventsFactory.getRepository().getMeasureOutcomeEndpoint();
+        if (!OSRetryPolicy.shouldRetryInSession(endpoint, statusCode, retry))
+            return;
+
+        long delay = OSRetryPolicy.getRetryDelay(endpoint, retry, RETRY_BASE_DELAY_MS, RETRY_MAX_DELAY_MS);
+        OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "Retrying outcome with name: " + event.getOutcomeId() + " in " + (delay / 1_000) + " seconds");
+        OSTimeoutHandler.getTimeoutHandler().startTimeout(delay, new Runnable() {
+            @Override
+            public void run() {
+                sendSavedOutcomeEvent(event, retry);
+            }
+        });
+    }
+
     void sendClickActionOutcomes(List<OSInAppMessageOutcome> outcomes) {
         for (OSInAppMessageOutcome outcome : outcomes) {
             String name = outcome.getName();
@@ -251,7 +269,7 @@ class OSOutcomeEventsController {
             }
 
             @Override
-            public void onFailure(int statusCode, String response, Throwable throwable) {
+            public void onFailure(final int statusCode, String response, Throwable throwable) {
                 new Thread(new Runnable() {
                     @Override
                     public void run() {
@@ -259,12 +277,14 @@ class OSOutcomeEventsController {
                         // Only if we need to save and retry the outcome, then we will save the timestamp for future sending
                         eventParams.setTimestamp(timestampSeconds);
                         outcomeEventsFactory.getRepository().saveOutcomeEvent(eventParams);
+                        // Only retried once saved, a retry that succeeds removes it again
+                        retrySavedOutcomeEvent(eventParams, statusCode, 1);
                     }
                 }, OS_SAVE_OUTCOMES).start();
 
                 OneSignal.onesignalLog(OneSignal.LOG_LEVEL.WARN,
                         "Sending outcome with name: " + name + " failed with status code: " + statusCode + " and response: " + response +
-                                "\nOutcome event was cached and will be reattempted on app cold start");
+                                "\nOutcome event was cached and will be reattempted later in the session or on app cold start");
 
                 // Return null within the callback to determine not a failure, but not a success in terms of the request made
                 if (callback != null)
@@ -49,7 +49,7 @@ class OSReceiveReceiptRepository {
                 jsonBody.put(DEVICE_TYPE, deviceType);
             }
 
-            OneSignalRestClient.put("notifications/" + notificationId + "/report_received", jsonBody, responseHandler);
+            OneSignal.getOutboundRequestJournal().put("notifications/" + notificationId + "/report_received", jsonBody, true, responseHandler);
         } catch (JSONException e) {
             OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Generating direct receive receipt:JSON Failed.", e);
         }
@@ -0,0 +1,169 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+
+/**
+ * Reads REST response bodies straight off the connection's InputStream.
+ * Buffers are sized from the response's Content-Length so large bodies, like the IAM list from on_session,
+ *   are read without the repeated buffer growth and regex matching of Scanner.
+ */
+class OSResponseReader {
+
+   private static final String UTF_8 = "UTF-8";
+
+   static final int MIN_BUFFER_SIZE = 1024;
+   // Caps how much a Content-Length header can make us allocate up front
+   static final int MAX_BUFFER_SIZE = 1024 * 1024;
+   private static final int MAX_STREAM_BUFFER_SIZE = 64 * 1024;
+
+   // The body was read but is not a JSON object, unlike other IOExceptions the request itself did not fail
+   static class InvalidJSONException extends IOException {
+      InvalidJSONException(String message, Throwable cause) {
+         super(message, cause);
+      }
+   }
+
+   static int bufferSize(int contentLength, int maxSize) {
+      if (contentLength <= 0)
+         return MIN_BUFFER_SIZE;
+      return Math.max(MIN_BUFFER_SIZE, Math.min(contentLength, maxSize));
+   }
+
+   /**
+    * Reads the whole body into one String, decoding it once
+    * @param contentLength from the response header, -1 if unknown
+    */
+   @NonNull
+   static String readString(@NonNull InputStream inputStream, int contentLength) throws IOException {
+      try {
+         ByteArrayOutputStream body = new ByteArrayOutputStream(bufferSize(contentLength, MAX_BUFFER_SIZE));
+         byte[] buffer = new byte[bufferSize(contentLength, MAX_STREAM_BUFFER_SIZE)];
+         int read;
+         while ((read = inputStream.read(buffer)) != -1)
+            body.write(buffer, 0, read);
+         return body.toString(UTF_8);
+      } finally {
+         inputStream.close();
+      }
+   }
+
+   /**
+    * Decodes the body straight into a JSONObject, the body is never held as a String
+    * @param contentLength from the response header, -1 if unknown
+    * @throws InvalidJSONException if the body is not a JSON object
+    * @throws IOException if reading the stream fails
+    */
+   @NonNull
+   static JSONObject readJSONObject(@NonNull InputStream inputStream, int contentLength) throws IOException {
+      InputStreamReader streamReader = new InputStreamReader(inputStream, UTF_8);
+      JsonReader reader = new JsonReader(new BufferedReader(streamReader, bufferSize(contentLength, MAX_STREAM_BUFFER_SIZE)));
+      try {
+         JSONObject json = readObject(reader);
+         if (reader.peek() != JsonToken.END_DOCUMENT)
+            throw new InvalidJSONException("Unexpected content after JSON object", null);
+         return json;
+      } catch (MalformedJsonException | JSONException | IllegalStateException | NumberFormatException e) {
+         // JsonReader throws IllegalStateException for a token of the wrong type
+         throw new InvalidJSONException("Response is not a valid JSON object", e);
+      } finally {
+         reader.close();
+      }
+   }
+
+   private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+      JSONObject json = new JSONObject();
+      reader.beginObject();
+      while (reader.hasNext()) {
+         String name = reader.nextName();
+         json.put(name, readValue(reader));
+      }
+      reader.endObject();
+      return json;
+   }
+
+   private static JSONArray readArray(JsonReader reader) throws IOException, JSONException {
+      JSONArray json = new JSONArray();
+      reader.beginArray();
+      while (reader.hasNext())
+         json.put(readValue(reader));
+      reader.endArray();
+      return json;
+   }
+
+   private static Object readValue(JsonReader reader) throws IOException, JSONException {
+      switch (reader.peek()) {
+         case BEGIN_OBJECT:
+            return readObject(reader);
+         case BEGIN_ARRAY:
+            return readArray(reader);
+         case STRING:
+            return reader.nextString();
+         case NUMBER:
+            return readNumber(reader.nextString());
+         case BOOLEAN:
+            return reader.nextBoolean();
+         case NULL:
+            reader.nextNull();
+            return JSONObject.NULL;
+         default:
+            throw new InvalidJSONException("Unexpected JSON token " + reader.peek(), null);
+      }
+   }
+
+   // Same number types JSONTokener would produce for the literal
+   private static Object readNumber(String literal) {
+      if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1 && literal.indexOf('E') == -1) {
+         try {
+            long longValue = Long.parseLong(literal);
+            if (longValue <= Integer.MAX_VALUE && longValue >= Integer.MIN_VALUE)
+               return (int) longValue;
+            return longValue;
+         } catch (NumberFormatException e) {
+            // Too large for a long, fall through to double like JSONTokener
+         }
+      }
+      return Double.valueOf(literal);
+   }
+}
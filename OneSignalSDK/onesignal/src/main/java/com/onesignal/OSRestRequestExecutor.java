@@ -0,0 +1,158 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.net.HttpURLConnection;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Shared transport for {@link OneSignalRestClient}.
+ * Requests and their callbacks run on a small fixed pool instead of spawning new threads per request,
+ * while a single scheduler thread enforces the fallback timeout of in-flight requests.
+ */
+class OSRestRequestExecutor {
+
+   static final String REQUEST_THREAD_PREFIX = "OS_REST_POOL_";
+   static final String TIMEOUT_THREAD_NAME = "OS_REST_TIMEOUT";
+
+   private final ThreadPoolExecutor requestExecutor;
+   private final ScheduledThreadPoolExecutor timeoutScheduler;
+
+   OSRestRequestExecutor(int poolSize, long keepAliveMs) {
+      requestExecutor = new ThreadPoolExecutor(
+              poolSize,
+              poolSize,
+              keepAliveMs,
+              TimeUnit.MILLISECONDS,
+              new LinkedBlockingQueue<Runnable>(),
+              new ThreadFactory() {
+                 @Override
+                 public Thread newThread(@NonNull Runnable runnable) {
+                    Thread newThread = new Thread(runnable);
+                    newThread.setName(REQUEST_THREAD_PREFIX + newThread.getId());
+                    return newThread;
+                 }
+              }
+      );
+      // Let idle threads die off so the SDK holds no threads between bursts of requests
+      requestExecutor.allowCoreThreadTimeOut(true);
+
+      timeoutScheduler = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+         @Override
+         public Thread newThread(@NonNull Runnable runnable) {
+            return new Thread(runnable, TIMEOUT_THREAD_NAME);
+         }
+      });
+      timeoutScheduler.setKeepAliveTime(keepAliveMs, TimeUnit.MILLISECONDS);
+      timeoutScheduler.allowCoreThreadTimeOut(true);
+      // Cancelled watchdogs would otherwise stay queued until their delay elapses
+      if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP)
+         timeoutScheduler.setRemoveOnCancelPolicy(true);
+   }
+
+   void execute(@NonNull Runnable runnable) {
+      requestExecutor.execute(runnable);
+   }
+
+   /**
+    * Arms a watchdog for the calling thread.
+    * If it is not disarmed within timeoutMs the thread is interrupted and its connection is dropped.
+    */
+   Watchdog startWatchdog(long timeoutMs) {
+      Watchdog watchdog = new Watchdog(Thread.currentThread());
+      watchdog.future = timeoutScheduler.schedule(watchdog, timeoutMs, TimeUnit.MILLISECONDS);
+      return watchdog;
+   }
+
+   static class Watchdog implements Runnable {
+      private final Thread thread;
+      private ScheduledFuture<?> future;
+      @Nullable
+      private HttpURLConnection connection;
+      private boolean armed = true;
+      private boolean fired;
+
+      private Watchdog(Thread thread) {
+         this.thread = thread;
+      }
+
+      synchronized void watch(@Nullable HttpURLConnection connection) {
+         this.connection = connection;
+      }
+
+      @Override
+      public void run() {
+         HttpURLConnection toAbort;
+         synchronized (this) {
+            if (!armed)
+               return;
+            armed = false;
+            fired = true;
+            toAbort = connection;
+            // getResponseCode() can hang past it's timeout setting so interrupt the request thread
+            thread.interrupt();
+         }
+
+         OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "OneSignalRestClient: Request on " + thread.getName() + " timed out, aborting it");
+         if (toAbort != null)
+            toAbort.disconnect();
+      }
+
+      synchronized boolean hasFired() {
+         return fired;
+      }
+
+      /**
+       * Must be called from the watched thread once the request is finished.
+       */
+      void disarm() {
+         boolean clearInterrupt;
+         synchronized (this) {
+            armed = false;
+            connection = null;
+            clearInterrupt = fired;
+         }
+         future.cancel(false);
+
+         // Don't let a late timeout leak the interrupt into the callback or the next pooled request
+         if (clearInterrupt)
+            Thread.interrupted();
+      }
+   }
+}
@@ -0,0 +1,241 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.net.HttpURLConnection;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Decides if and when failed REST requests are retried, shared by every caller so devices don't retry in lockstep.
+ *  - Backoff grows exponentially per attempt with random jitter.
+ *  - Each endpoint has a retry budget that refills over time.
+ *  - A Retry-After from a 429 or 503 holds requests to the endpoint until it passes.
+ *  - Repeated 5xx responses open the endpoint's circuit, requests then fail fast until a single probe request gets through.
+ */
+class OSRetryPolicy {
+
+   // Attempts after the first failure made by callers that retry within the same session
+   static final int MAX_RETRIES = 3;
+
+   // Status code given to the failure callback of a request that was never made since its endpoint asked to back off
+   //   or its circuit is open, -1 stays reserved for requests that failed on the network
+   static final int BACKED_OFF = -2;
+
+   private static final int[] NO_RETRY_STATUS_CODES = {401, 402, 403, 404, 410};
+   private static final int HTTP_TOO_MANY_REQUESTS = 429;
+
+   static final int RETRY_BUDGET = 10;
+   static final long RETRY_BUDGET_REFILL_MS = 60_000;
+
+   static final int CIRCUIT_FAILURE_THRESHOLD = 5;
+   static final long CIRCUIT_OPEN_BASE_MS = 30_000;
+   static final long CIRCUIT_OPEN_MAX_MS = 30 * 60 * 1_000;
+
+   private static class EndpointState {
+      double retryTokens = RETRY_BUDGET;
+      long lastRefillTime;
+      long retryNotBefore;
+      int consecutiveServerErrors;
+      int circuitOpenings;
+      long circuitOpenUntil;
+      boolean probeInFlight;
+   }
+
+   private static final Random random = new Random();
+
+   // Guarded by the class lock, a HashMap so test state resets can clone it
+   private static HashMap<String, EndpointState> endpointStates = new HashMap<>();
+
+   private static EndpointState getState(String url) {
+      String key = OneSignalRestClient.endpointKey(url);
+      EndpointState state = endpointStates.get(key);
+      if (state == null) {
+         state = new EndpointState();
+         state.lastRefillTime = now();
+         endpointStates.put(key, state);
+      }
+      return state;
+   }
+
+   private static long now() {
+      return OneSignal.getTime().getCurrentTimeMillis();
+   }
+
+   static boolean shouldRetry(int statusCode) {
+      for (int code : NO_RETRY_STATUS_CODES)
+         if (statusCode == code)
+            return false;
+
+      return true;
+   }
+
+   /**
+    * Exponential backoff with equal jitter, half the delay is fixed and the other half random
+    * @param attempt 1 for the first retry
+    */
+   static long getBackoff(long baseMs, long maxMs, int attempt) {
+      long delay = Math.min(maxMs, baseMs << Math.min(Math.max(attempt - 1, 0), 20));
+      long half = delay / 2;
+      synchronized (random) {
+         return half + (long) (random.nextDouble() * (delay - half));
+      }
+   }
+
+   /**
+    * Delay before the given retry of a request to url.
+    * Never earlier than a Retry-After from the endpoint or the end of its open circuit.
+    * @param attempt 1 for the first retry
+    */
+   static synchronized long getRetryDelay(@NonNull String url, int attempt, long baseMs, long maxMs) {
+      EndpointState state = getState(url);
+      long delay = getBackoff(baseMs, maxMs, attempt);
+      long currentTime = now();
+      delay = Math.max(delay, state.retryNotBefore - currentTime);
+      delay = Math.max(delay, state.circuitOpenUntil - currentTime);
+      return delay;
+   }
+
+   /**
+    * Takes a retry from the endpoint's budget
+    * @return false if the budget is spent and the request should not be retried now
+    */
+   static synchronized boolean tryAcquireRetry(@NonNull String url) {
+      EndpointState state = getState(url);
+      long currentTime = now();
+      double refill = (currentTime - state.lastRefillTime) / (double) RETRY_BUDGET_REFILL_MS;
+      state.retryTokens = Math.min(RETRY_BUDGET, state.retryTokens + Math.max(0, refill));
+      state.lastRefillTime = currentTime;
+
+      if (state.retryTokens < 1) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OSRetryPolicy: Retry budget spent for " + OneSignalRestClient.endpointKey(url));
+         return false;
+      }
+
+      state.retryTokens--;
+      return true;
+   }
+
+   /**
+    * For callers that retry a failed request within the session on their own, takes a retry from the endpoint's budget.
+    * Requests that were backed off aren't retried in the session, the endpoint could stay closed for a long time.
+    * @param retry 1 for the first retry
+    */
+   static boolean shouldRetryInSession(@NonNull String url, int statusCode, int retry) {
+      return statusCode != BACKED_OFF
+              && retry <= MAX_RETRIES
+              && shouldRetry(statusCode)
+              && tryAcquireRetry(url);
+   }
+
+   /**
+    * Called before every request
+    * @return false if the request should fail fast since the endpoint asked us to wait or its circuit is open
+    */
+   static synchronized boolean allowRequest(@NonNull String url) {
+      EndpointState state = getState(url);
+      long currentTime = now();
+      if (currentTime < state.retryNotBefore)
+         return false;
+
+      if (state.circuitOpenUntil == 0)
+         return true;
+      if (currentTime < state.circuitOpenUntil || state.probeInFlight)
+         return false;
+
+      // Half open, let one request through to find out if the endpoint recovered
+      state.probeInFlight = true;
+      return true;
+   }
+
+   /**
+    * Called with the result of every request
+    * @param statusCode -1 if the request failed without a response
+    * @param retryAfter value of the Retry-After header, if any
+    */
+   static synchronized void onResponse(@NonNull String url, int statusCode, @Nullable String retryAfter) {
+      EndpointState state = getState(url);
+      boolean wasProbe = state.probeInFlight;
+      state.probeInFlight = false;
+
+      if (statusCode == HTTP_TOO_MANY_REQUESTS || statusCode == HttpURLConnection.HTTP_UNAVAILABLE) {
+         long retryAfterMs = parseRetryAfter(retryAfter);
+         if (retryAfterMs > 0)
+            state.retryNotBefore = now() + retryAfterMs;
+      }
+
+      if (statusCode >= 500) {
+         state.consecutiveServerErrors++;
+         if (wasProbe || state.consecutiveServerErrors >= CIRCUIT_FAILURE_THRESHOLD) {
+            state.circuitOpenings++;
+            long openFor = getBackoff(CIRCUIT_OPEN_BASE_MS, CIRCUIT_OPEN_MAX_MS, state.circuitOpenings);
+            state.circuitOpenUntil = now() + openFor;
+            state.consecutiveServerErrors = 0;
+            OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "OSRetryPolicy: " + OneSignalRestClient.endpointKey(url) + " keeps failing with " + statusCode + ", pausing requests to it for " + (openFor / 1_000) + " seconds");
+         }
+      } else if (statusCode > 0) {
+         // Any response below 500 means the endpoint is up
+         state.consecutiveServerErrors = 0;
+         state.circuitOpenings = 0;
+         state.circuitOpenUntil = 0;
+      }
+   }
+
+   /**
+    * @return milliseconds to wait, or -1 if the header is missing or can't be parsed
+    */
+   static long parseRetryAfter(@Nullable String retryAfter) {
+      if (retryAfter == null)
+         return -1;
+
+      String value = retryAfter.trim();
+      try {
+         return Long.parseLong(value) * 1_000;
+      } catch (NumberFormatException e) {
+         // Not delta seconds, try an HTTP date
+      }
+
+      SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+      httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+      try {
+         Date date = httpDateFormat.parse(value);
+         return Math.max(0, date.getTime() - now());
+      } catch (ParseException e) {
+         return -1;
+      }
+   }
+}
@@ -0,0 +1,221 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.BaseColumns;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.onesignal.OneSignalDbContract.HttpResponseCacheTable;
+import com.onesignal.OneSignalDbContract.InAppMessageTable;
+import com.onesignal.OneSignalDbContract.NotificationTable;
+import com.onesignal.OneSignalDbContract.OutboundRequestTable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import static com.onesignal.outcomes.data.OutcomesDbContract.CACHE_UNIQUE_OUTCOME_TABLE;
+import static com.onesignal.outcomes.data.OutcomesDbContract.OUTCOME_EVENT_TABLE;
+
+/**
+ * Row caps for the SDK tables that otherwise only shrink through time based cleanup.
+ * Once a table is over its cap the least useful rows are evicted first:
+ *  - notification: opened or dismissed notifications, then the oldest, along with their cached unique outcomes
+ *  - outcome: the oldest rows
+ *  - in_app_message: the messages displayed the longest time ago
+ * cached_unique_outcome has no cap of its own, evicting its rows would let unique outcomes be sent again.
+ * Caps set by the app are saved in OneSignalPrefs, so they apply on every start and in the idle cleanup.
+ */
+class OSStorageLimits {
+
+    static final int DEFAULT_NOTIFICATION_ROW_CAP = 1_000;
+    static final int DEFAULT_OUTCOME_ROW_CAP = 1_000;
+    static final int DEFAULT_IN_APP_MESSAGE_ROW_CAP = 500;
+
+    // Rows are evicted in transactions of at most this many, so other writers don't wait long on the DB
+    static final int EVICT_CHUNK_SIZE = 200;
+
+    private static final HashMap<String, Integer> DEFAULT_ROW_CAPS = defaultRowCaps();
+
+    // SDK tables listed in storage stats, the ones without a row cap are bounded by their own limits
+    private static final String[] STATS_TABLES = {
+            NotificationTable.TABLE_NAME,
+            OUTCOME_EVENT_TABLE,
+            CACHE_UNIQUE_OUTCOME_TABLE,
+            InAppMessageTable.TABLE_NAME,
+            OutboundRequestTable.TABLE_NAME,
+            HttpResponseCacheTable.TABLE_NAME,
+    };
+
+    private static HashMap<String, Integer> defaultRowCaps() {
+        HashMap<String, Integer> caps = new HashMap<>();
+        caps.put(NotificationTable.TABLE_NAME, DEFAULT_NOTIFICATION_ROW_CAP);
+        caps.put(OUTCOME_EVENT_TABLE, DEFAULT_OUTCOME_ROW_CAP);
+        caps.put(InAppMessageTable.TABLE_NAME, DEFAULT_IN_APP_MESSAGE_ROW_CAP);
+        return caps;
+    }
+
+    /**
+     * @return false if the table doesn't have a row cap or maxRows is less than 1
+     */
+    static boolean setRowCap(@NonNull String table, int maxRows) {
+        if (!DEFAULT_ROW_CAPS.containsKey(table) || maxRows < 1)
+            return false;
+        OneSignalPrefs.saveInt(OneSignalPrefs.PREFS_ONESIGNAL, OneSignalPrefs.PREFS_OS_STORAGE_ROW_CAP_PREFIX + table, maxRows);
+        return true;
+    }
+
+    /**
+     * @return 0 if the table doesn't have a row cap
+     */
+    static int getRowCap(@NonNull String table) {
+        Integer defaultCap = DEFAULT_ROW_CAPS.get(table);
+        if (defaultCap == null)
+            return 0;
+        return OneSignalPrefs.getInt(OneSignalPrefs.PREFS_ONESIGNAL, OneSignalPrefs.PREFS_OS_STORAGE_ROW_CAP_PREFIX + table, defaultCap);
+    }
+
+    /**
+     * Evicts rows from every table over its cap
+     * @return number of rows evicted from each table that was over its cap
+     */
+    @WorkerThread
+    static HashMap<String, Integer> enforceRowCaps(@NonNull OneSignalDb db) {
+        HashMap<String, Integer> evicted = new HashMap<>();
+        evictOverCap(db, NotificationTable.TABLE_NAME, evicted);
+        evictOverCap(db, OUTCOME_EVENT_TABLE, evicted);
+        evictOverCap(db, InAppMessageTable.TABLE_NAME, evicted);
+
+        if (!evicted.isEmpty())
+            OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OSStorageLimits evicted rows over cap: " + evicted);
+        return evicted;
+    }
+
+    private static void evictOverCap(OneSignalDb db, final String table, HashMap<String, Integer> evicted) {
+        long overflow = rowCount(db, table) - getRowCap(table);
+        int evictedRows = 0;
+        while (overflow > 0) {
+            final int limit = (int) Math.min(overflow, EVICT_CHUNK_SIZE);
+            final int[] deleted = new int[2];
+            boolean committed = db.runInTransaction(new OneSignalDb.Transaction() {
+                @Override
+                public void run(@NonNull OneSignalDb.Batch batch) {
+                    evictRows(batch, table, limit, deleted);
+                }
+            });
+            if (!committed || deleted[0] == 0)
+                break;
+
+            evictedRows += deleted[0];
+            overflow -= deleted[0];
+        }
+
+        if (evictedRows > 0)
+            evicted.put(table, evictedRows);
+    }
+
+    private static void evictRows(OneSignalDb.Batch batch, String table, int limit, int[] deleted) {
+        switch (table) {
+            case NotificationTable.TABLE_NAME:
+                // Unconsumed notifications may still be in the shade, they sort after the opened or dismissed ones
+                OSNotificationCacheCleaner.deleteNotifications(
+                        batch,
+                        null,
+                        null,
+                        "(" + NotificationTable.COLUMN_NAME_OPENED + " = 0 AND " + NotificationTable.COLUMN_NAME_DISMISSED + " = 0), " +
+                                NotificationTable.COLUMN_NAME_CREATED_TIME,
+                        limit,
+                        deleted);
+                break;
+            case InAppMessageTable.TABLE_NAME:
+                deleted[0] = deleteFirstRows(batch, table, InAppMessageTable.COLUMN_NAME_LAST_DISPLAY, limit);
+                break;
+            default:
+                // outcome rows are only inserted, so _id order is insertion order
+                deleted[0] = deleteFirstRows(batch, table, BaseColumns._ID, limit);
+        }
+    }
+
+    private static int deleteFirstRows(OneSignalDb.Batch batch, String table, String orderBy, int limit) {
+        return batch.delete(
+                table,
+                BaseColumns._ID + " IN (SELECT " + BaseColumns._ID + " FROM " + table + " ORDER BY " + orderBy + " LIMIT ?)",
+                new String[] { String.valueOf(limit) });
+    }
+
+    private static long rowCount(OneSignalDb db, String table) {
+        Long count = db.queryForLong("SELECT COUNT(*) FROM " + table, null);
+        return count == null ? 0 : count;
+    }
+
+    /**
+     * Rows and approximate size of every SDK table.
+     * Scans each table, so this should not be called on the main thread.
+     */
+    @WorkerThread
+    static OSStorageStats storageStats(@NonNull Context context, @NonNull OneSignalDb db) {
+        List<OSStorageStats.TableStats> tableStats = new ArrayList<>(STATS_TABLES.length);
+        for (String table : STATS_TABLES)
+            tableStats.add(new OSStorageStats.TableStats(table, rowCount(db, table), tableBytes(db, table), getRowCap(table)));
+
+        File databaseFile = context.getDatabasePath(OneSignalDbHelper.DATABASE_NAME);
+        File walFile = new File(databaseFile.getPath() + "-wal");
+        return new OSStorageStats(tableStats, databaseFile.length() + walFile.length());
+    }
+
+    // Sum of the stored length of every column, SQLite doesn't report page usage per table on Android
+    private static long tableBytes(OneSignalDb db, String table) {
+        String[] columns;
+        Cursor cursor = db.query(table, null, null, null, null, null, null, "1");
+        try {
+            columns = cursor.getColumnNames();
+        } finally {
+            cursor.close();
+        }
+
+        if (columns.length == 0)
+            return 0;
+
+        StringBuilder sql = new StringBuilder("SELECT SUM(");
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0)
+                sql.append(" + ");
+            sql.append("IFNULL(LENGTH(").append(columns[i]).append("), 0)");
+        }
+        sql.append(") FROM ").append(table);
+
+        Long bytes = db.queryForLong(sql.toString(), null);
+        return bytes == null ? 0 : bytes;
+    }
+}
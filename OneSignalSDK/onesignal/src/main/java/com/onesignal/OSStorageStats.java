@@ -0,0 +1,154 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.onesignal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.util.Collections;
+import java.util.List;
+
+import static com.onesignal.outcomes.data.OutcomesDbContract.CACHE_UNIQUE_OUTCOME_TABLE;
+import static com.onesignal.outcomes.data.OutcomesDbContract.OUTCOME_EVENT_TABLE;
+
+/**
+ * Snapshot of the rows and storage used by each of the SDK's database tables.
+ */
+public class OSStorageStats {
+
+    public static final String TABLE_NOTIFICATION = OneSignalDbContract.NotificationTable.TABLE_NAME;
+    public static final String TABLE_OUTCOME = OUTCOME_EVENT_TABLE;
+    public static final String TABLE_CACHED_UNIQUE_OUTCOME = CACHE_UNIQUE_OUTCOME_TABLE;
+    public static final String TABLE_IN_APP_MESSAGE = OneSignalDbContract.InAppMessageTable.TABLE_NAME;
+
+    private final List<TableStats> tables;
+    private final long databaseBytes;
+
+    OSStorageStats(List<TableStats> tables, long databaseBytes) {
+        this.tables = Collections.unmodifiableList(tables);
+        this.databaseBytes = databaseBytes;
+    }
+
+    @NonNull
+    public List<TableStats> getTables() {
+        return tables;
+    }
+
+    /**
+     * Get the stats of a single table
+     *
+     * @param table such as {@link #TABLE_NOTIFICATION}
+     * @return null if the table isn't an SDK table
+     */
+    @Nullable
+    public TableStats getTable(@NonNull String table) {
+        for (TableStats stats : tables) {
+            if (stats.table.equals(table))
+                return stats;
+        }
+        return null;
+    }
+
+    /**
+     * Get the size of the SDK's database files, including the write-ahead log
+     */
+    public long getDatabaseBytes() {
+        return databaseBytes;
+    }
+
+    public JSONObject toJSONObject() {
+        JSONObject mainObj = new JSONObject();
+
+        try {
+            JSONArray tablesArray = new JSONArray();
+            for (TableStats stats : tables)
+                tablesArray.put(stats.toJSONObject());
+            mainObj.put("tables", tablesArray);
+            mainObj.put("databaseBytes", databaseBytes);
+        } catch (Throwable t) {
+            t.printStackTrace();
+        }
+
+        return mainObj;
+    }
+
+    public static class TableStats {
+
+        private final String table;
+        private final long rowCount;
+        private final long bytes;
+        private final int rowCap;
+
+        TableStats(String table, long rowCount, long bytes, int rowCap) {
+            this.table = table;
+            this.rowCount = rowCount;
+            this.bytes = bytes;
+            this.rowCap = rowCap;
+        }
+
+        public String getTable() {
+            return table;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Get the approximate size of the table's data, the sum of the stored length of every value
+         */
+        public long getBytes() {
+            return bytes;
+        }
+
+        /**
+         * Get the most rows kept before the least useful ones are evicted, 0 if the table has no row cap
+         */
+        public int getRowCap() {
+            return rowCap;
+        }
+
+        public JSONObject toJSONObject() {
+            JSONObject mainObj = new JSONObject();
+
+            try {
+                mainObj.put("table", table);
+                mainObj.put("rowCount", rowCount);
+                mainObj.put("bytes", bytes);
+                mainObj.put("rowCap", rowCap);
+            } catch (Throwable t) {
+                t.printStackTrace();
+            }
+
+            return mainObj;
+        }
+    }
+}
@@ -0,0 +1,280 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs the user state syncs of every channel (push, email and SMS) from one thread.
+ * A change schedules its channel's sync after the debounce window of its priority, so changes made close together
+ *   go out in one request. Each new change restarts the window of the most urgent change waiting, but never pushes
+ *   the sync back more than {@link #MAX_DEBOUNCE_WINDOWS} of those windows past the first change waiting for it.
+ * Each channel has at most one sync queued and syncs due at the same time run in the order they were scheduled,
+ *   so a channel that keeps changing or retrying can't hold back the others.
+ * When a sync runs, the other channels with changes waiting (and not backing off) are synced along with it,
+ *   see {@link OSMultiChannelSync}. A change fanned out to every channel, like tags or the external user id,
+ *   then goes out in one burst.
+ * The window of each priority can be changed, and a priority can be made unmergeable so its changes are sent
+ *   right away instead of waiting for later ones. Changes that join a sync already waiting are counted as merged
+ *   writes in {@link OSTransportMetrics}.
+ */
+class OSSyncScheduler {
+
+    enum Priority {
+        // External user id and subscription changes
+        HIGH(1_000),
+        DEFAULT(5_000),
+        // Tag only changes, apps often make several in a row
+        TAGS(10_000),
+        LOCATION(30_000);
+
+        final long debounceMs;
+
+        Priority(long debounceMs) {
+            this.debounceMs = debounceMs;
+        }
+    }
+
+    static final int MAX_DEBOUNCE_WINDOWS = 3;
+    private static final long RETRY_BASE_DELAY_MS = 15_000, RETRY_MAX_DELAY_MS = 60_000;
+    // OneSignalRestClient.endpointKey of the players/<id> urls the syncs are sent to
+    private static final String PLAYER_ENDPOINT = "players/{id}";
+    private static final String THREAD_NAME = "OSH_NetworkHandlerThread";
+
+    // Each channel already reports to its own callers, the burst as a whole is only logged
+    private static final OSMultiChannelSync.CompletionHandler BURST_COMPLETION_LOGGER = new OSMultiChannelSync.CompletionHandler() {
+        @Override
+        public void onComplete(JSONObject results) {
+            OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OSSyncScheduler: Multi-channel sync done: " + results);
+        }
+    };
+
+    private static OSSyncScheduler instance;
+
+    static synchronized OSSyncScheduler getInstance() {
+        if (instance == null)
+            instance = new OSSyncScheduler();
+        return instance;
+    }
+
+    private static class Job {
+        // Most urgent priority of the changes waiting for the sync, null if none are
+        @Nullable
+        Priority priority;
+        long firstChangeTime;
+        int currentRetry;
+        long runAt;
+        Runnable runnable;
+    }
+
+    private final HandlerThread handlerThread;
+    final Handler handler;
+    private final HashMap<UserStateSynchronizer, Job> jobs = new HashMap<>();
+    private boolean multiChannelSyncEnabled = true;
+    // Guarded by handler, like the jobs
+    private final EnumMap<Priority, Long> debounceWindows = new EnumMap<>(Priority.class);
+    private final EnumSet<Priority> unmergeable = EnumSet.noneOf(Priority.class);
+
+    private OSSyncScheduler() {
+        handlerThread = new HandlerThread(THREAD_NAME);
+        handlerThread.start();
+        handler = new Handler(handlerThread.getLooper());
+    }
+
+    Looper getLooper() {
+        return handlerThread.getLooper();
+    }
+
+    void schedule(UserStateSynchronizer synchronizer, Priority priority) {
+        synchronized (handler) {
+            Job job = getJob(synchronizer);
+            long now = SystemClock.uptimeMillis();
+            if (job.priority == null) {
+                job.priority = priority;
+                job.firstChangeTime = now;
+            } else {
+                OSTransportMetrics.recordMergedWrite(PLAYER_ENDPOINT);
+                if (getDebounceWindow(priority) < getDebounceWindow(job.priority))
+                    job.priority = priority;
+            }
+            job.currentRetry = 0;
+
+            handler.removeCallbacksAndMessages(job);
+            if (unmergeable.contains(priority))
+                job.runAt = now;
+            else
+                job.runAt = getRunTime(now, job.firstChangeTime, getDebounceWindow(job.priority));
+            handler.postAtTime(job.runnable, job, job.runAt);
+        }
+    }
+
+    static long getRunTime(long now, long firstChangeTime, long debounceMs) {
+        return Math.min(now + debounceMs, firstChangeTime + MAX_DEBOUNCE_WINDOWS * debounceMs);
+    }
+
+    /**
+     * Sets how long changes of the priority wait for more changes, applied from the next change on
+     */
+    void setDebounceWindow(Priority priority, long debounceMs) {
+        synchronized (handler) {
+            debounceWindows.put(priority, debounceMs);
+        }
+    }
+
+    private long getDebounceWindow(Priority priority) {
+        Long debounceMs = debounceWindows.get(priority);
+        return debounceMs == null ? priority.debounceMs : debounceMs;
+    }
+
+    /**
+     * @param mergeable false to send changes of the priority right away, along with the changes already waiting,
+     *                  instead of waiting for later changes to send them together
+     */
+    void setMergeable(Priority priority, boolean mergeable) {
+        synchronized (handler) {
+            if (mergeable)
+                unmergeable.remove(priority);
+            else
+                unmergeable.add(priority);
+        }
+    }
+
+    /**
+     * Retries if not passed limit and the retry budget for player requests isn't spent.
+     * @return true if retrying or there is another sync of the channel queued already
+     */
+    boolean retry(UserStateSynchronizer synchronizer) {
+        synchronized (handler) {
+            Job job = getJob(synchronizer);
+            boolean futureSync = handler.hasMessages(0, job);
+            boolean doRetry = !futureSync
+                    && job.currentRetry < OSRetryPolicy.MAX_RETRIES
+                    && OSRetryPolicy.tryAcquireRetry(PLAYER_ENDPOINT);
+
+            if (doRetry) {
+                job.currentRetry++;
+                long delay = OSRetryPolicy.getRetryDelay(PLAYER_ENDPOINT, job.currentRetry, RETRY_BASE_DELAY_MS, RETRY_MAX_DELAY_MS);
+                job.runAt = SystemClock.uptimeMillis() + delay;
+                handler.postAtTime(job.runnable, job, job.runAt);
+            }
+
+            return handler.hasMessages(0, job);
+        }
+    }
+
+    /**
+     * @param enabled false to sync every channel on its own when its sync is due
+     */
+    void setMultiChannelSyncEnabled(boolean enabled) {
+        synchronized (handler) {
+            multiChannelSyncEnabled = enabled;
+        }
+    }
+
+    /**
+     * @return ms until the queued sync of the channel runs, -1 if none is queued
+     */
+    long getScheduledDelay(UserStateSynchronizer synchronizer) {
+        synchronized (handler) {
+            Job job = jobs.get(synchronizer);
+            if (job == null || !handler.hasMessages(0, job))
+                return -1;
+            return job.runAt - SystemClock.uptimeMillis();
+        }
+    }
+
+    @Nullable
+    Priority getPendingPriority(UserStateSynchronizer synchronizer) {
+        synchronized (handler) {
+            Job job = jobs.get(synchronizer);
+            return job == null ? null : job.priority;
+        }
+    }
+
+    /**
+     * Takes the other channels with changes waiting out of the queue so they sync along with synchronizer
+     */
+    private List<UserStateSynchronizer> takeJobsToRunWith(UserStateSynchronizer synchronizer) {
+        List<UserStateSynchronizer> synchronizers = new ArrayList<>();
+        synchronizers.add(synchronizer);
+        if (!multiChannelSyncEnabled)
+            return synchronizers;
+
+        for (Map.Entry<UserStateSynchronizer, Job> entry : jobs.entrySet()) {
+            Job job = entry.getValue();
+            // A channel backing off after a failure keeps its retry delay
+            if (entry.getKey() == synchronizer || job.priority == null || job.currentRetry > 0)
+                continue;
+
+            job.priority = null;
+            handler.removeCallbacksAndMessages(job);
+            synchronizers.add(entry.getKey());
+        }
+        return synchronizers;
+    }
+
+    private Job getJob(final UserStateSynchronizer synchronizer) {
+        Job job = jobs.get(synchronizer);
+        if (job != null)
+            return job;
+
+        final Job newJob = new Job();
+        newJob.runnable = new Runnable() {
+            @Override
+            public void run() {
+                List<UserStateSynchronizer> synchronizers;
+                synchronized (handler) {
+                    newJob.priority = null;
+                    synchronizers = takeJobsToRunWith(synchronizer);
+                }
+
+                if (synchronizers.size() == 1)
+                    synchronizer.runScheduledSync();
+                else
+                    OSMultiChannelSync.sync(synchronizers, BURST_COMPLETION_LOGGER);
+            }
+        };
+        jobs.put(synchronizer, newJob);
+        return newJob;
+    }
+}
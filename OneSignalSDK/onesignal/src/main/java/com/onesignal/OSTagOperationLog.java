@@ -0,0 +1,322 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.os.Handler;
+import android.os.HandlerThread;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.onesignal.OneSignalDbContract.TagOperationTable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Append-only log of the tag changes each channel hasn't synced to its player yet.
+ * Each change is queued for writing here as it is applied to the pending user state, so the ones made before the process
+ *   dies are replayed onto it on the next start instead of only surviving if the state was persisted in time.
+ * Operations fold into one set or delete per key, with increments resolved against the last synced tags.
+ * The log is compacted that way on each start and once it grows past {@link #COMPACT_THRESHOLD} operations,
+ *   and operations are removed once a player update that included them succeeds.
+ * Only used from its own thread, see {@link #post(Runnable)}, so changes are logged in order and the DB I/O stays off
+ *   the thread calling sendTags and out of the synchronizer lock.
+ */
+class OSTagOperationLog {
+
+    static final int SET = 0;
+    static final int DELETE = 1;
+    static final int INCREMENT = 2;
+
+    static final int COMPACT_THRESHOLD = 100;
+
+    private static final String[] COLUMNS = {
+            TagOperationTable.COLUMN_NAME_TYPE,
+            TagOperationTable.COLUMN_NAME_KEY,
+            TagOperationTable.COLUMN_NAME_VALUE
+    };
+    private static final String CHANNEL_WHERE = TagOperationTable.COLUMN_NAME_CHANNEL + " = ?";
+    private static final String COUNT_SQL = "SELECT COUNT(*) FROM " + TagOperationTable.TABLE_NAME + " WHERE " + CHANNEL_WHERE;
+    private static final String LAST_ID_SQL = "SELECT MAX(" + TagOperationTable._ID + ") FROM " + TagOperationTable.TABLE_NAME + " WHERE " + CHANNEL_WHERE;
+
+    static class Operation {
+        final int type;
+        @NonNull
+        final String key;
+        // Tag value for SET, amount for INCREMENT
+        @Nullable
+        final String value;
+
+        Operation(int type, @NonNull String key, @Nullable String value) {
+            this.type = type;
+            this.key = key;
+            this.value = value;
+        }
+
+        static Operation increment(@NonNull String key, long amount) {
+            return new Operation(INCREMENT, key, String.valueOf(amount));
+        }
+
+        @Override
+        public String toString() {
+            return "Operation{" +
+                    "type=" + type +
+                    ", key='" + key + '\'' +
+                    ", value='" + value + '\'' +
+                    '}';
+        }
+    }
+
+    private static final String THREAD_NAME = "OSH_TagOperationLogThread";
+
+    @Nullable
+    private static Handler handler;
+
+    /**
+     * Runs the task on the log's thread after the ones posted before it.
+     * The thread only does log DB I/O, never network requests, so a change is written right away instead of
+     *   waiting behind a player sync in flight on the {@link OSSyncScheduler} thread
+     */
+    static void post(Runnable task) {
+        getHandler().post(task);
+    }
+
+    static synchronized Handler getHandler() {
+        if (handler == null) {
+            HandlerThread handlerThread = new HandlerThread(THREAD_NAME);
+            handlerThread.start();
+            handler = new Handler(handlerThread.getLooper());
+        }
+        return handler;
+    }
+
+    private final OneSignalDb dbHelper;
+    private final OSLogger logger;
+
+    OSTagOperationLog(OneSignalDb dbHelper, OSLogger logger) {
+        this.dbHelper = dbHelper;
+        this.logger = logger;
+    }
+
+    /**
+     * Operations for tags sent through sendTags, "" deletes the key the same as it does on the server
+     */
+    static List<Operation> fromTags(@Nullable JSONObject tags) {
+        List<Operation> operations = new ArrayList<>();
+        if (tags == null)
+            return operations;
+
+        Iterator<String> keys = tags.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            String value = tags.optString(key);
+            if ("".equals(value))
+                operations.add(new Operation(DELETE, key, null));
+            else
+                operations.add(new Operation(SET, key, value));
+        }
+        return operations;
+    }
+
+    /**
+     * Writes the operations in a single transaction
+     * @return true if the channel's log grew past {@link #COMPACT_THRESHOLD} and should be compacted
+     */
+    boolean append(@NonNull final String channel, @NonNull final List<Operation> operations) {
+        if (operations.isEmpty())
+            return false;
+
+        boolean written = dbHelper.runInTransaction(new OneSignalDb.Transaction() {
+            @Override
+            public void run(@NonNull OneSignalDb.Batch batch) {
+                for (Operation operation : operations)
+                    insert(batch, channel, operation);
+            }
+        });
+        if (!written) {
+            logger.error("Failed to log tag operations " + operations + " for " + channel);
+            return false;
+        }
+
+        return count(channel) > COMPACT_THRESHOLD;
+    }
+
+    /**
+     * Folds the channel's operations into one set or delete per key and rewrites its log with them
+     * @param syncedTags tags of the last synced user state, increments are resolved against them
+     * @return the folded changes as a tags patch, null if there are none
+     */
+    @Nullable
+    JSONObject compact(@NonNull final String channel, @Nullable final JSONObject syncedTags) {
+        final JSONObject[] patch = new JSONObject[1];
+        boolean compacted = dbHelper.runInTransaction(new OneSignalDb.Transaction() {
+            @Override
+            public void run(@NonNull OneSignalDb.Batch batch) {
+                List<Operation> operations = new ArrayList<>();
+                Cursor cursor = batch.query(
+                        TagOperationTable.TABLE_NAME,
+                        COLUMNS,
+                        CHANNEL_WHERE,
+                        new String[]{channel},
+                        null,
+                        null,
+                        TagOperationTable._ID + " ASC"
+                );
+                try {
+                    while (cursor.moveToNext())
+                        operations.add(new Operation(cursor.getInt(0), cursor.getString(1), cursor.getString(2)));
+                } finally {
+                    cursor.close();
+                }
+
+                if (operations.isEmpty())
+                    return;
+
+                Map<String, String> folded = fold(syncedTags, operations);
+                batch.delete(TagOperationTable.TABLE_NAME, CHANNEL_WHERE, new String[]{channel});
+                for (Map.Entry<String, String> entry : folded.entrySet()) {
+                    if (entry.getValue() == null)
+                        insert(batch, channel, new Operation(DELETE, entry.getKey(), null));
+                    else
+                        insert(batch, channel, new Operation(SET, entry.getKey(), entry.getValue()));
+                }
+
+                logger.debug("Compacted " + operations.size() + " tag operations for " + channel + " into " + folded.size());
+                patch[0] = toPatch(folded);
+            }
+        });
+
+        if (!compacted) {
+            logger.error("Failed to compact tag operations for " + channel);
+            return null;
+        }
+        return patch[0];
+    }
+
+    /**
+     * @return id of the channel's newest operation, operations up to it are removed with
+     *   {@link #removeSynced(String, long)} once a player update made after this call succeeds
+     */
+    long lastOperationId(@NonNull String channel) {
+        Long lastId = dbHelper.queryForLong(LAST_ID_SQL, new String[]{channel});
+        return lastId == null ? 0 : lastId;
+    }
+
+    void removeSynced(@NonNull String channel, long lastOperationId) {
+        if (lastOperationId <= 0)
+            return;
+
+        dbHelper.delete(
+                TagOperationTable.TABLE_NAME,
+                CHANNEL_WHERE + " AND " + TagOperationTable._ID + " <= ?",
+                new String[]{channel, String.valueOf(lastOperationId)}
+        );
+    }
+
+    int count(@NonNull String channel) {
+        Long count = dbHelper.queryForLong(COUNT_SQL, new String[]{channel});
+        return count == null ? 0 : count.intValue();
+    }
+
+    private static void insert(OneSignalDb.Batch batch, String channel, Operation operation) {
+        ContentValues values = new ContentValues();
+        values.put(TagOperationTable.COLUMN_NAME_CHANNEL, channel);
+        values.put(TagOperationTable.COLUMN_NAME_TYPE, operation.type);
+        values.put(TagOperationTable.COLUMN_NAME_KEY, operation.key);
+        values.put(TagOperationTable.COLUMN_NAME_VALUE, operation.value);
+        batch.insert(TagOperationTable.TABLE_NAME, null, values);
+    }
+
+    /**
+     * Applies the operations in order over syncedTags
+     * @return each key's resulting value, in the order keys were first changed, null if the key was deleted
+     */
+    static Map<String, String> fold(@Nullable JSONObject syncedTags, @NonNull List<Operation> operations) {
+        LinkedHashMap<String, String> folded = new LinkedHashMap<>();
+        for (Operation operation : operations) {
+            switch (operation.type) {
+                case SET:
+                    folded.put(operation.key, operation.value);
+                    break;
+                case DELETE:
+                    folded.put(operation.key, null);
+                    break;
+                case INCREMENT:
+                    String base;
+                    if (folded.containsKey(operation.key))
+                        base = folded.get(operation.key);
+                    else
+                        base = syncedTags != null && syncedTags.has(operation.key) ? syncedTags.optString(operation.key) : null;
+                    folded.put(operation.key, increment(base, parseLong(operation.value)));
+                    break;
+            }
+        }
+        return folded;
+    }
+
+    /**
+     * Tag values are strings, a missing or non integer value counts as 0
+     */
+    static String increment(@Nullable String value, long amount) {
+        return String.valueOf(parseLong(value) + amount);
+    }
+
+    private static long parseLong(@Nullable String value) {
+        if (value == null || "".equals(value))
+            return 0;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * The tags JSON sent in player updates, "" deletes a key
+     */
+    static JSONObject toPatch(@NonNull Map<String, String> folded) {
+        JSONObject patch = new JSONObject();
+        try {
+            for (Map.Entry<String, String> entry : folded.entrySet())
+                patch.put(entry.getKey(), entry.getValue() == null ? "" : entry.getValue());
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+        return patch;
+    }
+}
@@ -19,6 +19,7 @@ class OSTaskRemoteController extends OSTaskController {
     static final String IDS_AVAILABLE = "idsAvailable()";
     static final String SEND_TAG = "sendTag()";
     static final String SEND_TAGS = "sendTags()";
+    static final String INCREMENT_TAG = "incrementTag()";
     static final String SET_LOCATION_SHARED = "setLocationShared()";
     static final String SET_DISABLE_GMS_MISSING_PROMPT = "setDisableGMSMissingPrompt()";
     static final String SET_REQUIRES_USER_PRIVACY_CONSENT = "setRequiresUserPrivacyConsent()";
@@ -47,6 +48,7 @@ class OSTaskRemoteController extends OSTaskController {
             IDS_AVAILABLE,
             SEND_TAG,
             SEND_TAGS,
+            INCREMENT_TAG,
             SET_LOCATION_SHARED,
             SET_DISABLE_GMS_MISSING_PROMPT,
             SET_REQUIRES_USER_PRIVACY_CONSENT,
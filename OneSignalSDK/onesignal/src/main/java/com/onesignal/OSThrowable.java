@@ -34,4 +34,10 @@ class OSThrowable {
             super(message);
         }
     }
+
+    static class OSRequestBackedOffException extends java.io.IOException {
+        public OSRequestBackedOffException(String url) {
+            super("Request to " + url + " not made, the endpoint asked to back off or is failing");
+        }
+    }
 }
\ No newline at end of file
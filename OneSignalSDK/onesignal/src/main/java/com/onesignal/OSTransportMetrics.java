@@ -0,0 +1,222 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per endpoint counters for every REST request the SDK makes.
+ * Recording only bumps preallocated counters so it stays on in production, objects are only created for snapshots.
+ */
+class OSTransportMetrics {
+
+   // Upper bounds of the latency histogram buckets, slower requests land in one more overflow bucket
+   static final int[] LATENCY_BUCKET_BOUNDS_MS = {
+      10, 25, 50, 100, 250, 500, 750, 1_000, 1_500, 2_000, 3_000, 5_000, 10_000, 20_000, 30_000, 60_000
+   };
+   private static final int MAX_STATUS_CODE = 600;
+
+   // Listeners get a snapshot after a request at most this often
+   static final long LISTENER_INTERVAL_MS = 60_000;
+
+   static class EndpointMetrics {
+      long requestCount;
+      long bytesSent;
+      long bytesReceived;
+      long cacheHits;
+      long timeouts;
+      long networkErrors;
+      long mergedWrites;
+      long requestBytesSaved;
+      long responseBytesSaved;
+      long totalLatency;
+      long maxLatency;
+      final long[] latencyBuckets = new long[LATENCY_BUCKET_BOUNDS_MS.length + 1];
+      final int[] statusCounts = new int[MAX_STATUS_CODE];
+   }
+
+   // Guarded by the class lock, a HashMap so test state resets can clone it
+   private static HashMap<String, EndpointMetrics> endpoints = new HashMap<>();
+
+   @Nullable
+   private static volatile OneSignal.OSNetworkMetricsListener listener;
+   private static long lastListenerCallTime;
+
+   static void setListener(@Nullable OneSignal.OSNetworkMetricsListener metricsListener) {
+      listener = metricsListener;
+   }
+
+   /**
+    * @param statusCode -1 if the request failed without a response
+    * @param latency time from opening the connection until the response was read
+    * @param bytesSent request body bytes on the wire
+    * @param bytesReceived response body bytes on the wire
+    * @param timedOut true if the request failed because it timed out
+    */
+   static void record(@NonNull String url, int statusCode, long latency, long bytesSent, long bytesReceived, boolean timedOut) {
+      String key = OneSignalRestClient.endpointKey(url);
+      synchronized (OSTransportMetrics.class) {
+         EndpointMetrics metrics = getEndpointMetrics(key);
+         metrics.requestCount++;
+         metrics.bytesSent += bytesSent;
+         metrics.bytesReceived += bytesReceived;
+         metrics.totalLatency += latency;
+         metrics.maxLatency = Math.max(metrics.maxLatency, latency);
+         metrics.latencyBuckets[latencyBucket(latency)]++;
+
+         if (statusCode > 0 && statusCode < MAX_STATUS_CODE)
+            metrics.statusCounts[statusCode]++;
+         if (statusCode == HttpURLConnection.HTTP_NOT_MODIFIED)
+            metrics.cacheHits++;
+         if (timedOut)
+            metrics.timeouts++;
+         else if (statusCode <= 0)
+            metrics.networkErrors++;
+      }
+   }
+
+   /**
+    * Counts a change merged into a request to the endpoint that was already waiting to be sent
+    * @param endpoint key of the endpoint, as returned by OneSignalRestClient.endpointKey
+    */
+   static synchronized void recordMergedWrite(@NonNull String endpoint) {
+      getEndpointMetrics(endpoint).mergedWrites++;
+   }
+
+   /**
+    * Counts the bytes gzip kept off the wire for a request to the url
+    */
+   static void recordBytesSaved(@NonNull String url, long requestBytesSaved, long responseBytesSaved) {
+      String key = OneSignalRestClient.endpointKey(url);
+      synchronized (OSTransportMetrics.class) {
+         EndpointMetrics metrics = getEndpointMetrics(key);
+         metrics.requestBytesSaved += requestBytesSaved;
+         metrics.responseBytesSaved += responseBytesSaved;
+      }
+   }
+
+   // Must be called holding the class lock
+   private static EndpointMetrics getEndpointMetrics(String key) {
+      EndpointMetrics metrics = endpoints.get(key);
+      if (metrics == null) {
+         metrics = new EndpointMetrics();
+         endpoints.put(key, metrics);
+      }
+      return metrics;
+   }
+
+   /**
+    * Gives the listener a snapshot if it hasn't had one within LISTENER_INTERVAL_MS.
+    * Called once a request is done, outside of its timeout.
+    */
+   static void notifyListener() {
+      OneSignal.OSNetworkMetricsListener metricsListener = listener;
+      if (metricsListener == null)
+         return;
+
+      long now = OneSignal.getTime().getElapsedRealtime();
+      synchronized (OSTransportMetrics.class) {
+         if (lastListenerCallTime != 0 && now - lastListenerCallTime < LISTENER_INTERVAL_MS)
+            return;
+         lastListenerCallTime = now;
+      }
+
+      try {
+         metricsListener.onNetworkMetrics(snapshot());
+      } catch (Throwable t) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "OSTransportMetrics: Exception thrown by the network metrics listener", t);
+      }
+   }
+
+   private static int latencyBucket(long latency) {
+      for (int i = 0; i < LATENCY_BUCKET_BOUNDS_MS.length; i++) {
+         if (latency <= LATENCY_BUCKET_BOUNDS_MS[i])
+            return i;
+      }
+      return LATENCY_BUCKET_BOUNDS_MS.length;
+   }
+
+   static synchronized OSNetworkMetrics snapshot() {
+      List<OSNetworkMetrics.EndpointMetrics> endpointSnapshots = new ArrayList<>(endpoints.size());
+      for (Map.Entry<String, EndpointMetrics> entry : endpoints.entrySet()) {
+         EndpointMetrics metrics = entry.getValue();
+
+         HashMap<Integer, Integer> statusCodes = new HashMap<>();
+         for (int code = 0; code < MAX_STATUS_CODE; code++) {
+            if (metrics.statusCounts[code] > 0)
+               statusCodes.put(code, metrics.statusCounts[code]);
+         }
+
+         endpointSnapshots.add(new OSNetworkMetrics.EndpointMetrics(
+                 entry.getKey(),
+                 metrics.requestCount,
+                 metrics.bytesSent,
+                 metrics.bytesReceived,
+                 metrics.cacheHits,
+                 metrics.timeouts,
+                 metrics.networkErrors,
+                 metrics.mergedWrites,
+                 metrics.requestBytesSaved,
+                 metrics.responseBytesSaved,
+                 metrics.requestCount == 0 ? 0 : metrics.totalLatency / metrics.requestCount,
+                 latencyPercentile(metrics, 0.50),
+                 latencyPercentile(metrics, 0.90),
+                 latencyPercentile(metrics, 0.99),
+                 statusCodes
+         ));
+      }
+      return new OSNetworkMetrics(
+              endpointSnapshots,
+              OneSignalRestClient.getHandshakeCount(),
+              OneSignalRestClient.getReusedConnectionCount()
+      );
+   }
+
+   // Upper bound of the bucket the percentile falls in, never more than the slowest request seen
+   private static long latencyPercentile(EndpointMetrics metrics, double percentile) {
+      if (metrics.requestCount == 0)
+         return 0;
+
+      long rank = (long) Math.ceil(percentile * metrics.requestCount);
+      long seen = 0;
+      for (int i = 0; i < LATENCY_BUCKET_BOUNDS_MS.length; i++) {
+         seen += metrics.latencyBuckets[i];
+         if (seen >= rank)
+            return Math.min(LATENCY_BUCKET_BOUNDS_MS[i], metrics.maxLatency);
+      }
+      return metrics.maxLatency;
+   }
+}
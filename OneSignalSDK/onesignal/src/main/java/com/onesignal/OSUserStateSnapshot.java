@@ -0,0 +1,303 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+
+package com.onesignal;
+
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * Binary encoding of a persisted UserState, read back much faster than its JSON and without its quoting.
+ *
+ * Layout, all counts and lengths are unsigned varints:
+ *   version byte, payload length, then the payload of the depend values object followed by the sync values object.
+ *   An object is its entry count then per entry its key as a string and a typed value.
+ *   A value is a type byte then its data, strings are length prefixed UTF-8 and arrays are their count then typed values.
+ * Unknown versions and truncated or malformed snapshots decode to null so callers fall back to the JSON values.
+ */
+class OSUserStateSnapshot {
+
+    static final int VERSION = 1;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_TRUE = 1;
+    private static final byte TYPE_FALSE = 2;
+    private static final byte TYPE_INT = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_STRING = 6;
+    private static final byte TYPE_OBJECT = 7;
+    private static final byte TYPE_ARRAY = 8;
+
+    static class Values {
+        final JSONObject dependValues;
+        final JSONObject syncValues;
+
+        Values(JSONObject dependValues, JSONObject syncValues) {
+            this.dependValues = dependValues;
+            this.syncValues = syncValues;
+        }
+    }
+
+    /**
+     * @return the snapshot as a String that can be stored in prefs
+     */
+    @NonNull
+    static String encode(@NonNull JSONObject dependValues, @NonNull JSONObject syncValues) {
+        return Base64.encodeToString(toBytes(dependValues, syncValues), Base64.NO_WRAP);
+    }
+
+    @Nullable
+    static Values decode(@NonNull String snapshot) {
+        byte[] bytes;
+        try {
+            bytes = Base64.decode(snapshot, Base64.NO_WRAP);
+        } catch (IllegalArgumentException e) {
+            OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "OSUserStateSnapshot: Snapshot is not valid Base64", e);
+            return null;
+        }
+        return fromBytes(bytes);
+    }
+
+    @NonNull
+    static byte[] toBytes(@NonNull JSONObject dependValues, @NonNull JSONObject syncValues) {
+        Writer payload = new Writer();
+        payload.writeObject(dependValues);
+        payload.writeObject(syncValues);
+
+        Writer snapshot = new Writer();
+        snapshot.write(VERSION);
+        snapshot.writeVarint(payload.size());
+        snapshot.write(payload.buffer(), 0, payload.size());
+        return snapshot.toByteArray();
+    }
+
+    @Nullable
+    static Values fromBytes(@NonNull byte[] bytes) {
+        try {
+            Reader reader = new Reader(bytes);
+            int version = reader.readByte();
+            if (version != VERSION) {
+                OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OSUserStateSnapshot: Unknown snapshot version " + version);
+                return null;
+            }
+
+            long payloadLength = reader.readVarint();
+            if (payloadLength != reader.remaining()) {
+                OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "OSUserStateSnapshot: Snapshot is " + reader.remaining() + " bytes but should be " + payloadLength);
+                return null;
+            }
+
+            JSONObject dependValues = reader.readObject();
+            JSONObject syncValues = reader.readObject();
+            if (reader.remaining() != 0)
+                return null;
+            return new Values(dependValues, syncValues);
+        } catch (JSONException | IndexOutOfBoundsException | IllegalStateException e) {
+            OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "OSUserStateSnapshot: Could not read snapshot", e);
+            return null;
+        }
+    }
+
+    private static class Writer extends ByteArrayOutputStream {
+
+        Writer() {
+            super(256);
+        }
+
+        byte[] buffer() {
+            return buf;
+        }
+
+        void writeVarint(long value) {
+            while ((value & ~0x7FL) != 0) {
+                write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            write((int) value);
+        }
+
+        // Zig-zag so small negative numbers stay small
+        void writeSignedVarint(long value) {
+            writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        void writeString(String value) {
+            byte[] bytes = value.getBytes(UTF_8);
+            writeVarint(bytes.length);
+            write(bytes, 0, bytes.length);
+        }
+
+        void writeObject(JSONObject object) {
+            writeVarint(object.length());
+            Iterator<String> keys = object.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                writeString(key);
+                writeValue(object.opt(key));
+            }
+        }
+
+        void writeValue(Object value) {
+            if (value == null || value == JSONObject.NULL) {
+                write(TYPE_NULL);
+            } else if (value instanceof Boolean) {
+                write((Boolean) value ? TYPE_TRUE : TYPE_FALSE);
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                write(TYPE_INT);
+                writeSignedVarint(((Number) value).intValue());
+            } else if (value instanceof Long) {
+                write(TYPE_LONG);
+                writeSignedVarint((Long) value);
+            } else if (value instanceof Number) {
+                write(TYPE_DOUBLE);
+                long bits = Double.doubleToLongBits(((Number) value).doubleValue());
+                for (int shift = 56; shift >= 0; shift -= 8)
+                    write((int) (bits >>> shift));
+            } else if (value instanceof JSONObject) {
+                write(TYPE_OBJECT);
+                writeObject((JSONObject) value);
+            } else if (value instanceof JSONArray) {
+                JSONArray array = (JSONArray) value;
+                write(TYPE_ARRAY);
+                writeVarint(array.length());
+                for (int i = 0; i < array.length(); i++)
+                    writeValue(array.opt(i));
+            } else {
+                // Anything else is stored the way JSONObject.toString() would write it
+                write(TYPE_STRING);
+                writeString(value.toString());
+            }
+        }
+    }
+
+    private static class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        int remaining() {
+            return bytes.length - position;
+        }
+
+        int readByte() {
+            if (position >= bytes.length)
+                throw new IndexOutOfBoundsException("Snapshot ended early");
+            return bytes[position++] & 0xFF;
+        }
+
+        long readVarint() {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IllegalStateException("Varint is too long");
+        }
+
+        long readSignedVarint() {
+            long value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        int readLength() {
+            long length = readVarint();
+            if (length > remaining())
+                throw new IndexOutOfBoundsException("Length " + length + " is past the end of the snapshot");
+            return (int) length;
+        }
+
+        String readString() {
+            int length = readLength();
+            String value = new String(bytes, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+
+        JSONObject readObject() throws JSONException {
+            int count = readLength();
+            JSONObject object = new JSONObject();
+            for (int i = 0; i < count; i++) {
+                String key = readString();
+                object.put(key, readValue());
+            }
+            return object;
+        }
+
+        Object readValue() throws JSONException {
+            int type = readByte();
+            switch (type) {
+                case TYPE_NULL:
+                    return JSONObject.NULL;
+                case TYPE_TRUE:
+                    return true;
+                case TYPE_FALSE:
+                    return false;
+                case TYPE_INT:
+                    return (int) readSignedVarint();
+                case TYPE_LONG:
+                    return readSignedVarint();
+                case TYPE_DOUBLE:
+                    long bits = 0;
+                    for (int i = 0; i < 8; i++)
+                        bits = (bits << 8) | readByte();
+                    return Double.longBitsToDouble(bits);
+                case TYPE_STRING:
+                    return readString();
+                case TYPE_OBJECT:
+                    return readObject();
+                case TYPE_ARRAY:
+                    int count = readLength();
+                    JSONArray array = new JSONArray();
+                    for (int i = 0; i < count; i++)
+                        array.put(readValue());
+                    return array;
+                default:
+                    throw new IllegalStateException("Unknown value type " + type);
+            }
+        }
+    }
+}
@@ -77,7 +77,6 @@ class OSUtils {
    public static final int UNINITIALIZABLE_STATUS = -999;
 
    public static int MAX_NETWORK_REQUEST_ATTEMPT_COUNT = 3;
-   static final int[] NO_RETRY_NETWROK_REQUEST_STATUS_CODES = {401, 402, 403, 404, 410};
 
    public enum SchemaType {
       DATA("data"),
@@ -102,11 +101,7 @@ class OSUtils {
    }
 
    public static boolean shouldRetryNetworkRequest(int statusCode) {
-      for (int code : NO_RETRY_NETWROK_REQUEST_STATUS_CODES)
-         if (statusCode == code)
-            return false;
-
-      return true;
+      return OSRetryPolicy.shouldRetry(statusCode);
    }
 
    int initializationChecker(Context context, String oneSignalAppId) {
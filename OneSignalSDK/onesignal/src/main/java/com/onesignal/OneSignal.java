@@ -338,6 +338,20 @@ public class OneSignal {
       void onFailure(EmailUpdateError error);
    }
 
+   /**
+    * Kinds of changes made to the player of each channel, changes made close together are sent in one player update
+    */
+   public enum PlayerUpdateType {
+      // External user id and subscription changes, 1 second window by default
+      HIGH,
+      // Other changes like language or device info, 5 second window by default
+      DEFAULT,
+      // sendTags and incrementTag, 10 second window by default
+      TAGS,
+      // Location updates, 30 second window by default
+      LOCATION
+   }
+
    private static EmailUpdateHandler emailUpdateHandler;
    private static EmailUpdateHandler emailLogoutHandler;
 
@@ -349,6 +363,21 @@ public class OneSignal {
       void onFailure(JSONObject response);
    }
 
+   /**
+    * Interface which you can implement and pass to {@link OneSignal#setNetworkMetricsListener(OSNetworkMetricsListener)}
+    * to get the SDK's network metrics while it makes requests.
+    * <br/><br/>
+    * <b>Note:</b> the {@link #onNetworkMetrics(OSNetworkMetrics)} callback does not run on the Main(UI)
+    * Thread, and should return quickly since it runs on the thread of the request that triggered it.
+    */
+   public interface OSNetworkMetricsListener {
+      /**
+       * Called after a request, at most once a minute
+       * @param metrics metrics of all requests made since the app process started
+       */
+      void onNetworkMetrics(OSNetworkMetrics metrics);
+   }
+
    interface EntryStateListener {
       // Fire with the last appEntryState that just ended.
       void onEntryStateChange(AppEntryAction appEntryState);
@@ -465,6 +494,57 @@ public class OneSignal {
    @Nullable private static OSOutcomeEventsFactory outcomeEventsFactory;
    @Nullable private static OSNotificationDataController notificationDataController;
    private static final Object outcomeEventsControllerSyncLock = new Object() {};
+   @Nullable private static OSOutboundRequestJournal outboundRequestJournal;
+   private static final Object outboundRequestJournalSyncLock = new Object() {};
+
+   static OSOutboundRequestJournal getOutboundRequestJournal() {
+      return getOutboundRequestJournal(appContext);
+   }
+
+   static OSOutboundRequestJournal getOutboundRequestJournal(Context context) {
+      if (outboundRequestJournal == null) {
+         synchronized(outboundRequestJournalSyncLock) {
+            if (outboundRequestJournal == null)
+               outboundRequestJournal = new OSOutboundRequestJournal(getDBHelperInstance(context), logger, time);
+         }
+      }
+      return outboundRequestJournal;
+   }
+
+   @Nullable private static OSTagOperationLog tagOperationLog;
+   private static final Object tagOperationLogSyncLock = new Object() {};
+
+   /**
+    * @return null until initWithContext has been called, tag changes can't be logged without the DB
+    */
+   @Nullable
+   static OSTagOperationLog getTagOperationLog() {
+      if (tagOperationLog == null && appContext != null) {
+         synchronized(tagOperationLogSyncLock) {
+            if (tagOperationLog == null)
+               tagOperationLog = new OSTagOperationLog(getDBHelperInstance(), logger);
+         }
+      }
+      return tagOperationLog;
+   }
+
+   @Nullable private static OSHttpResponseCache httpResponseCache;
+   private static final Object httpResponseCacheSyncLock = new Object() {};
+
+   // Null until the SDK has a Context to open the DB with
+   @Nullable
+   static OSHttpResponseCache getHttpResponseCache() {
+      if (httpResponseCache == null && appContext != null) {
+         synchronized(httpResponseCacheSyncLock) {
+            if (httpResponseCache == null) {
+               OSHttpResponseCache responseCache = new OSHttpResponseCache(getDBHelperInstance(appContext), logger, time);
+               responseCache.migrateFromPrefs();
+               httpResponseCache = responseCache;
+            }
+         }
+      }
+      return httpResponseCache;
+   }
 
    static OSOutcomeEventsController getOutcomeEventsController() {
       if (outcomeEventsController == null) {
@@ -657,6 +737,86 @@ public class OneSignal {
       return new OSDeviceState(subscriptionStatus, permissionStatus, emailSubscriptionStatus, smsSubscriptionStatus);
    }
 
+   /**
+    * Get the number of network requests the SDK made, their latency, size and outcome, for each endpoint
+    * since the app process started.
+    */
+   @NonNull
+   public static OSNetworkMetrics getNetworkMetrics() {
+      return OSTransportMetrics.snapshot();
+   }
+
+   /**
+    * Set a listener that is regularly given the SDK's network metrics while it makes requests.
+    * Pass null to remove the listener.
+    */
+   public static void setNetworkMetricsListener(@Nullable OSNetworkMetricsListener listener) {
+      OSTransportMetrics.setListener(listener);
+   }
+
+   /**
+    * Set whether request bodies over 1 KB are sent gzip encoded. On by default.
+    * An endpoint that rejects a gzip body is sent plain bodies from then on, the bytes saved are in {@link #getNetworkMetrics()}.
+    */
+   public static void setRequestCompressionEnabled(boolean enabled) {
+      OSGzipEncoding.setRequestCompressionEnabled(enabled);
+   }
+
+   /**
+    * Set how long a change of the type waits for more changes before the player update is sent.
+    * Each new change restarts the window, but never holds the update back more than 3 windows past the first change.
+    * Applies from the next change on, for the rest of the app process.
+    *
+    * @param windowMs 0 or more
+    */
+   public static void setPlayerUpdateBatchWindow(@NonNull PlayerUpdateType type, long windowMs) {
+      if (windowMs < 0) {
+         logger.error("setPlayerUpdateBatchWindow: " + windowMs + " is not a valid window for " + type);
+         return;
+      }
+      OSSyncScheduler.getInstance().setDebounceWindow(OSSyncScheduler.Priority.valueOf(type.name()), windowMs);
+   }
+
+   /**
+    * Set whether changes of the type can wait to be merged with later changes into one player update.
+    * When false, a change of the type is sent right away, together with any changes already waiting.
+    * All types are mergeable by default. The number of merged changes is in {@link #getNetworkMetrics()}.
+    */
+   public static void setPlayerUpdateMergeable(@NonNull PlayerUpdateType type, boolean mergeable) {
+      OSSyncScheduler.getInstance().setMergeable(OSSyncScheduler.Priority.valueOf(type.name()), mergeable);
+   }
+
+   /**
+    * Get the rows and size of each of the SDK's database tables.
+    * Reads every table, so call it from a background thread.
+    */
+   @WorkerThread
+   @Nullable
+   public static OSStorageStats getStorageStats() {
+      if (appContext == null) {
+         logger.error("OneSignal.initWithContext has not been called. Could not get OSStorageStats");
+         return null;
+      }
+
+      return OSStorageLimits.storageStats(appContext, getDBHelperInstance());
+   }
+
+   /**
+    * Set the most rows the SDK keeps in one of its tables. Rows over the cap are evicted, least useful first,
+    * on the next cleanup which runs on init and while the device is idle.
+    * The cap is saved and kept on later app starts. Call this before initWithContext, otherwise the cleanup
+    * started by init may still evict down to the previous cap.
+    * Cached unique outcomes can't be capped, they are removed along with their notification instead.
+    *
+    * @param table one of {@link OSStorageStats#TABLE_NOTIFICATION}, {@link OSStorageStats#TABLE_OUTCOME}
+    *              or {@link OSStorageStats#TABLE_IN_APP_MESSAGE}
+    * @param maxRows must be at least 1
+    */
+   public static void setStorageRowCap(@NonNull String table, int maxRows) {
+      if (!OSStorageLimits.setRowCap(table, maxRows))
+         logger.error("setStorageRowCap: " + maxRows + " is not a valid row cap for table " + table);
+   }
+
    private static class IAPUpdateJob {
       JSONArray toReport;
       boolean newAsExisting;
@@ -873,6 +1033,7 @@ public class OneSignal {
       OneSignal.Log(LOG_LEVEL.VERBOSE, "OneSignal SDK initialization done.");
 
       getOutcomeEventsController().sendSavedOutcomes();
+      getOutboundRequestJournal().replayPendingRequests();
 
       // Clean up any pending tasks that were queued up before initialization
       taskRemoteController.startPendingTasks();
@@ -901,7 +1062,7 @@ public class OneSignal {
          notificationDataController = new OSNotificationDataController(dbHelper, logger);
 
          // Cleans out old cached data to prevent over using the storage on devices
-         notificationDataController.cleanOldCachedData();
+         notificationDataController.cleanOldCachedData(appContext);
 
          getInAppMessageController().cleanCachedInAppMessages();
 
@@ -909,7 +1070,6 @@ public class OneSignal {
             outcomeEventsFactory = new OSOutcomeEventsFactory(logger, apiClient, dbHelper, preferences);
 
          sessionManager.initSessionFromCache();
-         getOutcomeEventsController().cleanCachedUniqueOutcomes();
       }
    }
 
@@ -2005,6 +2165,54 @@ public class OneSignal {
       sendTagsRunnable.run();
    }
 
+   /**
+    * Adds to a numeric tag on the user, counting it as 0 if it isn't set or isn't an integer.
+    * Increments made before the next sync are combined and sent as the resulting value.
+    *
+    * @param key Key of the tag to increment
+    * @param amount Amount to add, negative to decrement
+    * @see OneSignal#sendTag
+    */
+   public static void incrementTag(final String key, final long amount) {
+      if (taskRemoteController.shouldQueueTaskForInit(OSTaskRemoteController.INCREMENT_TAG)) {
+         logger.error("Waiting for remote params. " +
+                 "Moving " + OSTaskRemoteController.INCREMENT_TAG + " operation to a pending task queue.");
+         taskRemoteController.addTaskToQueue(new Runnable() {
+            @Override
+            public void run() {
+               logger.debug("Running " + OSTaskRemoteController.INCREMENT_TAG + " operation from pending task queue.");
+               incrementTag(key, amount);
+            }
+         });
+         return;
+      }
+
+      // If applicable, check if the user provided privacy consent
+      if (shouldLogUserPrivacyConsentErrorMessageForMethodName(OSTaskRemoteController.INCREMENT_TAG))
+         return;
+
+      if (key == null) {
+         logger.error("Attempted to increment a null tag key");
+         return;
+      }
+
+      Runnable incrementTagRunnable = new Runnable() {
+         @Override
+         public void run() {
+            OneSignalStateSynchronizer.incrementTag(key, amount);
+         }
+      };
+
+      // Run through the pending task queue while it is running, so the increment stays in order with sendTags calls
+      if (taskRemoteController.shouldRunTaskThroughQueue()) {
+         logger.debug("Sending " + OSTaskRemoteController.INCREMENT_TAG + " operation to pending task queue.");
+         taskRemoteController.addTaskToQueue(incrementTagRunnable);
+         return;
+      }
+
+      incrementTagRunnable.run();
+   }
+
    public static void postNotification(String json, final PostNotificationResponseHandler handler) {
       try {
          postNotification(new JSONObject(json), handler);
@@ -2499,7 +2707,7 @@ public class OneSignal {
             jsonBody.put("opened", true);
             jsonBody.put("device_type", osUtils.getDeviceType());
 
-            OneSignalRestClient.put("notifications/" + notificationId, jsonBody, new OneSignalRestClient.ResponseHandler() {
+            getOutboundRequestJournal(inContext).put("notifications/" + notificationId, jsonBody, true, new OneSignalRestClient.ResponseHandler() {
                @Override
                void  onFailure(int statusCode, String response, Throwable throwable) {
                   logHttpError("sending Notification Opened Failed", statusCode, throwable, response);
@@ -3,6 +3,7 @@ package com.onesignal;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.SQLException;
+import android.database.sqlite.SQLiteStatement;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -17,6 +18,14 @@ public interface OneSignalDb {
                  @Nullable String[] selectionArgs, @Nullable String groupBy, @Nullable String having,
                  @Nullable String orderBy, @Nullable String limit);
 
+    /**
+     * Runs a single value query through a statement compiled once and kept for the next calls.
+     * Only pass fixed SQL with bound args, the SQL string is the cache key.
+     * @return the first column of the first row, null if there are no rows
+     */
+    @Nullable
+    Long queryForLong(@NonNull String sql, @Nullable String[] bindArgs);
+
     void insert(@NonNull String table, @Nullable String nullColumnHack, @Nullable ContentValues values);
 
     void insertOrThrow(@NonNull String table, @Nullable String nullColumnHack, @Nullable ContentValues values)
@@ -25,4 +34,40 @@ public interface OneSignalDb {
     int update(@NonNull String table, @NonNull ContentValues values, @Nullable String whereClause, @Nullable String[] whereArgs);
 
     void delete(@NonNull String table, @Nullable String whereClause, @Nullable String[] whereArgs);
+
+    /**
+     * Runs all the writes of the transaction in a single SQL transaction so they share one journal sync.
+     * If any of them throws the whole transaction is rolled back.
+     * @return true if the transaction was committed
+     */
+    boolean runInTransaction(@NonNull Transaction transaction);
+
+    interface Transaction {
+        void run(@NonNull Batch batch);
+    }
+
+    /**
+     * Writes made inside {@link OneSignalDb#runInTransaction(Transaction)}, failures throw instead of being logged
+     */
+    interface Batch {
+
+        Cursor query(@NonNull String table, @Nullable String[] columns, @Nullable String selection,
+                     @Nullable String[] selectionArgs, @Nullable String groupBy, @Nullable String having,
+                     @Nullable String orderBy);
+
+        Cursor query(@NonNull String table, @Nullable String[] columns, @Nullable String selection,
+                     @Nullable String[] selectionArgs, @Nullable String groupBy, @Nullable String having,
+                     @Nullable String orderBy, @Nullable String limit);
+
+        long insert(@NonNull String table, @Nullable String nullColumnHack, @NonNull ContentValues values) throws SQLException;
+
+        int update(@NonNull String table, @NonNull ContentValues values, @Nullable String whereClause, @Nullable String[] whereArgs);
+
+        int delete(@NonNull String table, @Nullable String whereClause, @Nullable String[] whereArgs);
+
+        /**
+         * Statements are compiled once per transaction and closed when it ends, rebind them for each row.
+         */
+        SQLiteStatement compileStatement(@NonNull String sql) throws SQLException;
+    }
 }
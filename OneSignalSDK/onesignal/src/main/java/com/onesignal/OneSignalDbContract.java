@@ -58,6 +58,18 @@ class OneSignalDbContract {
       public static final String INDEX_CREATE_COLLAPSE_ID = "CREATE INDEX notification_collapse_id_idx ON notification(collapse_id); ";
       public static final String INDEX_CREATE_CREATED_TIME = "CREATE INDEX notification_created_time_idx ON notification(created_time); ";
       public static final String INDEX_CREATE_EXPIRE_TIME = "CREATE INDEX notification_expire_time_idx ON notification(expire_time); ";
+
+      // Composite indexes matching the active notification queries, group_id and collapse_id lead them so they
+      // replace notification_group_id_idx and notification_collapse_id_idx.
+      // Not partial indexes as those need SQLite 3.8.0, which older supported Android versions don't have.
+      public static final String INDEX_GROUP_ACTIVE = "notification_group_active_idx";
+      public static final String INDEX_COLLAPSE_ACTIVE = "notification_collapse_active_idx";
+      public static final String INDEX_ACTIVE_CREATED_TIME = "notification_active_created_time_idx";
+      public static final String INDEX_CREATE_GROUP_ACTIVE = "CREATE INDEX IF NOT EXISTS " + INDEX_GROUP_ACTIVE + " ON notification(group_id, dismissed, opened, is_summary); ";
+      public static final String INDEX_CREATE_COLLAPSE_ACTIVE = "CREATE INDEX IF NOT EXISTS " + INDEX_COLLAPSE_ACTIVE + " ON notification(collapse_id, dismissed, opened); ";
+      public static final String INDEX_CREATE_ACTIVE_CREATED_TIME = "CREATE INDEX IF NOT EXISTS " + INDEX_ACTIVE_CREATED_TIME + " ON notification(dismissed, opened, is_summary, created_time); ";
+      public static final String INDEX_DROP_GROUP_ID = "DROP INDEX IF EXISTS notification_group_id_idx; ";
+      public static final String INDEX_DROP_COLLAPSE_ID = "DROP INDEX IF EXISTS notification_collapse_id_idx; ";
    }
 
    static abstract class InAppMessageTable implements BaseColumns {
@@ -68,4 +80,40 @@ class OneSignalDbContract {
       public static final String COLUMN_CLICK_IDS = "click_ids";
       public static final String COLUMN_DISPLAYED_IN_SESSION = "displayed_in_session";
    }
+
+   static abstract class OutboundRequestTable implements BaseColumns {
+      public static final String TABLE_NAME = "outbound_request";
+      public static final String COLUMN_NAME_REQUEST_ID = "request_id"; // Generated by the SDK when journaling the request
+      public static final String COLUMN_NAME_METHOD = "method";
+      public static final String COLUMN_NAME_URL = "url";
+      public static final String COLUMN_NAME_BODY = "body";
+      public static final String COLUMN_NAME_ATTEMPTS = "attempts";
+      public static final String COLUMN_NAME_NEXT_ATTEMPT_TIME = "next_attempt_time"; // Millis, replay is skipped until then
+      public static final String COLUMN_NAME_RETRY_ON_FAILURE = "retry_on_failure"; // 0 if the caller retries failures on its own
+      public static final String COLUMN_NAME_CREATED_TIME = "created_time";
+
+      public static final String INDEX_CREATE_REQUEST_ID = "CREATE INDEX outbound_request_request_id_idx ON outbound_request(request_id); ";
+   }
+
+   static abstract class HttpResponseCacheTable implements BaseColumns {
+      public static final String TABLE_NAME = "http_response_cache";
+      public static final String COLUMN_NAME_CACHE_KEY = "cache_key";
+      public static final String COLUMN_NAME_ETAG = "etag";
+      public static final String COLUMN_NAME_LAST_MODIFIED = "last_modified";
+      public static final String COLUMN_NAME_BODY = "body";
+      public static final String COLUMN_NAME_BODY_LENGTH = "body_length"; // Characters, counted towards the cache size limit
+      public static final String COLUMN_NAME_LAST_ACCESS_TIME = "last_access_time"; // Millis, least recently used entries are evicted first
+
+      public static final String INDEX_CREATE_CACHE_KEY = "CREATE UNIQUE INDEX http_response_cache_cache_key_idx ON http_response_cache(cache_key); ";
+   }
+
+   static abstract class TagOperationTable implements BaseColumns {
+      public static final String TABLE_NAME = "tag_operation";
+      public static final String COLUMN_NAME_CHANNEL = "channel"; // UserStateSynchronizer channel the operation is synced by
+      public static final String COLUMN_NAME_TYPE = "type"; // OSTagOperationLog.SET, DELETE or INCREMENT
+      public static final String COLUMN_NAME_KEY = "key";
+      public static final String COLUMN_NAME_VALUE = "value"; // Tag value for SET, amount for INCREMENT
+
+      public static final String INDEX_CREATE_CHANNEL = "CREATE INDEX tag_operation_channel_idx ON tag_operation(channel); ";
+   }
 }
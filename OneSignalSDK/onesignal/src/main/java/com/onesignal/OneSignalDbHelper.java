@@ -34,19 +34,27 @@ import android.database.SQLException;
 import android.database.sqlite.SQLiteCantOpenDatabaseException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteDatabaseLockedException;
+import android.database.sqlite.SQLiteDoneException;
 import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.onesignal.OneSignalDbContract.HttpResponseCacheTable;
 import com.onesignal.OneSignalDbContract.InAppMessageTable;
 import com.onesignal.OneSignalDbContract.NotificationTable;
+import com.onesignal.OneSignalDbContract.OutboundRequestTable;
+import com.onesignal.OneSignalDbContract.TagOperationTable;
 import com.onesignal.outcomes.data.OSOutcomeTableProvider;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.onesignal.outcomes.data.OutcomesDbContract.SQL_CREATE_OUTCOME_ENTRIES_V1;
 import static com.onesignal.outcomes.data.OutcomesDbContract.SQL_CREATE_OUTCOME_ENTRIES_V3;
@@ -55,9 +63,11 @@ import static com.onesignal.outcomes.data.OutcomesDbContract.SQL_CREATE_UNIQUE_O
 
 class OneSignalDbHelper extends SQLiteOpenHelper implements OneSignalDb {
 
-   static final int DATABASE_VERSION = 8;
+   static final int DATABASE_VERSION = 12;
    private static final Object LOCK = new Object();
-   private static final String DATABASE_NAME = "OneSignal.db";
+   // Only writes are serialized, with WAL readers run on their own connections next to the writer
+   private static final Object WRITE_LOCK = new Object();
+   static final String DATABASE_NAME = "OneSignal.db";
 
    private static final String INTEGER_PRIMARY_KEY_TYPE = " INTEGER PRIMARY KEY";
    private static final String TEXT_TYPE = " TEXT";
@@ -68,6 +78,7 @@ class OneSignalDbHelper extends SQLiteOpenHelper implements OneSignalDb {
 
    private static final int DB_OPEN_RETRY_MAX = 5;
    private static final int DB_OPEN_RETRY_BACKOFF = 400;
+   private static final int STATEMENT_CACHE_SIZE = 16;
 
    protected static final String SQL_CREATE_ENTRIES =
            "CREATE TABLE " + NotificationTable.TABLE_NAME + " (" +
@@ -96,14 +107,60 @@ class OneSignalDbHelper extends SQLiteOpenHelper implements OneSignalDb {
                    InAppMessageTable.COLUMN_CLICK_IDS + TEXT_TYPE +
                    ");";
 
+   private static final String SQL_CREATE_OUTBOUND_REQUEST_ENTRIES =
+           "CREATE TABLE " + OutboundRequestTable.TABLE_NAME + " (" +
+                   OutboundRequestTable._ID + INTEGER_PRIMARY_KEY_TYPE + COMMA_SEP +
+                   OutboundRequestTable.COLUMN_NAME_REQUEST_ID + TEXT_TYPE + COMMA_SEP +
+                   OutboundRequestTable.COLUMN_NAME_METHOD + TEXT_TYPE + COMMA_SEP +
+                   OutboundRequestTable.COLUMN_NAME_URL + TEXT_TYPE + COMMA_SEP +
+                   OutboundRequestTable.COLUMN_NAME_BODY + TEXT_TYPE + COMMA_SEP +
+                   OutboundRequestTable.COLUMN_NAME_ATTEMPTS + INT_TYPE + " DEFAULT 0" + COMMA_SEP +
+                   OutboundRequestTable.COLUMN_NAME_NEXT_ATTEMPT_TIME + INT_TYPE + " DEFAULT 0" + COMMA_SEP +
+                   OutboundRequestTable.COLUMN_NAME_RETRY_ON_FAILURE + INT_TYPE + " DEFAULT 1" + COMMA_SEP +
+                   OutboundRequestTable.COLUMN_NAME_CREATED_TIME + TIMESTAMP_TYPE + " DEFAULT (strftime('%s', 'now'))" +
+                   ");";
+
+   private static final String SQL_CREATE_HTTP_RESPONSE_CACHE_ENTRIES =
+           "CREATE TABLE " + HttpResponseCacheTable.TABLE_NAME + " (" +
+                   HttpResponseCacheTable._ID + INTEGER_PRIMARY_KEY_TYPE + COMMA_SEP +
+                   HttpResponseCacheTable.COLUMN_NAME_CACHE_KEY + TEXT_TYPE + COMMA_SEP +
+                   HttpResponseCacheTable.COLUMN_NAME_ETAG + TEXT_TYPE + COMMA_SEP +
+                   HttpResponseCacheTable.COLUMN_NAME_LAST_MODIFIED + TEXT_TYPE + COMMA_SEP +
+                   HttpResponseCacheTable.COLUMN_NAME_BODY + TEXT_TYPE + COMMA_SEP +
+                   HttpResponseCacheTable.COLUMN_NAME_BODY_LENGTH + INT_TYPE + " DEFAULT 0" + COMMA_SEP +
+                   HttpResponseCacheTable.COLUMN_NAME_LAST_ACCESS_TIME + INT_TYPE + " DEFAULT 0" +
+                   ");";
+
+   private static final String SQL_CREATE_TAG_OPERATION_ENTRIES =
+           "CREATE TABLE " + TagOperationTable.TABLE_NAME + " (" +
+                   TagOperationTable._ID + INTEGER_PRIMARY_KEY_TYPE + COMMA_SEP +
+                   TagOperationTable.COLUMN_NAME_CHANNEL + TEXT_TYPE + COMMA_SEP +
+                   TagOperationTable.COLUMN_NAME_TYPE + INT_TYPE + COMMA_SEP +
+                   TagOperationTable.COLUMN_NAME_KEY + TEXT_TYPE + COMMA_SEP +
+                   TagOperationTable.COLUMN_NAME_VALUE + TEXT_TYPE +
+                   ");";
+
    protected static final String[] SQL_INDEX_ENTRIES = {
       NotificationTable.INDEX_CREATE_NOTIFICATION_ID,
       NotificationTable.INDEX_CREATE_ANDROID_NOTIFICATION_ID,
-      NotificationTable.INDEX_CREATE_GROUP_ID,
-      NotificationTable.INDEX_CREATE_COLLAPSE_ID,
       NotificationTable.INDEX_CREATE_CREATED_TIME,
-      NotificationTable.INDEX_CREATE_EXPIRE_TIME
+      NotificationTable.INDEX_CREATE_EXPIRE_TIME,
+      NotificationTable.INDEX_CREATE_GROUP_ACTIVE,
+      NotificationTable.INDEX_CREATE_COLLAPSE_ACTIVE,
+      NotificationTable.INDEX_CREATE_ACTIVE_CREATED_TIME
+   };
+
+   // Compiled single value queries, only valid for statementCacheDb
+   private final LinkedHashMap<String, SQLiteStatement> statementCache = new LinkedHashMap<String, SQLiteStatement>(STATEMENT_CACHE_SIZE, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, SQLiteStatement> eldest) {
+         if (size() <= STATEMENT_CACHE_SIZE)
+            return false;
+         eldest.getValue().close();
+         return true;
+      }
    };
+   private SQLiteDatabase statementCacheDb;
 
    private static OSLogger logger = new OSLogWrapper();
    private static OneSignalDbHelper sInstance;
@@ -122,7 +179,8 @@ class OneSignalDbHelper extends SQLiteOpenHelper implements OneSignalDb {
 
    OneSignalDbHelper(Context context) {
       super(context, DATABASE_NAME, null, getDbVersion());
-
+      // Write-ahead logging lets queries read the last commit while a write is in progress
+      setWriteAheadLoggingEnabled(true);
    }
 
    public static OneSignalDbHelper getInstance(Context context) {
@@ -191,23 +249,49 @@ class OneSignalDbHelper extends SQLiteOpenHelper implements OneSignalDb {
    public Cursor query(@NonNull String table, @Nullable String[] columns, @Nullable String selection,
                        String[] selectionArgs, @Nullable String groupBy, @Nullable String having,
                        @Nullable String orderBy) {
-      synchronized (LOCK) {
-         return getSQLiteDatabaseWithRetries().query(table, columns, selection, selectionArgs, groupBy, having, orderBy);
-      }
+      return getSQLiteDatabaseWithRetries().query(table, columns, selection, selectionArgs, groupBy, having, orderBy);
    }
 
    @Override
    public Cursor query(@NonNull String table, @Nullable String[] columns, @Nullable String selection,
                        @Nullable String[] selectionArgs, @Nullable String groupBy, @Nullable String having,
                        @Nullable String orderBy, @Nullable String limit) {
-      synchronized (LOCK) {
-         return getSQLiteDatabaseWithRetries().query(table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+      return getSQLiteDatabaseWithRetries().query(table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+   }
+
+   @Override
+   @Nullable
+   public Long queryForLong(@NonNull String sql, @Nullable String[] bindArgs) {
+      SQLiteDatabase db = getSQLiteDatabaseWithRetries();
+      synchronized (statementCache) {
+         // Statements belong to the database they were compiled on, drop them if it was reopened
+         if (statementCacheDb != db) {
+            for (SQLiteStatement statement : statementCache.values())
+               statement.close();
+            statementCache.clear();
+            statementCacheDb = db;
+         }
+
+         SQLiteStatement statement = statementCache.get(sql);
+         if (statement == null) {
+            statement = db.compileStatement(sql);
+            statementCache.put(sql, statement);
+         }
+
+         statement.clearBindings();
+         if (bindArgs != null)
+            statement.bindAllArgsAsStrings(bindArgs);
+         try {
+            return statement.simpleQueryForLong();
+         } catch (SQLiteDoneException e) {
+            return null;
+         }
       }
    }
 
    @Override
    public void insert(@NonNull String table, @Nullable String nullColumnHack, @Nullable ContentValues values) {
-      synchronized (LOCK) {
+      synchronized (WRITE_LOCK) {
          SQLiteDatabase writableDb = getSQLiteDatabaseWithRetries();
          try {
             writableDb.beginTransaction();
@@ -234,7 +318,7 @@ class OneSignalDbHelper extends SQLiteOpenHelper implements OneSignalDb {
    @Override
    public void insertOrThrow(@NonNull String table, @Nullable String nullColumnHack, @Nullable ContentValues values)
            throws SQLException {
-      synchronized (LOCK) {
+      synchronized (WRITE_LOCK) {
          SQLiteDatabase writableDb = getSQLiteDatabaseWithRetries();
          try {
             writableDb.beginTransaction();
@@ -264,7 +348,7 @@ class OneSignalDbHelper extends SQLiteOpenHelper implements OneSignalDb {
       if (values == null || values.toString().isEmpty())
          return result;
 
-      synchronized (LOCK) {
+      synchronized (WRITE_LOCK) {
          SQLiteDatabase writableDb = getSQLiteDatabaseWithRetries();
          try {
             writableDb.beginTransaction();
@@ -291,7 +375,7 @@ class OneSignalDbHelper extends SQLiteOpenHelper implements OneSignalDb {
 
    @Override
    public void delete(@NonNull String table, @Nullable String whereClause, @Nullable String[] whereArgs) {
-      synchronized (LOCK) {
+      synchronized (WRITE_LOCK) {
          SQLiteDatabase writableDb = getSQLiteDatabaseWithRetries();
          try {
             writableDb.beginTransaction();
@@ -315,6 +399,92 @@ class OneSignalDbHelper extends SQLiteOpenHelper implements OneSignalDb {
       }
    }
 
+   @Override
+   public boolean runInTransaction(@NonNull Transaction transaction) {
+      synchronized (WRITE_LOCK) {
+         SQLiteDatabase writableDb = getSQLiteDatabaseWithRetries();
+         TransactionBatch batch = new TransactionBatch(writableDb);
+         boolean committed = false;
+         try {
+            writableDb.beginTransaction();
+            transaction.run(batch);
+            writableDb.setTransactionSuccessful();
+            committed = true;
+         } catch (SQLException e) {
+            logger.error("Error running transaction, rolling it back", e);
+         } catch (IllegalStateException e) {
+            logger.error("Error under transaction, rolling it back", e);
+         } finally {
+            batch.close();
+            try {
+               writableDb.endTransaction(); // May throw if transaction was never opened or DB is full.
+            } catch (IllegalStateException e) {
+               committed = false;
+               logger.error("Error closing transaction! ", e);
+            } catch (SQLiteException e) {
+               committed = false;
+               logger.error("Error closing transaction! ", e);
+            }
+         }
+         return committed;
+      }
+   }
+
+   private static class TransactionBatch implements Batch {
+      private final SQLiteDatabase db;
+      private final HashMap<String, SQLiteStatement> statements = new HashMap<>();
+
+      TransactionBatch(SQLiteDatabase db) {
+         this.db = db;
+      }
+
+      @Override
+      public Cursor query(@NonNull String table, @Nullable String[] columns, @Nullable String selection,
+                          @Nullable String[] selectionArgs, @Nullable String groupBy, @Nullable String having,
+                          @Nullable String orderBy) {
+         return db.query(table, columns, selection, selectionArgs, groupBy, having, orderBy);
+      }
+
+      @Override
+      public Cursor query(@NonNull String table, @Nullable String[] columns, @Nullable String selection,
+                          @Nullable String[] selectionArgs, @Nullable String groupBy, @Nullable String having,
+                          @Nullable String orderBy, @Nullable String limit) {
+         return db.query(table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
+      }
+
+      @Override
+      public long insert(@NonNull String table, @Nullable String nullColumnHack, @NonNull ContentValues values) throws SQLException {
+         return db.insertOrThrow(table, nullColumnHack, values);
+      }
+
+      @Override
+      public int update(@NonNull String table, @NonNull ContentValues values, @Nullable String whereClause, @Nullable String[] whereArgs) {
+         return db.update(table, values, whereClause, whereArgs);
+      }
+
+      @Override
+      public int delete(@NonNull String table, @Nullable String whereClause, @Nullable String[] whereArgs) {
+         return db.delete(table, whereClause, whereArgs);
+      }
+
+      @Override
+      public SQLiteStatement compileStatement(@NonNull String sql) throws SQLException {
+         SQLiteStatement statement = statements.get(sql);
+         if (statement == null) {
+            statement = db.compileStatement(sql);
+            statements.put(sql, statement);
+         }
+         statement.clearBindings();
+         return statement;
+      }
+
+      void close() {
+         for (SQLiteStatement statement : statements.values())
+            statement.close();
+         statements.clear();
+      }
+   }
+
    @Override
    public void onCreate(SQLiteDatabase db) {
       synchronized (LOCK) {
@@ -322,6 +492,12 @@ class OneSignalDbHelper extends SQLiteOpenHelper implements OneSignalDb {
          db.execSQL(SQL_CREATE_OUTCOME_ENTRIES_V3);
          db.execSQL(SQL_CREATE_UNIQUE_OUTCOME_ENTRIES_V2);
          db.execSQL(SQL_CREATE_IN_APP_MESSAGE_ENTRIES);
+         db.execSQL(SQL_CREATE_OUTBOUND_REQUEST_ENTRIES);
+         db.execSQL(OutboundRequestTable.INDEX_CREATE_REQUEST_ID);
+         db.execSQL(SQL_CREATE_HTTP_RESPONSE_CACHE_ENTRIES);
+         db.execSQL(HttpResponseCacheTable.INDEX_CREATE_CACHE_KEY);
+         db.execSQL(SQL_CREATE_TAG_OPERATION_ENTRIES);
+         db.execSQL(TagOperationTable.INDEX_CREATE_CHANNEL);
          for (String ind : SQL_INDEX_ENTRIES) {
             db.execSQL(ind);
          }
@@ -364,6 +540,18 @@ class OneSignalDbHelper extends SQLiteOpenHelper implements OneSignalDb {
 
       if (oldVersion < 8)
          upgradeToV8(db);
+
+      if (oldVersion < 9)
+         upgradeToV9(db);
+
+      if (oldVersion < 10)
+         upgradeToV10(db);
+
+      if (oldVersion < 11)
+         upgradeToV11(db);
+
+      if (oldVersion < 12)
+         upgradeToV12(db);
    }
 
    // Add collapse_id field and index
@@ -419,6 +607,33 @@ class OneSignalDbHelper extends SQLiteOpenHelper implements OneSignalDb {
       outcomeTableProvider.upgradeCacheOutcomeTableRevision1To2(db);
    }
 
+   // Add outbound request journal table
+   private static void upgradeToV9(SQLiteDatabase db) {
+      safeExecSQL(db, SQL_CREATE_OUTBOUND_REQUEST_ENTRIES);
+      safeExecSQL(db, OutboundRequestTable.INDEX_CREATE_REQUEST_ID);
+   }
+
+   // Add HTTP response cache table, cached GET bodies move out of SharedPreferences
+   private static void upgradeToV10(SQLiteDatabase db) {
+      safeExecSQL(db, SQL_CREATE_HTTP_RESPONSE_CACHE_ENTRIES);
+      safeExecSQL(db, HttpResponseCacheTable.INDEX_CREATE_CACHE_KEY);
+   }
+
+   // Replace the single column group and collapse indexes with ones matching the active notification queries
+   private static void upgradeToV11(SQLiteDatabase db) {
+      safeExecSQL(db, NotificationTable.INDEX_CREATE_GROUP_ACTIVE);
+      safeExecSQL(db, NotificationTable.INDEX_CREATE_COLLAPSE_ACTIVE);
+      safeExecSQL(db, NotificationTable.INDEX_CREATE_ACTIVE_CREATED_TIME);
+      safeExecSQL(db, NotificationTable.INDEX_DROP_GROUP_ID);
+      safeExecSQL(db, NotificationTable.INDEX_DROP_COLLAPSE_ID);
+   }
+
+   // Add tag operation log table
+   private static void upgradeToV12(SQLiteDatabase db) {
+      safeExecSQL(db, SQL_CREATE_TAG_OPERATION_ENTRIES);
+      safeExecSQL(db, TagOperationTable.INDEX_CREATE_CHANNEL);
+   }
+
    private static void safeExecSQL(SQLiteDatabase db, String sql) {
       try {
          db.execSQL(sql);
@@ -451,21 +666,25 @@ class OneSignalDbHelper extends SQLiteOpenHelper implements OneSignalDb {
       }
    }
 
-   static StringBuilder recentUninteractedWithNotificationsWhere() {
+   /**
+    * @param whereArgs gets the values for the placeholders of the returned where, in order
+    */
+   static StringBuilder recentUninteractedWithNotificationsWhere(List<String> whereArgs) {
       long currentTimeSec = OneSignal.getTime().getCurrentTimeMillis() / 1_000L;
       long createdAtCutoff = currentTimeSec - 604_800L; // 1 Week back
 
       StringBuilder where = new StringBuilder(
-         NotificationTable.COLUMN_NAME_CREATED_TIME + " > " + createdAtCutoff + " AND " +
+         NotificationTable.COLUMN_NAME_CREATED_TIME + " > ? AND " +
          NotificationTable.COLUMN_NAME_DISMISSED    + " = 0 AND " +
          NotificationTable.COLUMN_NAME_OPENED       + " = 0 AND " +
          NotificationTable.COLUMN_NAME_IS_SUMMARY   + " = 0"
       );
+      whereArgs.add(String.valueOf(createdAtCutoff));
 
       boolean useTtl = OneSignal.getRemoteParamController().isRestoreTTLFilterActive();
       if (useTtl) {
-         String expireTimeWhere = " AND " + NotificationTable.COLUMN_NAME_EXPIRE_TIME + " > " + currentTimeSec;
-         where.append(expireTimeWhere);
+         where.append(" AND " + NotificationTable.COLUMN_NAME_EXPIRE_TIME + " > ?");
+         whereArgs.add(String.valueOf(currentTimeSec));
       }
 
       return where;
@@ -36,7 +36,11 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 class OneSignalPrefs {
 
@@ -59,6 +63,10 @@ class OneSignalPrefs {
     public static final String PREFS_ONESIGNAL = OneSignal.class.getSimpleName();
     public static final String PREFS_PLAYER_PURCHASES = "GTPlayerPurchases";
     public static final String PREFS_TRIGGERS = "OneSignalTriggers";
+    // Large and fast growing values, kept out of PREFS_ONESIGNAL so it stays small and quick to load
+    public static final String PREFS_USER_STATE = "OneSignalUserState";
+    public static final String PREFS_IN_APP_MESSAGES = "OneSignalInAppMessages";
+    public static final String PREFS_INFLUENCES = "OneSignalInfluences";
 
     // SharedPreference Keys
     // Unorganized Keys
@@ -71,8 +79,10 @@ class OneSignalPrefs {
     public static final String PREFS_GT_PLAYER_ID = "GT_PLAYER_ID";
     public static final String PREFS_GT_UNSENT_ACTIVE_TIME = "GT_UNSENT_ACTIVE_TIME";
     public static final String PREFS_OS_UNSENT_ATTRIBUTED_ACTIVE_TIME = "OS_UNSENT_ATTRIBUTED_ACTIVE_TIME";
+    // In PREFS_USER_STATE
     public static final String PREFS_ONESIGNAL_USERSTATE_DEPENDVALYES_ = "ONESIGNAL_USERSTATE_DEPENDVALYES_";
     public static final String PREFS_ONESIGNAL_USERSTATE_SYNCVALYES_ = "ONESIGNAL_USERSTATE_SYNCVALYES_";
+    public static final String PREFS_ONESIGNAL_USERSTATE_SNAPSHOT_ = "ONESIGNAL_USERSTATE_SNAPSHOT_";
     public static final String PREFS_ONESIGNAL_ACCEPTED_NOTIFICATION_LAST = "ONESIGNAL_ACCEPTED_NOTIFICATION_LAST";
     public static final String PREFS_ONESIGNAL_SUBSCRIPTION_LAST = "ONESIGNAL_SUBSCRIPTION_LAST";
     public static final String PREFS_ONESIGNAL_PLAYER_ID_LAST = "ONESIGNAL_PLAYER_ID_LAST";
@@ -85,6 +95,8 @@ class OneSignalPrefs {
     public static final String PREFS_ONESIGNAL_USER_PROVIDED_CONSENT = "ONESIGNAL_USER_PROVIDED_CONSENT";
     public static final String PREFS_OS_ETAG_PREFIX = "PREFS_OS_ETAG_PREFIX_";
     public static final String PREFS_OS_HTTP_CACHE_PREFIX = "PREFS_OS_HTTP_CACHE_PREFIX_";
+    public static final String PREFS_OS_HTTP_CACHE_MIGRATED = "PREFS_OS_HTTP_CACHE_MIGRATED";
+    public static final String PREFS_OS_LARGE_VALUES_MIGRATED = "PREFS_OS_LARGE_VALUES_MIGRATED";
     // Remote params
     public static final String PREFS_GT_FIREBASE_TRACKING_ENABLED = "GT_FIREBASE_TRACKING_ENABLED";
     public static final String PREFS_OS_RESTORE_TTL_FILTER = "OS_RESTORE_TTL_FILTER";
@@ -97,8 +109,13 @@ class OneSignalPrefs {
     public static final String PREFS_OS_RECEIVE_RECEIPTS_ENABLED = "PREFS_OS_RECEIVE_RECEIPTS_ENABLED";
     // Remote params - Outcomes V2 service enabled
     static final String PREFS_OS_OUTCOMES_V2 = "PREFS_OS_OUTCOMES_V2";
-    // On Focus Influence
+    // On Focus Influence, in PREFS_INFLUENCES
     public static final String PREFS_OS_ATTRIBUTED_INFLUENCES = "PREFS_OS_ATTRIBUTED_INFLUENCES";
+    // Notification cache cleaner, last run stats
+    static final String PREFS_OS_NOTIFICATION_CACHE_CLEAN_DURATION = "PREFS_OS_NOTIFICATION_CACHE_CLEAN_DURATION";
+    static final String PREFS_OS_NOTIFICATION_CACHE_CLEAN_DELETED = "PREFS_OS_NOTIFICATION_CACHE_CLEAN_DELETED";
+    // Row caps set with OneSignal.setStorageRowCap, followed by the table name
+    static final String PREFS_OS_STORAGE_ROW_CAP_PREFIX = "PREFS_OS_STORAGE_ROW_CAP_";
     // Email
     public static final String PREFS_OS_EMAIL_ID = "OS_EMAIL_ID";
     public static final String PREFS_ONESIGNAL_EMAIL_ID_LAST = "PREFS_ONESIGNAL_EMAIL_ID_LAST";
@@ -107,7 +124,7 @@ class OneSignalPrefs {
     public static final String PREFS_OS_SMS_ID = "PREFS_OS_SMS_ID";
     public static final String PREFS_OS_SMS_ID_LAST = "PREFS_OS_SMS_ID_LAST";
     public static final String PREFS_OS_SMS_NUMBER_LAST = "PREFS_OS_SMS_NUMBER_LAST";
-    // In-App Messaging
+    // In-App Messaging, all but PREFS_OS_LAST_TIME_IAM_DISMISSED in PREFS_IN_APP_MESSAGES
     public static final String PREFS_OS_CACHED_IAMS = "PREFS_OS_CACHED_IAMS";
     public static final String PREFS_OS_DISMISSED_IAMS = "PREFS_OS_DISPLAYED_IAMS";
     public static final String PREFS_OS_IMPRESSIONED_IAMS = "PREFS_OS_IMPRESSIONED_IAMS";
@@ -120,18 +137,84 @@ class OneSignalPrefs {
     static final String PREFS_EXISTING_PURCHASES = "ExistingPurchases";
 
     // Buffered writes to apply on WritePrefHandlerThread with a short delay
-    static HashMap<String, HashMap<String, Object>> prefsToApply;
+    static HashMap<String, WriteBuffer> prefsToApply;
+    // Values already read or written, per SharedPreferences file
+    static HashMap<String, ReadCache> prefsCache;
+    private static final AtomicLong readCacheHits = new AtomicLong();
+    private static final AtomicLong readCacheMisses = new AtomicLong();
+    // Set once this process checked PREFS_ONESIGNAL for values that belong in their own file
+    private static boolean largeValuesMigrationChecked;
     public static WritePrefHandlerThread prefsHandler;
 
     static {
         initializePool();
     }
 
+    /**
+     * Pending writes to one SharedPreferences file.
+     * Writers never wait on the flush, the flusher swaps the pending map for an empty one and
+     * writes out the one it took while new writes go into the new map.
+     * Reads don't look here, every write goes to the ReadCache first.
+     */
+    static class WriteBuffer {
+        // Stands in for a removal since ConcurrentHashMap doesn't take null values
+        private static final Object REMOVED = new Object();
+
+        private volatile ConcurrentHashMap<String, Object> pending = new ConcurrentHashMap<>();
+
+        void put(String key, @Nullable Object value) {
+            Object storedValue = value == null ? REMOVED : value;
+            ConcurrentHashMap<String, Object> map = pending;
+            map.put(key, storedValue);
+
+            // The flusher may have taken the map before our put landed and missed it,
+            //   carry the value over unless a newer write to the key got there first
+            ConcurrentHashMap<String, Object> current = pending;
+            if (current != map)
+                current.putIfAbsent(key, storedValue);
+        }
+
+        // Only called from WritePrefHandlerThread
+        private ConcurrentHashMap<String, Object> takePending() {
+            ConcurrentHashMap<String, Object> toFlush = pending;
+            pending = new ConcurrentHashMap<>();
+            return toFlush;
+        }
+    }
+
+    /**
+     * Values of one SharedPreferences file, loaded on first read and updated by every write,
+     * so a read of a known key is a single map lookup.
+     */
+    static class ReadCache {
+        // Stands in for a key that isn't set, reads return their default value
+        private static final Object ABSENT = new Object();
+
+        private final ConcurrentHashMap<String, Object> values = new ConcurrentHashMap<>();
+
+        @Nullable Object get(String key) {
+            return values.get(key);
+        }
+
+        void onWrite(String key, @Nullable Object value) {
+            values.put(key, value == null ? ABSENT : value);
+        }
+
+        // A write made while the value was read from disk is newer, so it is kept
+        void onLoad(String key, @Nullable Object value) {
+            values.putIfAbsent(key, value == null ? ABSENT : value);
+        }
+    }
+
     public static class WritePrefHandlerThread extends HandlerThread {
-        private @Nullable Handler mHandler;
+        private volatile @Nullable Handler mHandler;
 
         private static final int WRITE_CALL_DELAY_TO_BUFFER_MS = 200;
-        private long lastSyncTime = 0L;
+        private volatile long lastSyncTime = 0L;
+
+        private final AtomicBoolean threadStartCalled = new AtomicBoolean();
+        // Set while a flush is posted, so writers only post one
+        private final AtomicBoolean flushScheduled = new AtomicBoolean();
 
         WritePrefHandlerThread(String name) {
             super(name);
@@ -148,32 +231,28 @@ class OneSignalPrefs {
             scheduleFlushToDisk();
         }
 
-        private synchronized void startDelayedWrite() {
+        private void startDelayedWrite() {
             // A Context is required to write,
             //   if not available now later OneSignal.setContext will call this again.
             if (OneSignal.appContext == null)
                 return;
 
             startThread();
-            scheduleFlushToDisk();
+            if (flushScheduled.compareAndSet(false, true))
+                scheduleFlushToDisk();
         }
 
-        private boolean threadStartCalled;
         private void startThread() {
-            if (threadStartCalled)
-                return;
-
-            start();
-            threadStartCalled = true;
+            if (threadStartCalled.compareAndSet(false, true))
+                start();
         }
 
-        private synchronized void scheduleFlushToDisk() {
-            // Could be null if looper thread just started
-            if (mHandler == null)
+        private void scheduleFlushToDisk() {
+            // Could be null if looper thread just started, onLooperPrepared schedules the flush then
+            Handler handler = mHandler;
+            if (handler == null)
                 return;
 
-            mHandler.removeCallbacksAndMessages(null);
-
             if (lastSyncTime == 0)
                 lastSyncTime = OneSignal.getTime().getCurrentTimeMillis();
             long delay = lastSyncTime - OneSignal.getTime().getCurrentTimeMillis() + WRITE_CALL_DELAY_TO_BUFFER_MS;
@@ -184,31 +263,25 @@ class OneSignalPrefs {
                     flushBufferToDisk();
                 }
             };
-            mHandler.postDelayed(runnable, delay);
+            handler.postDelayed(runnable, delay);
         }
 
         private void flushBufferToDisk() {
-            for (String pref : prefsToApply.keySet()) {
-                SharedPreferences prefsToWrite = getSharedPrefsByName(pref);
+            // Cleared before taking the buffers so a write that misses this flush schedules the next one
+            flushScheduled.set(false);
+
+            for (Map.Entry<String, WriteBuffer> entry : prefsToApply.entrySet()) {
+                ConcurrentHashMap<String, Object> toFlush = entry.getValue().takePending();
+                if (toFlush.isEmpty())
+                    continue;
+
+                SharedPreferences prefsToWrite = getSharedPrefsByName(entry.getKey());
                 SharedPreferences.Editor editor = prefsToWrite.edit();
-                HashMap<String, Object> prefHash = prefsToApply.get(pref);
-                synchronized (prefHash) {
-                    for (String key : prefHash.keySet()) {
-                        Object value = prefHash.get(key);
-                        if (value instanceof String)
-                            editor.putString(key, (String)value);
-                        else if (value instanceof Boolean)
-                            editor.putBoolean(key, (Boolean)value);
-                        else if (value instanceof Integer)
-                            editor.putInt(key, (Integer)value);
-                        else if (value instanceof Long)
-                            editor.putLong(key, (Long)value);
-                        else if (value instanceof Set)
-                            editor.putStringSet(key, (Set<String>)value);
-                        else if (value == null)
-                            editor.remove(key);
-                    }
-                    prefHash.clear();
+                for (Map.Entry<String, Object> pref : toFlush.entrySet()) {
+                    if (pref.getValue() == WriteBuffer.REMOVED)
+                        editor.remove(pref.getKey());
+                    else
+                        putValue(editor, pref.getKey(), pref.getValue());
                 }
                 editor.apply();
             }
@@ -219,9 +292,18 @@ class OneSignalPrefs {
 
     public static void initializePool() {
         prefsToApply = new HashMap<>();
-        prefsToApply.put(PREFS_ONESIGNAL, new HashMap<String, Object>());
-        prefsToApply.put(PREFS_PLAYER_PURCHASES, new HashMap<String, Object>());
-        prefsToApply.put(PREFS_TRIGGERS, new HashMap<String, Object>());
+        prefsToApply.put(PREFS_ONESIGNAL, new WriteBuffer());
+        prefsToApply.put(PREFS_PLAYER_PURCHASES, new WriteBuffer());
+        prefsToApply.put(PREFS_TRIGGERS, new WriteBuffer());
+        prefsToApply.put(PREFS_USER_STATE, new WriteBuffer());
+        prefsToApply.put(PREFS_IN_APP_MESSAGES, new WriteBuffer());
+        prefsToApply.put(PREFS_INFLUENCES, new WriteBuffer());
+
+        prefsCache = new HashMap<>();
+        for (String prefsName : prefsToApply.keySet())
+            prefsCache.put(prefsName, new ReadCache());
+
+        largeValuesMigrationChecked = false;
 
         prefsHandler = new WritePrefHandlerThread("OSH_WritePrefs");
     }
@@ -255,66 +337,104 @@ class OneSignalPrefs {
     }
 
     static private void save(String prefsName, String key, Object value) {
-        HashMap<String, Object> pref = prefsToApply.get(prefsName);
-        synchronized (pref) {
-            pref.put(key, value);
-        }
+        prefsCache.get(prefsName).onWrite(key, value);
+        prefsToApply.get(prefsName).put(key, value);
         startDelayedWrite();
     }
 
     static String getString(String prefsName, String key, String defValue) {
-        return (String)get(prefsName, key, String.class, defValue);
+        Object cachedValue = getCached(prefsName, key);
+        if (cachedValue != null)
+            return cachedValue == ReadCache.ABSENT ? defValue : (String)cachedValue;
+        return (String)load(prefsName, key, String.class, defValue);
     }
 
     static boolean getBool(String prefsName, String key, boolean defValue) {
-        return (Boolean)get(prefsName, key, Boolean.class, defValue);
+        Object cachedValue = getCached(prefsName, key);
+        if (cachedValue != null)
+            return cachedValue == ReadCache.ABSENT ? defValue : (Boolean)cachedValue;
+        return (Boolean)load(prefsName, key, Boolean.class, defValue);
     }
 
     static int getInt(String prefsName, String key, int defValue) {
-        return (Integer)get(prefsName, key, Integer.class, defValue);
+        Object cachedValue = getCached(prefsName, key);
+        if (cachedValue != null)
+            return cachedValue == ReadCache.ABSENT ? defValue : (Integer)cachedValue;
+        return (Integer)load(prefsName, key, Integer.class, defValue);
     }
 
     static long getLong(String prefsName, String key, long defValue) {
-        return (Long)get(prefsName, key, Long.class, defValue);
+        Object cachedValue = getCached(prefsName, key);
+        if (cachedValue != null)
+            return cachedValue == ReadCache.ABSENT ? defValue : (Long)cachedValue;
+        return (Long)load(prefsName, key, Long.class, defValue);
     }
 
     public static @Nullable Set<String> getStringSet(@NonNull String prefsName, @NonNull String key, @Nullable Set<String> defValue) {
-        return (Set<String>)get(prefsName, key, Set.class, defValue);
+        Object cachedValue = getCached(prefsName, key);
+        if (cachedValue != null)
+            return cachedValue == ReadCache.ABSENT ? defValue : (Set<String>)cachedValue;
+        return (Set<String>)load(prefsName, key, Set.class, defValue);
     }
 
+    // Contains check
     static Object getObject(String prefsName, String key, Object defValue) {
-        return get(prefsName, key, Object.class, defValue);
+        Object cachedValue = getCached(prefsName, key);
+        if (cachedValue != null)
+            return cachedValue != ReadCache.ABSENT;
+        return load(prefsName, key, Object.class, defValue);
     }
 
-    // If type == Object then this is a contains check
-    private static @Nullable Object get(String prefsName, String key, Class type, Object defValue) {
-        HashMap<String, Object> pref = prefsToApply.get(prefsName);
+    static long getReadCacheHits() {
+        return readCacheHits.get();
+    }
 
-        synchronized (pref) {
-            if (type.equals(Object.class) && pref.containsKey(key))
-                return true;
+    static long getReadCacheMisses() {
+        return readCacheMisses.get();
+    }
 
-            Object cachedValue = pref.get(key);
-            if (cachedValue != null || pref.containsKey(key))
-                return cachedValue;
-        }
+    private static @Nullable Object getCached(String prefsName, String key) {
+        Object cachedValue = prefsCache.get(prefsName).get(key);
+        if (cachedValue != null)
+            readCacheHits.incrementAndGet();
+        return cachedValue;
+    }
+
+    // Reads a value that isn't cached yet from SharedPreferences and caches it
+    // If type == Object then this is a contains check
+    private static @Nullable Object load(String prefsName, String key, Class type, Object defValue) {
+        readCacheMisses.incrementAndGet();
 
         SharedPreferences prefs = getSharedPrefsByName(prefsName);
         if (prefs != null) {
+            boolean contains = prefs.contains(key);
+            if (type.equals(Object.class)) {
+                // Only the presence is known here, the value is cached once it is read with its type
+                if (!contains)
+                    prefsCache.get(prefsName).onLoad(key, null);
+                return contains;
+            }
+            if (!contains) {
+                prefsCache.get(prefsName).onLoad(key, null);
+                return defValue;
+            }
+
+            Object value;
             if (type.equals(String.class))
-               return prefs.getString(key, (String)defValue);
+                value = prefs.getString(key, (String)defValue);
             else if (type.equals(Boolean.class))
-                return prefs.getBoolean(key, (Boolean)defValue);
+                value = prefs.getBoolean(key, (Boolean)defValue);
             else if (type.equals(Integer.class))
-                return prefs.getInt(key, (Integer)defValue);
+                value = prefs.getInt(key, (Integer)defValue);
             else if (type.equals(Long.class))
-                return prefs.getLong(key, (Long)defValue);
+                value = prefs.getLong(key, (Long)defValue);
             else if (type.equals(Set.class))
-                return prefs.getStringSet(key, (Set<String>)defValue);
-            else if (type.equals(Object.class))
-                return prefs.contains(key);
+                value = prefs.getStringSet(key, (Set<String>)defValue);
+            else
+                return null;
 
-            return null;
+            prefsCache.get(prefsName).onLoad(key, value);
+            return value;
         }
 
         return defValue;
@@ -327,7 +447,89 @@ class OneSignalPrefs {
             return null;
         }
 
+        if (!largeValuesMigrationChecked) {
+            largeValuesMigrationChecked = true;
+            migrateLargeValues(OneSignal.appContext);
+        }
+
         return OneSignal.appContext.getSharedPreferences(prefsName, Context.MODE_PRIVATE);
     }
 
+    /**
+     * @return the file a value stored in PREFS_ONESIGNAL by older SDK versions moved to, or null if it stays
+     */
+    @Nullable
+    static String movedPrefsName(String key) {
+        if (key.startsWith(PREFS_ONESIGNAL_USERSTATE_SYNCVALYES_) || key.startsWith(PREFS_ONESIGNAL_USERSTATE_DEPENDVALYES_))
+            return PREFS_USER_STATE;
+
+        switch (key) {
+            case PREFS_OS_CACHED_IAMS:
+            case PREFS_OS_DISMISSED_IAMS:
+            case PREFS_OS_IMPRESSIONED_IAMS:
+            case PREFS_OS_CLICKED_CLICK_IDS_IAMS:
+            case PREFS_OS_PAGE_IMPRESSIONED_IAMS:
+                return PREFS_IN_APP_MESSAGES;
+            case PREFS_OS_ATTRIBUTED_INFLUENCES:
+                return PREFS_INFLUENCES;
+            default:
+                return null;
+        }
+    }
+
+    // Moves large values older SDK versions kept in PREFS_ONESIGNAL to their own files, once per install
+    private static void migrateLargeValues(Context context) {
+        SharedPreferences corePrefs = context.getSharedPreferences(PREFS_ONESIGNAL, Context.MODE_PRIVATE);
+        if (corePrefs.getBoolean(PREFS_OS_LARGE_VALUES_MIGRATED, false))
+            return;
+
+        SharedPreferences.Editor coreEditor = corePrefs.edit();
+        HashMap<String, SharedPreferences.Editor> movedEditors = new HashMap<>();
+        for (Map.Entry<String, ?> entry : corePrefs.getAll().entrySet()) {
+            String key = entry.getKey();
+            String movedPrefsName = movedPrefsName(key);
+            if (movedPrefsName == null)
+                continue;
+
+            SharedPreferences movedPrefs = context.getSharedPreferences(movedPrefsName, Context.MODE_PRIVATE);
+            // A value already in the new file was written by this version and is newer
+            if (!movedPrefs.contains(key)) {
+                SharedPreferences.Editor editor = movedEditors.get(movedPrefsName);
+                if (editor == null) {
+                    editor = movedPrefs.edit();
+                    movedEditors.put(movedPrefsName, editor);
+                }
+                putValue(editor, key, entry.getValue());
+            }
+            coreEditor.remove(key);
+        }
+
+        // Runs under getSharedPrefsByName's lock on the first read, often from the main thread, so no commit() here.
+        // apply() writes to disk one at a time in call order, the moved values reach disk before they are
+        //   removed from PREFS_ONESIGNAL so a crash in between can't lose them
+        for (SharedPreferences.Editor editor : movedEditors.values())
+            editor.apply();
+
+        coreEditor.putBoolean(PREFS_OS_LARGE_VALUES_MIGRATED, true);
+        coreEditor.apply();
+
+        if (!movedEditors.isEmpty())
+            OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalPrefs: Moved large values out of " + PREFS_ONESIGNAL + " into " + movedEditors.keySet());
+    }
+
+    private static void putValue(SharedPreferences.Editor editor, String key, Object value) {
+        if (value instanceof String)
+            editor.putString(key, (String)value);
+        else if (value instanceof Boolean)
+            editor.putBoolean(key, (Boolean)value);
+        else if (value instanceof Integer)
+            editor.putInt(key, (Integer)value);
+        else if (value instanceof Long)
+            editor.putLong(key, (Long)value);
+        else if (value instanceof Float)
+            editor.putFloat(key, (Float)value);
+        else if (value instanceof Set)
+            editor.putStringSet(key, (Set<String>)value);
+    }
+
 }
@@ -4,7 +4,6 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
 import org.json.JSONArray;
-import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.net.HttpURLConnection;
@@ -116,7 +115,6 @@ public class OneSignalRemoteParams {
    private static final String FCM_APP_ID = "app_id";
    private static final String FCM_API_KEY = "api_key";
 
-   private static final int INCREASE_BETWEEN_RETRIES = 10_000;
    private static final int MIN_WAIT_BETWEEN_RETRIES = 30_000;
    private static final int MAX_WAIT_BETWEEN_RETRIES = 90_000;
 
@@ -124,7 +122,7 @@ public class OneSignalRemoteParams {
    public static final int DEFAULT_NOTIFICATION_LIMIT = 10;
 
    static void makeAndroidParamsRequest(final String appId, final String userId, final @NonNull Callback callback) {
-      OneSignalRestClient.ResponseHandler responseHandler = new OneSignalRestClient.ResponseHandler() {
+      OneSignalRestClient.ResponseHandler responseHandler = new OneSignalRestClient.JSONResponseHandler() {
          @Override
          void onFailure(int statusCode, String response, Throwable throwable) {
             if (statusCode == HttpURLConnection.HTTP_FORBIDDEN) {
@@ -134,20 +132,24 @@ public class OneSignalRemoteParams {
 
             new Thread(new Runnable() {
                public void run() {
-                  int sleepTime = MIN_WAIT_BETWEEN_RETRIES + androidParamsRetries * INCREASE_BETWEEN_RETRIES;
-                  if (sleepTime > MAX_WAIT_BETWEEN_RETRIES)
-                     sleepTime = MAX_WAIT_BETWEEN_RETRIES;
+                  androidParamsRetries++;
+                  long sleepTime = OSRetryPolicy.getRetryDelay("apps/" + appId + "/android_params.js", androidParamsRetries, MIN_WAIT_BETWEEN_RETRIES, MAX_WAIT_BETWEEN_RETRIES);
 
                   OneSignal.Log(OneSignal.LOG_LEVEL.INFO, "Failed to get Android parameters, trying again in " + (sleepTime / 1_000) +  " seconds.");
-                  OSUtils.sleep(sleepTime);
-                  androidParamsRetries++;
+                  OSUtils.sleep((int) sleepTime);
                   makeAndroidParamsRequest(appId, userId, callback);
                }
             }, "OS_PARAMS_REQUEST").start();
          }
 
          @Override
-         void onSuccess(String response) {
+         void onSuccessWithInvalidJSON(String response, Throwable throwable) {
+            OneSignal.Log(OneSignal.LOG_LEVEL.FATAL, "Error parsing android_params!: ", throwable);
+            OneSignal.Log(OneSignal.LOG_LEVEL.FATAL, "Response that errored from android_params!: " + response);
+         }
+
+         @Override
+         void onSuccess(JSONObject response) {
             processJson(response, callback);
          }
       };
@@ -160,17 +162,7 @@ public class OneSignalRemoteParams {
       OneSignalRestClient.get(params_url, responseHandler, OneSignalRestClient.CACHE_KEY_REMOTE_PARAMS);
    }
 
-   static private void processJson(String json, final @NonNull Callback callBack) {
-      final JSONObject responseJson;
-      try {
-         responseJson = new JSONObject(json);
-      }
-      catch (NullPointerException | JSONException t) {
-         OneSignal.Log(OneSignal.LOG_LEVEL.FATAL, "Error parsing android_params!: ", t);
-         OneSignal.Log(OneSignal.LOG_LEVEL.FATAL, "Response that errored from android_params!: " + json);
-         return;
-      }
-
+   static private void processJson(final JSONObject responseJson, final @NonNull Callback callBack) {
       Params params = new Params() {{
          enterprise = responseJson.optBoolean("enterp", false);
          useEmailAuth = responseJson.optBoolean("require_email_auth", false);
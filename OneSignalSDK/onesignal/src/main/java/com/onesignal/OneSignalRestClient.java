@@ -32,6 +32,7 @@ import android.os.Build;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
@@ -39,11 +40,13 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Scanner;
-import java.util.regex.Matcher;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
 
 class OneSignalRestClient {
    static abstract class ResponseHandler {
@@ -51,6 +54,31 @@ class OneSignalRestClient {
       void onFailure(int statusCode, String response, Throwable throwable) {}
    }
 
+   /**
+    * Gets successful responses as a JSONObject decoded straight from the connection's stream.
+    * Responses that only exist as a String, such as an etag cached body, are parsed once before being handed over.
+    */
+   static abstract class JSONResponseHandler extends ResponseHandler {
+      abstract void onSuccess(@NonNull JSONObject response);
+
+      // The request succeeded but its body is not a JSON object, response is null if it was streamed
+      void onSuccessWithInvalidJSON(@Nullable String response, Throwable throwable) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "OneSignalRestClient: Response is not a valid JSON object: " + response, throwable);
+      }
+
+      @Override
+      void onSuccess(String response) {
+         JSONObject jsonResponse;
+         try {
+            jsonResponse = new JSONObject(response);
+         } catch (NullPointerException | JSONException e) {
+            onSuccessWithInvalidJSON(response, e);
+            return;
+         }
+         onSuccess(jsonResponse);
+      }
+   }
+
    static final String CACHE_KEY_GET_TAGS = "CACHE_KEY_GET_TAGS";
    static final String CACHE_KEY_REMOTE_PARAMS = "CACHE_KEY_REMOTE_PARAMS";
 
@@ -58,36 +86,116 @@ class OneSignalRestClient {
    private static final String OS_ACCEPT_HEADER = "application/vnd.onesignal.v" + OS_API_VERSION + "+json";
    private static final String BASE_URL = "https://api.onesignal.com/";
    
+   // External ids are sent as the app set them, org.json would write any '/' in them as "\/"
+   private static final Set<String> UNESCAPED_SLASH_KEYS = Collections.singleton(UserStateSynchronizer.EXTERNAL_USER_ID);
+
+   // Ids in paths are collapsed so per endpoint state applies to the endpoint, not just one player or notification
+   private static final Pattern ID_SEGMENT = Pattern.compile("[0-9a-fA-F-]{16,}");
+
    private static final int THREAD_ID = 10000;
-   private static final int TIMEOUT = 120_000;
+   static final int TIMEOUT = 120_000;
    private static final int GET_TIMEOUT = 60_000;
    
-   private static int getThreadTimeout(int timeout) {
+   // Requests, their timeout enforcement and their callbacks all share these threads
+   static final int REQUEST_POOL_SIZE = 4;
+   private static final long REQUEST_POOL_KEEP_ALIVE = 30_000;
+
+   private static final Object EXECUTOR_LOCK = new Object();
+   private static OSRestRequestExecutor requestExecutor;
+
+   private static final Object SOCKET_FACTORY_LOCK = new Object();
+   private static OSHandshakeCountingSocketFactory sslSocketFactory;
+   private static final AtomicLong httpsResponseCount = new AtomicLong();
+
+   static int getThreadTimeout(int timeout) {
       return timeout + 5_000;
    }
 
+   private static long getPoolKeepAliveTime() {
+      return REQUEST_POOL_KEEP_ALIVE;
+   }
+
+   private static OSRestRequestExecutor getRequestExecutor() {
+      synchronized (EXECUTOR_LOCK) {
+         if (requestExecutor == null)
+            requestExecutor = new OSRestRequestExecutor(REQUEST_POOL_SIZE, getPoolKeepAliveTime());
+         return requestExecutor;
+      }
+   }
+
+   /**
+    * Runs a task on the request pool, for work that makes several *Sync requests one after the other
+    */
+   static void executeOnRequestPool(@NonNull Runnable task) {
+      getRequestExecutor().execute(task);
+   }
+
+   /**
+    * Number of requests that had to open a new TLS connection
+    */
+   static long getHandshakeCount() {
+      synchronized (SOCKET_FACTORY_LOCK) {
+         return sslSocketFactory == null ? 0 : sslSocketFactory.getHandshakeCount();
+      }
+   }
+
+   /**
+    * Number of requests that got their response over an already open connection from the pool.
+    * Requests that failed before getting a response aren't counted.
+    */
+   static long getReusedConnectionCount() {
+      return Math.max(0, httpsResponseCount.get() - getHandshakeCount());
+   }
+
+   static String endpointKey(@NonNull String url) {
+      int queryStart = url.indexOf('?');
+      String path = queryStart == -1 ? url : url.substring(0, queryStart);
+
+      StringBuilder key = new StringBuilder(path.length());
+      for (String segment : path.split("/")) {
+         if (key.length() > 0)
+            key.append('/');
+         key.append(ID_SEGMENT.matcher(segment).matches() ? "{id}" : segment);
+      }
+      return key.toString();
+   }
+
+   private static SSLSocketFactory getSSLSocketFactory(HttpsURLConnection con) {
+      synchronized (SOCKET_FACTORY_LOCK) {
+         if (sslSocketFactory == null) {
+            SSLSocketFactory factory = con.getSSLSocketFactory();
+            // https://github.com/OneSignal/OneSignal-Android-SDK/issues/1465
+            // Android 4.4 and older devices fail to register to onesignal.com to due it's TLS1.2+ requirement
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP_MR1)
+               factory = new TLS12SocketFactory(factory);
+            sslSocketFactory = new OSHandshakeCountingSocketFactory(factory);
+         }
+         return sslSocketFactory;
+      }
+   }
+
    public static void put(final String url, final JSONObject jsonBody, final ResponseHandler responseHandler) {
-      new Thread(new Runnable() {
+      getRequestExecutor().execute(new Runnable() {
          public void run() {
             makeRequest(url, "PUT", jsonBody, responseHandler, TIMEOUT, null);
          }
-      }, "OS_REST_ASYNC_PUT").start();
+      });
    }
 
    public static void post(final String url, final JSONObject jsonBody, final ResponseHandler responseHandler) {
-      new Thread(new Runnable() {
+      getRequestExecutor().execute(new Runnable() {
          public void run() {
             makeRequest(url, "POST", jsonBody, responseHandler, TIMEOUT, null);
          }
-      }, "OS_REST_ASYNC_POST").start();
+      });
    }
 
    public static void get(final String url, final ResponseHandler responseHandler, @NonNull final String cacheKey) {
-      new Thread(new Runnable() {
+      getRequestExecutor().execute(new Runnable() {
          public void run() {
             makeRequest(url, null, null, responseHandler, GET_TIMEOUT, cacheKey);
          }
-      }, "OS_REST_ASYNC_GET").start();
+      });
    }
 
    public static void getSync(final String url, final ResponseHandler responseHandler, @NonNull String cacheKey) {
@@ -110,32 +218,46 @@ class OneSignalRestClient {
       if (method != null && OneSignal.shouldLogUserPrivacyConsentErrorMessageForMethodName(null))
          return;
 
-      final Thread[] callbackThread = new Thread[1];
-      Thread connectionThread = new Thread(new Runnable() {
-         public void run() {
-            callbackThread[0] = startHTTPConnection(url, method, jsonBody, responseHandler, timeout, cacheKey);
-         }
-      }, "OS_HTTPConnection");
-      
-      connectionThread.start();
-      
-      // getResponseCode() can hang past it's timeout setting so join it's thread to ensure it is timing out.
+      // The endpoint asked us to hold off or keeps failing, don't add to its load
+      if (!OSRetryPolicy.allowRequest(url)) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Backing off, not making request to: " + BASE_URL + url);
+         Runnable callback = callResponseHandlerOnFailure(responseHandler, OSRetryPolicy.BACKED_OFF, null, new OSThrowable.OSRequestBackedOffException(url));
+         if (callback != null)
+            callback.run();
+         return;
+      }
+
+      // The request runs on the calling thread, which is either a pooled thread or the caller of a *Sync method.
+      // getResponseCode() can hang past it's timeout setting so a watchdog aborts the request if it does.
+      OSRestRequestExecutor.Watchdog watchdog = getRequestExecutor().startWatchdog(getThreadTimeout(timeout));
+      Runnable callback;
       try {
-         // Sequentially wait for connectionThread to execute
-         connectionThread.join(getThreadTimeout(timeout));
-         if (connectionThread.getState() != Thread.State.TERMINATED)
-            connectionThread.interrupt();
-         if (callbackThread[0] != null)
-            callbackThread[0].join();
-      } catch (InterruptedException e) {
-         e.printStackTrace();
+         callback = startHTTPConnection(url, method, jsonBody, responseHandler, timeout, cacheKey, watchdog, false);
+      } finally {
+         watchdog.disarm();
       }
+
+      // Callbacks run once the watchdog is disarmed so they don't count towards the request timeout
+      if (callback != null)
+         callback.run();
+
+      OSTransportMetrics.notifyListener();
    }
    
-   private static Thread startHTTPConnection(String url, String method, JSONObject jsonBody, ResponseHandler responseHandler, int timeout, @Nullable String cacheKey) {
+   /**
+    * @param gzipFallback true when resending a body the endpoint rejected gzip encoded
+    */
+   private static Runnable startHTTPConnection(String url, String method, JSONObject jsonBody, ResponseHandler responseHandler, int timeout, @Nullable String cacheKey, OSRestRequestExecutor.Watchdog watchdog, boolean gzipFallback) {
       int httpResponse = -1;
       HttpURLConnection con = null;
-      Thread callbackThread;
+      Runnable callback;
+      boolean reusable = false;
+      boolean gzipRequest = false;
+      int plainBodyLength = 0;
+      boolean timedOut = false;
+      long bytesSent = 0;
+      OSCountingInputStream receivedStream = null;
+      long startTime = OneSignal.getTime().getElapsedRealtime();
 
       if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
          TrafficStats.setThreadStatsTag(THREAD_ID);
@@ -144,12 +266,12 @@ class OneSignalRestClient {
       try {
          OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Making request to: " + BASE_URL + url);
          con = newHttpURLConnection(url);
+         watchdog.watch(con);
 
-         // https://github.com/OneSignal/OneSignal-Android-SDK/issues/1465
-         // Android 4.4 and older devices fail to register to onesignal.com to due it's TLS1.2+ requirement
-         if (Build.VERSION.SDK_INT < Build.VERSION_CODES.LOLLIPOP_MR1 && con instanceof HttpsURLConnection) {
+         // The same factory instance on every request lets the platform pool hand back its idle connections
+         if (con instanceof HttpsURLConnection) {
             HttpsURLConnection conHttps = (HttpsURLConnection) con;
-            conHttps.setSSLSocketFactory(new TLS12SocketFactory(conHttps.getSSLSocketFactory()));
+            conHttps.setSSLSocketFactory(getSSLSocketFactory(conHttps));
          }
 
          con.setUseCaches(false);
@@ -157,6 +279,7 @@ class OneSignalRestClient {
          con.setReadTimeout(timeout);
          con.setRequestProperty("SDK-Version", "onesignal/android/" + OneSignal.getSdkVersionRaw());
          con.setRequestProperty("Accept", OS_ACCEPT_HEADER);
+         con.setRequestProperty(OSGzipEncoding.HEADER_ACCEPT_ENCODING, OSGzipEncoding.GZIP);
 
          if (jsonBody != null)
             con.setDoInput(true);
@@ -168,147 +291,210 @@ class OneSignalRestClient {
          }
 
          if (jsonBody != null) {
-            String strJsonBody = jsonBody.toString();
-
-            Pattern eidPattern = Pattern.compile("(?<=\"external_user_id\":\").*\\\\/.*?(?=\",|\"\\})");
-            Matcher eidMatcher = eidPattern.matcher(strJsonBody);
-
-            if (eidMatcher.find()) {
-               String matched = eidMatcher.group(0);
-               if (matched != null) {
-                  String unescapedEID = matched.replace("\\/", "/");
-                  strJsonBody = eidMatcher.replaceAll(unescapedEID);
-               }
-            }
+            String strJsonBody = JSONUtils.toStringWithUnescapedSlashes(jsonBody, UNESCAPED_SLASH_KEYS);
 
             OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: " + method + " SEND JSON: " + strJsonBody);
 
             byte[] sendBytes = strJsonBody.getBytes("UTF-8");
+            byte[] gzipBytes = gzipFallback ? null : OSGzipEncoding.compressRequest(url, sendBytes);
+            if (gzipBytes != null) {
+               plainBodyLength = sendBytes.length;
+               con.setRequestProperty(OSGzipEncoding.HEADER_CONTENT_ENCODING, OSGzipEncoding.GZIP);
+               sendBytes = gzipBytes;
+               gzipRequest = true;
+            }
             con.setFixedLengthStreamingMode(sendBytes.length);
+            bytesSent = sendBytes.length;
 
             OutputStream outputStream = con.getOutputStream();
             outputStream.write(sendBytes);
+            outputStream.close();
          }
 
-         if (cacheKey != null) {
-            String eTag = OneSignalPrefs.getString(
-               OneSignalPrefs.PREFS_ONESIGNAL,
-               OneSignalPrefs.PREFS_OS_ETAG_PREFIX + cacheKey,
-               null
-            );
-            if (eTag != null) {
-               con.setRequestProperty("if-none-match", eTag);
-               OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Adding header if-none-match: " + eTag);
+         OSHttpResponseCache responseCache = cacheKey != null ? OneSignal.getHttpResponseCache() : null;
+         if (responseCache != null) {
+            OSHttpResponseCache.Validators validators = responseCache.getValidators(cacheKey);
+            if (validators != null && validators.eTag != null) {
+               con.setRequestProperty("if-none-match", validators.eTag);
+               OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Adding header if-none-match: " + validators.eTag);
+            }
+            if (validators != null && validators.lastModified != null) {
+               con.setRequestProperty("if-modified-since", validators.lastModified);
+               OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Adding header if-modified-since: " + validators.lastModified);
             }
          }
 
          // Network request is made from getResponseCode()
          httpResponse = con.getResponseCode();
+         if (con instanceof HttpsURLConnection)
+            httpsResponseCount.incrementAndGet();
 
          OneSignal.Log(OneSignal.LOG_LEVEL.VERBOSE, "OneSignalRestClient: After con.getResponseCode to: " + BASE_URL + url);
+         OSRetryPolicy.onResponse(url, httpResponse, con.getHeaderField("Retry-After"));
+
+         // The endpoint may not take gzip bodies, send the same request again uncompressed
+         if (gzipRequest && OSGzipEncoding.shouldFallBack(url, httpResponse)) {
+            receivedStream = countingStream(con.getErrorStream());
+            reusable = drainAndClose(OSGzipEncoding.decodeResponse(url, con, receivedStream));
+            return startHTTPConnection(url, method, jsonBody, responseHandler, timeout, cacheKey, watchdog, true);
+         }
+         boolean accepted = httpResponse >= HttpURLConnection.HTTP_OK && httpResponse < HttpURLConnection.HTTP_MULT_CHOICE;
+         if (gzipRequest && accepted)
+            OSGzipEncoding.onRequestAccepted(url, plainBodyLength, bytesSent);
+         // Only now is it certain the gzip body was what the endpoint rejected
+         if (gzipFallback && accepted)
+            OSGzipEncoding.onFallbackAccepted(url);
 
          switch (httpResponse) {
            case HttpURLConnection.HTTP_NOT_MODIFIED: // 304
-               String cachedResponse = OneSignalPrefs.getString(
-                  OneSignalPrefs.PREFS_ONESIGNAL,
-                  OneSignalPrefs.PREFS_OS_HTTP_CACHE_PREFIX + cacheKey,
-                  null
-               );
+               String cachedResponse = responseCache != null ? responseCache.getBody(cacheKey) : null;
                OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: " + (method == null ? "GET" : method) + " - Using Cached response due to 304: " + cachedResponse);
-               callbackThread = callResponseHandlerOnSuccess(responseHandler, cachedResponse);
+               receivedStream = countingStream(con.getInputStream());
+               reusable = drainAndClose(receivedStream);
+               callback = callResponseHandlerOnSuccess(responseHandler, cachedResponse);
             break;
             case HttpURLConnection.HTTP_ACCEPTED:
             case HttpURLConnection.HTTP_OK: // 200
                OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Successfully finished request to: " + BASE_URL + url);
 
-               InputStream inputStream = con.getInputStream();
-               Scanner scanner = new Scanner(inputStream, "UTF-8");
-               String json = scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
-               scanner.close();
+               receivedStream = countingStream(con.getInputStream());
+               InputStream inputStream = OSGzipEncoding.decodeResponse(url, con, receivedStream);
+               int contentLength = con.getContentLength();
+               String eTag = responseCache != null ? con.getHeaderField("etag") : null;
+               String lastModified = responseCache != null ? con.getHeaderField("last-modified") : null;
+               boolean cacheResponse = eTag != null || lastModified != null;
+
+               // A body that goes into the response cache has to be kept as a String, otherwise JSON handlers get it decoded from the stream
+               if (responseHandler instanceof JSONResponseHandler && !cacheResponse) {
+                  JSONObject jsonResponse;
+                  try {
+                     jsonResponse = OSResponseReader.readJSONObject(inputStream, contentLength);
+                  } catch (OSResponseReader.InvalidJSONException e) {
+                     callback = callResponseHandlerOnInvalidJSON((JSONResponseHandler) responseHandler, e);
+                     break;
+                  }
+                  if (OneSignal.atLogLevel(OneSignal.LOG_LEVEL.DEBUG))
+                     OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: " + (method == null ? "GET" : method) + " RECEIVED JSON: " + jsonResponse);
+
+                  reusable = true;
+                  callback = callResponseHandlerOnSuccess((JSONResponseHandler) responseHandler, jsonResponse);
+                  break;
+               }
+
+               String json = OSResponseReader.readString(inputStream, contentLength);
                OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: " + (method == null ? "GET" : method) + " RECEIVED JSON: " + json);
 
-               if (cacheKey != null) {
-                  String eTag = con.getHeaderField("etag");
-                  if (eTag != null) {
-                     OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Response has etag of " + eTag + " so caching the response.");
-                     OneSignalPrefs.saveString(
-                        OneSignalPrefs.PREFS_ONESIGNAL,
-                        OneSignalPrefs.PREFS_OS_ETAG_PREFIX + cacheKey,
-                        eTag
-                     );
-                     OneSignalPrefs.saveString(
-                        OneSignalPrefs.PREFS_ONESIGNAL,
-                        OneSignalPrefs.PREFS_OS_HTTP_CACHE_PREFIX + cacheKey,
-                        json
-                     );
-                  }
+               if (cacheResponse) {
+                  OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Response has etag of " + eTag + " and last-modified of " + lastModified + " so caching the response.");
+                  responseCache.put(cacheKey, eTag, lastModified, json);
                }
 
-               callbackThread = callResponseHandlerOnSuccess(responseHandler, json);
+               reusable = true;
+               callback = callResponseHandlerOnSuccess(responseHandler, json);
                break;
             default: // Request failed
                OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Failed request to: " + BASE_URL + url);
                inputStream = con.getErrorStream();
                if (inputStream == null)
                   inputStream = con.getInputStream();
+               receivedStream = countingStream(inputStream);
+               inputStream = OSGzipEncoding.decodeResponse(url, con, receivedStream);
 
                String jsonResponse = null;
                if (inputStream != null) {
-                  scanner = new Scanner(inputStream, "UTF-8");
-                  jsonResponse = scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
-                  scanner.close();
+                  jsonResponse = OSResponseReader.readString(inputStream, con.getContentLength());
                   OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "OneSignalRestClient: " + method + " RECEIVED JSON: " + jsonResponse);
+                  reusable = true;
                }
                else
                   OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "OneSignalRestClient: " + method + " HTTP Code: " + httpResponse + " No response body!");
 
-               callbackThread = callResponseHandlerOnFailure(responseHandler, httpResponse, jsonResponse, null);
+               callback = callResponseHandlerOnFailure(responseHandler, httpResponse, jsonResponse, null);
          }
       } catch (Throwable t) {
          if (t instanceof java.net.ConnectException || t instanceof java.net.UnknownHostException)
             OneSignal.Log(OneSignal.LOG_LEVEL.INFO, "OneSignalRestClient: Could not send last request, device is offline. Throwable: " + t.getClass().getName());
          else
             OneSignal.Log(OneSignal.LOG_LEVEL.WARN, "OneSignalRestClient: " + method + " Error thrown from network stack. ", t);
-   
-         callbackThread = callResponseHandlerOnFailure(responseHandler, httpResponse, null, t);
+
+         if (httpResponse == -1)
+            OSRetryPolicy.onResponse(url, -1, null);
+         timedOut = t instanceof java.net.SocketTimeoutException || watchdog.hasFired();
+         callback = callResponseHandlerOnFailure(responseHandler, httpResponse, null, t);
       }
       finally {
-         if (con != null)
+         // A fully read and closed response leaves the socket in the platform's keep-alive pool for the next request,
+         //   disconnect() would close it. Anything left half read can't be reused so it is still torn down.
+         if (con != null && !reusable)
             con.disconnect();
+
+         long latency = OneSignal.getTime().getElapsedRealtime() - startTime;
+         OSTransportMetrics.record(url, httpResponse, latency, bytesSent, receivedStream == null ? 0 : receivedStream.getCount(), timedOut);
       }
       
-      return callbackThread;
+      return callback;
+   }
+
+   @Nullable
+   private static OSCountingInputStream countingStream(@Nullable InputStream inputStream) {
+      return inputStream == null ? null : new OSCountingInputStream(inputStream);
+   }
+
+   // Reads whatever is left of a response so its connection can go back to the pool
+   private static boolean drainAndClose(@Nullable InputStream inputStream) {
+      if (inputStream == null)
+         return true;
+
+      try {
+         byte[] buffer = new byte[1024];
+         while (inputStream.read(buffer) != -1);
+         inputStream.close();
+         return true;
+      } catch (IOException e) {
+         OneSignal.Log(OneSignal.LOG_LEVEL.DEBUG, "OneSignalRestClient: Could not drain response, connection won't be reused", e);
+         return false;
+      }
    }
    
    
-   // These helper methods run the callback a new thread so they don't count towards the fallback thread join timer.
+   // These helper methods only build the callback, makeRequest runs it once the request's watchdog is disarmed.
    
-   private static Thread callResponseHandlerOnSuccess(final ResponseHandler handler, final String response) {
+   private static Runnable callResponseHandlerOnSuccess(final ResponseHandler handler, final String response) {
       if (handler == null)
          return null;
       
-      Thread thread = new Thread(new Runnable() {
+      return new Runnable() {
          public void run() {
             handler.onSuccess(response);
          }
-      }, "OS_REST_SUCCESS_CALLBACK");
-      thread.start();
-      
-      return thread;
+      };
    }
    
-   private static Thread callResponseHandlerOnFailure(final ResponseHandler handler, final int statusCode, final String response, final Throwable throwable) {
+   private static Runnable callResponseHandlerOnSuccess(final JSONResponseHandler handler, final JSONObject response) {
+      return new Runnable() {
+         public void run() {
+            handler.onSuccess(response);
+         }
+      };
+   }
+
+   private static Runnable callResponseHandlerOnInvalidJSON(final JSONResponseHandler handler, final Throwable throwable) {
+      return new Runnable() {
+         public void run() {
+            handler.onSuccessWithInvalidJSON(null, throwable);
+         }
+      };
+   }
+
+   private static Runnable callResponseHandlerOnFailure(final ResponseHandler handler, final int statusCode, final String response, final Throwable throwable) {
       if (handler == null)
          return null;
    
-      Thread thread = new Thread(new Runnable() {
+      return new Runnable() {
          public void run() {
             handler.onFailure(statusCode, response, throwable);
          }
-      }, "OS_REST_FAILURE_CALLBACK");
-      thread.start();
-      
-      return thread;
+      };
    }
 
    private static HttpURLConnection newHttpURLConnection(String url) throws IOException {
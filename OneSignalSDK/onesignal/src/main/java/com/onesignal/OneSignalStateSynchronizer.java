@@ -185,6 +185,12 @@ class OneSignalStateSynchronizer {
       }
    }
 
+   static void incrementTag(String key, long amount) {
+      getPushStateSynchronizer().incrementTag(key, amount);
+      getEmailStateSynchronizer().incrementTag(key, amount);
+      getSMSStateSynchronizer().incrementTag(key, amount);
+   }
+
    static void setSMSNumber(String smsNumber, String smsAuthHash) {
       getPushStateSynchronizer().setSMSNumber(smsNumber, smsAuthHash);
       getSMSStateSynchronizer().setChannelId(smsNumber, smsAuthHash);
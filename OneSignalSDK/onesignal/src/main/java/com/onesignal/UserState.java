@@ -2,6 +2,7 @@ package com.onesignal;
 
 import androidx.annotation.NonNull;
 
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -59,6 +60,13 @@ abstract class UserState {
 
     private JSONObject dependValues, syncValues;
 
+    // Top level sync keys, and tag keys, that may differ from the other UserState of the current / to sync pair.
+    // Sync diffs only look at these, keys found equal are dropped on the next diff.
+    private final HashSet<String> dirtySyncKeys = new HashSet<>();
+    private final HashSet<String> dirtyTagKeys = new HashSet<>();
+    // Set while syncValues were loaded or replaced wholesale, any key may differ so the next diff walks all of them
+    private boolean allSyncKeysDirty = true;
+
     public ImmutableJSONObject getDependValues() {
         try {
             return new ImmutableJSONObject(getDependValuesCopy());
@@ -98,6 +106,7 @@ abstract class UserState {
     public void setSyncValues(@NonNull JSONObject syncValues) {
         synchronized (LOCK) {
             this.syncValues = syncValues;
+            allSyncKeysDirty = true;
         }
     }
 
@@ -139,7 +148,7 @@ abstract class UserState {
                 syncValuesToPut.put("loc_bg", changedTo.dependValues.opt("loc_bg"));
                 syncValuesToPut.put("loc_time_stamp", changedTo.dependValues.opt("loc_time_stamp"));
 
-                putValues(changedTo.syncValues, syncValuesToPut);
+                changedTo.putOnSyncValues(syncValuesToPut);
 
                 return LOCATION_FIELDS_SET;
             }
@@ -151,6 +160,14 @@ abstract class UserState {
     void putOnSyncValues(String key, Object value) throws JSONException {
         synchronized (LOCK) {
             syncValues.put(key, value);
+            dirtySyncKeys.add(key);
+        }
+    }
+
+    private void putOnSyncValues(HashMap<String, Object> values) throws JSONException {
+        synchronized (LOCK) {
+            putValues(syncValues, values);
+            dirtySyncKeys.addAll(values.keySet());
         }
     }
 
@@ -172,6 +189,7 @@ abstract class UserState {
     void removeFromSyncValues(String key) {
         synchronized (LOCK) {
             syncValues.remove(key);
+            dirtySyncKeys.add(key);
         }
     }
 
@@ -180,6 +198,7 @@ abstract class UserState {
             for (String key : keys) {
                 syncValues.remove(key);
             }
+            dirtySyncKeys.addAll(keys);
         }
     }
 
@@ -204,7 +223,7 @@ abstract class UserState {
             syncValuesToPut.put("long",point.log);
             syncValuesToPut.put("loc_acc", point.accuracy);
             syncValuesToPut.put("loc_type", point.type);
-            putValues(syncValues, syncValuesToPut);
+            putOnSyncValues(syncValuesToPut);
 
             HashMap<String, Object> dependValuesToPut = new HashMap<>();
             dependValuesToPut.put("loc_bg", point.bg);
@@ -224,7 +243,7 @@ abstract class UserState {
             syncValuesToPut.put("loc_type", null);
             syncValuesToPut.put("loc_bg", null);
             syncValuesToPut.put("loc_time_stamp", null);
-            putValues(syncValues, syncValuesToPut);
+            putOnSyncValues(syncValuesToPut);
 
             HashMap<String, Object> dependValuesToPut = new HashMap<>();
             dependValuesToPut.put("loc_bg", null);
@@ -239,7 +258,7 @@ abstract class UserState {
         addDependFields();
         newState.addDependFields();
         Set<String> includeFields = getGroupChangeFields(newState);
-        JSONObject sendJson = generateJsonDiff(syncValues, newState.syncValues, null, includeFields);
+        JSONObject sendJson = generateSyncValuesDiff(newState, includeFields);
 
         if (!isSessionCall && sendJson.toString().equals("{}"))
             return null;
@@ -262,9 +281,137 @@ abstract class UserState {
         return sendJson;
     }
 
+    /**
+     * Diff of the sync values, only looking at the keys changed on either state since they were last found equal
+     */
+    private JSONObject generateSyncValuesDiff(UserState newState, Set<String> includeFields) {
+        synchronized (LOCK) {
+            JSONObject diff;
+            if (allSyncKeysDirty || newState.allSyncKeysDirty)
+                diff = JSONUtils.generateJsonDiff(syncValues, newState.syncValues, null, includeFields);
+            else
+                diff = generateDirtySyncValuesDiff(newState, includeFields);
+
+            resetDirtyKeys(newState, diff);
+            return diff;
+        }
+    }
+
+    private JSONObject generateDirtySyncValuesDiff(UserState newState, Set<String> includeFields) {
+        JSONObject cur = new JSONObject();
+        JSONObject changedTo = new JSONObject();
+
+        HashSet<String> keys = new HashSet<>(dirtySyncKeys);
+        keys.addAll(newState.dirtySyncKeys);
+        if (includeFields != null)
+            keys.addAll(includeFields);
+        for (String key : keys) {
+            copyValue(syncValues, cur, key);
+            copyValue(newState.syncValues, changedTo, key);
+        }
+
+        // When the tags object itself was replaced it is compared whole above
+        if (!keys.contains(TAGS)) {
+            HashSet<String> tagKeys = new HashSet<>(dirtyTagKeys);
+            tagKeys.addAll(newState.dirtyTagKeys);
+            JSONObject curTags = syncValues.optJSONObject(TAGS);
+            JSONObject newTags = newState.syncValues.optJSONObject(TAGS);
+            if (!tagKeys.isEmpty() && newTags != null) {
+                JSONObject curDirtyTags = new JSONObject();
+                JSONObject newDirtyTags = new JSONObject();
+                for (String key : tagKeys) {
+                    if (curTags != null)
+                        copyValue(curTags, curDirtyTags, key);
+                    copyValue(newTags, newDirtyTags, key);
+                }
+
+                if (curTags != null)
+                    putValue(cur, TAGS, curDirtyTags);
+                putValue(changedTo, TAGS, newDirtyTags);
+            }
+        }
+
+        return JSONUtils.generateJsonDiff(cur, changedTo, null, includeFields);
+    }
+
+    private static void copyValue(JSONObject from, JSONObject to, String key) {
+        Object value = from.opt(key);
+        if (value != null)
+            putValue(to, key, value);
+    }
+
+    private static void putValue(JSONObject to, String key, Object value) {
+        try {
+            to.put(key, value);
+        } catch (JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Keys missing from the diff are equal on both states, only the ones in it are diffed next time
+     */
+    private void resetDirtyKeys(UserState newState, JSONObject diff) {
+        allSyncKeysDirty = false;
+        dirtySyncKeys.clear();
+        dirtyTagKeys.clear();
+        newState.allSyncKeysDirty = false;
+        newState.dirtySyncKeys.clear();
+        newState.dirtyTagKeys.clear();
+
+        Iterator<String> keys = diff.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            JSONObject diffTags = TAGS.equals(key) ? diff.optJSONObject(TAGS) : null;
+            if (diffTags != null) {
+                Iterator<String> tagKeys = diffTags.keys();
+                while (tagKeys.hasNext())
+                    newState.dirtyTagKeys.add(tagKeys.next());
+                continue;
+            }
+
+            // Arrays are diffed into key_a and key_d entries
+            String arrayKey = key.length() > 2 ? key.substring(0, key.length() - 2) : null;
+            if ((key.endsWith("_a") || key.endsWith("_d")) && newState.syncValues.opt(arrayKey) instanceof JSONArray)
+                newState.dirtySyncKeys.add(arrayKey);
+            else
+                newState.dirtySyncKeys.add(key);
+        }
+    }
+
+    private void markSyncKeysDirty(JSONObject changedTo) {
+        Iterator<String> keys = changedTo.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            JSONObject changedTags = TAGS.equals(key) ? changedTo.optJSONObject(TAGS) : null;
+            if (changedTags != null && syncValues.has(TAGS))
+                markTagKeysDirty(changedTags);
+            else
+                dirtySyncKeys.add(key);
+        }
+    }
+
+    private void markTagKeysDirty(JSONObject changedTags) {
+        Iterator<String> tagKeys = changedTags.keys();
+        while (tagKeys.hasNext())
+            dirtyTagKeys.add(tagKeys.next());
+    }
+
     private void loadState() {
+        String snapshot = OneSignalPrefs.getString(OneSignalPrefs.PREFS_USER_STATE,
+                OneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_SNAPSHOT_ + persistKey, null);
+        if (snapshot != null) {
+            OSUserStateSnapshot.Values values = OSUserStateSnapshot.decode(snapshot);
+            if (values != null) {
+                setDependValues(values.dependValues);
+                setSyncValues(values.syncValues);
+                return;
+            }
+        }
+
+        // Saved as JSON before snapshots were added, the next persistState() converts them
         // null if first run of a 2.0+ version.
-        String dependValuesStr = OneSignalPrefs.getString(OneSignalPrefs.PREFS_ONESIGNAL,
+        String dependValuesStr = OneSignalPrefs.getString(OneSignalPrefs.PREFS_USER_STATE,
                 OneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_DEPENDVALYES_ + persistKey,null);
 
         if (dependValuesStr == null) {
@@ -299,7 +446,7 @@ abstract class UserState {
             }
         }
 
-        String syncValuesStr = OneSignalPrefs.getString(OneSignalPrefs.PREFS_ONESIGNAL,
+        String syncValuesStr = OneSignalPrefs.getString(OneSignalPrefs.PREFS_USER_STATE,
                 OneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_SYNCVALYES_ + persistKey,null);
 
         JSONObject syncValues = new JSONObject();
@@ -325,16 +472,20 @@ abstract class UserState {
                 if (syncValues.has(EXTERNAL_USER_ID_AUTH_HASH) &&
                         ((syncValues.has(EXTERNAL_USER_ID) && syncValues.get(EXTERNAL_USER_ID).toString() == "") || !syncValues.has(EXTERNAL_USER_ID))) {
                     syncValues.remove(EXTERNAL_USER_ID_AUTH_HASH);
+                    dirtySyncKeys.add(EXTERNAL_USER_ID_AUTH_HASH);
                     // the auth_hash is popped above but external user id may still remain as ""
                 }
             } catch (JSONException e) {
                 e.printStackTrace();
             }
 
-            OneSignalPrefs.saveString(OneSignalPrefs.PREFS_ONESIGNAL,
-                    OneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_SYNCVALYES_ + persistKey, syncValues.toString());
-            OneSignalPrefs.saveString(OneSignalPrefs.PREFS_ONESIGNAL,
-                    OneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_DEPENDVALYES_ + persistKey, dependValues.toString());
+            OneSignalPrefs.saveString(OneSignalPrefs.PREFS_USER_STATE,
+                    OneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_SNAPSHOT_ + persistKey, OSUserStateSnapshot.encode(dependValues, syncValues));
+            // The JSON values are only read when there is no snapshot, drop them to keep the prefs file small
+            OneSignalPrefs.saveString(OneSignalPrefs.PREFS_USER_STATE,
+                    OneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_SYNCVALYES_ + persistKey, null);
+            OneSignalPrefs.saveString(OneSignalPrefs.PREFS_USER_STATE,
+                    OneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_DEPENDVALYES_ + persistKey, null);
         }
     }
 
@@ -343,7 +494,10 @@ abstract class UserState {
             generateJsonDiff(dependValues, inDependValues, dependValues, null);
 
         if (inSyncValues != null) {
-            generateJsonDiff(syncValues, inSyncValues, syncValues, null);
+            synchronized (LOCK) {
+                markSyncKeysDirty(inSyncValues);
+                generateJsonDiff(syncValues, inSyncValues, syncValues, null);
+            }
             mergeTags(inSyncValues, null);
         }
 
@@ -352,46 +506,58 @@ abstract class UserState {
     }
 
     void mergeTags(JSONObject inSyncValues, JSONObject omitKeys) {
-        if (!inSyncValues.has(TAGS))
+        JSONObject curTags = inSyncValues.optJSONObject(TAGS);
+        if (curTags == null)
             return;
 
-        try {
-            JSONObject syncValues = getSyncValuesCopy();
-            JSONObject newTags;
-            if (syncValues.has(TAGS)) {
-                try {
-                    newTags = new JSONObject(syncValues.optString(TAGS));
-                } catch (JSONException e) {
+        synchronized (LOCK) {
+            try {
+                // Patched in place, only the keys in inSyncValues are touched
+                boolean hadTags = syncValues.has(TAGS);
+                JSONObject newTags = syncValues.optJSONObject(TAGS);
+                if (newTags == null)
                     newTags = new JSONObject();
+
+                Iterator<String> keys = curTags.keys();
+                String key;
+
+                while (keys.hasNext()) {
+                    key = keys.next();
+                    if ("".equals(curTags.optString(key)))
+                        newTags.remove(key);
+                    else if (omitKeys == null || !omitKeys.has(key))
+                        newTags.put(key, curTags.optString(key));
                 }
-            } else {
-                newTags = new JSONObject();
-            }
-            JSONObject curTags = inSyncValues.optJSONObject(TAGS);
-            Iterator<String> keys = curTags.keys();
-            String key;
-
-            while (keys.hasNext()) {
-                key = keys.next();
-                if ("".equals(curTags.optString(key)))
-                    newTags.remove(key);
-                else if (omitKeys == null || !omitKeys.has(key))
-                    newTags.put(key, curTags.optString(key));
-            }
 
-            synchronized (LOCK) {
-                if (newTags.toString().equals("{}"))
+                // Only the merged tags changed, unless the tags object itself is added or removed
+                if (newTags.length() == 0 || !hadTags)
+                    dirtySyncKeys.add(TAGS);
+                else
+                    markTagKeysDirty(curTags);
+
+                if (newTags.length() == 0)
                     this.syncValues.remove(TAGS);
                 else
                     this.syncValues.put(TAGS, newTags);
+            } catch (JSONException e) {
+                e.printStackTrace();
             }
-        } catch (JSONException e) {
-            e.printStackTrace();
+        }
+    }
+
+    /**
+     * @return the tag's value, null if it isn't set
+     */
+    String getTag(String key) {
+        synchronized (LOCK) {
+            JSONObject tags = syncValues.optJSONObject(TAGS);
+            return tags != null && tags.has(key) ? tags.optString(key) : null;
         }
     }
 
     JSONObject generateJsonDiffFromIntoSyncValued(JSONObject changedTo, Set<String> includeFields) {
         synchronized (LOCK) {
+            markSyncKeysDirty(changedTo);
             return JSONUtils.generateJsonDiff(syncValues, changedTo, syncValues, includeFields);
         }
     }
@@ -2,6 +2,7 @@ package com.onesignal;
 
 import androidx.annotation.Nullable;
 
+import com.onesignal.OSSyncScheduler.Priority;
 import com.onesignal.OneSignalStateSynchronizer.UserStateSynchronizerType;
 
 import org.json.JSONException;
@@ -89,8 +90,8 @@ class UserStatePushSynchronizer extends UserStateSynchronizer {
     }
 
     @Override
-    protected void scheduleSyncToServer() {
-        getNetworkHandlerThread(NetworkHandlerThread.NETWORK_HANDLER_USERSTATE).runNewJobDelayed();
+    protected void scheduleSyncToServer(Priority priority) {
+        runNewJobDelayed(priority);
     }
 
     @Override
@@ -147,7 +148,7 @@ class UserStatePushSynchronizer extends UserStateSynchronizer {
     @Override
     void setSubscription(boolean enable) {
         try {
-            getUserStateForModification().putOnDependValues(USER_SUBSCRIBE_PREF, enable);
+            getUserStateForModification(Priority.HIGH).putOnDependValues(USER_SUBSCRIBE_PREF, enable);
         } catch (JSONException e) {
             e.printStackTrace();
         }
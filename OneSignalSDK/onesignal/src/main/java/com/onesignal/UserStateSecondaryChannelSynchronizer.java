@@ -2,6 +2,7 @@ package com.onesignal;
 
 import androidx.annotation.Nullable;
 
+import com.onesignal.OSSyncScheduler.Priority;
 import com.onesignal.OneSignalStateSynchronizer.UserStateSynchronizerType;
 
 import org.json.JSONException;
@@ -80,13 +81,13 @@ abstract class UserStateSecondaryChannelSynchronizer extends UserStateSynchroniz
     }
 
     @Override
-    protected void scheduleSyncToServer() {
+    protected void scheduleSyncToServer(Priority priority) {
         // Don't make a POST / PUT network call if we never set an email/SMS.
         boolean userNotRegistered = getId() == null && getRegistrationId() == null;
         if (userNotRegistered || OneSignal.getUserId() == null)
             return;
 
-        getNetworkHandlerThread(NetworkHandlerThread.NETWORK_HANDLER_USERSTATE).runNewJobDelayed();
+        runNewJobDelayed(priority);
     }
 
     @Override
@@ -1,10 +1,8 @@
 package com.onesignal;
 
-import android.os.Handler;
-import android.os.HandlerThread;
-
 import androidx.annotation.Nullable;
 
+import com.onesignal.OSSyncScheduler.Priority;
 import com.onesignal.OneSignal.ChangeTagsUpdateHandler;
 import com.onesignal.OneSignal.SendTagsError;
 import com.onesignal.OneSignalStateSynchronizer.UserStateSynchronizerType;
@@ -15,7 +13,10 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.net.HttpURLConnection;
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -101,75 +102,6 @@ abstract class UserStateSynchronizer {
         return externalUserIdUpdateHandlers.size() > 0;
     }
 
-    class NetworkHandlerThread extends HandlerThread {
-        private static final String THREAD_NAME_PREFIX = "OSH_NetworkHandlerThread_";
-        protected static final int NETWORK_HANDLER_USERSTATE = 0;
-
-        int mType;
-
-        Handler mHandler;
-
-        static final int MAX_RETRIES = 3, NETWORK_CALL_DELAY_TO_BUFFER_MS = 5_000;
-        int currentRetry;
-
-        NetworkHandlerThread(int type) {
-            super(THREAD_NAME_PREFIX + UserStateSynchronizer.this.channel);
-            mType = type;
-            start();
-            mHandler = new Handler(getLooper());
-        }
-
-        void runNewJobDelayed() {
-            if (!canMakeUpdates)
-                return;
-
-            synchronized (mHandler) {
-                currentRetry = 0;
-                mHandler.removeCallbacksAndMessages(null);
-                mHandler.postDelayed(getNewRunnable(), NETWORK_CALL_DELAY_TO_BUFFER_MS);
-            }
-        }
-
-        private Runnable getNewRunnable() {
-            switch (mType) {
-                case NETWORK_HANDLER_USERSTATE:
-                    return new Runnable() {
-                        @Override
-                        public void run() {
-                            boolean syncUserState = !runningSyncUserState.get();
-                            if (syncUserState)
-                                syncUserState(false);
-                        }
-                    };
-            }
-
-            return null;
-        }
-
-        void stopScheduledRunnable() {
-            mHandler.removeCallbacksAndMessages(null);
-        }
-
-        // Retries if not passed limit.
-        // Returns true if there retrying or there is another future sync scheduled already
-        boolean doRetry() {
-            synchronized (mHandler) {
-                boolean doRetry = currentRetry < MAX_RETRIES;
-                boolean futureSync = mHandler.hasMessages(0);
-
-                if (doRetry && !futureSync) {
-                    currentRetry++;
-                    mHandler.postDelayed(getNewRunnable(), currentRetry * 15_000);
-                }
-
-                return mHandler.hasMessages(0);
-            }
-        }
-    }
-
-    HashMap<Integer, NetworkHandlerThread> networkHandlerThreads = new HashMap<>();
-    private final Object networkHandlerSyncLock = new Object() {};
-
     protected boolean waitingForSessionResponse = false;
 
     // currentUserState - Current known state of the user on OneSignal's server.
@@ -177,6 +109,12 @@ abstract class UserStateSynchronizer {
     //                    diff will be generated between currentUserState when a sync call is made to the server.
     private UserState currentUserState, toSyncUserState;
 
+    // Tag changes made while the log is being replayed onto toSyncUserState, null once it has been
+    @Nullable
+    private List<OSTagOperationLog.Operation> tagOperationsDuringReplay;
+    // Bumped each time the tag operation log is compacted, only used on the log's thread
+    private int tagOperationLogGeneration;
+
     protected JSONObject generateJsonDiff(JSONObject cur, JSONObject changedTo, JSONObject baseOutput, Set<String> includeFields) {
         synchronized (LOCK) {
             return JSONUtils.generateJsonDiff(cur, changedTo, baseOutput, includeFields);
@@ -197,14 +135,137 @@ abstract class UserStateSynchronizer {
     protected UserState getToSyncUserState() {
         if (toSyncUserState == null) {
             synchronized (LOCK) {
-                if (toSyncUserState == null)
+                if (toSyncUserState == null) {
                     toSyncUserState = newUserState(TOSYNC_STATE, true);
+                    replayTagOperations();
+                }
             }
         }
 
         return toSyncUserState;
     }
 
+    /**
+     * Reapplies tag changes not synced yet, in case the pending state wasn't persisted after them.
+     * The log is compacted on its own thread, changes made before that is done are applied again over the replayed ones.
+     * Must be called under LOCK, right after toSyncUserState is loaded
+     */
+    private void replayTagOperations() {
+        final List<OSTagOperationLog.Operation> operationsDuringReplay = new ArrayList<>();
+        tagOperationsDuringReplay = operationsDuringReplay;
+        runOnTagOperationLog(new Runnable() {
+            @Override
+            public void run() {
+                OSTagOperationLog tagOperationLog = OneSignal.getTagOperationLog();
+                JSONObject pendingTags = tagOperationLog == null ? null : tagOperationLog.compact(getChannelString(), getSyncedTags());
+                tagOperationLogGeneration++;
+
+                synchronized (LOCK) {
+                    if (tagOperationsDuringReplay == operationsDuringReplay)
+                        tagOperationsDuringReplay = null;
+                    if (pendingTags == null)
+                        return;
+
+                    List<OSTagOperationLog.Operation> operations = OSTagOperationLog.fromTags(pendingTags);
+                    for (OSTagOperationLog.Operation operation : operationsDuringReplay) {
+                        if (pendingTags.has(operation.key))
+                            operations.add(operation);
+                    }
+                    Map<String, String> replayed = OSTagOperationLog.fold(null, operations);
+                    try {
+                        toSyncUserState.generateJsonDiffFromIntoSyncValued(new JSONObject().put(TAGS, OSTagOperationLog.toPatch(replayed)), null);
+                    } catch (JSONException e) {
+                        e.printStackTrace();
+                    }
+                }
+                scheduleSyncToServer(Priority.TAGS);
+            }
+        });
+    }
+
+    private @Nullable JSONObject getSyncedTags() {
+        return getCurrentUserState().getSyncValues().optJSONObject(TAGS);
+    }
+
+    /**
+     * Runs the tag operation log work on the log's thread, in the order it was queued, so no DB I/O happens
+     *   on the caller's thread or under LOCK, and none of it waits for a sync in flight
+     */
+    private void runOnTagOperationLog(Runnable task) {
+        OSTagOperationLog.post(task);
+    }
+
+    /**
+     * Must be called under LOCK along with applying the operations to toSyncUserState,
+     *   so the log is written in the order the pending state changed
+     */
+    private void logTagOperations(final List<OSTagOperationLog.Operation> operations) {
+        if (tagOperationsDuringReplay != null)
+            tagOperationsDuringReplay.addAll(operations);
+
+        runOnTagOperationLog(new Runnable() {
+            @Override
+            public void run() {
+                OSTagOperationLog tagOperationLog = OneSignal.getTagOperationLog();
+                if (tagOperationLog == null)
+                    return;
+
+                if (tagOperationLog.append(getChannelString(), operations)) {
+                    tagOperationLog.compact(getChannelString(), getSyncedTags());
+                    tagOperationLogGeneration++;
+                }
+            }
+        });
+    }
+
+    /**
+     * Tag operations included in a sync, removed from the log once the sync succeeds
+     */
+    static class TagOperationMark {
+        // Set on the log's thread, 0 marks none
+        long lastOperationId;
+        int generation;
+    }
+
+    /**
+     * Must be called under LOCK while diffing toSyncUserState, the operations logged for the changes in the diff
+     *   are all queued before the mark is set.
+     * Marks none while the log is being replayed, the diff may not have the replayed changes yet
+     */
+    private TagOperationMark markTagOperations() {
+        final TagOperationMark mark = new TagOperationMark();
+        if (tagOperationsDuringReplay != null)
+            return mark;
+
+        runOnTagOperationLog(new Runnable() {
+            @Override
+            public void run() {
+                OSTagOperationLog tagOperationLog = OneSignal.getTagOperationLog();
+                if (tagOperationLog == null)
+                    return;
+
+                mark.lastOperationId = tagOperationLog.lastOperationId(getChannelString());
+                mark.generation = tagOperationLogGeneration;
+            }
+        });
+        return mark;
+    }
+
+    private void removeSyncedTagOperations(final TagOperationMark mark) {
+        runOnTagOperationLog(new Runnable() {
+            @Override
+            public void run() {
+                OSTagOperationLog tagOperationLog = OneSignal.getTagOperationLog();
+                // Compacting rewrote the log, the operations of the sync can't be told apart anymore.
+                // They are left in, compacted operations are all sets and deletes so replaying them again is harmless.
+                if (tagOperationLog == null || mark.generation != tagOperationLogGeneration)
+                    return;
+
+                tagOperationLog.removeSynced(getChannelString(), mark.lastOperationId);
+            }
+        });
+    }
+
     void initUserState() {
         if (currentUserState == null) {
             synchronized (LOCK) {
@@ -246,6 +307,14 @@ abstract class UserStateSynchronizer {
         return getToSyncUserState().getDependValues().optBoolean(LOGOUT_EMAIL, false);
     }
 
+    /**
+     * Run by {@link OSSyncScheduler} once the debounce window of the pending changes passed
+     */
+    void runScheduledSync() {
+        if (!runningSyncUserState.get())
+            syncUserState(false);
+    }
+
     void syncUserState(boolean fromSyncService) {
         runningSyncUserState.set(true);
         internalSyncUserState(fromSyncService);
@@ -264,26 +333,89 @@ abstract class UserStateSynchronizer {
             initUserState();
 
         final boolean isSessionCall = !fromSyncService && isSessionCall();
-        JSONObject jsonBody, dependDiff;
+        PendingSync pendingSync = takePendingSync(isSessionCall);
+        if (pendingSync == null)
+            return;
+
+        if (!isSessionCall)
+            doPutSync(userId, pendingSync.jsonBody, pendingSync.dependDiff, pendingSync.tagOperationMark, null);
+        else
+            doCreateOrNewSession(userId, pendingSync.jsonBody, pendingSync.dependDiff, pendingSync.tagOperationMark);
+    }
+
+    static class PendingSync {
+        final JSONObject jsonBody;
+        final JSONObject dependDiff;
+        final TagOperationMark tagOperationMark;
+
+        PendingSync(JSONObject jsonBody, JSONObject dependDiff, TagOperationMark tagOperationMark) {
+            this.jsonBody = jsonBody;
+            this.dependDiff = dependDiff;
+            this.tagOperationMark = tagOperationMark;
+        }
+    }
+
+    /**
+     * Diffs the changes waiting to be synced
+     * @return null if they don't result in a server side change, they are then marked as synced right away
+     */
+    private @Nullable PendingSync takePendingSync(boolean isSessionCall) {
         synchronized (LOCK) {
-            jsonBody = currentUserState.generateJsonDiff(getToSyncUserState(), isSessionCall);
+            // Tag changes are queued to the log and applied under LOCK, so every one up to this mark is in the diff below
+            TagOperationMark tagOperationMark = markTagOperations();
+            JSONObject jsonBody = currentUserState.generateJsonDiff(getToSyncUserState(), isSessionCall);
             UserState toSyncState = getToSyncUserState();
-            dependDiff = currentUserState.generateJsonDiffFromDependValues(toSyncState, null);;
+            JSONObject dependDiff = currentUserState.generateJsonDiffFromDependValues(toSyncState, null);
             OneSignal.onesignalLog(OneSignal.LOG_LEVEL.DEBUG, "UserStateSynchronizer internalSyncUserState from session call: "+ isSessionCall + " jsonBody: " + jsonBody);
             // Updates did not result in a server side change, skipping network call
             if (jsonBody == null) {
                 currentUserState.persistStateAfterSync(dependDiff, null);
+                removeSyncedTagOperations(tagOperationMark);
                 sendTagsHandlersPerformOnSuccess();
                 externalUserIdUpdateHandlersPerformOnSuccess();
-                return;
+                return null;
             }
             getToSyncUserState().persistState();
+            return new PendingSync(jsonBody, dependDiff, tagOperationMark);
         }
+    }
 
-        if (!isSessionCall)
-            doPutSync(userId, jsonBody, dependDiff);
-        else
-            doCreateOrNewSession(userId, jsonBody, dependDiff);
+    /**
+     * @return true if the next sync of this channel is a plain PUT, those can be sent together with the other channels'.
+     * Creates, sessions and email logouts sync on their own.
+     */
+    boolean canJoinMultiChannelSync() {
+        if (!canMakeUpdates || getId() == null || runningSyncUserState.get() || syncEmailLogout())
+            return false;
+
+        if (currentUserState == null)
+            initUserState();
+        return !isSessionCall();
+    }
+
+    /**
+     * Takes the changes of this channel for a sync run by {@link OSMultiChannelSync}, which holds LOCK of every channel
+     *   of the sync while calling this.
+     * The sync counts as running until {@link #endMultiChannelSync()}.
+     * @return null if nothing needs to be sent
+     */
+    @Nullable PendingSync beginMultiChannelSync() {
+        runningSyncUserState.set(true);
+        PendingSync pendingSync = takePendingSync(false);
+        if (pendingSync == null)
+            runningSyncUserState.set(false);
+        return pendingSync;
+    }
+
+    /**
+     * Sends the PUT taken by {@link #beginMultiChannelSync()} without blocking, burstHandler is called after this channel handled the response
+     */
+    void sendMultiChannelSync(PendingSync pendingSync, OneSignalRestClient.ResponseHandler burstHandler) {
+        doPutSync(getId(), pendingSync.jsonBody, pendingSync.dependDiff, pendingSync.tagOperationMark, burstHandler);
+    }
+
+    void endMultiChannelSync() {
+        runningSyncUserState.set(false);
     }
 
     private void doEmailLogout(String userId) {
@@ -344,15 +476,21 @@ abstract class UserStateSynchronizer {
         OneSignal.handleSuccessfulEmailLogout();
     }
 
-    private void doPutSync(String userId, final JSONObject jsonBody, final JSONObject dependDiff) {
+    /**
+     * @param burstHandler if set the request is sent without blocking as part of a multi-channel sync and
+     *                     notified once this channel handled the response
+     */
+    private void doPutSync(String userId, final JSONObject jsonBody, final JSONObject dependDiff, final TagOperationMark tagOperationMark, @Nullable final OneSignalRestClient.ResponseHandler burstHandler) {
         if (userId == null) {
             OneSignal.onesignalLog(getLogLevel(), "Error updating the user record because of the null user id");
             sendTagsHandlersPerformOnFailure(new SendTagsError(-1, "Unable to update tags: the current user is not registered with OneSignal"));
             externalUserIdUpdateHandlersPerformOnFailure();
+            if (burstHandler != null)
+                burstHandler.onFailure(-1, null, null);
             return;
         }
 
-        OneSignalRestClient.putSync("players/" + userId, jsonBody, new OneSignalRestClient.ResponseHandler() {
+        OneSignalRestClient.ResponseHandler responseHandler = new OneSignalRestClient.ResponseHandler() {
             @Override
             void onFailure(int statusCode, String response, Throwable throwable) {
                 OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "Failed PUT sync request with status code: " + statusCode + " and response: " + response);
@@ -380,6 +518,7 @@ abstract class UserStateSynchronizer {
             void onSuccess(String response) {
                 synchronized (LOCK) {
                     currentUserState.persistStateAfterSync(dependDiff, jsonBody);
+                    removeSyncedTagOperations(tagOperationMark);
                     onSuccessfulSync(jsonBody);
                 }
 
@@ -392,10 +531,31 @@ abstract class UserStateSynchronizer {
                 if (jsonBody.has(LANGUAGE))
                     deviceInfoHandlersPerformOnSuccess();
             }
+        };
+
+        String url = "players/" + userId;
+        if (burstHandler == null) {
+            OneSignalRestClient.putSync(url, jsonBody, responseHandler);
+            return;
+        }
+
+        final OneSignalRestClient.ResponseHandler channelHandler = responseHandler;
+        OneSignalRestClient.put(url, jsonBody, new OneSignalRestClient.ResponseHandler() {
+            @Override
+            void onFailure(int statusCode, String response, Throwable throwable) {
+                channelHandler.onFailure(statusCode, response, throwable);
+                burstHandler.onFailure(statusCode, response, throwable);
+            }
+
+            @Override
+            void onSuccess(String response) {
+                channelHandler.onSuccess(response);
+                burstHandler.onSuccess(response);
+            }
         });
     }
 
-    private void doCreateOrNewSession(final String userId, final JSONObject jsonBody, final JSONObject dependDiff) {
+    private void doCreateOrNewSession(final String userId, final JSONObject jsonBody, final JSONObject dependDiff, final TagOperationMark tagOperationMark) {
         String urlStr;
         if (userId == null)
             urlStr = "players";
@@ -404,7 +564,8 @@ abstract class UserStateSynchronizer {
 
         waitingForSessionResponse = true;
         addOnSessionOrCreateExtras(jsonBody);
-        OneSignalRestClient.postSync(urlStr, jsonBody, new OneSignalRestClient.ResponseHandler() {
+        // The on_session response carries the session's IAM list so it is decoded straight from the connection's stream
+        OneSignalRestClient.postSync(urlStr, jsonBody, new OneSignalRestClient.JSONResponseHandler() {
             @Override
             void onFailure(int statusCode, String response, Throwable throwable) {
                 synchronized (LOCK) {
@@ -419,14 +580,25 @@ abstract class UserStateSynchronizer {
             }
 
             @Override
-            void onSuccess(String response) {
+            void onSuccessWithInvalidJSON(String response, Throwable throwable) {
                 synchronized (LOCK) {
                     waitingForSessionResponse = false;
                     currentUserState.persistStateAfterSync(dependDiff, jsonBody);
+                    removeSyncedTagOperations(tagOperationMark);
+                    OneSignal.Log(OneSignal.LOG_LEVEL.ERROR, "ERROR parsing on_session or create JSON Response.", throwable);
+                }
+            }
+
+            @Override
+            void onSuccess(JSONObject jsonResponse) {
+                synchronized (LOCK) {
+                    waitingForSessionResponse = false;
+                    currentUserState.persistStateAfterSync(dependDiff, jsonBody);
+                    removeSyncedTagOperations(tagOperationMark);
 
                     try {
-                        OneSignal.onesignalLog(OneSignal.LOG_LEVEL.DEBUG, "doCreateOrNewSession:response: " + response);
-                        JSONObject jsonResponse = new JSONObject(response);
+                        if (OneSignal.atLogLevel(OneSignal.LOG_LEVEL.DEBUG))
+                            OneSignal.onesignalLog(OneSignal.LOG_LEVEL.DEBUG, "doCreateOrNewSession:response: " + jsonResponse);
 
                         if (jsonResponse.has(ID)) {
                             String newUserId = jsonResponse.optString(ID);
@@ -461,7 +633,7 @@ abstract class UserStateSynchronizer {
             return;
         }
 
-        boolean retried = getNetworkHandlerThread(NetworkHandlerThread.NETWORK_HANDLER_USERSTATE).doRetry();
+        boolean retried = OSSyncScheduler.getInstance().retry(this);
         // If there are no more retries and still pending changes send out event of what failed to sync
         if (!retried)
             fireNetworkFailureEvents();
@@ -493,27 +665,40 @@ abstract class UserStateSynchronizer {
         return false;
     }
 
-    protected NetworkHandlerThread getNetworkHandlerThread(Integer type) {
-        synchronized (networkHandlerSyncLock) {
-            if (!networkHandlerThreads.containsKey(type))
-                networkHandlerThreads.put(type, new NetworkHandlerThread(type));
-            return networkHandlerThreads.get(type);
-        }
-    }
-
     // Get a JSONObject to apply changes to
     // Schedules a job with a short delay to compare changes
     //   If there are differences a network call with the changes to made
     protected UserState getUserStateForModification() {
+        return getUserStateForModification(Priority.DEFAULT);
+    }
+
+    /**
+     * @param priority how soon the change should be synced, see {@link OSSyncScheduler}
+     */
+    protected UserState getUserStateForModification(Priority priority) {
         if (toSyncUserState == null)
             toSyncUserState = getCurrentUserState().deepClone(TOSYNC_STATE);
 
-        scheduleSyncToServer();
+        scheduleSyncToServer(priority);
 
         return toSyncUserState;
     }
 
-    abstract protected void scheduleSyncToServer();
+    protected void scheduleSyncToServer() {
+        scheduleSyncToServer(Priority.DEFAULT);
+    }
+
+    abstract protected void scheduleSyncToServer(Priority priority);
+
+    /**
+     * Queues a sync of this channel on the scheduler shared by all channels, ignored until readyToUpdate(true)
+     */
+    protected void runNewJobDelayed(Priority priority) {
+        if (!canMakeUpdates)
+            return;
+
+        OSSyncScheduler.getInstance().schedule(this, priority);
+    }
 
     void updateDeviceInfo(JSONObject deviceInfo, @Nullable OSDeviceInfoCompletionHandler handler) {
         if (handler != null)
@@ -541,8 +726,24 @@ abstract class UserStateSynchronizer {
     void sendTags(JSONObject tags, @Nullable ChangeTagsUpdateHandler handler) {
         if (handler != null)
             this.sendTagsHandlers.add(handler);
-        UserState userStateTags = getUserStateForModification();
-        userStateTags.generateJsonDiffFromIntoSyncValued(tags, null);
+        synchronized (LOCK) {
+            logTagOperations(OSTagOperationLog.fromTags(tags.optJSONObject(TAGS)));
+            UserState userStateTags = getUserStateForModification(Priority.TAGS);
+            userStateTags.generateJsonDiffFromIntoSyncValued(tags, null);
+        }
+    }
+
+    void incrementTag(String key, long amount) {
+        synchronized (LOCK) {
+            logTagOperations(Collections.singletonList(OSTagOperationLog.Operation.increment(key, amount)));
+            UserState userStateTags = getUserStateForModification(Priority.TAGS);
+            String incremented = OSTagOperationLog.increment(userStateTags.getTag(key), amount);
+            try {
+                userStateTags.generateJsonDiffFromIntoSyncValued(new JSONObject().put(TAGS, new JSONObject().put(key, incremented)), null);
+            } catch (JSONException e) {
+                e.printStackTrace();
+            }
+        }
     }
 
     void syncHashedEmail(JSONObject emailFields) {
@@ -553,7 +754,7 @@ abstract class UserStateSynchronizer {
         if (handler != null)
             this.externalUserIdUpdateHandlers.add(handler);
 
-        UserState userState = getUserStateForModification();
+        UserState userState = getUserStateForModification(Priority.HIGH);
         userState.putOnSyncValues(EXTERNAL_USER_ID, externalId);
         if (externalIdAuthHash != null)
             userState.putOnSyncValues(EXTERNAL_USER_ID_AUTH_HASH, externalIdAuthHash);
@@ -578,7 +779,7 @@ abstract class UserStateSynchronizer {
     public abstract void setPermission(boolean enable);
 
     void updateLocation(LocationController.LocationPoint point) {
-        UserState userState = getUserStateForModification();
+        UserState userState = getUserStateForModification(Priority.LOCATION);
         userState.setLocation(point);
     }
 
@@ -248,13 +248,22 @@ internal class OSOutcomeEventsCache(private val logger: OSLogger,
         addIdsToListFromSource(cachedUniqueOutcomes, directBody)
         addIdsToListFromSource(cachedUniqueOutcomes, indirectBody)
 
-        for (uniqueOutcome in cachedUniqueOutcomes) {
-            ContentValues().apply {
-                put(CachedUniqueOutcomeTable.COLUMN_CHANNEL_INFLUENCE_ID, uniqueOutcome.getInfluenceId())
-                put(CachedUniqueOutcomeTable.COLUMN_CHANNEL_TYPE, uniqueOutcome.getChannel().toString())
-                put(CachedUniqueOutcomeTable.COLUMN_NAME_NAME, outcomeName)
-            }.also { values ->
-                dbHelper.insert(CachedUniqueOutcomeTable.TABLE_NAME, null, values)
+        if (cachedUniqueOutcomes.isEmpty())
+            return
+
+        // One transaction and one compiled insert for all the influence ids of the outcome
+        val insertSql = "INSERT INTO " + CachedUniqueOutcomeTable.TABLE_NAME + " (" +
+                CachedUniqueOutcomeTable.COLUMN_CHANNEL_INFLUENCE_ID + ", " +
+                CachedUniqueOutcomeTable.COLUMN_CHANNEL_TYPE + ", " +
+                CachedUniqueOutcomeTable.COLUMN_NAME_NAME + ") VALUES (?, ?, ?)"
+        dbHelper.runInTransaction { batch ->
+            for (uniqueOutcome in cachedUniqueOutcomes) {
+                batch.compileStatement(insertSql).apply {
+                    bindString(1, uniqueOutcome.getInfluenceId())
+                    bindString(2, uniqueOutcome.getChannel().toString())
+                    bindString(3, outcomeName)
+                    executeInsert()
+                }
             }
         }
     }
@@ -11,6 +11,8 @@ internal abstract class OSOutcomeEventsRepository(protected val logger: OSLogger
                                                   val outcomeEventsService: OutcomeEventsService) : OSOutcomeEventsRepository {
     abstract override fun requestMeasureOutcomeEvent(appId: String, deviceType: Int, event: OSOutcomeEventParams, responseHandler: OneSignalApiResponseHandler)
 
+    override fun getMeasureOutcomeEndpoint(): String = outcomeEventsService.endpoint
+
     override fun getSavedOutcomeEvents(): List<OSOutcomeEventParams> = outcomeEventsCache.getAllEventsToSend()
 
     override fun saveOutcomeEvent(event: OSOutcomeEventParams) {
@@ -8,7 +8,9 @@ internal class OSOutcomeEventsV1Service(client: OneSignalAPIClient) : OSOutcomeE
     /***
      * API endpoint /api/v1/outcomes/measure
      */
+    override val endpoint = "outcomes/measure"
+
     override fun sendOutcomeEvent(jsonObject: JSONObject, responseHandler: OneSignalApiResponseHandler) {
-        client.post("outcomes/measure", jsonObject, responseHandler)
+        client.post(endpoint, jsonObject, responseHandler)
     }
 }
\ No newline at end of file
@@ -8,7 +8,9 @@ internal class OSOutcomeEventsV2Service(client: OneSignalAPIClient) : OSOutcomeE
     /***
      * API endpoint /api/v1/outcomes/measure_sources
      */
+    override val endpoint = "outcomes/measure_sources"
+
     override fun sendOutcomeEvent(jsonObject: JSONObject, responseHandler: OneSignalApiResponseHandler) {
-        client.post("outcomes/measure_sources", jsonObject, responseHandler)
+        client.post(endpoint, jsonObject, responseHandler)
     }
 }
\ No newline at end of file
@@ -4,5 +4,10 @@ import com.onesignal.OneSignalApiResponseHandler
 import org.json.JSONObject
 
 interface OutcomeEventsService {
+    /**
+     * Path outcomes are sent to, the key of their retry budget and circuit in the retry policy
+     */
+    val endpoint: String
+
     fun sendOutcomeEvent(jsonObject: JSONObject, responseHandler: OneSignalApiResponseHandler)
 }
\ No newline at end of file
@@ -7,6 +7,7 @@ interface OSOutcomeEventsRepository {
     fun getSavedOutcomeEvents(): List<OSOutcomeEventParams>
     fun saveOutcomeEvent(event: OSOutcomeEventParams)
     fun removeEvent(outcomeEvent: OSOutcomeEventParams)
+    fun getMeasureOutcomeEndpoint(): String
     fun requestMeasureOutcomeEvent(appId: String, deviceType: Int, event: OSOutcomeEventParams, responseHandler: OneSignalApiResponseHandler)
     fun saveUniqueOutcomeNotifications(eventParams: OSOutcomeEventParams)
     fun getNotCachedUniqueOutcome(name: String, influences: List<OSInfluence>): List<OSInfluence>
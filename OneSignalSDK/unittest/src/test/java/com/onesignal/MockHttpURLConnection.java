@@ -28,26 +28,47 @@
 package com.onesignal;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
 import java.net.HttpURLConnection;
+import java.net.SocketException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 
 public class MockHttpURLConnection extends HttpURLConnection {
    private boolean didInterruptMockHang;
+   private boolean didDisconnect;
+   private final ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
 
    public boolean getDidInterruptMockHang() {
       return didInterruptMockHang;
    }
 
+   public boolean getDidDisconnect() {
+      return didDisconnect;
+   }
+
+   public byte[] getRequestBody() {
+      return requestBody.toByteArray();
+   }
+
    public static class MockResponse {
       public String responseBody;
       public String errorResponseBody;
       public boolean mockThreadHang;
+      // Fails to reach the server, before any response
+      public boolean failConnect;
+      // The connection drops while the response body is read
+      public boolean failResponseRead;
       public int status;
+      // Status returned instead of status when the request body is gzip encoded, 0 to accept gzip
+      public int gzipRejectedStatus;
       public Map<String, String> mockProps = new HashMap<>();
    }
 
@@ -60,7 +81,7 @@ public class MockHttpURLConnection extends HttpURLConnection {
 
    @Override
    public void disconnect() {
-
+      didDisconnect = true;
    }
 
    @Override
@@ -70,7 +91,8 @@ public class MockHttpURLConnection extends HttpURLConnection {
 
    @Override
    public void connect() throws IOException {
-
+      if (mockResponse.failConnect)
+         throw new ConnectException("Mock server unreachable");
    }
 
    @Override
@@ -80,6 +102,7 @@ public class MockHttpURLConnection extends HttpURLConnection {
 
    @Override
    public int getResponseCode() throws IOException {
+      connect();
       if (mockResponse.mockThreadHang) {
          try {
             Thread.sleep(120_000);
@@ -89,12 +112,41 @@ public class MockHttpURLConnection extends HttpURLConnection {
          }
       }
 
+      if (mockResponse.gzipRejectedStatus != 0 && "gzip".equals(getRequestProperty("Content-Encoding")))
+         return mockResponse.gzipRejectedStatus;
+
       return mockResponse.status;
    }
 
+   @Override
+   public OutputStream getOutputStream() {
+      return requestBody;
+   }
+
    @Override
    public InputStream getInputStream() throws IOException {
-      return new ByteArrayInputStream(StandardCharsets.UTF_8.encode(mockResponse.responseBody).array());
+      if (mockResponse.failResponseRead) {
+         return new InputStream() {
+            @Override
+            public int read() throws IOException {
+               throw new SocketException("Mock connection reset");
+            }
+         };
+      }
+
+      if (mockResponse.responseBody == null)
+         return new ByteArrayInputStream(new byte[0]);
+
+      byte[] bytes = mockResponse.responseBody.getBytes(StandardCharsets.UTF_8);
+      if ("gzip".equals(getHeaderField("Content-Encoding"))) {
+         ByteArrayOutputStream gzipBytes = new ByteArrayOutputStream();
+         GZIPOutputStream gzipStream = new GZIPOutputStream(gzipBytes);
+         gzipStream.write(bytes);
+         gzipStream.close();
+         bytes = gzipBytes.toByteArray();
+      }
+
+      return new ByteArrayInputStream(bytes);
    }
 
    @Override
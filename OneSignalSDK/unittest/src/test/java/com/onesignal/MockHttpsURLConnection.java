@@ -0,0 +1,202 @@
+/**
+ * Modified MIT License
+ *
+ * Copyright 2022 OneSignal
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * 1. The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * 2. All copies of substantial portions of the Software may only be used in connection
+ * with services provided by OneSignal.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package com.onesignal;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.security.cert.Certificate;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * HTTPS connection to a mock server, with a connection pool that works like the platform's.
+ * A connection opens a socket from its SSLSocketFactory unless an idle one opened by the same factory is in the pool.
+ * Once its response is read and closed the connection goes back to the pool, disconnect() drops it.
+ * Responses come from a {@link MockHttpURLConnection}.
+ */
+public class MockHttpsURLConnection extends HttpsURLConnection {
+
+   // Stands in for the platform's factory so no real socket is opened
+   private static final SSLSocketFactory MOCK_SERVER_SOCKET_FACTORY = new SSLSocketFactory() {
+      @Override
+      public String[] getDefaultCipherSuites() {
+         return new String[0];
+      }
+
+      @Override
+      public String[] getSupportedCipherSuites() {
+         return new String[0];
+      }
+
+      @Override
+      public Socket createSocket() {
+         return new Socket();
+      }
+
+      @Override
+      public Socket createSocket(Socket s, String host, int port, boolean autoClose) {
+         return new Socket();
+      }
+
+      @Override
+      public Socket createSocket(String host, int port) {
+         return new Socket();
+      }
+
+      @Override
+      public Socket createSocket(String host, int port, InetAddress localHost, int localPort) {
+         return new Socket();
+      }
+
+      @Override
+      public Socket createSocket(InetAddress host, int port) {
+         return new Socket();
+      }
+
+      @Override
+      public Socket createSocket(InetAddress address, int port, InetAddress localAddress, int localPort) {
+         return new Socket();
+      }
+   };
+
+   // Factories of the idle connections in the pool, one entry per connection
+   private static final List<SSLSocketFactory> idleConnections = new ArrayList<>();
+
+   public static void resetPool() {
+      synchronized (idleConnections) {
+         idleConnections.clear();
+      }
+   }
+
+   private final MockHttpURLConnection mockConnection;
+   private boolean opened;
+   private boolean pooled;
+
+   MockHttpsURLConnection(URL url, MockHttpURLConnection mockConnection) {
+      super(url);
+      this.mockConnection = mockConnection;
+      setSSLSocketFactory(MOCK_SERVER_SOCKET_FACTORY);
+   }
+
+   private void open() throws IOException {
+      if (opened)
+         return;
+      mockConnection.connect();
+      opened = true;
+
+      synchronized (idleConnections) {
+         if (idleConnections.remove(getSSLSocketFactory()))
+            return;
+      }
+      getSSLSocketFactory().createSocket(getURL().getHost(), 443).close();
+   }
+
+   private void releaseToPool() {
+      synchronized (idleConnections) {
+         if (pooled || mockConnection.getDidDisconnect())
+            return;
+         pooled = true;
+         idleConnections.add(getSSLSocketFactory());
+      }
+   }
+
+   @Override
+   public void disconnect() {
+      mockConnection.disconnect();
+      synchronized (idleConnections) {
+         if (pooled)
+            idleConnections.remove(getSSLSocketFactory());
+         pooled = false;
+      }
+   }
+
+   @Override
+   public boolean usingProxy() {
+      return false;
+   }
+
+   @Override
+   public void connect() throws IOException {
+      open();
+   }
+
+   @Override
+   public String getHeaderField(String name) {
+      return mockConnection.getHeaderField(name);
+   }
+
+   @Override
+   public int getResponseCode() throws IOException {
+      open();
+      return mockConnection.getResponseCode();
+   }
+
+   @Override
+   public OutputStream getOutputStream() {
+      return mockConnection.getOutputStream();
+   }
+
+   @Override
+   public InputStream getInputStream() throws IOException {
+      return new FilterInputStream(mockConnection.getInputStream()) {
+         @Override
+         public void close() throws IOException {
+            super.close();
+            releaseToPool();
+         }
+      };
+   }
+
+   @Override
+   public InputStream getErrorStream() {
+      return mockConnection.getErrorStream();
+   }
+
+   @Override
+   public String getCipherSuite() {
+      return null;
+   }
+
+   @Override
+   public Certificate[] getLocalCertificates() {
+      return null;
+   }
+
+   @Override
+   public Certificate[] getServerCertificates() {
+      return null;
+   }
+}
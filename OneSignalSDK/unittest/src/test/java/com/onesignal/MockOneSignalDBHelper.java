@@ -48,6 +48,11 @@ public class MockOneSignalDBHelper implements OneSignalDb {
         return OneSignalDbHelper.getInstance(context).query(table, columns, selection, selectionArgs, groupBy, having, orderBy, limit);
     }
 
+    @Override
+    public Long queryForLong(String sql, String[] bindArgs) {
+        return OneSignalDbHelper.getInstance(context).queryForLong(sql, bindArgs);
+    }
+
     @Override
     public void insert(String table, String nullColumnHack, ContentValues values) {
         OneSignalDbHelper.getInstance(context).insert(table, nullColumnHack, values);
@@ -67,4 +72,9 @@ public class MockOneSignalDBHelper implements OneSignalDb {
     public void delete(String table, String whereClause, String[] whereArgs) {
         OneSignalDbHelper.getInstance(context).delete(table, whereClause, whereArgs);
     }
+
+    @Override
+    public boolean runInTransaction(Transaction transaction) {
+        return OneSignalDbHelper.getInstance(context).runInTransaction(transaction);
+    }
 }
@@ -3,6 +3,7 @@ package com.onesignal;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.util.Log;
 
@@ -17,6 +18,8 @@ import org.json.JSONException;
 import org.json.JSONObject;
 import org.robolectric.util.Scheduler;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.math.BigInteger;
 import java.util.ArrayList;
@@ -24,6 +27,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
 
 import static com.test.onesignal.TestHelpers.threadAndTaskWait;
 import static org.robolectric.Shadows.shadowOf;
@@ -39,44 +43,288 @@ public class OneSignalPackagePrivateHelper {
 
    private static final String LOGCAT_TAG = "OS_PACKAGE_HELPER";
 
-   private static abstract class RunnableArg<T> {
-      abstract void run(T object) throws Exception;
+   private static boolean startedRunnable;
+   public static boolean runAllNetworkRunnables() throws Exception {
+      startedRunnable = false;
+
+      Scheduler tagOperationLogScheduler = shadowOf(OSTagOperationLog.getHandler().getLooper()).getScheduler();
+      while (tagOperationLogScheduler.runOneTask())
+         startedRunnable = true;
+
+      OSSyncScheduler syncScheduler = OSSyncScheduler.getInstance();
+      synchronized (syncScheduler.handler) {
+         Scheduler scheduler = shadowOf(syncScheduler.getLooper()).getScheduler();
+         while (scheduler.runOneTask())
+            startedRunnable = true;
+      }
+
+      return startedRunnable;
    }
 
-   private static void processNetworkHandles(RunnableArg runnable) throws Exception {
-      Set<Map.Entry<Integer, UserStateSynchronizer.NetworkHandlerThread>> entrySet;
+   /**
+    * Runs the tag operation log writes queued on its thread, but none of the syncs
+    */
+   public static void OSTagOperationLog_runPostedTasks() {
+      shadowOf(OSTagOperationLog.getHandler().getLooper()).getScheduler().advanceBy(0, TimeUnit.MILLISECONDS);
+   }
 
-      entrySet = OneSignalStateSynchronizer.getPushStateSynchronizer().networkHandlerThreads.entrySet();
-      for (Map.Entry<Integer, UserStateSynchronizer.NetworkHandlerThread> handlerThread : entrySet)
-         runnable.run(handlerThread.getValue());
+   /**
+    * Keeps tag operation log writes queued until they are run by OSTagOperationLog_runPostedTasks or threadAndTaskWait
+    */
+   public static void OSTagOperationLog_pause() {
+      shadowOf(OSTagOperationLog.getHandler().getLooper()).getScheduler().pause();
+   }
 
-      entrySet = OneSignalStateSynchronizer.getEmailStateSynchronizer().networkHandlerThreads.entrySet();
-      for (Map.Entry<Integer, UserStateSynchronizer.NetworkHandlerThread> handlerThread : entrySet)
-         runnable.run(handlerThread.getValue());
+   /**
+    * Keeps syncs queued on the sync thread until they are run by threadAndTaskWait, as if one was in flight
+    */
+   public static void OSSyncScheduler_pause() {
+      shadowOf(OSSyncScheduler.getInstance().getLooper()).getScheduler().pause();
+   }
 
-      entrySet = OneSignalStateSynchronizer.getSMSStateSynchronizer().networkHandlerThreads.entrySet();
-      for (Map.Entry<Integer, UserStateSynchronizer.NetworkHandlerThread> handlerThread : entrySet)
-         runnable.run(handlerThread.getValue());
+   public static @Nullable String OSSyncScheduler_getPendingPushSyncPriority() {
+      OSSyncScheduler.Priority priority = OSSyncScheduler.getInstance().getPendingPriority(OneSignalStateSynchronizer.getPushStateSynchronizer());
+      return priority == null ? null : priority.name();
    }
 
-   private static boolean startedRunnable;
-   public static boolean runAllNetworkRunnables() throws Exception {
-      startedRunnable = false;
+   public static long OSSyncScheduler_getRunTime(long now, long firstChangeTime, String priority) {
+      return OSSyncScheduler.getRunTime(now, firstChangeTime, OSSyncScheduler.Priority.valueOf(priority).debounceMs);
+   }
+
+   public static final int OSSyncScheduler_MAX_DEBOUNCE_WINDOWS = OSSyncScheduler.MAX_DEBOUNCE_WINDOWS;
+
+   /**
+    * @return ms until the queued push sync runs, -1 if none is queued
+    */
+   public static long OSSyncScheduler_getPushSyncDelay() {
+      return OSSyncScheduler.getInstance().getScheduledDelay(OneSignalStateSynchronizer.getPushStateSynchronizer());
+   }
+
+   /**
+    * Handles a failed push sync like a network failure would
+    * @return ms until the retry runs, -1 if it won't be retried
+    */
+   public static long OSSyncScheduler_retryPushSync() {
+      OSSyncScheduler syncScheduler = OSSyncScheduler.getInstance();
+      UserStateSynchronizer pushSynchronizer = OneSignalStateSynchronizer.getPushStateSynchronizer();
+      syncScheduler.retry(pushSynchronizer);
+      return syncScheduler.getScheduledDelay(pushSynchronizer);
+   }
+
+   public static void OSRetryPolicy_onResponse(String url, int statusCode, String retryAfter) {
+      OSRetryPolicy.onResponse(url, statusCode, retryAfter);
+   }
+
+   public static void OSSyncScheduler_setMultiChannelSyncEnabled(boolean enabled) {
+      OSSyncScheduler.getInstance().setMultiChannelSyncEnabled(enabled);
+   }
+
+   public static long OSMultiChannelSync_getBurstCount() {
+      return OSMultiChannelSync.getBurstCount();
+   }
 
-      RunnableArg runnable = new RunnableArg<UserStateSynchronizer.NetworkHandlerThread>() {
+   public static long OSMultiChannelSync_getBurstRequestCount() {
+      return OSMultiChannelSync.getBurstRequestCount();
+   }
+
+   /**
+    * Syncs every registered channel together
+    * @return the results given to the burst's completion handler, null if it wasn't called
+    */
+   public static JSONObject OSMultiChannelSync_syncAll() {
+      final JSONObject[] burstResults = new JSONObject[1];
+      OSMultiChannelSync.sync(OneSignalStateSynchronizer.getUserStateSynchronizers(), new OSMultiChannelSync.CompletionHandler() {
          @Override
-         void run(UserStateSynchronizer.NetworkHandlerThread handlerThread) throws Exception {
-            synchronized (handlerThread.mHandler) {
-               Scheduler scheduler = shadowOf(handlerThread.getLooper()).getScheduler();
-               while (scheduler.runOneTask())
-                  startedRunnable = true;
-            }
+         public void onComplete(JSONObject results) {
+            burstResults[0] = results;
          }
-      };
+      });
+      return burstResults[0];
+   }
 
-      processNetworkHandles(runnable);
+   public static boolean OSGzipEncoding_isRejected(String url) {
+      return OSGzipEncoding.isRejected(url);
+   }
 
-      return startedRunnable;
+   public static final int OSRetryPolicy_CIRCUIT_FAILURE_THRESHOLD = OSRetryPolicy.CIRCUIT_FAILURE_THRESHOLD;
+   public static final int OSRetryPolicy_RETRY_BUDGET = OSRetryPolicy.RETRY_BUDGET;
+   public static final int OSRetryPolicy_MAX_RETRIES = OSRetryPolicy.MAX_RETRIES;
+   public static final int OSRetryPolicy_BACKED_OFF = OSRetryPolicy.BACKED_OFF;
+
+   public static long OSRetryPolicy_getBackoff(long baseMs, long maxMs, int attempt) {
+      return OSRetryPolicy.getBackoff(baseMs, maxMs, attempt);
+   }
+
+   public static long OSRetryPolicy_getRetryDelay(String url, int attempt, long baseMs, long maxMs) {
+      return OSRetryPolicy.getRetryDelay(url, attempt, baseMs, maxMs);
+   }
+
+   public static boolean OSRetryPolicy_tryAcquireRetry(String url) {
+      return OSRetryPolicy.tryAcquireRetry(url);
+   }
+
+   public static boolean OSRetryPolicy_shouldRetryInSession(String url, int statusCode, int retry) {
+      return OSRetryPolicy.shouldRetryInSession(url, statusCode, retry);
+   }
+
+   /**
+    * Runs the retries and timeouts waiting on the OSTimeoutHandler, whatever their delay
+    */
+   public static void OSTimeoutHandler_runPendingTasks() {
+      Scheduler scheduler = shadowOf(OSTimeoutHandler.getTimeoutHandler().getLooper()).getScheduler();
+      while (scheduler.runOneTask());
+   }
+
+   public static final int OSHttpResponseCache_MAX_ENTRIES = OSHttpResponseCache.MAX_ENTRIES;
+   public static final int OSHttpResponseCache_MAX_ENTRY_LENGTH = OSHttpResponseCache.MAX_ENTRY_LENGTH;
+
+   public static void OSHttpResponseCache_put(String cacheKey, String eTag, String lastModified, String body) {
+      OneSignal.getHttpResponseCache().put(cacheKey, eTag, lastModified, body);
+   }
+
+   public static String OSHttpResponseCache_getBody(String cacheKey) {
+      return OneSignal.getHttpResponseCache().getBody(cacheKey);
+   }
+
+   public static String OneSignalPrefs_getString(String prefsName, String key) {
+      return OneSignalPrefs.getString(prefsName, key, null);
+   }
+
+   public static long OneSignalPrefs_getReadCacheHits() {
+      return OneSignalPrefs.getReadCacheHits();
+   }
+
+   public static long OneSignalPrefs_getReadCacheMisses() {
+      return OneSignalPrefs.getReadCacheMisses();
+   }
+
+   public static String OSUserStateSnapshot_encode(JSONObject dependValues, JSONObject syncValues) {
+      return OSUserStateSnapshot.encode(dependValues, syncValues);
+   }
+
+   public static JSONObject[] OSUserStateSnapshot_decode(String snapshot) {
+      OSUserStateSnapshot.Values values = OSUserStateSnapshot.decode(snapshot);
+      if (values == null)
+         return null;
+      return new JSONObject[] { values.dependValues, values.syncValues };
+   }
+
+   public static byte[] OSUserStateSnapshot_toBytes(JSONObject dependValues, JSONObject syncValues) {
+      return OSUserStateSnapshot.toBytes(dependValues, syncValues);
+   }
+
+   /**
+    * @return the depend values and sync values of the snapshot, or null if it could not be read
+    */
+   public static JSONObject[] OSUserStateSnapshot_fromBytes(byte[] bytes) {
+      OSUserStateSnapshot.Values values = OSUserStateSnapshot.fromBytes(bytes);
+      if (values == null)
+         return null;
+      return new JSONObject[] { values.dependValues, values.syncValues };
+   }
+
+   public static JSONObject UserState_getPersistedSyncValues(SharedPreferences prefs, String persistKey) {
+      String snapshot = prefs.getString(OneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_SNAPSHOT_ + persistKey, null);
+      if (snapshot == null)
+         return null;
+      OSUserStateSnapshot.Values values = OSUserStateSnapshot.decode(snapshot);
+      return values == null ? null : values.syncValues;
+   }
+
+   public static final String OSNotificationCacheCleaner_WORK_NAME = OSNotificationCacheCleaner.NOTIFICATION_CACHE_CLEANER_WORKER_IDENTIFIER;
+   public static final int OSNotificationCacheCleaner_CLEAN_CHUNK_SIZE = OSNotificationCacheCleaner.CLEAN_CHUNK_SIZE;
+
+   /**
+    * @param maxChunks the run is stopped, as if the device left idle, once this many chunks were deleted
+    * @return deleted notifications, deleted unique outcomes, chunks and 1 if the run completed, otherwise 0
+    */
+   public static int[] OSNotificationCacheCleaner_cleanExpiredNotifications(OneSignalDb db, final int maxChunks) {
+      OSNotificationCacheCleaner.CleanResult result = OSNotificationCacheCleaner.cleanExpiredNotifications(db, new OSNotificationCacheCleaner.StopSignal() {
+         private int chunks;
+
+         @Override
+         public boolean isStopped() {
+            return chunks++ >= maxChunks;
+         }
+      });
+      return new int[] { result.deletedNotifications, result.deletedUniqueOutcomes, result.chunks, result.completed ? 1 : 0 };
+   }
+
+   public static long OneSignalPrefs_getNotificationCacheCleanDuration() {
+      return OneSignalPrefs.getLong(OneSignalPrefs.PREFS_ONESIGNAL, OneSignalPrefs.PREFS_OS_NOTIFICATION_CACHE_CLEAN_DURATION, -1);
+   }
+
+   public static int OneSignalPrefs_getNotificationCacheCleanDeleted() {
+      return OneSignalPrefs.getInt(OneSignalPrefs.PREFS_ONESIGNAL, OneSignalPrefs.PREFS_OS_NOTIFICATION_CACHE_CLEAN_DELETED, -1);
+   }
+
+   public static Map<String, Integer> OSStorageLimits_enforceRowCaps(OneSignalDb db) {
+      return OSStorageLimits.enforceRowCaps(db);
+   }
+
+   public static OSStorageStats OSStorageLimits_storageStats(Context context, OneSignalDb db) {
+      return OSStorageLimits.storageStats(context, db);
+   }
+
+   /**
+    * Replays the requests journaled in db like a new start does
+    */
+   public static void OSOutboundRequestJournal_replayPendingRequests(OneSignalDb db) {
+      new OSOutboundRequestJournal(db, new OSLogWrapper(), new OSTimeImpl()).replayPendingRequests();
+   }
+
+   public static final int OSTagOperationLog_COMPACT_THRESHOLD = OSTagOperationLog.COMPACT_THRESHOLD;
+
+   public static int OSTagOperationLog_count(String channel) {
+      return OneSignal.getTagOperationLog().count(channel);
+   }
+
+   /**
+    * A current and to sync UserState pair, like UserStateSynchronizer keeps, to compare its tracked diffs with full ones
+    */
+   public static class UserStateSyncPair {
+      private final UserState currentUserState = new UserStatePush("CURRENT_STATE", false);
+      private final UserState toSyncUserState = new UserStatePush("TOSYNC_STATE", false);
+
+      public void sendTags(JSONObject tags) throws JSONException {
+         toSyncUserState.generateJsonDiffFromIntoSyncValued(new JSONObject().put(UserState.TAGS, tags), null);
+      }
+
+      public void putOnSyncValues(String key, Object value) throws JSONException {
+         toSyncUserState.putOnSyncValues(key, value);
+      }
+
+      public void mergeTagsFromServer(JSONObject tags) throws JSONException {
+         JSONObject syncValues = new JSONObject().put(UserState.TAGS, tags);
+         currentUserState.putOnSyncValues(UserState.TAGS, tags);
+         toSyncUserState.mergeTags(syncValues, null);
+      }
+
+      public JSONObject generateJsonDiff() {
+         return currentUserState.generateJsonDiff(toSyncUserState, true);
+      }
+
+      /**
+       * Diff walking every key, as clones have no dirty key tracking
+       */
+      public JSONObject generateFullJsonDiff() {
+         return currentUserState.deepClone("CURRENT_STATE").generateJsonDiff(toSyncUserState.deepClone("TOSYNC_STATE"), true);
+      }
+
+      /**
+       * Sync values diff as it was computed before dirty key tracking
+       */
+      public JSONObject generateUntrackedSyncValuesDiff() {
+         return currentUserState.generateJsonDiffFromSyncValued(toSyncUserState, null);
+      }
+
+      public void onSyncSuccess(JSONObject jsonBody) {
+         currentUserState.persistStateAfterSync(null, jsonBody);
+      }
+   }
+
+   public static JSONObject OSResponseReader_readJSONObject(InputStream inputStream, int contentLength) throws IOException {
+      return OSResponseReader.readJSONObject(inputStream, contentLength);
    }
 
    private static boolean isExecutingRunnable(Scheduler scheduler) throws Exception {
@@ -224,6 +472,15 @@ public class OneSignalPackagePrivateHelper {
    public static class InAppMessageTable extends OneSignalDbContract.InAppMessageTable {
    }
 
+   public static class OutboundRequestTable extends OneSignalDbContract.OutboundRequestTable {
+   }
+
+   public static class HttpResponseCacheTable extends OneSignalDbContract.HttpResponseCacheTable {
+   }
+
+   public static class TagOperationTable extends OneSignalDbContract.TagOperationTable {
+   }
+
    public static class OSNotificationRestoreWorkManager extends com.onesignal.OSNotificationRestoreWorkManager {
       public static int getDEFAULT_TTL_IF_NOT_IN_PAYLOAD() {
          return DEFAULT_TTL_IF_NOT_IN_PAYLOAD;
@@ -255,12 +512,32 @@ public class OneSignalPackagePrivateHelper {
    }
 
    public static class OneSignalRestClient extends com.onesignal.OneSignalRestClient {
+      public static final int REQUEST_POOL_SIZE = com.onesignal.OneSignalRestClient.REQUEST_POOL_SIZE;
+      public static final String CACHE_KEY_GET_TAGS = com.onesignal.OneSignalRestClient.CACHE_KEY_GET_TAGS;
+
       public static abstract class ResponseHandler extends com.onesignal.OneSignalRestClient.ResponseHandler {
          @Override
          public void onSuccess(String response) {}
          @Override
          public void onFailure(int statusCode, String response, Throwable throwable) {}
       }
+
+      public static abstract class JSONResponseHandler extends com.onesignal.OneSignalRestClient.JSONResponseHandler {
+         @Override
+         public void onSuccess(@NonNull JSONObject response) {}
+         @Override
+         public void onSuccessWithInvalidJSON(@Nullable String response, Throwable throwable) {}
+         @Override
+         public void onFailure(int statusCode, String response, Throwable throwable) {}
+      }
+   }
+
+   public static long OneSignalRestClient_getHandshakeCount() {
+      return com.onesignal.OneSignalRestClient.getHandshakeCount();
+   }
+
+   public static long OneSignalRestClient_getReusedConnectionCount() {
+      return com.onesignal.OneSignalRestClient.getReusedConnectionCount();
    }
 
    public static String NotificationChannelManager_createNotificationChannel(Context context, JSONObject payload) {
@@ -639,6 +916,14 @@ public class OneSignalPackagePrivateHelper {
       public @Nullable static Map<String, Object> jsonObjectToMap(@Nullable JSONObject json) throws JSONException {
          return com.onesignal.JSONUtils.jsonObjectToMap(json);
       }
+
+      public static String toStringWithUnescapedSlashes(@NonNull JSONObject jsonObject, @NonNull Set<String> unescapedSlashKeys) throws JSONException {
+         return com.onesignal.JSONUtils.toStringWithUnescapedSlashes(jsonObject, unescapedSlashKeys);
+      }
+
+      public static JSONObject generateJsonDiff(JSONObject cur, JSONObject changedTo, JSONObject baseOutput, Set<String> includeFields) {
+         return com.onesignal.JSONUtils.generateJsonDiff(cur, changedTo, baseOutput, includeFields);
+      }
    }
 
    public static class GenerateNotification extends com.onesignal.GenerateNotification {}
@@ -106,6 +106,10 @@ public class ShadowOneSignalRestClient {
    // Pauses any network callbacks from firing.
    // Also blocks any sync network calls.
    public static boolean freezeResponses;
+   // When set PUTs are only answered once this many are waiting for their response
+   public static int holdPutResponsesUntil;
+   public static int maxPutsInFlight;
+   private static List<OneSignalRestClient.ResponseHandler> heldPutResponses = new ArrayList<>();
    private static ConcurrentHashMap<Object, PendingResponse> pendingResponses = new ConcurrentHashMap<>();
 
    private static String remoteParamsGetHtmlResponse = null;
@@ -167,6 +171,9 @@ public class ShadowOneSignalRestClient {
 
       freezeResponses = false;
       pendingResponses = new ConcurrentHashMap<>();
+      holdPutResponsesUntil = 0;
+      maxPutsInFlight = 0;
+      heldPutResponses = new ArrayList<>();
       remoteParamsGetHtmlResponse = null;
    }
 
@@ -374,9 +381,30 @@ public class ShadowOneSignalRestClient {
 
       if (doFail(responseHandler, failNextPut)) return;
 
+      if (holdPutResponsesUntil > 0) {
+         holdPutResponse(responseHandler);
+         return;
+      }
+
       responseHandler.onSuccess("{}");
    }
 
+   private static void holdPutResponse(OneSignalRestClient.ResponseHandler responseHandler) {
+      List<OneSignalRestClient.ResponseHandler> toAnswer;
+      synchronized (heldPutResponses) {
+         heldPutResponses.add(responseHandler);
+         maxPutsInFlight = Math.max(maxPutsInFlight, heldPutResponses.size());
+         if (heldPutResponses.size() < holdPutResponsesUntil)
+            return;
+
+         toAnswer = new ArrayList<>(heldPutResponses);
+         heldPutResponses.clear();
+      }
+
+      for (OneSignalRestClient.ResponseHandler handler : toAnswer)
+         handler.onSuccess("{}");
+   }
+
    public static void get(final String url, final OneSignalRestClient.ResponseHandler responseHandler, String cacheKey) throws JSONException {
        trackRequest(REST_METHOD.GET, null, url);
        if (failGetParams && doFail(responseHandler, true)) return;
@@ -39,6 +39,9 @@ public class ShadowOneSignalRestClientWithMockConnection {
 
    public static MockHttpURLConnection lastConnection;
    public static MockHttpURLConnection.MockResponse mockResponse;
+   public static int connectionCount;
+   // Serve requests over MockHttpsURLConnection
+   public static boolean useHttps;
 
    public static void resetStatics() {
       mockResponse = new MockHttpURLConnection.MockResponse() {{
@@ -46,18 +49,31 @@ public class ShadowOneSignalRestClientWithMockConnection {
          status = 200;
       }};
       lastConnection = null;
+      connectionCount = 0;
+      useHttps = false;
+      MockHttpsURLConnection.resetPool();
    }
    
+   // Only time out right away when a test simulates a hung connection, so the watchdog
+   //   doesn't abort and disconnect requests that are still reading their mock response
    public static int getThreadTimeout(int timeout) {
+      return mockResponse.mockThreadHang ? 1 : timeout + 5_000;
+   }
+
+   // Let pooled request threads die right away so tests don't wait on idle threads
+   public static long getPoolKeepAliveTime() {
       return 1;
    }
 
    @Implementation
    public static HttpURLConnection newHttpURLConnection(String url) throws IOException {
+      connectionCount++;
       lastConnection = new MockHttpURLConnection(
          new URL("https://onesignal.com/api/v1/" + url),
          mockResponse
       );
+      if (useHttps)
+         return new MockHttpsURLConnection(lastConnection.getURL(), lastConnection);
       return lastConnection;
    }
 }
@@ -58,6 +58,11 @@ public class StaticResetHelper {
          }
          return false;
       }));
+      classes.add(new ClassState(OSRetryPolicy.class, null));
+      classes.add(new ClassState(OSSyncScheduler.class, null));
+      classes.add(new ClassState(OSTagOperationLog.class, null));
+      classes.add(new ClassState(OSTimeoutHandler.class, null));
+      classes.add(new ClassState(OSTransportMetrics.class, null));
       classes.add(new ClassState(OSSessionManager.class, null));
       classes.add(new ClassState(MockSessionManager.class, null));
       classes.add(new ClassState(OSNotificationWorkManager.class,  field -> {
@@ -0,0 +1,9 @@
+package com.test.onesignal;
+
+/**
+ * JUnit category of tests that time an optimization against the code it replaced and print the numbers.
+ * They only assert both paths give the same result, so they are left out of the regular test run.
+ * Run them with: ./gradlew :unittest:testDebugUnitTest -PrunBenchmarks
+ */
+public interface Benchmark {
+}
@@ -3,17 +3,25 @@ package com.test.onesignal;
 import android.content.ContentValues;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
 
 import androidx.test.core.app.ApplicationProvider;
 
 import com.onesignal.InAppMessagingHelpers;
 import com.onesignal.MockOneSignalDBHelper;
 import com.onesignal.OneSignalPackagePrivateHelper;
+import com.onesignal.OneSignalPackagePrivateHelper.HttpResponseCacheTable;
 import com.onesignal.OneSignalPackagePrivateHelper.InAppMessageTable;
 import com.onesignal.OneSignalPackagePrivateHelper.NotificationTable;
 import com.onesignal.OneSignalPackagePrivateHelper.OSTestInAppMessageInternal;
+import com.onesignal.OneSignalPackagePrivateHelper.OutboundRequestTable;
+import com.onesignal.OneSignalPackagePrivateHelper.TagOperationTable;
 import com.onesignal.OSOutcomeEvent;
+import com.onesignal.OSStorageStats;
+import com.onesignal.OneSignal;
+import com.onesignal.OneSignalDb;
 import com.onesignal.ShadowOneSignalDbHelper;
+import com.onesignal.ShadowOneSignalRestClient;
 import com.onesignal.StaticResetHelper;
 import com.onesignal.influence.domain.OSInfluenceChannel;
 import com.onesignal.influence.domain.OSInfluenceType;
@@ -25,20 +33,31 @@ import com.onesignal.outcomes.domain.OSCachedUniqueOutcomeName;
 
 import org.json.JSONArray;
 import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowLog;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.onesignal.OneSignalPackagePrivateHelper.OSTestTrigger.OSTriggerKind;
+import static com.test.onesignal.TestHelpers.fastColdRestartApp;
 import static com.test.onesignal.TestHelpers.getAllNotificationRecords;
 import static com.test.onesignal.TestHelpers.getAllOutcomesRecords;
 import static com.test.onesignal.TestHelpers.getAllOutcomesRecordsDBv5;
@@ -46,6 +65,8 @@ import static com.test.onesignal.TestHelpers.getAllUniqueOutcomeNotificationReco
 import static com.test.onesignal.TestHelpers.getAllUniqueOutcomeNotificationRecordsDBv5;
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNull;
+import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
 
 @Config(packageName = "com.onesignal.example",
@@ -645,4 +666,708 @@ public class DatabaseRunner {
         assertEquals(outcomeEventDB.getIamInfluenceType(), outcomeSaved.getIamInfluenceType());
     }
 
+    @Test
+    public void shouldUpgradeDbFromV8ToV9() {
+        // 1. Init DB as version 8
+        ShadowOneSignalDbHelper.DATABASE_VERSION = 8;
+        SQLiteDatabase writableDatabase = dbHelper.getSQLiteDatabaseWithRetries();
+
+        Cursor cursor = writableDatabase.rawQuery("SELECT name FROM sqlite_master WHERE type ='table' AND name='" + OutboundRequestTable.TABLE_NAME + "'", null);
+
+        boolean exist = false;
+        if (cursor != null) {
+            exist = cursor.getCount() > 0;
+            cursor.close();
+        }
+        // 2. Table must not exist
+        assertFalse(exist);
+        writableDatabase.setVersion(8);
+        writableDatabase.close();
+
+        // 3. Clear the cache of the DB so it reloads the file and next getSQLiteDatabaseWithRetries will auto trigger the update
+        ShadowOneSignalDbHelper.restSetStaticFields();
+
+        // 4. Opening the DB will auto trigger the update to DB version 9.
+        writableDatabase = dbHelper.getSQLiteDatabaseWithRetries();
+
+        ContentValues values = new ContentValues();
+        values.put(OutboundRequestTable.COLUMN_NAME_REQUEST_ID, "request_id");
+        values.put(OutboundRequestTable.COLUMN_NAME_METHOD, "PUT");
+        values.put(OutboundRequestTable.COLUMN_NAME_URL, "notifications/notification_id");
+        values.put(OutboundRequestTable.COLUMN_NAME_BODY, "{}");
+        writableDatabase.insert(OutboundRequestTable.TABLE_NAME, null, values);
+
+        // 5. Table now must exist, attempts must default to 0 and the request must default to being retried
+        cursor = writableDatabase.query(OutboundRequestTable.TABLE_NAME, null, null, null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("request_id", cursor.getString(cursor.getColumnIndex(OutboundRequestTable.COLUMN_NAME_REQUEST_ID)));
+        assertEquals(0, cursor.getInt(cursor.getColumnIndex(OutboundRequestTable.COLUMN_NAME_ATTEMPTS)));
+        assertEquals(1, cursor.getInt(cursor.getColumnIndex(OutboundRequestTable.COLUMN_NAME_RETRY_ON_FAILURE)));
+        cursor.close();
+        writableDatabase.close();
+    }
+
+    @Test
+    public void shouldUpgradeDbFromV9ToV10() {
+        // 1. Init DB as version 9
+        ShadowOneSignalDbHelper.DATABASE_VERSION = 9;
+        SQLiteDatabase writableDatabase = dbHelper.getSQLiteDatabaseWithRetries();
+
+        Cursor cursor = writableDatabase.rawQuery("SELECT name FROM sqlite_master WHERE type ='table' AND name='" + HttpResponseCacheTable.TABLE_NAME + "'", null);
+
+        boolean exist = false;
+        if (cursor != null) {
+            exist = cursor.getCount() > 0;
+            cursor.close();
+        }
+        // 2. Table must not exist
+        assertFalse(exist);
+        writableDatabase.setVersion(9);
+        writableDatabase.close();
+
+        // 3. Clear the cache of the DB so it reloads the file and next getSQLiteDatabaseWithRetries will auto trigger the update
+        ShadowOneSignalDbHelper.restSetStaticFields();
+
+        // 4. Opening the DB will auto trigger the update to DB version 10.
+        writableDatabase = dbHelper.getSQLiteDatabaseWithRetries();
+
+        ContentValues values = new ContentValues();
+        values.put(HttpResponseCacheTable.COLUMN_NAME_CACHE_KEY, "cache_key");
+        values.put(HttpResponseCacheTable.COLUMN_NAME_ETAG, "etag");
+        values.put(HttpResponseCacheTable.COLUMN_NAME_BODY, "{}");
+        writableDatabase.insert(HttpResponseCacheTable.TABLE_NAME, null, values);
+
+        // 5. Table now must exist and cache keys must be unique
+        cursor = writableDatabase.query(HttpResponseCacheTable.TABLE_NAME, null, null, null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+
+        assertEquals(-1, writableDatabase.insert(HttpResponseCacheTable.TABLE_NAME, null, values));
+        writableDatabase.close();
+    }
+
+    @Test
+    public void shouldUpgradeDbFromV10ToV11() {
+        // 1. Init DB as version 10 with only the single column group and collapse indexes
+        ShadowOneSignalDbHelper.DATABASE_VERSION = 10;
+        SQLiteDatabase writableDatabase = dbHelper.getSQLiteDatabaseWithRetries();
+        writableDatabase.execSQL("DROP INDEX IF EXISTS " + NotificationTable.INDEX_GROUP_ACTIVE);
+        writableDatabase.execSQL("DROP INDEX IF EXISTS " + NotificationTable.INDEX_COLLAPSE_ACTIVE);
+        writableDatabase.execSQL("DROP INDEX IF EXISTS " + NotificationTable.INDEX_ACTIVE_CREATED_TIME);
+        writableDatabase.execSQL(NotificationTable.INDEX_CREATE_GROUP_ID);
+        writableDatabase.execSQL(NotificationTable.INDEX_CREATE_COLLAPSE_ID);
+        assertFalse(indexExists(writableDatabase, NotificationTable.INDEX_GROUP_ACTIVE));
+        writableDatabase.setVersion(10);
+        writableDatabase.close();
+
+        // 2. Clear the cache of the DB so it reloads the file and next getSQLiteDatabaseWithRetries will auto trigger the update
+        ShadowOneSignalDbHelper.restSetStaticFields();
+
+        // 3. Opening the DB will auto trigger the update to DB version 11.
+        writableDatabase = dbHelper.getSQLiteDatabaseWithRetries();
+
+        // 4. Composite indexes replace the single column ones they start with
+        assertTrue(indexExists(writableDatabase, NotificationTable.INDEX_GROUP_ACTIVE));
+        assertTrue(indexExists(writableDatabase, NotificationTable.INDEX_COLLAPSE_ACTIVE));
+        assertTrue(indexExists(writableDatabase, NotificationTable.INDEX_ACTIVE_CREATED_TIME));
+        assertFalse(indexExists(writableDatabase, "notification_group_id_idx"));
+        assertFalse(indexExists(writableDatabase, "notification_collapse_id_idx"));
+        writableDatabase.close();
+    }
+
+    @Test
+    public void shouldUpgradeDbFromV11ToV12() {
+        // 1. Init DB as version 11
+        ShadowOneSignalDbHelper.DATABASE_VERSION = 11;
+        SQLiteDatabase writableDatabase = dbHelper.getSQLiteDatabaseWithRetries();
+
+        Cursor cursor = writableDatabase.rawQuery("SELECT name FROM sqlite_master WHERE type ='table' AND name='" + TagOperationTable.TABLE_NAME + "'", null);
+
+        boolean exist = false;
+        if (cursor != null) {
+            exist = cursor.getCount() > 0;
+            cursor.close();
+        }
+        // 2. Table must not exist
+        assertFalse(exist);
+        writableDatabase.setVersion(11);
+        writableDatabase.close();
+
+        // 3. Clear the cache of the DB so it reloads the file and next getSQLiteDatabaseWithRetries will auto trigger the update
+        ShadowOneSignalDbHelper.restSetStaticFields();
+
+        // 4. Opening the DB will auto trigger the update to DB version 12.
+        writableDatabase = dbHelper.getSQLiteDatabaseWithRetries();
+
+        ContentValues values = new ContentValues();
+        values.put(TagOperationTable.COLUMN_NAME_CHANNEL, "push");
+        values.put(TagOperationTable.COLUMN_NAME_TYPE, 0);
+        values.put(TagOperationTable.COLUMN_NAME_KEY, "key");
+        values.put(TagOperationTable.COLUMN_NAME_VALUE, "value");
+        writableDatabase.insert(TagOperationTable.TABLE_NAME, null, values);
+
+        // 5. Table now must exist
+        cursor = writableDatabase.query(TagOperationTable.TABLE_NAME, null, null, null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.close();
+        assertTrue(indexExists(writableDatabase, "tag_operation_channel_idx"));
+        writableDatabase.close();
+    }
+
+    @Test
+    @Config(shadows = { ShadowOneSignalRestClient.class })
+    public void shouldOnlyKeepReplayedRequestsJournaledWithRetryOnFailure() throws Exception {
+        insertJournaledRequest("retried", true);
+        insertJournaledRequest("not_retried", false);
+        ShadowOneSignalRestClient.failAll = true;
+        ShadowOneSignalRestClient.failHttpCode = 500;
+
+        OneSignalPackagePrivateHelper.OSOutboundRequestJournal_replayPendingRequests(dbHelper);
+        TestHelpers.threadAndTaskWait();
+
+        // Both are replayed once, only the one the journal retries itself is kept for a later start
+        assertEquals(2, ShadowOneSignalRestClient.networkCallCount);
+        Cursor cursor = dbHelper.query(OutboundRequestTable.TABLE_NAME, new String[] { OutboundRequestTable.COLUMN_NAME_REQUEST_ID }, null, null, null, null, null);
+        assertEquals(1, cursor.getCount());
+        cursor.moveToFirst();
+        assertEquals("retried", cursor.getString(0));
+        cursor.close();
+    }
+
+    @Test
+    @Config(shadows = { ShadowOneSignalRestClient.class })
+    public void shouldReplayJournaledRequestsInOrder() throws Exception {
+        insertJournaledRequest("first", true);
+        insertJournaledRequest("second", true);
+        insertJournaledRequest("third", true);
+
+        OneSignalPackagePrivateHelper.OSOutboundRequestJournal_replayPendingRequests(dbHelper);
+        TestHelpers.threadAndTaskWait();
+
+        assertEquals(3, ShadowOneSignalRestClient.requests.size());
+        assertEquals("notifications/first", ShadowOneSignalRestClient.requests.get(0).url);
+        assertEquals("notifications/second", ShadowOneSignalRestClient.requests.get(1).url);
+        assertEquals("notifications/third", ShadowOneSignalRestClient.requests.get(2).url);
+    }
+
+    private void insertJournaledRequest(String requestId, boolean retryOnFailure) throws JSONException {
+        ContentValues values = new ContentValues();
+        values.put(OutboundRequestTable.COLUMN_NAME_REQUEST_ID, requestId);
+        values.put(OutboundRequestTable.COLUMN_NAME_METHOD, "PUT");
+        values.put(OutboundRequestTable.COLUMN_NAME_URL, "notifications/" + requestId);
+        values.put(OutboundRequestTable.COLUMN_NAME_BODY, new JSONObject().put("app_id", "b4f7f966-d8cc-11e4-bed1-df8f05be55ba").toString());
+        values.put(OutboundRequestTable.COLUMN_NAME_RETRY_ON_FAILURE, retryOnFailure ? 1 : 0);
+        dbHelper.insert(OutboundRequestTable.TABLE_NAME, null, values);
+    }
+
+    @Test
+    public void shouldUseCompositeIndexesForActiveNotificationQueries() {
+        SQLiteDatabase db = dbHelper.getSQLiteDatabaseWithRetries();
+        String active = NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " + NotificationTable.COLUMN_NAME_OPENED + " = 0";
+
+        // Summary notification children, GenerateNotification.createSummaryNotification
+        assertQueryUsesIndex(db, NotificationTable.INDEX_GROUP_ACTIVE,
+                "SELECT * FROM " + NotificationTable.TABLE_NAME +
+                        " WHERE " + NotificationTable.COLUMN_NAME_GROUP_ID + " = ? AND " + active +
+                        " AND " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " <> ?" +
+                        " ORDER BY " + NotificationTable._ID + " DESC",
+                new String[] { "group", "1" });
+
+        // NotificationSummaryManager.getSummaryNotificationId
+        assertQueryUsesIndex(db, NotificationTable.INDEX_GROUP_ACTIVE,
+                "SELECT " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " FROM " + NotificationTable.TABLE_NAME +
+                        " WHERE " + NotificationTable.COLUMN_NAME_GROUP_ID + " = ? AND " + active +
+                        " AND " + NotificationTable.COLUMN_NAME_IS_SUMMARY + " = 1 LIMIT 1",
+                new String[] { "group" });
+
+        // NotificationBundleProcessor.processCollapseKey
+        assertQueryUsesIndex(db, NotificationTable.INDEX_COLLAPSE_ACTIVE,
+                "SELECT " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " FROM " + NotificationTable.TABLE_NAME +
+                        " WHERE " + NotificationTable.COLUMN_NAME_COLLAPSE_ID + " = ? AND " + active + " LIMIT 1",
+                new String[] { "collapse_id" });
+
+        // OSNotificationRestoreWorkManager restore query
+        assertQueryUsesIndex(db, NotificationTable.INDEX_ACTIVE_CREATED_TIME,
+                "SELECT * FROM " + NotificationTable.TABLE_NAME +
+                        " WHERE " + NotificationTable.COLUMN_NAME_CREATED_TIME + " > ? AND " + active +
+                        " AND " + NotificationTable.COLUMN_NAME_IS_SUMMARY + " = 0" +
+                        " ORDER BY " + NotificationTable._ID + " DESC LIMIT 49",
+                new String[] { "0" });
+    }
+
+    private static boolean indexExists(SQLiteDatabase db, String indexName) {
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type = 'index' AND name = ?", new String[] { indexName });
+        boolean exists = cursor.getCount() > 0;
+        cursor.close();
+        return exists;
+    }
+
+    private static void assertQueryUsesIndex(SQLiteDatabase db, String indexName, String sql, String[] args) {
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        StringBuilder plan = new StringBuilder();
+        while (cursor.moveToNext())
+            plan.append(cursor.getString(cursor.getColumnIndex("detail"))).append('\n');
+        cursor.close();
+        assertTrue("Expected " + indexName + " in plan:\n" + plan, plan.toString().contains(" INDEX " + indexName));
+    }
+
+    private void insertNotificationsCreatedAt(int count, String idPrefix, long createdTime) {
+        SQLiteDatabase writableDatabase = dbHelper.getSQLiteDatabaseWithRetries();
+        writableDatabase.beginTransaction();
+        try {
+            for (int i = 0; i < count; i++) {
+                ContentValues values = new ContentValues();
+                values.put(NotificationTable.COLUMN_NAME_NOTIFICATION_ID, idPrefix + i);
+                values.put(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID, i);
+                values.put(NotificationTable.COLUMN_NAME_CREATED_TIME, createdTime);
+                writableDatabase.insertOrThrow(NotificationTable.TABLE_NAME, null, values);
+            }
+            writableDatabase.setTransactionSuccessful();
+        } finally {
+            writableDatabase.endTransaction();
+        }
+    }
+
+    private void insertUniqueOutcome(String name, String influenceId, OSInfluenceChannel channel) {
+        ContentValues values = new ContentValues();
+        values.put(MockOSCachedUniqueOutcomeTable.COLUMN_NAME_NAME, name);
+        values.put(MockOSCachedUniqueOutcomeTable.COLUMN_CHANNEL_INFLUENCE_ID, influenceId);
+        values.put(MockOSCachedUniqueOutcomeTable.COLUMN_CHANNEL_TYPE, channel.toString());
+        dbHelper.getSQLiteDatabaseWithRetries().insertOrThrow(MockOSCachedUniqueOutcomeTable.TABLE_NAME_V2, null, values);
+    }
+
+    @Test
+    public void shouldCleanExpiredNotificationsInChunksAndCascadeToUniqueOutcomes() {
+        int chunkSize = OneSignalPackagePrivateHelper.OSNotificationCacheCleaner_CLEAN_CHUNK_SIZE;
+        long nowInSeconds = System.currentTimeMillis() / 1_000L;
+        int expired = chunkSize * 2 + 50;
+        insertNotificationsCreatedAt(expired, "expired_", nowInSeconds - 8 * 24 * 60 * 60);
+        insertNotificationsCreatedAt(10, "recent_", nowInSeconds - 60);
+
+        insertUniqueOutcome("unique_1", "expired_0", OSInfluenceChannel.NOTIFICATION);
+        insertUniqueOutcome("unique_2", "expired_" + (expired - 1), OSInfluenceChannel.NOTIFICATION);
+        insertUniqueOutcome("unique_1", "recent_0", OSInfluenceChannel.NOTIFICATION);
+        // Same id on another channel is not linked to the notification
+        insertUniqueOutcome("unique_1", "expired_0", OSInfluenceChannel.IAM);
+
+        int[] result = OneSignalPackagePrivateHelper.OSNotificationCacheCleaner_cleanExpiredNotifications(dbHelper, Integer.MAX_VALUE);
+
+        assertEquals(expired, result[0]);
+        assertEquals(2, result[1]);
+        assertEquals(3, result[2]);
+        assertEquals(1, result[3]);
+
+        List<HashMap<String, Object>> notifications = getAllNotificationRecords(dbHelper);
+        assertEquals(10, notifications.size());
+        for (HashMap<String, Object> notification : notifications)
+            assertTrue(((String) notification.get(NotificationTable.COLUMN_NAME_NOTIFICATION_ID)).startsWith("recent_"));
+
+        List<OSCachedUniqueOutcomeName> uniqueOutcomes = getAllUniqueOutcomeNotificationRecordsDB(dbHelper);
+        assertEquals(2, uniqueOutcomes.size());
+        for (OSCachedUniqueOutcomeName uniqueOutcome : uniqueOutcomes)
+            assertFalse(uniqueOutcome.getChannel() == OSInfluenceChannel.NOTIFICATION && uniqueOutcome.getInfluenceId().startsWith("expired_"));
+
+        // Last run is recorded
+        assertEquals(expired, OneSignalPackagePrivateHelper.OneSignalPrefs_getNotificationCacheCleanDeleted());
+        assertTrue(OneSignalPackagePrivateHelper.OneSignalPrefs_getNotificationCacheCleanDuration() >= 0);
+    }
+
+    @Test
+    public void shouldKeepRemainingExpiredNotificationsWhenCleanIsStopped() {
+        int chunkSize = OneSignalPackagePrivateHelper.OSNotificationCacheCleaner_CLEAN_CHUNK_SIZE;
+        long nowInSeconds = System.currentTimeMillis() / 1_000L;
+        insertNotificationsCreatedAt(chunkSize * 2, "expired_", nowInSeconds - 8 * 24 * 60 * 60);
+
+        int[] result = OneSignalPackagePrivateHelper.OSNotificationCacheCleaner_cleanExpiredNotifications(dbHelper, 1);
+
+        assertEquals(chunkSize, result[0]);
+        assertEquals(1, result[2]);
+        assertEquals(0, result[3]);
+        assertEquals(chunkSize, getAllNotificationRecords(dbHelper).size());
+
+        // Next run picks up the rest
+        result = OneSignalPackagePrivateHelper.OSNotificationCacheCleaner_cleanExpiredNotifications(dbHelper, Integer.MAX_VALUE);
+        assertEquals(chunkSize, result[0]);
+        assertEquals(1, result[3]);
+        assertEquals(0, getAllNotificationRecords(dbHelper).size());
+    }
+
+    @Test
+    public void shouldEvictConsumedThenOldestNotificationsOverRowCap() {
+        OneSignal.setStorageRowCap(OSStorageStats.TABLE_NOTIFICATION, 5);
+        long nowInSeconds = System.currentTimeMillis() / 1_000L;
+        for (int i = 0; i < 8; i++)
+            insertNotificationsCreatedAt(1, "notification_" + i + "_", nowInSeconds - 100 + i);
+        insertUniqueOutcome("unique_1", "notification_7_0", OSInfluenceChannel.NOTIFICATION);
+        insertUniqueOutcome("unique_1", "notification_3_0", OSInfluenceChannel.NOTIFICATION);
+
+        // Newest notification was opened, so it goes first even though it is the newest
+        ContentValues values = new ContentValues();
+        values.put(NotificationTable.COLUMN_NAME_OPENED, 1);
+        dbHelper.update(NotificationTable.TABLE_NAME, values, NotificationTable.COLUMN_NAME_NOTIFICATION_ID + " = ?", new String[] { "notification_7_0" });
+
+        Map<String, Integer> evicted = OneSignalPackagePrivateHelper.OSStorageLimits_enforceRowCaps(dbHelper);
+
+        assertEquals(Integer.valueOf(3), evicted.get(OSStorageStats.TABLE_NOTIFICATION));
+        List<HashMap<String, Object>> notifications = getAllNotificationRecords(dbHelper);
+        assertEquals(5, notifications.size());
+        HashSet<String> remainingIds = new HashSet<>();
+        for (HashMap<String, Object> notification : notifications)
+            remainingIds.add((String) notification.get(NotificationTable.COLUMN_NAME_NOTIFICATION_ID));
+        for (int i = 2; i < 7; i++)
+            assertTrue(remainingIds.contains("notification_" + i + "_0"));
+
+        // Unique outcome of the evicted notification is removed with it
+        List<OSCachedUniqueOutcomeName> uniqueOutcomes = getAllUniqueOutcomeNotificationRecordsDB(dbHelper);
+        assertEquals(1, uniqueOutcomes.size());
+        assertEquals("notification_3_0", uniqueOutcomes.get(0).getInfluenceId());
+    }
+
+    @Test
+    public void shouldEvictOldestOutcomesOverRowCap() {
+        OneSignal.setStorageRowCap(OSStorageStats.TABLE_OUTCOME, 3);
+        for (int i = 0; i < 5; i++) {
+            ContentValues values = new ContentValues();
+            values.put(MockOSOutcomeEventsTable.COLUMN_NAME_NAME, "outcome_" + i);
+            values.put(MockOSOutcomeEventsTable.COLUMN_NAME_TIMESTAMP, i);
+            dbHelper.insert(MockOSOutcomeEventsTable.TABLE_NAME, null, values);
+        }
+
+        OneSignalPackagePrivateHelper.OSStorageLimits_enforceRowCaps(dbHelper);
+
+        Cursor cursor = dbHelper.query(MockOSOutcomeEventsTable.TABLE_NAME, new String[] { MockOSOutcomeEventsTable.COLUMN_NAME_NAME }, null, null, null, null, MockOSOutcomeEventsTable.COLUMN_NAME_TIMESTAMP);
+        ArrayList<String> names = new ArrayList<>();
+        while (cursor.moveToNext())
+            names.add(cursor.getString(0));
+        cursor.close();
+        assertEquals(Arrays.asList("outcome_2", "outcome_3", "outcome_4"), names);
+    }
+
+    @Test
+    public void shouldKeepRowCapsAfterRestart() throws Exception {
+        OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+        OneSignal.setStorageRowCap(OSStorageStats.TABLE_NOTIFICATION, 5);
+        fastColdRestartApp();
+
+        insertNotificationsCreatedAt(8, "notification_", System.currentTimeMillis() / 1_000L);
+        Map<String, Integer> evicted = OneSignalPackagePrivateHelper.OSStorageLimits_enforceRowCaps(dbHelper);
+
+        assertEquals(Integer.valueOf(3), evicted.get(OSStorageStats.TABLE_NOTIFICATION));
+    }
+
+    @Test
+    public void shouldNotCapCachedUniqueOutcomes() {
+        OneSignal.setStorageRowCap(OSStorageStats.TABLE_CACHED_UNIQUE_OUTCOME, 1);
+        insertUniqueOutcome("unique_1", "notification_1", OSInfluenceChannel.NOTIFICATION);
+        insertUniqueOutcome("unique_2", "notification_1", OSInfluenceChannel.NOTIFICATION);
+
+        assertTrue(OneSignalPackagePrivateHelper.OSStorageLimits_enforceRowCaps(dbHelper).isEmpty());
+        // Evicting them would let the unique outcomes be sent again
+        assertEquals(2, getAllUniqueOutcomeNotificationRecordsDB(dbHelper).size());
+        OSStorageStats stats = OneSignalPackagePrivateHelper.OSStorageLimits_storageStats(ApplicationProvider.getApplicationContext(), dbHelper);
+        assertEquals(0, stats.getTable(OSStorageStats.TABLE_CACHED_UNIQUE_OUTCOME).getRowCap());
+    }
+
+    @Test
+    public void shouldNotEvictTablesUnderRowCap() {
+        insertNotificationsCreatedAt(10, "notification_", System.currentTimeMillis() / 1_000L);
+
+        assertTrue(OneSignalPackagePrivateHelper.OSStorageLimits_enforceRowCaps(dbHelper).isEmpty());
+        assertEquals(10, getAllNotificationRecords(dbHelper).size());
+    }
+
+    @Test
+    public void shouldIgnoreInvalidRowCaps() {
+        OneSignal.setStorageRowCap(OSStorageStats.TABLE_NOTIFICATION, 0);
+        OneSignal.setStorageRowCap("not_a_table", 5);
+        insertNotificationsCreatedAt(10, "notification_", System.currentTimeMillis() / 1_000L);
+
+        OSStorageStats stats = OneSignalPackagePrivateHelper.OSStorageLimits_storageStats(ApplicationProvider.getApplicationContext(), dbHelper);
+        assertNull(stats.getTable("not_a_table"));
+        assertTrue(stats.getTable(OSStorageStats.TABLE_NOTIFICATION).getRowCap() > 0);
+    }
+
+    @Test
+    public void shouldReportRowsAndBytesPerTable() {
+        OneSignal.setStorageRowCap(OSStorageStats.TABLE_IN_APP_MESSAGE, 42);
+        insertNotificationsCreatedAt(10, "notification_", System.currentTimeMillis() / 1_000L);
+        insertUniqueOutcome("unique_1", "notification_0", OSInfluenceChannel.NOTIFICATION);
+
+        OSStorageStats stats = OneSignalPackagePrivateHelper.OSStorageLimits_storageStats(ApplicationProvider.getApplicationContext(), dbHelper);
+
+        OSStorageStats.TableStats notificationStats = stats.getTable(OSStorageStats.TABLE_NOTIFICATION);
+        assertEquals(10, notificationStats.getRowCount());
+        assertTrue(notificationStats.getBytes() > 0);
+        assertEquals(1, stats.getTable(OSStorageStats.TABLE_CACHED_UNIQUE_OUTCOME).getRowCount());
+
+        OSStorageStats.TableStats inAppMessageStats = stats.getTable(OSStorageStats.TABLE_IN_APP_MESSAGE);
+        assertEquals(0, inAppMessageStats.getRowCount());
+        assertEquals(0, inAppMessageStats.getBytes());
+        assertEquals(42, inAppMessageStats.getRowCap());
+
+        assertEquals(0, stats.getTable(OutboundRequestTable.TABLE_NAME).getRowCap());
+        assertTrue(stats.getDatabaseBytes() > 0);
+    }
+
+    @Test
+    public void shouldCommitAllWritesOfATransaction() {
+        boolean committed = dbHelper.runInTransaction(new OneSignalDb.Transaction() {
+            @Override
+            public void run(OneSignalDb.Batch batch) {
+                String insertSql = "INSERT INTO " + NotificationTable.TABLE_NAME + " (" +
+                        NotificationTable.COLUMN_NAME_NOTIFICATION_ID + ", " +
+                        NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + ") VALUES (?, ?)";
+                for (int i = 0; i < 100; i++) {
+                    SQLiteStatement statement = batch.compileStatement(insertSql);
+                    // Same compiled statement is handed back for every row
+                    assertSame(statement, batch.compileStatement(insertSql));
+                    statement.bindString(1, "notification_" + i);
+                    statement.bindLong(2, i);
+                    statement.executeInsert();
+                }
+
+                ContentValues values = new ContentValues();
+                values.put(NotificationTable.COLUMN_NAME_DISMISSED, 1);
+                assertEquals(50, batch.update(NotificationTable.TABLE_NAME, values, NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " < 50", null));
+            }
+        });
+
+        assertTrue(committed);
+        List<HashMap<String, Object>> notifications = getAllNotificationRecords(dbHelper);
+        assertEquals(100, notifications.size());
+        long dismissed = 0;
+        for (HashMap<String, Object> notification : notifications)
+            dismissed += (Long) notification.get(NotificationTable.COLUMN_NAME_DISMISSED);
+        assertEquals(50, dismissed);
+    }
+
+    @Test
+    public void shouldRollBackTransactionWhenAWriteFails() {
+        boolean committed = dbHelper.runInTransaction(new OneSignalDb.Transaction() {
+            @Override
+            public void run(OneSignalDb.Batch batch) {
+                ContentValues values = new ContentValues();
+                values.put(NotificationTable.COLUMN_NAME_NOTIFICATION_ID, "notification_id");
+                batch.insert(NotificationTable.TABLE_NAME, null, values);
+
+                batch.insert("missing_table", null, values);
+            }
+        });
+
+        assertFalse(committed);
+        assertEquals(0, getAllNotificationRecords(dbHelper).size());
+    }
+
+    @Test
+    public void shouldEnableWriteAheadLogging() {
+        assertTrue(dbHelper.getSQLiteDatabaseWithRetries().isWriteAheadLoggingEnabled());
+    }
+
+    @Test
+    public void stressDisplayAndRestoreInParallel() throws Exception {
+        final int displayThreads = 4;
+        final int restoreThreads = 4;
+        final int notificationsPerThread = 50;
+        final AtomicBoolean displaying = new AtomicBoolean(true);
+        final AtomicInteger restoreQueries = new AtomicInteger();
+        final ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < displayThreads; t++) {
+            final int thread = t;
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        for (int i = 0; i < notificationsPerThread; i++) {
+                            final int androidId = thread * notificationsPerThread + i;
+                            // Same writes as displaying a notification, dismiss the one it replaces and save it
+                            boolean committed = dbHelper.runInTransaction(new OneSignalDb.Transaction() {
+                                @Override
+                                public void run(OneSignalDb.Batch batch) {
+                                    ContentValues dismissed = new ContentValues();
+                                    dismissed.put(NotificationTable.COLUMN_NAME_DISMISSED, 1);
+                                    batch.update(NotificationTable.TABLE_NAME, dismissed, NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " = " + androidId, null);
+
+                                    ContentValues values = new ContentValues();
+                                    values.put(NotificationTable.COLUMN_NAME_NOTIFICATION_ID, "notification_" + androidId);
+                                    values.put(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID, androidId);
+                                    batch.insert(NotificationTable.TABLE_NAME, null, values);
+                                }
+                            });
+                            assertTrue(committed);
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            }));
+        }
+
+        for (int t = 0; t < restoreThreads; t++) {
+            threads.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        while (displaying.get()) {
+                            // Same query restoring notifications runs
+                            Cursor cursor = dbHelper.query(
+                                    NotificationTable.TABLE_NAME,
+                                    new String[] { NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID },
+                                    NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " + NotificationTable.COLUMN_NAME_OPENED + " = 0",
+                                    null,
+                                    null,
+                                    null,
+                                    NotificationTable._ID + " DESC",
+                                    "49");
+                            try {
+                                assertTrue(cursor.getCount() <= 49);
+                                while (cursor.moveToNext())
+                                    cursor.getInt(0);
+                            } finally {
+                                cursor.close();
+                            }
+                            restoreQueries.incrementAndGet();
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            }));
+        }
+
+        for (Thread thread : threads)
+            thread.start();
+        start.countDown();
+        for (int t = 0; t < displayThreads; t++)
+            threads.get(t).join(30_000);
+        displaying.set(false);
+        for (Thread thread : threads)
+            thread.join(30_000);
+
+        assertTrue(errors.toString(), errors.isEmpty());
+        assertTrue(restoreQueries.get() > 0);
+        assertEquals(displayThreads * notificationsPerThread, getAllNotificationRecords(dbHelper).size());
+    }
+
+    @Test
+    public void shouldQueryGroupAndSummaryWithBoundArgs() {
+        final String group = "bound_args_group";
+        final int groupSize = 5;
+        String summarySql = "SELECT " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID +
+                " FROM " + NotificationTable.TABLE_NAME +
+                " WHERE " + NotificationTable.COLUMN_NAME_GROUP_ID + " = ? AND " +
+                NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
+                NotificationTable.COLUMN_NAME_OPENED + " = 0 AND " +
+                NotificationTable.COLUMN_NAME_IS_SUMMARY + " = 1 LIMIT 1";
+        String groupWhere = NotificationTable.COLUMN_NAME_GROUP_ID + " = ? AND " +
+                NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
+                NotificationTable.COLUMN_NAME_OPENED + " = 0";
+
+        insertGroupWithSummary(group, groupSize);
+
+        for (int i = 1; i <= groupSize; i++) {
+            assertEquals(queryGroupInlined(group, groupWhere, i), queryGroupBound(group, groupWhere, i));
+            assertEquals(groupSize, queryGroupBound(group, groupWhere, i));
+        }
+        assertEquals(Long.valueOf(groupSize + 1), dbHelper.queryForLong(summarySql, new String[] { group }));
+        assertNull(dbHelper.queryForLong(summarySql, new String[] { "missing_group" }));
+    }
+
+    @Category(Benchmark.class)
+    @Test
+    public void benchmarkGroupQueriesWithBoundArgsFor50Notifications() {
+        final String group = "benchmark_group";
+        final int groupSize = 50;
+        final int iterations = 20;
+        final String summarySql = "SELECT " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID +
+                " FROM " + NotificationTable.TABLE_NAME +
+                " WHERE " + NotificationTable.COLUMN_NAME_GROUP_ID + " = ? AND " +
+                NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
+                NotificationTable.COLUMN_NAME_OPENED + " = 0 AND " +
+                NotificationTable.COLUMN_NAME_IS_SUMMARY + " = 1 LIMIT 1";
+        final String groupWhere = NotificationTable.COLUMN_NAME_GROUP_ID + " = ? AND " +
+                NotificationTable.COLUMN_NAME_DISMISSED + " = 0 AND " +
+                NotificationTable.COLUMN_NAME_OPENED + " = 0";
+
+        insertGroupWithSummary(group, groupSize);
+
+        // Warm up both paths so JIT compilation isn't measured
+        for (int i = 1; i <= groupSize; i++) {
+            assertEquals(groupSize, queryGroupInlined(group, groupWhere, i));
+            assertEquals(groupSize, queryGroupBound(group, groupWhere, i));
+            assertEquals(Long.valueOf(groupSize + 1), dbHelper.queryForLong(summarySql, new String[] { group }));
+        }
+
+        long inlinedStart = System.nanoTime();
+        for (int n = 0; n < iterations; n++) {
+            for (int i = 1; i <= groupSize; i++) {
+                queryGroupInlined(group, groupWhere, i);
+                Cursor cursor = dbHelper.query(NotificationTable.TABLE_NAME,
+                        new String[] { NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID },
+                        groupWhere + " AND " + NotificationTable.COLUMN_NAME_IS_SUMMARY + " = 1",
+                        new String[] { group }, null, null, null);
+                cursor.moveToFirst();
+                cursor.close();
+            }
+        }
+        long inlinedNanos = System.nanoTime() - inlinedStart;
+
+        long boundStart = System.nanoTime();
+        for (int n = 0; n < iterations; n++) {
+            for (int i = 1; i <= groupSize; i++) {
+                queryGroupBound(group, groupWhere, i);
+                dbHelper.queryForLong(summarySql, new String[] { group });
+            }
+        }
+        long boundNanos = System.nanoTime() - boundStart;
+
+        int notifications = iterations * groupSize;
+        System.out.println("Group of " + groupSize + " notifications, averaged over " + notifications + " notifications");
+        System.out.println("  inlined android id + cursor summary:     " + (inlinedNanos / notifications / 1_000) + " us/notification");
+        System.out.println("  bound android id + cached summary query: " + (boundNanos / notifications / 1_000) + " us/notification");
+    }
+
+    private void insertGroupWithSummary(final String group, final int groupSize) {
+        dbHelper.runInTransaction(new OneSignalDb.Transaction() {
+            @Override
+            public void run(OneSignalDb.Batch batch) {
+                for (int i = 1; i <= groupSize + 1; i++) {
+                    ContentValues values = new ContentValues();
+                    values.put(NotificationTable.COLUMN_NAME_NOTIFICATION_ID, group + "_notification_" + i);
+                    values.put(NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID, i);
+                    values.put(NotificationTable.COLUMN_NAME_GROUP_ID, group);
+                    // Last row is the summary
+                    values.put(NotificationTable.COLUMN_NAME_IS_SUMMARY, i > groupSize ? 1 : 0);
+                    batch.insert(NotificationTable.TABLE_NAME, null, values);
+                }
+            }
+        });
+    }
+
+    // createSummaryNotification before the android id was bound, every notification compiled a new query
+    private int queryGroupInlined(String group, String groupWhere, int androidId) {
+        Cursor cursor = dbHelper.query(NotificationTable.TABLE_NAME,
+                new String[] { NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID },
+                groupWhere + " AND " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " <> " + androidId,
+                new String[] { group }, null, null, NotificationTable._ID + " DESC");
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
+    private int queryGroupBound(String group, String groupWhere, int androidId) {
+        Cursor cursor = dbHelper.query(NotificationTable.TABLE_NAME,
+                new String[] { NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID },
+                groupWhere + " AND " + NotificationTable.COLUMN_NAME_ANDROID_NOTIFICATION_ID + " <> ?",
+                new String[] { group, String.valueOf(androidId) }, null, null, NotificationTable._ID + " DESC");
+        int count = cursor.getCount();
+        cursor.close();
+        return count;
+    }
+
 }
@@ -672,7 +672,7 @@ public class InAppMessageIntegrationTests {
 
         // Verify clickId was persisted locally
         Set<String> testClickedMessages = TestOneSignalPrefs.getStringSet(
-           TestOneSignalPrefs.PREFS_ONESIGNAL,
+           TestOneSignalPrefs.PREFS_IN_APP_MESSAGES,
            TestOneSignalPrefs.PREFS_OS_CLICKED_CLICK_IDS_IAMS,
            null
         );
@@ -1250,7 +1250,7 @@ public class InAppMessageIntegrationTests {
 
         // Verify impressioned messageId was persisted locally
         Set<String> testImpressionedMessages = TestOneSignalPrefs.getStringSet(
-                TestOneSignalPrefs.PREFS_ONESIGNAL,
+                TestOneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 TestOneSignalPrefs.PREFS_OS_IMPRESSIONED_IAMS,
                 null
         );
@@ -1431,7 +1431,7 @@ public class InAppMessageIntegrationTests {
         TestHelpers.saveIAM(message, dbHelper);
         // Save IAM for dismiss
         TestOneSignalPrefs.saveStringSet(
-                TestOneSignalPrefs.PREFS_ONESIGNAL,
+                TestOneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 TestOneSignalPrefs.PREFS_OS_DISMISSED_IAMS,
                 new HashSet<>(Collections.singletonList(message.getMessageId()))
         );
@@ -1671,7 +1671,7 @@ public class InAppMessageIntegrationTests {
 
         // Verify clickId was persisted locally
         Set<String> testClickedMessages = TestOneSignalPrefs.getStringSet(
-                TestOneSignalPrefs.PREFS_ONESIGNAL,
+                TestOneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 TestOneSignalPrefs.PREFS_OS_CLICKED_CLICK_IDS_IAMS,
                 null
         );
@@ -1693,7 +1693,7 @@ public class InAppMessageIntegrationTests {
 
         // Verify clickId was persisted locally
         Set<String> secondRestClickedMessages = TestOneSignalPrefs.getStringSet(
-                TestOneSignalPrefs.PREFS_ONESIGNAL,
+                TestOneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 TestOneSignalPrefs.PREFS_OS_CLICKED_CLICK_IDS_IAMS,
                 null
         );
@@ -1736,12 +1736,12 @@ public class InAppMessageIntegrationTests {
             add(iam2.getMessageId());
         }};
         TestOneSignalPrefs.saveStringSet(
-                TestOneSignalPrefs.PREFS_ONESIGNAL,
+                TestOneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 TestOneSignalPrefs.PREFS_OS_DISMISSED_IAMS,
                 messageIds);
 
         TestOneSignalPrefs.saveStringSet(
-                TestOneSignalPrefs.PREFS_ONESIGNAL,
+                TestOneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 TestOneSignalPrefs.PREFS_OS_IMPRESSIONED_IAMS,
                 messageIds);
 
@@ -1750,7 +1750,7 @@ public class InAppMessageIntegrationTests {
             addAll(iam2.getClickedClickIds());
         }};
         TestOneSignalPrefs.saveStringSet(
-                TestOneSignalPrefs.PREFS_ONESIGNAL,
+                TestOneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 TestOneSignalPrefs.PREFS_OS_CLICKED_CLICK_IDS_IAMS,
                 clickedClickIds);
 
@@ -1760,21 +1760,21 @@ public class InAppMessageIntegrationTests {
 
         // 4. Validate all data associated with the 6 month old IAM has been deleted
         Set<String> testDismissedMessages = TestOneSignalPrefs.getStringSet(
-                TestOneSignalPrefs.PREFS_ONESIGNAL,
+                TestOneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 TestOneSignalPrefs.PREFS_OS_DISMISSED_IAMS,
                 null);
         assertEquals(1, testDismissedMessages.size());
         assertTrue(testDismissedMessages.contains(iam1.getMessageId()));
 
         Set<String> testImpressionedMessages = TestOneSignalPrefs.getStringSet(
-                TestOneSignalPrefs.PREFS_ONESIGNAL,
+                TestOneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 TestOneSignalPrefs.PREFS_OS_IMPRESSIONED_IAMS,
                 null);
         assertEquals(1, testImpressionedMessages.size());
         assertTrue(testImpressionedMessages.contains(iam1.getMessageId()));
 
         Set<String> testClickedClickIds = TestOneSignalPrefs.getStringSet(
-                TestOneSignalPrefs.PREFS_ONESIGNAL,
+                TestOneSignalPrefs.PREFS_IN_APP_MESSAGES,
                 TestOneSignalPrefs.PREFS_OS_CLICKED_CLICK_IDS_IAMS,
                 null);
         assertEquals(1, testClickedClickIds.size());
@@ -64,6 +64,7 @@ import com.onesignal.OneSignal.ChangeTagsUpdateHandler;
 import com.onesignal.OneSignal.OSSetLanguageCompletionHandler;
 import com.onesignal.OneSignal.OSLanguageError;
 import com.onesignal.OneSignalPackagePrivateHelper;
+import com.onesignal.OneSignalPackagePrivateHelper.TestOneSignalPrefs;
 import com.onesignal.OneSignalShadowPackageManager;
 import com.onesignal.PermissionsActivity;
 import com.onesignal.ShadowBadgeCountUpdater;
@@ -132,6 +133,11 @@ import java.util.regex.Pattern;
 import static com.onesignal.OneSignalPackagePrivateHelper.FCMBroadcastReceiver_processBundle;
 import static com.onesignal.OneSignalPackagePrivateHelper.NotificationBundleProcessor_Process;
 import static com.onesignal.OneSignalPackagePrivateHelper.NotificationOpenedProcessor_processFromContext;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSTagOperationLog_COMPACT_THRESHOLD;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSTagOperationLog_count;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSSyncScheduler_pause;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSTagOperationLog_pause;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSTagOperationLog_runPostedTasks;
 import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_getSessionListener;
 import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_handleNotificationOpen;
 import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_isInForeground;
@@ -140,6 +146,7 @@ import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_setTime;
 import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_setTrackerFactory;
 import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_taskQueueWaitingForInit;
 import static com.onesignal.OneSignalPackagePrivateHelper.OSObservable;
+import static com.onesignal.OneSignalPackagePrivateHelper.UserState_getPersistedSyncValues;
 import static com.onesignal.ShadowOneSignalRestClient.EMAIL_USER_ID;
 import static com.onesignal.ShadowOneSignalRestClient.PUSH_USER_ID;
 import static com.onesignal.ShadowOneSignalRestClient.REST_METHOD;
@@ -1641,6 +1648,93 @@ public class MainOneSignalClassRunner {
       }
    }
 
+   @Test
+   public void shouldSendIncrementedTagValues() throws Exception {
+      OneSignalInit();
+      threadAndTaskWait();
+
+      OneSignal.sendTag("counter", "5");
+      OneSignal.incrementTag("counter", 2);
+      OneSignal.incrementTag("counter", -1);
+      OneSignal.incrementTag("new_counter", 3);
+      threadAndTaskWait();
+
+      JSONObject sentTags = ShadowOneSignalRestClient.lastPost.getJSONObject("tags");
+      assertEquals("6", sentTags.getString("counter"));
+      assertEquals("3", sentTags.getString("new_counter"));
+      // Synced operations are removed from the log
+      assertEquals(0, OSTagOperationLog_count("push"));
+
+      OneSignal.incrementTag("counter", 10);
+      threadAndTaskWait();
+      assertEquals("16", ShadowOneSignalRestClient.lastPost.getJSONObject("tags").getString("counter"));
+   }
+
+   @Test
+   public void shouldSendTagChangesMadeBeforeProcessDeath() throws Exception {
+      OneSignalInit();
+      threadAndTaskWait();
+
+      // Process dies before the pending user state is persisted or synced
+      OneSignal.sendTag("key", "value");
+      OneSignal.incrementTag("counter", 1);
+      // Let the log's thread write them
+      OSTagOperationLog_runPostedTasks();
+      fastColdRestartApp();
+
+      ShadowOneSignalRestClient.lastPost = null;
+      OneSignalInit();
+      threadAndTaskWait();
+
+      JSONObject sentTags = ShadowOneSignalRestClient.lastPost.getJSONObject("tags");
+      assertEquals("value", sentTags.getString("key"));
+      assertEquals("1", sentTags.getString("counter"));
+      assertEquals(0, OSTagOperationLog_count("push"));
+   }
+
+   @Test
+   public void shouldLogTagOperationsFromLogThread() throws Exception {
+      OneSignalInit();
+      threadAndTaskWait();
+
+      OSTagOperationLog_pause();
+      // Hold the sync thread as if a player sync was in flight
+      OSSyncScheduler_pause();
+      OneSignal.sendTag("key", "value");
+      OneSignal.incrementTag("counter", 1);
+      // Nothing is written to the DB from the thread changing the tags
+      assertEquals(0, OSTagOperationLog_count("push"));
+
+      // Written without waiting for the sync thread
+      OSTagOperationLog_runPostedTasks();
+      assertEquals(2, OSTagOperationLog_count("push"));
+
+      threadAndTaskWait();
+      JSONObject sentTags = ShadowOneSignalRestClient.lastPost.getJSONObject("tags");
+      assertEquals("value", sentTags.getString("key"));
+      assertEquals("1", sentTags.getString("counter"));
+      assertEquals(0, OSTagOperationLog_count("push"));
+   }
+
+   @Test
+   public void shouldCompactTagOperationLog() throws Exception {
+      OneSignalInit();
+      threadAndTaskWait();
+
+      for (int i = 0; i <= OSTagOperationLog_COMPACT_THRESHOLD; i++)
+         OneSignal.incrementTag("counter", 1);
+      OneSignal.sendTag("key", "value");
+      OSTagOperationLog_runPostedTasks();
+      // Increments folded into a single set of their total
+      assertEquals(2, OSTagOperationLog_count("push"));
+
+      threadAndTaskWait();
+      JSONObject sentTags = ShadowOneSignalRestClient.lastPost.getJSONObject("tags");
+      assertEquals(String.valueOf(OSTagOperationLog_COMPACT_THRESHOLD + 1), sentTags.getString("counter"));
+      assertEquals("value", sentTags.getString("key"));
+      assertEquals(0, OSTagOperationLog_count("push"));
+   }
+
    @Test
    public void shouldNotSendTagOnRepeats() throws Exception {
       OneSignalInit();
@@ -2588,9 +2682,9 @@ public class MainOneSignalClassRunner {
       threadAndTaskWait();
 
       flushBufferedSharedPrefs();
-      final SharedPreferences prefs = blankActivity.getSharedPreferences(OneSignal.class.getSimpleName(), Context.MODE_PRIVATE);
-      String syncValues = prefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_CURRENT_STATE", null);
-      assertFalse(new JSONObject(syncValues).has("tags"));
+      final SharedPreferences prefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_USER_STATE, Context.MODE_PRIVATE);
+      JSONObject syncValues = UserState_getPersistedSyncValues(prefs, "CURRENT_STATE");
+      assertFalse(syncValues.has("tags"));
    }
 
 
@@ -2613,8 +2707,8 @@ public class MainOneSignalClassRunner {
       assertEquals("{}", lastGetTags.toString());
 
       flushBufferedSharedPrefs();
-      final SharedPreferences prefs = blankActivity.getSharedPreferences(OneSignal.class.getSimpleName(), Context.MODE_PRIVATE);
-      JSONObject syncValues = new JSONObject(prefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_CURRENT_STATE", null));
+      final SharedPreferences prefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_USER_STATE, Context.MODE_PRIVATE);
+      JSONObject syncValues = UserState_getPersistedSyncValues(prefs, "CURRENT_STATE");
       assertFalse(syncValues.has("tags"));
    }
 
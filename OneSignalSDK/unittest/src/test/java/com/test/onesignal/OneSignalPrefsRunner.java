@@ -15,6 +15,7 @@ import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
@@ -23,9 +24,21 @@ import org.robolectric.annotation.Config;
 import org.robolectric.annotation.LooperMode;
 import org.robolectric.shadows.ShadowLog;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.onesignal.OneSignalPackagePrivateHelper.OneSignalPrefs_getReadCacheHits;
+import static com.onesignal.OneSignalPackagePrivateHelper.OneSignalPrefs_getReadCacheMisses;
+import static com.onesignal.OneSignalPackagePrivateHelper.OneSignalPrefs_getString;
 import static com.onesignal.ShadowOneSignalRestClient.setRemoteParamsGetHtmlResponse;
 import static com.test.onesignal.TestHelpers.threadAndTaskWait;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 
 @Config(packageName = "com.onesignal.example",
         shadows = {
@@ -118,4 +131,211 @@ public class OneSignalPrefsRunner {
       String value = prefs.getString(KEY, "");
       assertEquals(VALUE, value);
    }
+
+   @Test
+   public void testBufferedRemoveIsReadBeforeFlush() throws Exception {
+      OneSignal.initWithContext(blankActivity);
+      TestOneSignalPrefs.saveString(TestOneSignalPrefs.PREFS_ONESIGNAL, KEY, VALUE);
+      TestHelpers.flushBufferedSharedPrefs();
+
+      TestOneSignalPrefs.saveString(TestOneSignalPrefs.PREFS_ONESIGNAL, KEY, null);
+      assertNull(TestOneSignalPrefs.getString(TestOneSignalPrefs.PREFS_ONESIGNAL, KEY, null));
+
+      TestHelpers.flushBufferedSharedPrefs();
+      final SharedPreferences prefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_ONESIGNAL, Context.MODE_PRIVATE);
+      assertNull(prefs.getString(KEY, null));
+   }
+
+   @Test
+   public void testReadsAreCachedAfterFirstRead() throws Exception {
+      OneSignal.initWithContext(blankActivity);
+      threadAndTaskWait();
+      blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_ONESIGNAL, Context.MODE_PRIVATE)
+              .edit()
+              .putString(KEY, VALUE)
+              .commit();
+      long hits = OneSignalPrefs_getReadCacheHits();
+      long misses = OneSignalPrefs_getReadCacheMisses();
+
+      // 1. First read goes to SharedPreferences, the next is served from the cache
+      assertEquals(VALUE, OneSignalPrefs_getString(TestOneSignalPrefs.PREFS_ONESIGNAL, KEY));
+      assertEquals(VALUE, OneSignalPrefs_getString(TestOneSignalPrefs.PREFS_ONESIGNAL, KEY));
+      assertEquals(misses + 1, OneSignalPrefs_getReadCacheMisses());
+      assertEquals(hits + 1, OneSignalPrefs_getReadCacheHits());
+
+      // 2. A buffered write is read back from the cache before it is flushed
+      TestOneSignalPrefs.saveString(TestOneSignalPrefs.PREFS_ONESIGNAL, KEY, "new_value");
+      assertEquals("new_value", OneSignalPrefs_getString(TestOneSignalPrefs.PREFS_ONESIGNAL, KEY));
+      assertEquals(hits + 2, OneSignalPrefs_getReadCacheHits());
+
+      // 3. Keys that aren't set are cached too
+      assertNull(OneSignalPrefs_getString(TestOneSignalPrefs.PREFS_ONESIGNAL, "missing_key"));
+      assertNull(OneSignalPrefs_getString(TestOneSignalPrefs.PREFS_ONESIGNAL, "missing_key"));
+      assertEquals(misses + 2, OneSignalPrefs_getReadCacheMisses());
+      assertEquals(hits + 3, OneSignalPrefs_getReadCacheHits());
+
+      TestHelpers.flushBufferedSharedPrefs();
+      final SharedPreferences prefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_ONESIGNAL, Context.MODE_PRIVATE);
+      assertEquals("new_value", prefs.getString(KEY, null));
+   }
+
+   @Test
+   public void testLargeValuesAreMovedOutOfCorePrefs() throws Exception {
+      final SharedPreferences corePrefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_ONESIGNAL, Context.MODE_PRIVATE);
+      corePrefs.edit()
+              .putString(TestOneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_SYNCVALYES_ + "CURRENT_STATE", "{\"tags\": {}}")
+              .putString(TestOneSignalPrefs.PREFS_OS_CACHED_IAMS, "[]")
+              .putStringSet(TestOneSignalPrefs.PREFS_OS_DISMISSED_IAMS, Collections.singleton("iam_id"))
+              .putStringSet(TestOneSignalPrefs.PREFS_OS_ATTRIBUTED_INFLUENCES, Collections.singleton("{}"))
+              .putString(TestOneSignalPrefs.PREFS_GT_PLAYER_ID, "player_id")
+              .commit();
+
+      OneSignal.initWithContext(blankActivity);
+      threadAndTaskWait();
+
+      // 1. Values are read from their new files
+      assertEquals("{\"tags\": {}}", OneSignalPrefs_getString(TestOneSignalPrefs.PREFS_USER_STATE, TestOneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_SYNCVALYES_ + "CURRENT_STATE"));
+      assertEquals("[]", OneSignalPrefs_getString(TestOneSignalPrefs.PREFS_IN_APP_MESSAGES, TestOneSignalPrefs.PREFS_OS_CACHED_IAMS));
+      assertEquals(Collections.singleton("iam_id"), TestOneSignalPrefs.getStringSet(TestOneSignalPrefs.PREFS_IN_APP_MESSAGES, TestOneSignalPrefs.PREFS_OS_DISMISSED_IAMS, null));
+      assertEquals(Collections.singleton("{}"), TestOneSignalPrefs.getStringSet(TestOneSignalPrefs.PREFS_INFLUENCES, TestOneSignalPrefs.PREFS_OS_ATTRIBUTED_INFLUENCES, null));
+
+      // 2. Only small values are left in the core file
+      TestHelpers.flushBufferedSharedPrefs();
+      assertFalse(corePrefs.contains(TestOneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_SYNCVALYES_ + "CURRENT_STATE"));
+      assertFalse(corePrefs.contains(TestOneSignalPrefs.PREFS_OS_CACHED_IAMS));
+      assertFalse(corePrefs.contains(TestOneSignalPrefs.PREFS_OS_DISMISSED_IAMS));
+      assertFalse(corePrefs.contains(TestOneSignalPrefs.PREFS_OS_ATTRIBUTED_INFLUENCES));
+      assertEquals("player_id", corePrefs.getString(TestOneSignalPrefs.PREFS_GT_PLAYER_ID, null));
+   }
+
+   private interface PrefWriter {
+      void write(String key, String value);
+   }
+
+   private static final int BENCHMARK_WRITER_THREADS = 16;
+   private static final int BENCHMARK_WRITES_PER_THREAD = 5_000;
+   private static final int BENCHMARK_KEYS_PER_THREAD = 50;
+
+   private static final PrefWriter BUFFERED_WRITER = new PrefWriter() {
+      @Override
+      public void write(String key, String value) {
+         TestOneSignalPrefs.saveString(TestOneSignalPrefs.PREFS_ONESIGNAL, key, value);
+      }
+   };
+
+   private static final Runnable FLUSH_WRITE_BUFFER = new Runnable() {
+      @Override
+      public void run() {
+         TestHelpers.flushBufferedSharedPrefs();
+      }
+   };
+
+   @Test
+   public void testConcurrentWritesWhileFlushingKeepLastValue() throws Exception {
+      OneSignal.initWithContext(blankActivity);
+
+      runWriters(BUFFERED_WRITER, FLUSH_WRITE_BUFFER);
+
+      assertEveryKeyHasLastWrite();
+   }
+
+   @Test
+   @Category(Benchmark.class)
+   public void benchmarkConcurrentWritersWhileFlushing() throws Exception {
+      OneSignal.initWithContext(blankActivity);
+
+      // What save and flushBufferToDisk did before the write buffer, writers and the flush share the map's lock
+      final HashMap<String, Object> lockedBuffer = new HashMap<>();
+      final SharedPreferences lockedPrefs = blankActivity.getSharedPreferences("OneSignalPrefsRunnerLocked", Context.MODE_PRIVATE);
+      long[] locked = runWriters(new PrefWriter() {
+         @Override
+         public void write(String key, String value) {
+            synchronized (lockedBuffer) {
+               lockedBuffer.put(key, value);
+            }
+         }
+      }, new Runnable() {
+         @Override
+         public void run() {
+            SharedPreferences.Editor editor = lockedPrefs.edit();
+            synchronized (lockedBuffer) {
+               for (Map.Entry<String, Object> entry : lockedBuffer.entrySet())
+                  editor.putString(entry.getKey(), (String) entry.getValue());
+               lockedBuffer.clear();
+            }
+            editor.apply();
+         }
+      });
+
+      long[] buffered = runWriters(BUFFERED_WRITER, FLUSH_WRITE_BUFFER);
+
+      assertEveryKeyHasLastWrite();
+
+      int writes = BENCHMARK_WRITER_THREADS * BENCHMARK_WRITES_PER_THREAD;
+      System.out.println(BENCHMARK_WRITER_THREADS + " writer threads, " + writes + " writes while flushing");
+      System.out.println("  locked map:   " + (locked[0] / writes) + " ns/write, slowest write " + (locked[1] / 1_000) + " us");
+      System.out.println("  write buffer: " + (buffered[0] / writes) + " ns/write, slowest write " + (buffered[1] / 1_000) + " us");
+   }
+
+   private void assertEveryKeyHasLastWrite() {
+      TestHelpers.flushBufferedSharedPrefs();
+      SharedPreferences prefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_ONESIGNAL, Context.MODE_PRIVATE);
+      for (int thread = 0; thread < BENCHMARK_WRITER_THREADS; thread++) {
+         for (int key = 0; key < BENCHMARK_KEYS_PER_THREAD; key++) {
+            int lastWrite = BENCHMARK_WRITES_PER_THREAD - BENCHMARK_KEYS_PER_THREAD + key;
+            assertEquals(String.valueOf(lastWrite), prefs.getString(benchmarkKey(thread, key), null));
+         }
+      }
+   }
+
+   private static String benchmarkKey(int thread, int key) {
+      return "benchmark_" + thread + "_" + key;
+   }
+
+   // Runs the writer threads while flushing on this thread until they are done
+   // Returns the total and the slowest write time, in nanoseconds
+   private static long[] runWriters(final PrefWriter writer, Runnable flush) throws Exception {
+      final CountDownLatch start = new CountDownLatch(1);
+      final CountDownLatch done = new CountDownLatch(BENCHMARK_WRITER_THREADS);
+      final AtomicLong totalNanos = new AtomicLong();
+      final AtomicLong slowestNanos = new AtomicLong();
+      final AtomicBoolean failed = new AtomicBoolean();
+
+      for (int i = 0; i < BENCHMARK_WRITER_THREADS; i++) {
+         final int thread = i;
+         new Thread(new Runnable() {
+            @Override
+            public void run() {
+               try {
+                  start.await();
+                  long slowest = 0;
+                  long total = 0;
+                  for (int write = 0; write < BENCHMARK_WRITES_PER_THREAD; write++) {
+                     long writeStart = System.nanoTime();
+                     writer.write(benchmarkKey(thread, write % BENCHMARK_KEYS_PER_THREAD), String.valueOf(write));
+                     long writeNanos = System.nanoTime() - writeStart;
+                     total += writeNanos;
+                     slowest = Math.max(slowest, writeNanos);
+                  }
+                  totalNanos.addAndGet(total);
+                  synchronized (slowestNanos) {
+                     slowestNanos.set(Math.max(slowestNanos.get(), slowest));
+                  }
+               } catch (Throwable t) {
+                  failed.set(true);
+               } finally {
+                  done.countDown();
+               }
+            }
+         }, "PrefsBenchmarkWriter_" + i).start();
+      }
+
+      start.countDown();
+      while (done.getCount() > 0)
+         flush.run();
+      flush.run();
+
+      assertEquals(false, failed.get());
+      return new long[] { totalNanos.get(), slowestNanos.get() };
+   }
 }
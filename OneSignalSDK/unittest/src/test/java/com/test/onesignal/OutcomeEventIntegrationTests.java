@@ -15,6 +15,7 @@ import com.onesignal.OSNotificationOpenedResult;
 import com.onesignal.OSSessionManager;
 import com.onesignal.OneSignal;
 import com.onesignal.OneSignalPackagePrivateHelper;
+import com.onesignal.OneSignalPackagePrivateHelper.NotificationTable;
 import com.onesignal.OneSignalShadowPackageManager;
 import com.onesignal.ShadowCustomTabsClient;
 import com.onesignal.ShadowCustomTabsSession;
@@ -1125,11 +1126,41 @@ public class OutcomeEventIntegrationTests {
         OneSignalInit();
         threadAndTaskWait();
 
+        // Cache is only cleaned once the device is idle
+        assertEquals(2, getAllNotificationRecords(dbHelper).size());
+        TestHelpers.runNotificationCacheCleanerWork(blankActivity);
+
         // Make sure when notification cache is cleaned so is the unique outcome events cache
         assertEquals(0, getAllNotificationRecords(dbHelper).size());
         assertEquals(0, getAllUniqueOutcomeNotificationRecordsDB(dbHelper).size());
     }
 
+    @Test
+    @Config(shadows = { ShadowGenerateNotification.class })
+    public void testNotificationCacheCleaner_willCleanOrphanedUniqueOutcomeNotifications() throws Exception {
+        foregroundAppAfterReceivingNotification();
+
+        // Should add a new unique outcome notifications (total in cache = 0 + 1)
+        OneSignal.sendUniqueOutcome("unique_1");
+        threadAndTaskWait();
+
+        assertEquals(1, getAllUniqueOutcomeNotificationRecordsDB(dbHelper).size());
+
+        // Remove the notification outside of the cache cleaner, orphaning its unique outcome
+        dbHelper.delete(NotificationTable.TABLE_NAME, null, null);
+
+        // Restart the app and re-init OneSignal
+        fastColdRestartApp();
+        OneSignalInit();
+        threadAndTaskWait();
+
+        assertEquals(1, getAllUniqueOutcomeNotificationRecordsDB(dbHelper).size());
+        TestHelpers.runNotificationCacheCleanerWork(blankActivity);
+
+        // Make sure the idle cleanup sweeps the orphaned unique outcome notification
+        assertEquals(0, getAllUniqueOutcomeNotificationRecordsDB(dbHelper).size());
+    }
+
     @Test
     public void testDelayOutcomes() throws Exception {
         OneSignal.sendOutcome(ONESIGNAL_OUTCOME_NAME);
@@ -60,6 +60,7 @@ import org.robolectric.shadows.ShadowLog;
 
 import java.util.List;
 
+import static com.onesignal.OneSignalPackagePrivateHelper.OSTimeoutHandler_runPendingTasks;
 import static com.test.onesignal.TestHelpers.threadAndTaskWait;
 import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertEquals;
@@ -413,6 +414,30 @@ public class OutcomeEventUnitTests {
         assertEquals(OUTCOME_NAME, outcomeEvents.get(0).getOutcomeId());
     }
 
+    @Test
+    public void testOutcomeFailRetriedInSession() throws Exception {
+        service.setSuccess(false);
+        // Restart session by app open should set UNATTRIBUTED influence
+        sessionManager.restartSessionIfNeeded(OneSignal.AppEntryAction.APP_OPEN);
+
+        controller.sendOutcomeEvent(OUTCOME_NAME);
+        threadAndTaskWait();
+
+        // The failed outcome is saved and resent once the retry delay passed, the retry removes it again
+        service.setSuccess(true);
+        OSTimeoutHandler_runPendingTasks();
+
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                handler.setOutcomes(repository.getSavedOutcomeEvents());
+            }
+        }, "OS_GET_SAVED_OUTCOMES_RETRIED").start();
+
+        threadAndTaskWait();
+        assertEquals(0, outcomeEvents.size());
+    }
+
     @Test
     public void testOutcomeMultipleFailsSavedOnDB() throws Exception {
         service.setSuccess(false);
@@ -30,23 +30,62 @@ package com.test.onesignal;
 import androidx.test.core.app.ApplicationProvider;
 
 import com.onesignal.MockHttpURLConnection;
+import com.onesignal.MockOSTimeImpl;
+import com.onesignal.OSNetworkMetrics;
 import com.onesignal.OneSignal;
+import com.onesignal.OneSignalPackagePrivateHelper.JSONUtils;
 import com.onesignal.OneSignalPackagePrivateHelper.OneSignalRestClient;
+import com.onesignal.OneSignalPackagePrivateHelper.TestOneSignalPrefs;
 import com.onesignal.ShadowOneSignalRestClientWithMockConnection;
 import com.onesignal.StaticResetHelper;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
 import org.robolectric.RobolectricTestRunner;
 import org.robolectric.annotation.Config;
 import org.robolectric.shadows.ShadowLog;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static com.onesignal.OneSignalPackagePrivateHelper.OSHttpResponseCache_MAX_ENTRIES;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSHttpResponseCache_MAX_ENTRY_LENGTH;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSHttpResponseCache_getBody;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSHttpResponseCache_put;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSGzipEncoding_isRejected;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSResponseReader_readJSONObject;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSRetryPolicy_BACKED_OFF;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSRetryPolicy_CIRCUIT_FAILURE_THRESHOLD;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSRetryPolicy_MAX_RETRIES;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSRetryPolicy_RETRY_BUDGET;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSRetryPolicy_getBackoff;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSRetryPolicy_getRetryDelay;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSRetryPolicy_shouldRetryInSession;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSRetryPolicy_tryAcquireRetry;
+import static com.onesignal.OneSignalPackagePrivateHelper.OneSignalPrefs_getString;
+import static com.onesignal.OneSignalPackagePrivateHelper.OneSignalRestClient_getHandshakeCount;
+import static com.onesignal.OneSignalPackagePrivateHelper.OneSignalRestClient_getReusedConnectionCount;
 import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_savePrivacyConsentRequired;
+import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_setTime;
 import static com.test.onesignal.TestHelpers.threadAndTaskWait;
 import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertFalse;
 import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertTrue;
 
@@ -202,6 +241,92 @@ public class RESTClientRunner {
       assertEquals(newMockResponse, secondResponse);
    }
 
+   @Test
+   public void testLastModifiedIsSentAsIfModifiedSince() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      final String lastModified = "Wed, 21 Oct 2015 07:28:00 GMT";
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         responseBody = "{\"key1\": \"value1\"}";
+         mockProps.put("last-modified", lastModified);
+      }};
+      OneSignalRestClient.get("URL", new OneSignalRestClient.ResponseHandler() {
+         @Override
+         public void onSuccess(String response) {
+            firstResponse = response;
+         }
+      }, MOCK_CACHE_KEY);
+      threadAndTaskWait();
+
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 304;
+      }};
+      OneSignalRestClient.get("URL", new OneSignalRestClient.ResponseHandler() {
+         @Override
+         public void onSuccess(String response) {
+            secondResponse = response;
+         }
+      }, MOCK_CACHE_KEY);
+      threadAndTaskWait();
+
+      assertEquals(lastModified, getLastHTTPHeaderProp("if-modified-since"));
+      assertEquals(null, getLastHTTPHeaderProp("if-none-match"));
+      assertNotNull(firstResponse);
+      assertEquals(firstResponse, secondResponse);
+   }
+
+   @Test
+   public void testCachedResponsesAreMovedOutOfPrefs() throws Exception {
+      final String cachedBody = "{\"tags\": {\"key\": \"value\"}}";
+      TestOneSignalPrefs.saveString(TestOneSignalPrefs.PREFS_ONESIGNAL, TestOneSignalPrefs.PREFS_OS_ETAG_PREFIX + OneSignalRestClient.CACHE_KEY_GET_TAGS, MOCK_ETAG_VALUE);
+      TestOneSignalPrefs.saveString(TestOneSignalPrefs.PREFS_ONESIGNAL, TestOneSignalPrefs.PREFS_OS_HTTP_CACHE_PREFIX + OneSignalRestClient.CACHE_KEY_GET_TAGS, cachedBody);
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 304;
+      }};
+      OneSignalRestClient.get("URL", new OneSignalRestClient.ResponseHandler() {
+         @Override
+         public void onSuccess(String response) {
+            firstResponse = response;
+         }
+      }, OneSignalRestClient.CACHE_KEY_GET_TAGS);
+      threadAndTaskWait();
+
+      assertEquals(MOCK_ETAG_VALUE, getLastHTTPHeaderProp("if-none-match"));
+      assertEquals(cachedBody, firstResponse);
+      assertEquals(null, OneSignalPrefs_getString(TestOneSignalPrefs.PREFS_ONESIGNAL, TestOneSignalPrefs.PREFS_OS_ETAG_PREFIX + OneSignalRestClient.CACHE_KEY_GET_TAGS));
+      assertEquals(null, OneSignalPrefs_getString(TestOneSignalPrefs.PREFS_ONESIGNAL, TestOneSignalPrefs.PREFS_OS_HTTP_CACHE_PREFIX + OneSignalRestClient.CACHE_KEY_GET_TAGS));
+   }
+
+   @Test
+   public void testResponseCacheEvictsLeastRecentlyUsedEntries() throws Exception {
+      MockOSTimeImpl time = new MockOSTimeImpl();
+      OneSignal_setTime(time);
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+
+      for (int i = 0; i < OSHttpResponseCache_MAX_ENTRIES; i++) {
+         OSHttpResponseCache_put("key_" + i, MOCK_ETAG_VALUE, null, "{\"index\": " + i + "}");
+         time.advanceSystemTimeBy(1);
+      }
+
+      // Reading the oldest entry makes key_1 the least recently used one
+      assertNotNull(OSHttpResponseCache_getBody("key_0"));
+      time.advanceSystemTimeBy(1);
+      OSHttpResponseCache_put("key_new", MOCK_ETAG_VALUE, null, "{}");
+
+      assertNotNull(OSHttpResponseCache_getBody("key_0"));
+      assertEquals(null, OSHttpResponseCache_getBody("key_1"));
+      assertNotNull(OSHttpResponseCache_getBody("key_new"));
+
+      // Too large to cache at all
+      StringBuilder largeBody = new StringBuilder();
+      while (largeBody.length() <= OSHttpResponseCache_MAX_ENTRY_LENGTH)
+         largeBody.append("0123456789");
+      OSHttpResponseCache_put("key_large", MOCK_ETAG_VALUE, null, largeBody.toString());
+      assertEquals(null, OSHttpResponseCache_getBody("key_large"));
+   }
+
    @Test
    public void testApiCall400Response() throws Exception {
       OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
@@ -270,6 +395,783 @@ public class RESTClientRunner {
       assertEquals(statusCode, statusCodeResponse[0]);
    }
 
+   @Test
+   public void testKeepAliveLeavesConnectionOpenAfterResponseIsRead() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      OneSignalRestClient.get("URL", null, "");
+      threadAndTaskWait();
+
+      assertFalse(ShadowOneSignalRestClientWithMockConnection.lastConnection.getDidDisconnect());
+   }
+
+   @Test
+   public void testKeepAliveDisconnectsOnNetworkError() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         mockThreadHang = true;
+      }};
+
+      OneSignalRestClient.get("URL", null, "");
+      threadAndTaskWait();
+
+      assertTrue(ShadowOneSignalRestClientWithMockConnection.lastConnection.getDidDisconnect());
+   }
+
+   @Test
+   public void testKeepAliveDisconnectsWhenResponseReadFails() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         failResponseRead = true;
+      }};
+
+      OneSignalRestClient.get("URL", null, "");
+      threadAndTaskWait();
+
+      // Torn down by the request itself, not the watchdog, since the half read connection isn't reusable
+      assertFalse(ShadowOneSignalRestClientWithMockConnection.lastConnection.getDidInterruptMockHang());
+      assertTrue(ShadowOneSignalRestClientWithMockConnection.lastConnection.getDidDisconnect());
+   }
+
+   @Test
+   public void testHttpsRequestsReusePooledConnection() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      ShadowOneSignalRestClientWithMockConnection.useHttps = true;
+      long handshakesBefore = OneSignalRestClient_getHandshakeCount();
+      long reusedBefore = OneSignalRestClient_getReusedConnectionCount();
+
+      // 1. First request opens a new connection
+      OneSignalRestClient.get("URL", null, "");
+      threadAndTaskWait();
+      assertEquals(1, OneSignalRestClient_getHandshakeCount() - handshakesBefore);
+      assertEquals(0, OneSignalRestClient_getReusedConnectionCount() - reusedBefore);
+
+      // 2. Second one is served over the connection the first left in the pool
+      OneSignalRestClient.get("URL", null, "");
+      threadAndTaskWait();
+      assertEquals(1, OneSignalRestClient_getHandshakeCount() - handshakesBefore);
+      assertEquals(1, OneSignalRestClient_getReusedConnectionCount() - reusedBefore);
+
+      // 3. Both are surfaced through the network metrics
+      OSNetworkMetrics metrics = OneSignal.getNetworkMetrics();
+      assertEquals(OneSignalRestClient_getHandshakeCount(), metrics.getHandshakeCount());
+      assertEquals(OneSignalRestClient_getReusedConnectionCount(), metrics.getReusedConnectionCount());
+   }
+
+   @Test
+   public void testHttpsRequestsAfterFailedReadOpenNewConnection() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      ShadowOneSignalRestClientWithMockConnection.useHttps = true;
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         failResponseRead = true;
+      }};
+      long handshakesBefore = OneSignalRestClient_getHandshakeCount();
+
+      OneSignalRestClient.get("URL", null, "");
+      threadAndTaskWait();
+      OneSignalRestClient.get("URL", null, "");
+      threadAndTaskWait();
+
+      // The broken connection was disconnected instead of going back to the pool
+      assertEquals(2, OneSignalRestClient_getHandshakeCount() - handshakesBefore);
+   }
+
+   @Test
+   public void testHttpsRequestFailingToConnectIsNotCountedAsReused() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      ShadowOneSignalRestClientWithMockConnection.useHttps = true;
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         failConnect = true;
+      }};
+      long handshakesBefore = OneSignalRestClient_getHandshakeCount();
+      long reusedBefore = OneSignalRestClient_getReusedConnectionCount();
+
+      OneSignalRestClient.get("URL", null, "");
+      threadAndTaskWait();
+
+      assertEquals(0, OneSignalRestClient_getHandshakeCount() - handshakesBefore);
+      assertEquals(0, OneSignalRestClient_getReusedConnectionCount() - reusedBefore);
+   }
+
+   @Test
+   public void testBurstOfRequestsReusesPooledThreads() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      OneSignal_savePrivacyConsentRequired(false);
+
+      final int requestCount = 100;
+      final AtomicInteger responseCount = new AtomicInteger();
+      int maxLiveThreads = 0;
+      for (int i = 0; i < requestCount; i++) {
+         OneSignalRestClient.put("URL", null, new OneSignalRestClient.ResponseHandler() {
+            @Override
+            public void onSuccess(String response) {
+               responseCount.incrementAndGet();
+            }
+         });
+         maxLiveThreads = Math.max(maxLiveThreads, countLiveRestThreads());
+      }
+
+      long deadline = System.currentTimeMillis() + 10_000;
+      while (responseCount.get() < requestCount && System.currentTimeMillis() < deadline) {
+         maxLiveThreads = Math.max(maxLiveThreads, countLiveRestThreads());
+         Thread.sleep(1);
+      }
+      threadAndTaskWait();
+
+      assertEquals(requestCount, responseCount.get());
+      // Request pool plus the single timeout scheduler thread
+      assertTrue(maxLiveThreads <= OneSignalRestClient.REQUEST_POOL_SIZE + 1);
+   }
+
+   @Test
+   public void testJSONResponseHandlerGetsResponseDecodedFromStream() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      final String body = "{\"id\": \"player\", \"count\": 1, \"big\": 12345678901, \"ratio\": 1.5, \"list\": [1, null, true], \"obj\": {\"key\": \"\\u00e9\"}}";
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         responseBody = body;
+      }};
+
+      final AtomicReference<JSONObject> received = new AtomicReference<>();
+      OneSignalRestClient.post("URL", null, new OneSignalRestClient.JSONResponseHandler() {
+         @Override
+         public void onSuccess(JSONObject response) {
+            received.set(response);
+         }
+      });
+      threadAndTaskWait();
+
+      assertNotNull(received.get());
+      // Same values and number types JSONObject's own parser produces
+      assertEquals(new JSONObject(body).toString(), received.get().toString());
+      assertFalse(ShadowOneSignalRestClientWithMockConnection.lastConnection.getDidDisconnect());
+   }
+
+   @Test
+   public void testJSONResponseHandlerInvalidBody() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         responseBody = "{\"key\": ";
+      }};
+
+      final AtomicInteger invalidCount = new AtomicInteger();
+      final AtomicInteger otherCount = new AtomicInteger();
+      OneSignalRestClient.post("URL", null, new OneSignalRestClient.JSONResponseHandler() {
+         @Override
+         public void onSuccess(JSONObject response) {
+            otherCount.incrementAndGet();
+         }
+
+         @Override
+         public void onSuccessWithInvalidJSON(String response, Throwable throwable) {
+            invalidCount.incrementAndGet();
+         }
+
+         @Override
+         public void onFailure(int statusCode, String response, Throwable throwable) {
+            otherCount.incrementAndGet();
+         }
+      });
+      threadAndTaskWait();
+
+      assertEquals(1, invalidCount.get());
+      assertEquals(0, otherCount.get());
+      // A partly read response can't go back to the pool
+      assertTrue(ShadowOneSignalRestClientWithMockConnection.lastConnection.getDidDisconnect());
+   }
+
+   @Test
+   public void testGzipResponseIsDecoded() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      final String body = buildIAMPayload(8 * 1024);
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         responseBody = body;
+         mockProps.put("Content-Encoding", "gzip");
+      }};
+      long savedBefore = getResponseBytesSaved("URL");
+
+      OneSignalRestClient.get("URL", new OneSignalRestClient.ResponseHandler() {
+         @Override
+         public void onSuccess(String response) {
+            firstResponse = response;
+         }
+      }, null);
+      threadAndTaskWait();
+
+      assertEquals("gzip", getLastHTTPHeaderProp("Accept-Encoding"));
+      assertEquals(body, firstResponse);
+      assertTrue(getResponseBytesSaved("URL") > savedBefore);
+   }
+
+   @Test
+   public void testEmptyGzipResponseIsSuccess() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 202;
+         mockProps.put("Content-Encoding", "gzip");
+      }};
+      final AtomicInteger failureCount = new AtomicInteger();
+
+      OneSignalRestClient.get("URL", new OneSignalRestClient.ResponseHandler() {
+         @Override
+         public void onSuccess(String response) {
+            firstResponse = response;
+         }
+
+         @Override
+         public void onFailure(int statusCode, String response, Throwable throwable) {
+            failureCount.incrementAndGet();
+         }
+      }, null);
+      threadAndTaskWait();
+
+      // No gzip header to read, the body is just empty
+      assertEquals("", firstResponse);
+      assertEquals(0, failureCount.get());
+   }
+
+   @Test
+   public void testLargeRequestBodyIsSentGzipped() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      OneSignal_savePrivacyConsentRequired(false);
+      JSONObject jsonBody = new JSONObject(buildIAMPayload(8 * 1024));
+      long savedBefore = getRequestBytesSaved("players/{id}/on_session");
+
+      OneSignalRestClient.post("players/a1b2c3d4e5f6a7b8c9d0/on_session", jsonBody, null);
+      threadAndTaskWait();
+
+      assertEquals("gzip", getLastHTTPHeaderProp("Content-Encoding"));
+      assertEquals(jsonBody.toString(), gunzip(ShadowOneSignalRestClientWithMockConnection.lastConnection.getRequestBody()));
+      assertTrue(getRequestBytesSaved("players/{id}/on_session") > savedBefore);
+   }
+
+   @Test
+   public void testSmallRequestBodyIsNotGzipped() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      OneSignal_savePrivacyConsentRequired(false);
+
+      OneSignalRestClient.post("URL", new JSONObject().put("key", "value"), null);
+      threadAndTaskWait();
+
+      assertEquals(null, getLastHTTPHeaderProp("Content-Encoding"));
+   }
+
+   @Test
+   public void testGzipRejectedFallsBackToPlainBodyForEndpoint() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      OneSignal_savePrivacyConsentRequired(false);
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         responseBody = "{}";
+         gzipRejectedStatus = 415;
+      }};
+      final JSONObject jsonBody = new JSONObject(buildIAMPayload(8 * 1024));
+      final AtomicInteger successCount = new AtomicInteger();
+      OneSignalRestClient.ResponseHandler responseHandler = new OneSignalRestClient.ResponseHandler() {
+         @Override
+         public void onSuccess(String response) {
+            successCount.incrementAndGet();
+         }
+      };
+
+      // 1. First request is rejected gzip encoded and sent again as plain JSON
+      OneSignalRestClient.post("gzip_test/0123456789abcdef0123/report", jsonBody, responseHandler);
+      threadAndTaskWait();
+
+      assertEquals(2, ShadowOneSignalRestClientWithMockConnection.connectionCount);
+      assertEquals(null, getLastHTTPHeaderProp("Content-Encoding"));
+      assertEquals(jsonBody.toString(), new String(ShadowOneSignalRestClientWithMockConnection.lastConnection.getRequestBody(), StandardCharsets.UTF_8));
+      assertEquals(1, successCount.get());
+
+      // 2. The same endpoint for a different id goes out uncompressed right away
+      assertTrue(OSGzipEncoding_isRejected("gzip_test/fedcba9876543210fedc/report"));
+      OneSignalRestClient.post("gzip_test/fedcba9876543210fedc/report", jsonBody, responseHandler);
+      threadAndTaskWait();
+
+      assertEquals(3, ShadowOneSignalRestClientWithMockConnection.connectionCount);
+      assertEquals(2, successCount.get());
+   }
+
+   @Test
+   public void testGzipBadRequestFallsBackToPlainBodyForEndpoint() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      OneSignal_savePrivacyConsentRequired(false);
+      // What a server or proxy that doesn't decode Content-Encoding answers
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         responseBody = "{}";
+         gzipRejectedStatus = 400;
+      }};
+      JSONObject jsonBody = new JSONObject(buildIAMPayload(8 * 1024));
+      final AtomicInteger successCount = new AtomicInteger();
+      OneSignalRestClient.ResponseHandler responseHandler = new OneSignalRestClient.ResponseHandler() {
+         @Override
+         public void onSuccess(String response) {
+            successCount.incrementAndGet();
+         }
+      };
+
+      OneSignalRestClient.post("gzip_bad_request_test/0123456789abcdef0123/report", jsonBody, responseHandler);
+      threadAndTaskWait();
+
+      assertEquals(2, ShadowOneSignalRestClientWithMockConnection.connectionCount);
+      assertEquals(null, getLastHTTPHeaderProp("Content-Encoding"));
+      assertEquals(1, successCount.get());
+      // The plain body was accepted, so the gzip one was the problem
+      assertTrue(OSGzipEncoding_isRejected("gzip_bad_request_test/fedcba9876543210fedc/report"));
+   }
+
+   @Test
+   public void testBadRequestForGzipAndPlainBodyKeepsCompressing() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      OneSignal_savePrivacyConsentRequired(false);
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 400;
+         errorResponseBody = "{}";
+      }};
+      JSONObject jsonBody = new JSONObject(buildIAMPayload(8 * 1024));
+      long savedBefore = getRequestBytesSaved("gzip_test/{id}/report");
+      final AtomicInteger failureCount = new AtomicInteger();
+      OneSignalRestClient.ResponseHandler responseHandler = new OneSignalRestClient.ResponseHandler() {
+         @Override
+         public void onFailure(int statusCode, String response, Throwable throwable) {
+            failureCount.incrementAndGet();
+         }
+      };
+
+      OneSignalRestClient.post("gzip_test/0123456789abcdef0123/report", jsonBody, responseHandler);
+      threadAndTaskWait();
+
+      // Sent plain once to rule out the encoding, the plain body got a 400 too so it was about the request
+      assertEquals(2, ShadowOneSignalRestClientWithMockConnection.connectionCount);
+      assertEquals(1, failureCount.get());
+      assertFalse(OSGzipEncoding_isRejected("gzip_test/0123456789abcdef0123/report"));
+      // Nothing was saved by a body the endpoint didn't accept
+      assertEquals(savedBefore, getRequestBytesSaved("gzip_test/{id}/report"));
+   }
+
+   @Test
+   public void testCircuitOpensAfterRepeatedServerErrors() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      MockOSTimeImpl time = new MockOSTimeImpl();
+      OneSignal_setTime(time);
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 503;
+         errorResponseBody = "{}";
+      }};
+      final AtomicReference<Throwable> lastThrowable = new AtomicReference<>();
+      final AtomicInteger lastStatusCode = new AtomicInteger();
+      OneSignalRestClient.ResponseHandler responseHandler = new OneSignalRestClient.ResponseHandler() {
+         @Override
+         public void onFailure(int statusCode, String response, Throwable throwable) {
+            lastStatusCode.set(statusCode);
+            lastThrowable.set(throwable);
+         }
+      };
+
+      // 1. Every failure up to the threshold still goes out
+      for (int i = 0; i < OSRetryPolicy_CIRCUIT_FAILURE_THRESHOLD; i++) {
+         OneSignalRestClient.get("circuit_test/0123456789abcdef0123", responseHandler, null);
+         threadAndTaskWait();
+      }
+      assertEquals(OSRetryPolicy_CIRCUIT_FAILURE_THRESHOLD, ShadowOneSignalRestClientWithMockConnection.connectionCount);
+
+      // 2. With the circuit open requests to the endpoint fail without a connection, for any id
+      OneSignalRestClient.get("circuit_test/fedcba9876543210fedc", responseHandler, null);
+      threadAndTaskWait();
+      assertEquals(OSRetryPolicy_CIRCUIT_FAILURE_THRESHOLD, ShadowOneSignalRestClientWithMockConnection.connectionCount);
+      assertNotNull(lastThrowable.get());
+      // Told apart from a network error
+      assertEquals(OSRetryPolicy_BACKED_OFF, lastStatusCode.get());
+      assertFalse(OSRetryPolicy_shouldRetryInSession("circuit_test/fedcba9876543210fedc", lastStatusCode.get(), 1));
+
+      // 3. Other endpoints are not affected
+      OneSignalRestClient.get("other_endpoint", responseHandler, null);
+      threadAndTaskWait();
+      assertEquals(OSRetryPolicy_CIRCUIT_FAILURE_THRESHOLD + 1, ShadowOneSignalRestClientWithMockConnection.connectionCount);
+
+      // 4. Once the circuit cools down a probe goes out and closes it again when it succeeds
+      time.advanceSystemAndElapsedTimeBy(60 * 60);
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         responseBody = "{}";
+      }};
+      OneSignalRestClient.get("circuit_test/0123456789abcdef0123", responseHandler, null);
+      threadAndTaskWait();
+      OneSignalRestClient.get("circuit_test/0123456789abcdef0123", responseHandler, null);
+      threadAndTaskWait();
+      assertEquals(OSRetryPolicy_CIRCUIT_FAILURE_THRESHOLD + 3, ShadowOneSignalRestClientWithMockConnection.connectionCount);
+   }
+
+   @Test
+   public void testShouldRetryInSessionFollowsPolicy() {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+
+      // Requests rejected by the server or past the retry limit aren't retried
+      assertFalse(OSRetryPolicy_shouldRetryInSession("retry_test", 403, 1));
+      assertFalse(OSRetryPolicy_shouldRetryInSession("retry_test", 500, OSRetryPolicy_MAX_RETRIES + 1));
+
+      // Network errors and server errors are, until the endpoint's budget is spent
+      assertTrue(OSRetryPolicy_shouldRetryInSession("retry_test", -1, 1));
+      for (int i = 1; i < OSRetryPolicy_RETRY_BUDGET; i++)
+         assertTrue(OSRetryPolicy_shouldRetryInSession("retry_test", 500, 1));
+      assertFalse(OSRetryPolicy_shouldRetryInSession("retry_test", 500, 1));
+   }
+
+   @Test
+   public void testRetryAfterIsRespected() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      MockOSTimeImpl time = new MockOSTimeImpl();
+      OneSignal_setTime(time);
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 429;
+         errorResponseBody = "{}";
+         mockProps.put("Retry-After", "120");
+      }};
+
+      OneSignalRestClient.get("retry_after_test", null, null);
+      threadAndTaskWait();
+
+      // The next retry waits out the Retry-After even though the backoff for it is shorter
+      assertTrue(OSRetryPolicy_getRetryDelay("retry_after_test", 1, 1_000, 5_000) >= 120_000);
+
+      // Until then requests to the endpoint are not made
+      OneSignalRestClient.get("retry_after_test", null, null);
+      threadAndTaskWait();
+      assertEquals(1, ShadowOneSignalRestClientWithMockConnection.connectionCount);
+
+      time.advanceSystemAndElapsedTimeBy(121);
+      OneSignalRestClient.get("retry_after_test", null, null);
+      threadAndTaskWait();
+      assertEquals(2, ShadowOneSignalRestClientWithMockConnection.connectionCount);
+   }
+
+   @Test
+   public void testBackoffIsJitteredWithinBounds() {
+      for (int attempt = 1; attempt <= 10; attempt++) {
+         long expected = Math.min(60_000, 1_000L << (attempt - 1));
+         for (int i = 0; i < 50; i++) {
+            long backoff = OSRetryPolicy_getBackoff(1_000, 60_000, attempt);
+            assertTrue(backoff >= expected / 2);
+            assertTrue(backoff <= expected);
+         }
+      }
+   }
+
+   @Test
+   public void testRetryBudgetIsSpentAndRefills() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      MockOSTimeImpl time = new MockOSTimeImpl();
+      OneSignal_setTime(time);
+
+      for (int i = 0; i < OSRetryPolicy_RETRY_BUDGET; i++)
+         assertTrue(OSRetryPolicy_tryAcquireRetry("players/0123456789abcdef0123"));
+      assertFalse(OSRetryPolicy_tryAcquireRetry("players/fedcba9876543210fedc"));
+
+      time.advanceSystemAndElapsedTimeBy(60);
+      assertTrue(OSRetryPolicy_tryAcquireRetry("players/0123456789abcdef0123"));
+      assertFalse(OSRetryPolicy_tryAcquireRetry("players/0123456789abcdef0123"));
+   }
+
+   @Test
+   public void testTransportMetricsAreRecordedPerEndpoint() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      OneSignal_savePrivacyConsentRequired(false);
+      MockOSTimeImpl time = new MockOSTimeImpl();
+      time.freezeTime();
+      OneSignal_setTime(time);
+      final String responseBody = "{\"key\": \"value\"}";
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 200;
+         responseBody = "{\"key\": \"value\"}";
+      }};
+      JSONObject jsonBody = new JSONObject().put("key", "value");
+
+      // 1. Two ids of the same endpoint are counted together
+      OneSignalRestClient.put("metrics_test/0123456789abcdef0123", jsonBody, null);
+      threadAndTaskWait();
+      OneSignalRestClient.put("metrics_test/fedcba9876543210fedc", jsonBody, null);
+      threadAndTaskWait();
+
+      // 2. A 304 counts as a cache hit and a 404 in the status codes
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 304;
+      }};
+      OneSignalRestClient.get("metrics_test/0123456789abcdef0123", null, null);
+      threadAndTaskWait();
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         status = 404;
+         errorResponseBody = "{}";
+      }};
+      OneSignalRestClient.get("metrics_test/0123456789abcdef0123", null, null);
+      threadAndTaskWait();
+
+      OSNetworkMetrics.EndpointMetrics metrics = OneSignal.getNetworkMetrics().getEndpoint("metrics_test/{id}");
+      assertNotNull(metrics);
+      assertEquals(4, metrics.getRequestCount());
+      assertEquals(2 * jsonBody.toString().length(), metrics.getBytesSent());
+      assertEquals(2 * responseBody.length() + 2, metrics.getBytesReceived());
+      assertEquals(1, metrics.getCacheHits());
+      assertEquals(0, metrics.getTimeouts());
+      assertEquals(Integer.valueOf(2), metrics.getStatusCodes().get(200));
+      assertEquals(Integer.valueOf(1), metrics.getStatusCodes().get(304));
+      assertEquals(Integer.valueOf(1), metrics.getStatusCodes().get(404));
+      assertEquals(0, metrics.getLatencyP99());
+   }
+
+   @Test
+   public void testTransportMetricsCountTimeouts() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      ShadowOneSignalRestClientWithMockConnection.mockResponse = new MockHttpURLConnection.MockResponse() {{
+         mockThreadHang = true;
+      }};
+
+      OneSignalRestClient.get("metrics_timeout_test", null, null);
+      threadAndTaskWait();
+
+      OSNetworkMetrics.EndpointMetrics metrics = OneSignal.getNetworkMetrics().getEndpoint("metrics_timeout_test");
+      assertEquals(1, metrics.getTimeouts());
+      assertEquals(0, metrics.getNetworkErrors());
+      assertTrue(metrics.getStatusCodes().isEmpty());
+   }
+
+   @Test
+   public void testNetworkMetricsListenerIsThrottled() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      MockOSTimeImpl time = new MockOSTimeImpl();
+      time.freezeTime();
+      OneSignal_setTime(time);
+      final AtomicReference<OSNetworkMetrics> lastMetrics = new AtomicReference<>();
+      final AtomicInteger callCount = new AtomicInteger();
+      OneSignal.setNetworkMetricsListener(new OneSignal.OSNetworkMetricsListener() {
+         @Override
+         public void onNetworkMetrics(OSNetworkMetrics metrics) {
+            callCount.incrementAndGet();
+            lastMetrics.set(metrics);
+         }
+      });
+
+      OneSignalRestClient.get("metrics_listener_test", null, null);
+      threadAndTaskWait();
+      OneSignalRestClient.get("metrics_listener_test", null, null);
+      threadAndTaskWait();
+      assertEquals(1, callCount.get());
+      assertEquals(1, lastMetrics.get().getEndpoint("metrics_listener_test").getRequestCount());
+
+      time.advanceSystemAndElapsedTimeBy(61);
+      OneSignalRestClient.get("metrics_listener_test", null, null);
+      threadAndTaskWait();
+      assertEquals(2, callCount.get());
+      assertEquals(3, lastMetrics.get().getEndpoint("metrics_listener_test").getRequestCount());
+   }
+
+   private static long getRequestBytesSaved(String endpoint) {
+      OSNetworkMetrics.EndpointMetrics metrics = OneSignal.getNetworkMetrics().getEndpoint(endpoint);
+      return metrics == null ? 0 : metrics.getRequestBytesSaved();
+   }
+
+   private static long getResponseBytesSaved(String endpoint) {
+      OSNetworkMetrics.EndpointMetrics metrics = OneSignal.getNetworkMetrics().getEndpoint(endpoint);
+      return metrics == null ? 0 : metrics.getResponseBytesSaved();
+   }
+
+   private static String gunzip(byte[] bytes) throws Exception {
+      GZIPInputStream inputStream = new GZIPInputStream(new ByteArrayInputStream(bytes));
+      ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int read;
+      while ((read = inputStream.read(buffer)) != -1)
+         outputStream.write(buffer, 0, read);
+      return outputStream.toString("UTF-8");
+   }
+
+   @Test
+   public void testExternalUserIdIsSentWithUnescapedSlashes() throws Exception {
+      OneSignal.initWithContext(ApplicationProvider.getApplicationContext());
+      OneSignal_savePrivacyConsentRequired(false);
+      JSONObject jsonBody = new JSONObject()
+         .put("external_user_id", "group/user/1")
+         .put("url", "https://example.com/path")
+         .put("tags", new JSONObject().put("external_user_id", "nested/id"));
+
+      OneSignalRestClient.put("players/a1b2c3d4e5f6a7b8c9d0", jsonBody, null);
+      threadAndTaskWait();
+
+      String sent = new String(ShadowOneSignalRestClientWithMockConnection.lastConnection.getRequestBody(), StandardCharsets.UTF_8);
+      assertEquals("{\"external_user_id\":\"group/user/1\",\"url\":\"https:\\/\\/example.com\\/path\",\"tags\":{\"external_user_id\":\"nested/id\"}}", sent);
+   }
+
+   @Test
+   public void testRequestBodySerializerMatchesJSONObjectToString() throws Exception {
+      JSONObject jsonBody = new JSONObject()
+         .put("string", "quote\" backslash\\ slash/ tab\t newline\n control\u0001 unicode\u00e9")
+         .put("int", 42)
+         .put("long", 12345678901L)
+         .put("double", 1.5)
+         .put("whole_double", 2.0)
+         .put("bool", true)
+         .put("null", JSONObject.NULL)
+         .put("array", new JSONArray().put(1).put("a/b").put(JSONObject.NULL).put(new JSONObject().put("k", "v")))
+         .put("object", new JSONObject().put("nested", new JSONArray()));
+
+      assertEquals(jsonBody.toString(), JSONUtils.toStringWithUnescapedSlashes(jsonBody, Collections.<String>emptySet()));
+   }
+
+   // Compares serializing a player update body with toString() plus the per-request external_user_id regex
+   //   it replaced against the single pass serializer. Numbers are printed for comparison between runs.
+   @Test
+   @Category(Benchmark.class)
+   public void benchmarkRequestBodySerialization() throws Exception {
+      JSONObject withExternalId = buildPlayerUpdateBody().put("external_user_id", "org/team/user_12345");
+      JSONObject withoutExternalId = buildPlayerUpdateBody();
+      Set<String> unescapedSlashKeys = Collections.singleton("external_user_id");
+      final int iterations = 20_000;
+
+      assertEquals(serializeWithRegex(withExternalId), JSONUtils.toStringWithUnescapedSlashes(withExternalId, unescapedSlashKeys));
+      assertEquals(serializeWithRegex(withoutExternalId), JSONUtils.toStringWithUnescapedSlashes(withoutExternalId, unescapedSlashKeys));
+
+      for (JSONObject body : new JSONObject[] { withExternalId, withoutExternalId }) {
+         // Warm up both paths so JIT compilation isn't measured
+         for (int i = 0; i < iterations; i++) {
+            serializeWithRegex(body);
+            JSONUtils.toStringWithUnescapedSlashes(body, unescapedSlashKeys);
+         }
+
+         long regexBytes = allocatedBytes();
+         long regexStart = System.nanoTime();
+         for (int i = 0; i < iterations; i++)
+            serializeWithRegex(body);
+         long regexNanos = System.nanoTime() - regexStart;
+         regexBytes = allocatedBytes() - regexBytes;
+
+         long serializerBytes = allocatedBytes();
+         long serializerStart = System.nanoTime();
+         for (int i = 0; i < iterations; i++)
+            JSONUtils.toStringWithUnescapedSlashes(body, unescapedSlashKeys);
+         long serializerNanos = System.nanoTime() - serializerStart;
+         serializerBytes = allocatedBytes() - serializerBytes;
+
+         System.out.println("Request body " + (body.has("external_user_id") ? "with" : "without") + " external_user_id, averaged over " + iterations + " serializations");
+         System.out.println("  toString + regex:  " + (regexNanos / iterations) + " ns/op, " + (regexBytes / iterations) + " B/op");
+         System.out.println("  single pass:       " + (serializerNanos / iterations) + " ns/op, " + (serializerBytes / iterations) + " B/op");
+      }
+   }
+
+   // What startHTTPConnection did for every request body before the serializer option
+   private static String serializeWithRegex(JSONObject jsonBody) {
+      String strJsonBody = jsonBody.toString();
+
+      Pattern eidPattern = Pattern.compile("(?<=\"external_user_id\":\").*\\\\/.*?(?=\",|\"\\})");
+      Matcher eidMatcher = eidPattern.matcher(strJsonBody);
+
+      if (eidMatcher.find()) {
+         String matched = eidMatcher.group(0);
+         if (matched != null) {
+            String unescapedEID = matched.replace("\\/", "/");
+            strJsonBody = eidMatcher.replaceAll(unescapedEID);
+         }
+      }
+      return strJsonBody;
+   }
+
+   private static JSONObject buildPlayerUpdateBody() throws Exception {
+      return new JSONObject()
+         .put("app_id", "b4f7f966-d8cc-11e4-bed1-df8f05be55ba")
+         .put("device_type", 1)
+         .put("language", "en")
+         .put("timezone", -28800)
+         .put("timezone_id", "America/Los_Angeles")
+         .put("device_os", "12")
+         .put("sdk", "040800")
+         .put("notification_types", 1)
+         .put("tags", new JSONObject().put("level", "12").put("plan", "premium").put("last_seen_screen", "settings/notifications"));
+   }
+
+   // Compares the old Scanner-to-String-to-JSONObject path with decoding from the stream on a large IAM list.
+   // Numbers are printed for comparison between runs, only the parsed result is asserted.
+   @Test
+   @Category(Benchmark.class)
+   public void benchmarkStreamedJSONResponseOnLargeIAMPayload() throws Exception {
+      final byte[] payload = buildIAMPayload(500 * 1024).getBytes(StandardCharsets.UTF_8);
+      final int iterations = 20;
+
+      // Warm up both paths so JIT compilation isn't measured
+      for (int i = 0; i < 5; i++) {
+         parseWithScanner(payload);
+         OSResponseReader_readJSONObject(new ByteArrayInputStream(payload), payload.length);
+      }
+
+      assertEquals(parseWithScanner(payload).toString(), OSResponseReader_readJSONObject(new ByteArrayInputStream(payload), payload.length).toString());
+
+      long scannerBytes = allocatedBytes();
+      long scannerStart = System.nanoTime();
+      for (int i = 0; i < iterations; i++)
+         parseWithScanner(payload);
+      long scannerNanos = System.nanoTime() - scannerStart;
+      scannerBytes = allocatedBytes() - scannerBytes;
+
+      long streamBytes = allocatedBytes();
+      long streamStart = System.nanoTime();
+      for (int i = 0; i < iterations; i++)
+         OSResponseReader_readJSONObject(new ByteArrayInputStream(payload), payload.length);
+      long streamNanos = System.nanoTime() - streamStart;
+      streamBytes = allocatedBytes() - streamBytes;
+
+      System.out.println("IAM payload of " + payload.length + " bytes, averaged over " + iterations + " parses");
+      System.out.println("  Scanner + JSONObject: " + (scannerNanos / iterations / 1_000) + " us, " + (scannerBytes / iterations / 1_024) + " KB allocated");
+      System.out.println("  Streamed JSONObject:  " + (streamNanos / iterations / 1_000) + " us, " + (streamBytes / iterations / 1_024) + " KB allocated");
+   }
+
+   private static JSONObject parseWithScanner(byte[] payload) throws Exception {
+      Scanner scanner = new Scanner(new ByteArrayInputStream(payload), "UTF-8");
+      String json = scanner.useDelimiter("\\A").hasNext() ? scanner.next() : "";
+      scanner.close();
+      return new JSONObject(json);
+   }
+
+   // -1 if the JVM can't report per thread allocations
+   private static long allocatedBytes() {
+      java.lang.management.ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+      if (threadMXBean instanceof com.sun.management.ThreadMXBean)
+         return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+      return -1;
+   }
+
+   private static String buildIAMPayload(int minSize) throws Exception {
+      JSONArray messages = new JSONArray();
+      JSONObject payload = new JSONObject().put("id", "player_id").put("in_app_messages", messages);
+      int size = 0;
+      for (int i = 0; size < minSize; i++) {
+         JSONObject message = new JSONObject()
+            .put("id", "a4b3c2d1-0000-4000-8000-" + String.format("%012d", i))
+            .put("variants", new JSONObject().put("all", new JSONObject().put("default", "bc1d2f3a-" + i)))
+            .put("triggers", new JSONArray().put(new JSONArray().put(new JSONObject()
+               .put("id", "trigger_" + i)
+               .put("kind", "session_time")
+               .put("property", "os_session_duration")
+               .put("operator", ">=")
+               .put("value", i % 120))))
+            .put("redisplay", new JSONObject().put("limit", 5).put("delay", 3600))
+            .put("end_time", "2030-01-01T00:00:00.000Z")
+            .put("has_liquid", false);
+         messages.put(message);
+         size += message.toString().length();
+      }
+      return payload.toString();
+   }
+
+   private static int countLiveRestThreads() {
+      int count = 0;
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+         if (thread.getName().startsWith("OS_REST") || thread.getName().startsWith("OS_HTTP"))
+            count++;
+      }
+      return count;
+   }
+
    private static String getLastHTTPHeaderProp(String prop) {
       return ShadowOneSignalRestClientWithMockConnection.lastConnection.getRequestProperty(prop);
    }
@@ -13,8 +13,10 @@ import com.onesignal.MockOSTimeImpl;
 import com.onesignal.MockOneSignalDBHelper;
 import com.onesignal.MockSessionManager;
 import com.onesignal.OSDeviceState;
+import com.onesignal.OSNetworkMetrics;
 import com.onesignal.OneSignal;
 import com.onesignal.OneSignalPackagePrivateHelper;
+import com.onesignal.OneSignalPackagePrivateHelper.TestOneSignalPrefs;
 import com.onesignal.ShadowCustomTabsClient;
 import com.onesignal.ShadowCustomTabsSession;
 import com.onesignal.ShadowFocusHandler;
@@ -25,12 +27,14 @@ import com.onesignal.StaticResetHelper;
 import com.onesignal.example.BlankActivity;
 import com.onesignal.influence.data.OSTrackerFactory;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 import org.junit.After;
 import org.junit.AfterClass;
 import org.junit.Before;
 import org.junit.BeforeClass;
 import org.junit.Test;
+import org.junit.experimental.categories.Category;
 import org.junit.runner.RunWith;
 import org.robolectric.Robolectric;
 import org.robolectric.RobolectricTestRunner;
@@ -39,14 +43,38 @@ import org.robolectric.annotation.Config;
 import org.robolectric.annotation.LooperMode;
 import org.robolectric.shadows.ShadowLog;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
 
 import static com.onesignal.OneSignal.ExternalIdErrorType.REQUIRES_EXTERNAL_ID_AUTH;
 import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_getSessionListener;
 import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_setSessionManager;
 import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_setTime;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSMultiChannelSync_getBurstCount;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSMultiChannelSync_getBurstRequestCount;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSMultiChannelSync_syncAll;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSRetryPolicy_onResponse;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSSyncScheduler_MAX_DEBOUNCE_WINDOWS;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSSyncScheduler_setMultiChannelSyncEnabled;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSSyncScheduler_getPendingPushSyncPriority;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSSyncScheduler_getPushSyncDelay;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSSyncScheduler_getRunTime;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSSyncScheduler_pause;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSSyncScheduler_retryPushSync;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSUserStateSnapshot_decode;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSUserStateSnapshot_encode;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSUserStateSnapshot_fromBytes;
+import static com.onesignal.OneSignalPackagePrivateHelper.OSUserStateSnapshot_toBytes;
 import static com.onesignal.OneSignalPackagePrivateHelper.OneSignal_setTrackerFactory;
+import static com.onesignal.OneSignalPackagePrivateHelper.UserState_getPersistedSyncValues;
 import static com.onesignal.ShadowOneSignalRestClient.EMAIL_USER_ID;
 import static com.onesignal.ShadowOneSignalRestClient.PUSH_USER_ID;
 import static com.onesignal.ShadowOneSignalRestClient.SMS_USER_ID;
@@ -1026,6 +1054,232 @@ public class SynchronizerIntegrationTests {
         assertEquals(newSMSNumber, smsPost.payload.get("identifier"));
     }
 
+    // ####### sync scheduler Tests ########
+
+    @Test
+    public void shouldScheduleSyncWithMostUrgentPendingPriority() throws Exception {
+        OneSignalInit();
+        threadAndTaskWait();
+        assertNull(OSSyncScheduler_getPendingPushSyncPriority());
+
+        OneSignal.sendTag("key", "value");
+        assertEquals("TAGS", OSSyncScheduler_getPendingPushSyncPriority());
+
+        // An external user id change pulls the tags in the same sync forward
+        OneSignal.setExternalUserId("test_ext_id");
+        assertEquals("HIGH", OSSyncScheduler_getPendingPushSyncPriority());
+
+        // A later less urgent change doesn't push it back
+        OneSignal.sendTag("key2", "value2");
+        assertEquals("HIGH", OSSyncScheduler_getPendingPushSyncPriority());
+
+        threadAndTaskWait();
+        assertNull(OSSyncScheduler_getPendingPushSyncPriority());
+
+        // Both tags and the external user id go out in one PUT
+        assertEquals(3, ShadowOneSignalRestClient.networkCallCount);
+        ShadowOneSignalRestClient.Request request = ShadowOneSignalRestClient.requests.get(2);
+        assertEquals(ShadowOneSignalRestClient.REST_METHOD.PUT, request.method);
+        assertEquals("test_ext_id", request.payload.getString("external_user_id"));
+        JsonAsserts.equals(new JSONObject().put("key", "value").put("key2", "value2"), request.payload.getJSONObject("tags"));
+    }
+
+    @Test
+    public void shouldNotDebounceSyncPastMaxWindows() {
+        long firstChangeTime = 1_000_000;
+        long window = 10_000;
+
+        // A lone change waits one window
+        assertEquals(firstChangeTime + window, OSSyncScheduler_getRunTime(firstChangeTime, firstChangeTime, "TAGS"));
+
+        // Each change restarts the window
+        long now = firstChangeTime + window - 1;
+        assertEquals(now + window, OSSyncScheduler_getRunTime(now, firstChangeTime, "TAGS"));
+
+        // Up to the cap past the first change
+        long cap = firstChangeTime + OSSyncScheduler_MAX_DEBOUNCE_WINDOWS * window;
+        for (now = firstChangeTime; now < cap; now += window - 1)
+            assertTrue(OSSyncScheduler_getRunTime(now, firstChangeTime, "TAGS") <= cap);
+        assertEquals(cap, OSSyncScheduler_getRunTime(cap - 1, firstChangeTime, "TAGS"));
+    }
+
+    @Test
+    public void shouldDelaySyncRetryUntilRetryAfterOfPlayerEndpoint() throws Exception {
+        OneSignalInit();
+        threadAndTaskWait();
+
+        // What OneSignalRestClient records for a 429 to the player's PUT
+        OSRetryPolicy_onResponse("players/" + ShadowOneSignalRestClient.pushUserId, 429, "120");
+
+        assertTrue(OSSyncScheduler_retryPushSync() >= 120_000);
+    }
+
+    @Test
+    public void shouldCountChangesMergedIntoWaitingPlayerUpdate() throws Exception {
+        OneSignalInit();
+        threadAndTaskWait();
+
+        int callCountBefore = ShadowOneSignalRestClient.networkCallCount;
+        long mergedBefore = getPlayerMergedWrites();
+
+        OneSignal.sendTag("key1", "value1");
+        OneSignal.sendTag("key2", "value2");
+        OneSignal.sendTag("key3", "value3");
+        threadAndTaskWait();
+
+        // The 2nd and 3rd changes joined the PUT waiting for the 1st
+        assertEquals(1, ShadowOneSignalRestClient.networkCallCount - callCountBefore);
+        assertEquals(2, getPlayerMergedWrites() - mergedBefore);
+        JsonAsserts.equals(
+                new JSONObject().put("key1", "value1").put("key2", "value2").put("key3", "value3"),
+                ShadowOneSignalRestClient.lastPost.getJSONObject("tags")
+        );
+    }
+
+    private static long getPlayerMergedWrites() {
+        OSNetworkMetrics.EndpointMetrics metrics = OneSignal.getNetworkMetrics().getEndpoint("players/{id}");
+        return metrics == null ? 0 : metrics.getMergedWrites();
+    }
+
+    @Test
+    public void shouldWaitConfiguredBatchWindowBeforeSync() throws Exception {
+        OneSignalInit();
+        threadAndTaskWait();
+
+        OneSignal.setPlayerUpdateBatchWindow(OneSignal.PlayerUpdateType.TAGS, 60_000);
+        OneSignal.sendTag("key", "value");
+        assertEquals(60_000, OSSyncScheduler_getPushSyncDelay());
+    }
+
+    @Test
+    public void shouldSyncUnmergeableChangeRightAway() throws Exception {
+        OneSignalInit();
+        threadAndTaskWait();
+
+        // Keep the sync queued so its delay can be checked
+        OSSyncScheduler_pause();
+        OneSignal.disablePush(true);
+        assertTrue(OSSyncScheduler_getPushSyncDelay() > 0);
+
+        // The change waiting is sent along with the unmergeable one
+        OneSignal.setPlayerUpdateMergeable(OneSignal.PlayerUpdateType.TAGS, false);
+        OneSignal.sendTag("key", "value");
+        assertEquals(0, OSSyncScheduler_getPushSyncDelay());
+
+        threadAndTaskWait();
+        assertEquals(-2, ShadowOneSignalRestClient.lastPost.getInt("notification_types"));
+        assertEquals("value", ShadowOneSignalRestClient.lastPost.getJSONObject("tags").getString("key"));
+    }
+
+    // ####### multi-channel sync Tests ########
+
+    @Test
+    public void shouldSyncExternalUserIdToAllChannelsInOneBurst() throws Exception {
+        OneSignalInit();
+        OneSignal.setEmail(ONESIGNAL_EMAIL_ADDRESS);
+        OneSignal.setSMSNumber(ONESIGNAL_SMS_NUMBER);
+        threadAndTaskWait();
+
+        int callCountBefore = ShadowOneSignalRestClient.networkCallCount;
+        long burstsBefore = OSMultiChannelSync_getBurstCount();
+        long burstRequestsBefore = OSMultiChannelSync_getBurstRequestCount();
+
+        OneSignal.setExternalUserId("test_ext_id", getExternalUserIdUpdateCompletionHandler());
+        threadAndTaskWait();
+
+        // One PUT per channel, all of them sent together in a single round trip
+        assertEquals(3, ShadowOneSignalRestClient.networkCallCount - callCountBefore);
+        assertEquals(1, OSMultiChannelSync_getBurstCount() - burstsBefore);
+        assertEquals(3, OSMultiChannelSync_getBurstRequestCount() - burstRequestsBefore);
+
+        String[] urls = {
+                "players/" + ShadowOneSignalRestClient.pushUserId,
+                "players/" + ShadowOneSignalRestClient.emailUserId,
+                "players/" + ShadowOneSignalRestClient.smsUserId
+        };
+        for (int i = 0; i < urls.length; i++) {
+            ShadowOneSignalRestClient.Request request = ShadowOneSignalRestClient.requests.get(callCountBefore + i);
+            assertEquals(ShadowOneSignalRestClient.REST_METHOD.PUT, request.method);
+            assertEquals(urls[i], request.url);
+            assertEquals("test_ext_id", request.payload.getString("external_user_id"));
+        }
+
+        JSONObject expectedExternalUserIdResponse = new JSONObject(
+                "{" +
+                "   \"push\" : {" +
+                "      \"success\" : true" +
+                "   }," +
+                "   \"email\" : {" +
+                "      \"success\" : true" +
+                "   }," +
+                "   \"sms\" : {" +
+                "      \"success\" : true" +
+                "   }" +
+                "}"
+        );
+        assertEquals(expectedExternalUserIdResponse.toString(), lastExternalUserIdResponse.toString());
+    }
+
+    @Test
+    public void shouldSyncEachChannelOnItsOwnWithMultiChannelSyncDisabled() throws Exception {
+        OSSyncScheduler_setMultiChannelSyncEnabled(false);
+        OneSignalInit();
+        OneSignal.setEmail(ONESIGNAL_EMAIL_ADDRESS);
+        OneSignal.setSMSNumber(ONESIGNAL_SMS_NUMBER);
+        threadAndTaskWait();
+
+        int callCountBefore = ShadowOneSignalRestClient.networkCallCount;
+        long burstsBefore = OSMultiChannelSync_getBurstCount();
+
+        OneSignal.sendTags(new JSONObject().put("key", "value"));
+        threadAndTaskWait();
+
+        // Same requests, but each one is its own round trip
+        assertEquals(3, ShadowOneSignalRestClient.networkCallCount - callCountBefore);
+        assertEquals(0, OSMultiChannelSync_getBurstCount() - burstsBefore);
+    }
+
+    @Test
+    public void shouldSendEveryChannelOfBurstWhenOnePutFails() throws Exception {
+        OneSignalInit();
+        OneSignal.setEmail(ONESIGNAL_EMAIL_ADDRESS);
+        OneSignal.setSMSNumber(ONESIGNAL_SMS_NUMBER);
+        threadAndTaskWait();
+
+        int callCountBefore = ShadowOneSignalRestClient.networkCallCount;
+        OneSignal.sendTags(new JSONObject().put("key", "value"));
+        ShadowOneSignalRestClient.failNextPut = true;
+        JSONObject results = OSMultiChannelSync_syncAll();
+
+        // All three channels were diffed from one snapshot, the first PUT failed
+        assertEquals(3, ShadowOneSignalRestClient.networkCallCount - callCountBefore);
+        for (int i = 0; i < 3; i++)
+            assertEquals("value", ShadowOneSignalRestClient.requests.get(callCountBefore + i).payload.getJSONObject("tags").getString("key"));
+
+        // The completion handler was called once with the outcome of every channel
+        assertEquals(3, results.length());
+        assertFalse(results.getJSONObject("push").getBoolean("success"));
+        assertTrue(results.getJSONObject("email").getBoolean("success"));
+        assertTrue(results.getJSONObject("sms").getBoolean("success"));
+    }
+
+    @Test
+    public void shouldSendPutsOfBurstWithoutWaitingForEachResponse() throws Exception {
+        OneSignalInit();
+        OneSignal.setEmail(ONESIGNAL_EMAIL_ADDRESS);
+        OneSignal.setSMSNumber(ONESIGNAL_SMS_NUMBER);
+        threadAndTaskWait();
+
+        long burstsBefore = OSMultiChannelSync_getBurstCount();
+        // A PUT is only answered once all three are waiting for their response
+        ShadowOneSignalRestClient.holdPutResponsesUntil = 3;
+        OneSignal.sendTags(new JSONObject().put("key", "value"));
+        threadAndTaskWait();
+
+        assertEquals(1, OSMultiChannelSync_getBurstCount() - burstsBefore);
+        assertEquals(3, ShadowOneSignalRestClient.maxPutsInFlight);
+    }
+
     // ####### external_id Tests ########
 
     @Test
@@ -1526,8 +1780,8 @@ public class SynchronizerIntegrationTests {
 
         // Check that external_user_id_auth_hash is in syncValues
         TestHelpers.flushBufferedSharedPrefs();
-        final SharedPreferences prefs = blankActivity.getSharedPreferences(OneSignal.class.getSimpleName(), Context.MODE_PRIVATE);
-        JSONObject syncValues = new JSONObject(prefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_CURRENT_STATE", null));
+        final SharedPreferences prefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_USER_STATE, Context.MODE_PRIVATE);
+        JSONObject syncValues = UserState_getPersistedSyncValues(prefs, "CURRENT_STATE");
         assertEquals(testExternalId, syncValues.getString("external_user_id"));
         assertEquals(mockExternalIdHash, syncValues.getString("external_user_id_auth_hash"));
 
@@ -1553,8 +1807,8 @@ public class SynchronizerIntegrationTests {
 
         // Check that external_user_id_auth_hash is no longer in syncValues and has "" as external_user_id
         TestHelpers.flushBufferedSharedPrefs();
-        final SharedPreferences newPrefs = blankActivity.getSharedPreferences(OneSignal.class.getSimpleName(), Context.MODE_PRIVATE);
-        syncValues = new JSONObject(newPrefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_CURRENT_STATE", null));
+        final SharedPreferences newPrefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_USER_STATE, Context.MODE_PRIVATE);
+        syncValues = UserState_getPersistedSyncValues(newPrefs, "CURRENT_STATE");
         assertFalse(syncValues.has("external_user_id_auth_hash"));
         assertEquals("", syncValues.getString("external_user_id"));
     }
@@ -1580,9 +1834,9 @@ public class SynchronizerIntegrationTests {
 
         // 4. Check the user state for push and email
         TestHelpers.flushBufferedSharedPrefs();
-        final SharedPreferences prefs = blankActivity.getSharedPreferences(OneSignal.class.getSimpleName(), Context.MODE_PRIVATE);
-        JSONObject pushSyncValues = new JSONObject(prefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_CURRENT_STATE", null));
-        JSONObject emailSyncValues = new JSONObject(prefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_emailCURRENT_STATE", null));
+        final SharedPreferences prefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_USER_STATE, Context.MODE_PRIVATE);
+        JSONObject pushSyncValues = UserState_getPersistedSyncValues(prefs, "CURRENT_STATE");
+        JSONObject emailSyncValues = UserState_getPersistedSyncValues(prefs, "emailCURRENT_STATE");
 
         assertEquals(testExternalId, pushSyncValues.getString("external_user_id"));
         assertEquals(mockExternalIdHash, pushSyncValues.getString("external_user_id_auth_hash"));
@@ -1611,9 +1865,9 @@ public class SynchronizerIntegrationTests {
 
         // 6. Check that external_user_id_auth_hash is no longer in syncValues and has "" as external_user_id
         TestHelpers.flushBufferedSharedPrefs();
-        final SharedPreferences newPrefs = blankActivity.getSharedPreferences(OneSignal.class.getSimpleName(), Context.MODE_PRIVATE);
-        pushSyncValues = new JSONObject(newPrefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_CURRENT_STATE", null));
-        emailSyncValues = new JSONObject(newPrefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_emailCURRENT_STATE", null));
+        final SharedPreferences newPrefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_USER_STATE, Context.MODE_PRIVATE);
+        pushSyncValues = UserState_getPersistedSyncValues(newPrefs, "CURRENT_STATE");
+        emailSyncValues = UserState_getPersistedSyncValues(newPrefs, "emailCURRENT_STATE");
 
         assertFalse(pushSyncValues.has("external_user_id_auth_hash"));
         assertEquals("", pushSyncValues.getString("external_user_id"));
@@ -1642,9 +1896,9 @@ public class SynchronizerIntegrationTests {
 
         // 4. Check the user state for sms and email
         TestHelpers.flushBufferedSharedPrefs();
-        final SharedPreferences prefs = blankActivity.getSharedPreferences(OneSignal.class.getSimpleName(), Context.MODE_PRIVATE);
-        JSONObject pushSyncValues = new JSONObject(prefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_CURRENT_STATE", null));
-        JSONObject smsSyncValues = new JSONObject(prefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_smsCURRENT_STATE", null));
+        final SharedPreferences prefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_USER_STATE, Context.MODE_PRIVATE);
+        JSONObject pushSyncValues = UserState_getPersistedSyncValues(prefs, "CURRENT_STATE");
+        JSONObject smsSyncValues = UserState_getPersistedSyncValues(prefs, "smsCURRENT_STATE");
 
         assertEquals(testExternalId, pushSyncValues.getString("external_user_id"));
         assertEquals(mockExternalIdHash, pushSyncValues.getString("external_user_id_auth_hash"));
@@ -1671,9 +1925,9 @@ public class SynchronizerIntegrationTests {
 
         // 6. Check that external_user_id_auth_hash is no longer in syncValues and has "" as external_user_id
         TestHelpers.flushBufferedSharedPrefs();
-        final SharedPreferences newPrefs = blankActivity.getSharedPreferences(OneSignal.class.getSimpleName(), Context.MODE_PRIVATE);
-        pushSyncValues = new JSONObject(newPrefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_CURRENT_STATE", null));
-        smsSyncValues = new JSONObject(newPrefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_smsCURRENT_STATE", null));
+        final SharedPreferences newPrefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_USER_STATE, Context.MODE_PRIVATE);
+        pushSyncValues = UserState_getPersistedSyncValues(newPrefs, "CURRENT_STATE");
+        smsSyncValues = UserState_getPersistedSyncValues(newPrefs, "smsCURRENT_STATE");
 
         assertFalse(pushSyncValues.has("external_user_id_auth_hash"));
         assertEquals("", pushSyncValues.getString("external_user_id"));
@@ -1707,10 +1961,10 @@ public class SynchronizerIntegrationTests {
 
         // 5. Check the user state for sms and email and push
         TestHelpers.flushBufferedSharedPrefs();
-        final SharedPreferences prefs = blankActivity.getSharedPreferences(OneSignal.class.getSimpleName(), Context.MODE_PRIVATE);
-        JSONObject pushSyncValues = new JSONObject(prefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_CURRENT_STATE", null));
-        JSONObject smsSyncValues = new JSONObject(prefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_smsCURRENT_STATE", null));
-        JSONObject emailSyncValues = new JSONObject(prefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_emailCURRENT_STATE", null));
+        final SharedPreferences prefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_USER_STATE, Context.MODE_PRIVATE);
+        JSONObject pushSyncValues = UserState_getPersistedSyncValues(prefs, "CURRENT_STATE");
+        JSONObject smsSyncValues = UserState_getPersistedSyncValues(prefs, "smsCURRENT_STATE");
+        JSONObject emailSyncValues = UserState_getPersistedSyncValues(prefs, "emailCURRENT_STATE");
 
         assertEquals(testExternalId, pushSyncValues.getString("external_user_id"));
         assertEquals(mockExternalIdHash, pushSyncValues.getString("external_user_id_auth_hash"));
@@ -1743,10 +1997,10 @@ public class SynchronizerIntegrationTests {
 
         // 7. Check that external_user_id_auth_hash is no longer in syncValues and has "" as external_user_id
         TestHelpers.flushBufferedSharedPrefs();
-        final SharedPreferences newPrefs = blankActivity.getSharedPreferences(OneSignal.class.getSimpleName(), Context.MODE_PRIVATE);
-        pushSyncValues = new JSONObject(newPrefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_CURRENT_STATE", null));
-        smsSyncValues = new JSONObject(newPrefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_smsCURRENT_STATE", null));
-        emailSyncValues = new JSONObject(newPrefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_emailCURRENT_STATE", null));
+        final SharedPreferences newPrefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_USER_STATE, Context.MODE_PRIVATE);
+        pushSyncValues = UserState_getPersistedSyncValues(newPrefs, "CURRENT_STATE");
+        smsSyncValues = UserState_getPersistedSyncValues(newPrefs, "smsCURRENT_STATE");
+        emailSyncValues = UserState_getPersistedSyncValues(newPrefs, "emailCURRENT_STATE");
 
         assertFalse(pushSyncValues.has("external_user_id_auth_hash"));
         assertEquals("", pushSyncValues.getString("external_user_id"));
@@ -1955,8 +2209,8 @@ public class SynchronizerIntegrationTests {
 
         // 4. Check the external user id and auth hash values in syncValues
         TestHelpers.flushBufferedSharedPrefs();
-        final SharedPreferences prefs = blankActivity.getSharedPreferences(OneSignal.class.getSimpleName(), Context.MODE_PRIVATE);
-        JSONObject syncValues = new JSONObject(prefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_CURRENT_STATE", null));
+        final SharedPreferences prefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_USER_STATE, Context.MODE_PRIVATE);
+        JSONObject syncValues = UserState_getPersistedSyncValues(prefs, "CURRENT_STATE");
         assertEquals(testExternalId1, syncValues.getString("external_user_id"));
         assertEquals(mockExternalIdHash1, syncValues.getString("external_user_id_auth_hash"));
 
@@ -1982,8 +2236,8 @@ public class SynchronizerIntegrationTests {
 
         // 9. Check the external user id and auth hash values in syncValues
         TestHelpers.flushBufferedSharedPrefs();
-        final SharedPreferences newPrefs = blankActivity.getSharedPreferences(OneSignal.class.getSimpleName(), Context.MODE_PRIVATE);
-        syncValues = new JSONObject(newPrefs.getString("ONESIGNAL_USERSTATE_SYNCVALYES_CURRENT_STATE", null));
+        final SharedPreferences newPrefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_USER_STATE, Context.MODE_PRIVATE);
+        syncValues = UserState_getPersistedSyncValues(newPrefs, "CURRENT_STATE");
         assertEquals(testExternalId2, syncValues.getString("external_user_id"));
         assertEquals(mockExternalIdHash2, syncValues.getString("external_user_id_auth_hash"));
     }
@@ -2485,6 +2739,485 @@ public class SynchronizerIntegrationTests {
         assertEquals(60, postSMSl.payload.getInt("active_time"));
     }
 
+    @Test
+    public void shouldRoundTripUserStateSnapshotValueTypes() throws Exception {
+        JSONObject dependValues = new JSONObject()
+                .put("subscribableStatus", -2)
+                .put("userSubscribePref", true)
+                .put("lastLocationTime", 1_600_000_000_000L);
+        JSONObject syncValues = new JSONObject()
+                .put("identifier", "token-\u00e9\u4e2d")
+                .put("lat", 37.7749)
+                .put("disabled", false)
+                .put("missing", JSONObject.NULL)
+                .put("tags", new JSONObject().put("level", "10").put("", "empty key"))
+                .put("array", new JSONArray().put(1).put("two").put(new JSONObject().put("three", 3L)));
+
+        JSONObject[] decoded = OSUserStateSnapshot_fromBytes(OSUserStateSnapshot_toBytes(dependValues, syncValues));
+
+        assertNotNull(decoded);
+        assertEquals(dependValues.toString(), decoded[0].toString());
+        assertEquals(syncValues.toString(), decoded[1].toString());
+        assertEquals(Long.class, decoded[0].get("lastLocationTime").getClass());
+        assertEquals(Integer.class, decoded[0].get("subscribableStatus").getClass());
+    }
+
+    @Test
+    public void shouldRejectTruncatedOrUnknownUserStateSnapshot() throws Exception {
+        byte[] bytes = OSUserStateSnapshot_toBytes(new JSONObject().put("userSubscribePref", true), new JSONObject().put("identifier", "token"));
+
+        assertNull(OSUserStateSnapshot_fromBytes(Arrays.copyOf(bytes, bytes.length - 1)));
+        assertNull(OSUserStateSnapshot_fromBytes(new byte[0]));
+
+        bytes[0] = 99;
+        assertNull(OSUserStateSnapshot_fromBytes(bytes));
+    }
+
+    @Test
+    public void shouldConvertJSONUserStateToSnapshot() throws Exception {
+        final SharedPreferences prefs = blankActivity.getSharedPreferences(TestOneSignalPrefs.PREFS_USER_STATE, Context.MODE_PRIVATE);
+        prefs.edit()
+                .putString(TestOneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_SYNCVALYES_ + "CURRENT_STATE", "{\"tags\": {\"int\": 123}}")
+                .putString(TestOneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_SYNCVALYES_ + "TOSYNC_STATE", "{\"tags\": {\"int\": 123}}")
+                .apply();
+
+        OneSignalInit();
+        threadAndTaskWait();
+
+        TestHelpers.flushBufferedSharedPrefs();
+        assertFalse(prefs.contains(TestOneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_SYNCVALYES_ + "CURRENT_STATE"));
+        assertFalse(prefs.contains(TestOneSignalPrefs.PREFS_ONESIGNAL_USERSTATE_DEPENDVALYES_ + "CURRENT_STATE"));
+        JSONObject syncValues = UserState_getPersistedSyncValues(prefs, "CURRENT_STATE");
+        assertEquals(123, syncValues.getJSONObject("tags").getInt("int"));
+        assertEquals(PUSH_USER_ID, OneSignal.getDeviceState().getUserId());
+    }
+
+    @Test
+    public void shouldRoundTripUserStateSnapshot() throws Exception {
+        JSONObject dependValues = new JSONObject()
+                .put("subscribableStatus", 1)
+                .put("userSubscribePref", true);
+        JSONObject syncValues = new JSONObject()
+                .put("language", "en")
+                .put("timezone", -28800)
+                .put("lat", 37.7749)
+                .put("tags", new JSONObject().put("key", "value").put("unicode", "\u00e9\u4e2d"));
+
+        JSONObject[] decoded = OSUserStateSnapshot_decode(OSUserStateSnapshot_encode(dependValues, syncValues));
+
+        assertEquals(dependValues.toString(), decoded[0].toString());
+        assertEquals(syncValues.toString(), decoded[1].toString());
+    }
+
+    @Test
+    @Category(Benchmark.class)
+    public void benchmarkUserStateSnapshotWith500Tags() throws Exception {
+        JSONObject tags = new JSONObject();
+        for (int i = 0; i < 500; i++)
+            tags.put("tag_key_" + i, "tag_value_" + i);
+        final JSONObject dependValues = new JSONObject()
+                .put("subscribableStatus", 1)
+                .put("userSubscribePref", true)
+                .put("notification_types", 1);
+        final JSONObject syncValues = new JSONObject()
+                .put("identifier", "cVvYV8Ndmq0:APA91bFMmZ5wwwXk6vRBOpIWmRHOnwpRNDvfyiTRlMeFY4ZD")
+                .put("language", "en")
+                .put("timezone", -28800)
+                .put("timezone_id", "America/Los_Angeles")
+                .put("sdk", "040000")
+                .put("tags", tags);
+        final int iterations = 200;
+
+        String json = syncValues.toString();
+        String snapshot = OSUserStateSnapshot_encode(dependValues, syncValues);
+        assertEquals(json, OSUserStateSnapshot_decode(snapshot)[1].toString());
+
+        // Warm up both paths so JIT compilation isn't measured
+        for (int i = 0; i < iterations; i++) {
+            new JSONObject(dependValues.toString());
+            new JSONObject(syncValues.toString());
+            OSUserStateSnapshot_decode(OSUserStateSnapshot_encode(dependValues, syncValues));
+        }
+
+        long jsonPersistStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            dependValues.toString();
+            syncValues.toString();
+        }
+        long jsonPersistNanos = System.nanoTime() - jsonPersistStart;
+
+        String dependJson = dependValues.toString();
+        long jsonLoadStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            new JSONObject(dependJson);
+            new JSONObject(json);
+        }
+        long jsonLoadNanos = System.nanoTime() - jsonLoadStart;
+
+        long snapshotPersistStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            OSUserStateSnapshot_encode(dependValues, syncValues);
+        long snapshotPersistNanos = System.nanoTime() - snapshotPersistStart;
+
+        long snapshotLoadStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            OSUserStateSnapshot_decode(snapshot);
+        long snapshotLoadNanos = System.nanoTime() - snapshotLoadStart;
+
+        System.out.println("UserState with " + tags.length() + " tags, averaged over " + iterations + " runs");
+        System.out.println("  JSON:     persist " + (jsonPersistNanos / iterations / 1_000) + " us, load " + (jsonLoadNanos / iterations / 1_000) + " us, "
+                + (dependJson.length() + json.length()) + " chars stored");
+        System.out.println("  snapshot: persist " + (snapshotPersistNanos / iterations / 1_000) + " us, load " + (snapshotLoadNanos / iterations / 1_000) + " us, "
+                + snapshot.length() + " chars stored, " + OSUserStateSnapshot_toBytes(dependValues, syncValues).length + " bytes before Base64");
+    }
+
+    @Test
+    public void shouldMatchFullDiffWhenOnlyDiffingDirtyKeys() throws Exception {
+        OneSignalPackagePrivateHelper.UserStateSyncPair userStates = new OneSignalPackagePrivateHelper.UserStateSyncPair();
+        Random random = new Random(42);
+
+        for (int step = 0; step < 500; step++) {
+            switch (random.nextInt(6)) {
+                case 0:
+                case 1:
+                    // Set or delete a few tags, deleted tags are sent as ""
+                    JSONObject tags = new JSONObject();
+                    for (int i = random.nextInt(3); i >= 0; i--)
+                        tags.put("key_" + random.nextInt(20), random.nextInt(4) == 0 ? "" : "value_" + random.nextInt(5));
+                    userStates.sendTags(tags);
+                    break;
+                case 2:
+                    userStates.putOnSyncValues(random.nextBoolean() ? "language" : "external_user_id", "value_" + random.nextInt(3));
+                    break;
+                case 3:
+                    userStates.mergeTagsFromServer(new JSONObject().put("key_" + random.nextInt(20), "server_value"));
+                    break;
+                default:
+                    // Sync succeeded
+                    userStates.onSyncSuccess(userStates.generateJsonDiff());
+            }
+
+            JSONObject fullDiff = userStates.generateFullJsonDiff();
+            JSONObject trackedDiff = userStates.generateJsonDiff();
+            assertEquals("Step " + step, canonicalJson(fullDiff), canonicalJson(trackedDiff));
+        }
+    }
+
+    // JSON with keys in sorted order, so objects built in different orders compare equal
+    private static String canonicalJson(Object value) throws Exception {
+        if (value instanceof JSONObject) {
+            JSONObject jsonObject = (JSONObject) value;
+            TreeMap<String, String> sorted = new TreeMap<>();
+            Iterator<String> keys = jsonObject.keys();
+            while (keys.hasNext()) {
+                String key = keys.next();
+                sorted.put(key, canonicalJson(jsonObject.get(key)));
+            }
+            return sorted.toString();
+        }
+        return String.valueOf(value);
+    }
+
+    @Test
+    public void shouldOnlyDiffChangedTagAfterAllTagsSynced() throws Exception {
+        OneSignalPackagePrivateHelper.UserStateSyncPair userStates = new OneSignalPackagePrivateHelper.UserStateSyncPair();
+        JSONObject tags = new JSONObject();
+        for (int i = 0; i < 20; i++)
+            tags.put("tag_key_" + i, "tag_value_" + i);
+        userStates.sendTags(tags);
+        userStates.onSyncSuccess(userStates.generateJsonDiff());
+        // Everything synced, the next diff finds all keys equal and stops tracking them
+        userStates.generateJsonDiff();
+
+        userStates.sendTags(new JSONObject().put("tag_key_10", "changed"));
+        String expectedDiff = "{\"tag_key_10\":\"changed\"}";
+        assertEquals(expectedDiff, userStates.generateJsonDiff().optJSONObject("tags").toString());
+        assertEquals(expectedDiff, userStates.generateUntrackedSyncValuesDiff().optJSONObject("tags").toString());
+    }
+
+    @Category(Benchmark.class)
+    @Test
+    public void benchmarkUserStateDiffWith1000TagsWhereOneChanges() throws Exception {
+        OneSignalPackagePrivateHelper.UserStateSyncPair userStates = new OneSignalPackagePrivateHelper.UserStateSyncPair();
+        JSONObject tags = new JSONObject();
+        for (int i = 0; i < 1_000; i++)
+            tags.put("tag_key_" + i, "tag_value_" + i);
+        userStates.sendTags(tags);
+        userStates.onSyncSuccess(userStates.generateJsonDiff());
+        // Everything synced, the next diff finds all keys equal and stops tracking them
+        userStates.generateJsonDiff();
+
+        userStates.sendTags(new JSONObject().put("tag_key_500", "changed"));
+        String expectedDiff = "{\"tag_key_500\":\"changed\"}";
+        assertEquals(expectedDiff, userStates.generateJsonDiff().optJSONObject("tags").toString());
+        assertEquals(expectedDiff, userStates.generateUntrackedSyncValuesDiff().optJSONObject("tags").toString());
+
+        final int iterations = 500;
+        // Warm up both paths so JIT compilation isn't measured
+        for (int i = 0; i < iterations; i++) {
+            userStates.generateJsonDiff();
+            userStates.generateUntrackedSyncValuesDiff();
+        }
+
+        long untrackedStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            userStates.generateUntrackedSyncValuesDiff();
+        long untrackedNanos = System.nanoTime() - untrackedStart;
+
+        long trackedStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            userStates.generateJsonDiff();
+        long trackedNanos = System.nanoTime() - trackedStart;
+
+        System.out.println("UserState diff with " + tags.length() + " tags where one changed, averaged over " + iterations + " runs");
+        System.out.println("  full diff:        " + (untrackedNanos / iterations / 1_000) + " us");
+        System.out.println("  dirty key diff:   " + (trackedNanos / iterations / 1_000) + " us");
+    }
+
+    @Test
+    public void shouldMatchLegacyJsonDiffOnRandomUserStates() throws Exception {
+        Random random = new Random(7);
+        Set<String> includeFields = new HashSet<>(Arrays.asList("identifier", "language"));
+
+        for (int step = 0; step < 500; step++) {
+            JSONObject cur = randomUserStateValues(random);
+            JSONObject changedTo = randomUserStateChange(random, cur);
+            Set<String> fields = random.nextBoolean() ? includeFields : null;
+
+            String message = "Step " + step + " cur: " + cur + " changedTo: " + changedTo;
+            assertEquals(message,
+                    legacyGenerateJsonDiff(cur, changedTo, null, fields).toString(),
+                    OneSignalPackagePrivateHelper.JSONUtils.generateJsonDiff(cur, changedTo, null, fields).toString());
+
+            // Applying changes onto cur itself, the way UserState persists after a sync
+            JSONObject legacyBase = new JSONObject(cur.toString());
+            JSONObject base = new JSONObject(cur.toString());
+            legacyGenerateJsonDiff(legacyBase, changedTo, legacyBase, fields);
+            OneSignalPackagePrivateHelper.JSONUtils.generateJsonDiff(base, changedTo, base, fields);
+            assertEquals(message, legacyBase.toString(), base.toString());
+        }
+    }
+
+    @Test
+    public void shouldNotShareObjectsOnlyInChangedToWithJsonDiff() throws Exception {
+        JSONObject changedTo = new JSONObject().put("tags", new JSONObject().put("key", "value"));
+        JSONObject diff = OneSignalPackagePrivateHelper.JSONUtils.generateJsonDiff(new JSONObject(), changedTo, null, null);
+
+        changedTo.getJSONObject("tags").put("key", "changed");
+        assertEquals("value", diff.getJSONObject("tags").getString("key"));
+    }
+
+    @Category(Benchmark.class)
+    @Test
+    public void benchmarkJsonDiffAllocationsWith1000Tags() throws Exception {
+        JSONObject tags = new JSONObject();
+        for (int i = 0; i < 1_000; i++)
+            tags.put("tag_key_" + i, "tag_value_" + i);
+        final JSONObject cur = new JSONObject()
+                .put("identifier", "cVvYV8Ndmq0:APA91bFMmZ5wwwXk6vRBOpIWmRHOnwpRNDvfyiTRlMeFY4ZD")
+                .put("language", "en")
+                .put("tags", tags);
+        final JSONObject changedTo = new JSONObject(cur.toString());
+        for (int i = 0; i < 10; i++)
+            changedTo.getJSONObject("tags").put("tag_key_" + (i * 100), "changed");
+        changedTo.put("new_tags", new JSONObject(tags.toString()));
+
+        assertEquals(legacyGenerateJsonDiff(cur, changedTo, null, null).toString(),
+                OneSignalPackagePrivateHelper.JSONUtils.generateJsonDiff(cur, changedTo, null, null).toString());
+
+        final int iterations = 200;
+        // Warm up both paths so JIT compilation isn't measured
+        for (int i = 0; i < iterations; i++) {
+            legacyGenerateJsonDiff(cur, changedTo, null, null);
+            OneSignalPackagePrivateHelper.JSONUtils.generateJsonDiff(cur, changedTo, null, null);
+        }
+
+        long legacyBytes = currentThreadAllocatedBytes();
+        long legacyStart = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            legacyGenerateJsonDiff(cur, changedTo, null, null);
+        long legacyNanos = System.nanoTime() - legacyStart;
+        legacyBytes = currentThreadAllocatedBytes() - legacyBytes;
+
+        long bytes = currentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++)
+            OneSignalPackagePrivateHelper.JSONUtils.generateJsonDiff(cur, changedTo, null, null);
+        long nanos = System.nanoTime() - start;
+        bytes = currentThreadAllocatedBytes() - bytes;
+
+        System.out.println("JSON diff with " + tags.length() + " tags, 10 changed and " + tags.length() + " added, averaged over " + iterations + " runs");
+        System.out.println("  string round trips: " + (legacyNanos / iterations / 1_000) + " us, " + (legacyBytes / iterations / 1_024) + " KB allocated");
+        System.out.println("  structural:         " + (nanos / iterations / 1_000) + " us, " + (bytes / iterations / 1_024) + " KB allocated");
+    }
+
+    // Allocation counts are only available on HotSpot, other JVMs report 0
+    private static long currentThreadAllocatedBytes() {
+        ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        if (threadMXBean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        return 0;
+    }
+
+    private static JSONObject randomUserStateValues(Random random) throws Exception {
+        JSONObject values = new JSONObject();
+        values.put("identifier", "token_" + random.nextInt(3));
+        if (random.nextBoolean())
+            values.put("language", random.nextBoolean() ? "en" : "es");
+        values.put("timezone", random.nextInt(3) * 3600);
+        if (random.nextBoolean())
+            values.put("lat", randomNumber(random));
+        if (random.nextBoolean())
+            values.put("tags", randomTags(random));
+        if (random.nextBoolean())
+            values.put("pkgs", randomStrings(random));
+        if (random.nextBoolean())
+            values.put("nested", new JSONObject().put("inner", randomTags(random)).put("loc_acc", randomNumber(random)));
+        return values;
+    }
+
+    private static JSONObject randomUserStateChange(Random random, JSONObject cur) throws Exception {
+        JSONObject changedTo = new JSONObject(cur.toString());
+        JSONObject other = randomUserStateValues(random);
+        Iterator<String> keys = other.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            int action = random.nextInt(3);
+            if (action == 0)
+                changedTo.put(key, other.get(key));
+            else if (action == 1 && changedTo.opt(key) instanceof JSONObject && other.get(key) instanceof JSONObject)
+                mergeRandomly(random, changedTo.getJSONObject(key), other.getJSONObject(key));
+        }
+        if (random.nextInt(4) == 0)
+            changedTo.put("pkgs_a", randomStrings(random));
+        if (random.nextInt(4) == 0)
+            changedTo.put("timezone", 3600.0);
+        return changedTo;
+    }
+
+    private static void mergeRandomly(Random random, JSONObject into, JSONObject from) throws Exception {
+        Iterator<String> keys = from.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = from.get(key);
+            if (value instanceof JSONObject && into.opt(key) instanceof JSONObject)
+                mergeRandomly(random, into.getJSONObject(key), (JSONObject) value);
+            else if (random.nextBoolean())
+                into.put(key, value);
+        }
+    }
+
+    private static JSONObject randomTags(Random random) throws Exception {
+        JSONObject tags = new JSONObject();
+        for (int i = random.nextInt(6); i > 0; i--)
+            tags.put("key_" + random.nextInt(10), random.nextInt(4) == 0 ? "" : "value_" + random.nextInt(5));
+        return tags;
+    }
+
+    private static JSONArray randomStrings(Random random) {
+        JSONArray strings = new JSONArray();
+        for (int i = random.nextInt(4); i > 0; i--)
+            strings.put("com.app" + random.nextInt(6));
+        return strings;
+    }
+
+    // Whole doubles are included since they are written without a fraction
+    private static Object randomNumber(Random random) {
+        switch (random.nextInt(3)) {
+            case 0: return random.nextInt(100);
+            case 1: return (double) random.nextInt(100);
+            default: return random.nextInt(100) / 8.0;
+        }
+    }
+
+    // JSONUtils.generateJsonDiff before nested objects were copied structurally, kept as the reference behaviour
+    private static JSONObject legacyGenerateJsonDiff(JSONObject cur, JSONObject changedTo, JSONObject baseOutput, Set<String> includeFields) throws Exception {
+        if (cur == null)
+            return null;
+        if (changedTo == null)
+            return baseOutput;
+
+        JSONObject output = baseOutput != null ? baseOutput : new JSONObject();
+        Iterator<String> keys = changedTo.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            Object value = changedTo.get(key);
+
+            if (cur.has(key)) {
+                if (value instanceof JSONObject) {
+                    JSONObject outValue = null;
+                    if (baseOutput != null && baseOutput.has(key))
+                        outValue = baseOutput.getJSONObject(key);
+                    String returnedJsonStr = legacyGenerateJsonDiff(cur.getJSONObject(key), (JSONObject) value, outValue, includeFields).toString();
+                    if (!returnedJsonStr.equals("{}"))
+                        output.put(key, new JSONObject(returnedJsonStr));
+                }
+                else if (value instanceof JSONArray)
+                    legacyHandleJsonArray(key, (JSONArray) value, cur.getJSONArray(key), output);
+                else if (includeFields != null && includeFields.contains(key))
+                    output.put(key, value);
+                else {
+                    Object curValue = cur.get(key);
+                    if (!value.equals(curValue)) {
+                        if (curValue instanceof Number && value instanceof Number) {
+                            if (((Number) curValue).doubleValue() != ((Number) value).doubleValue())
+                                output.put(key, value);
+                        }
+                        else
+                            output.put(key, value);
+                    }
+                }
+            }
+            else {
+                if (value instanceof JSONObject)
+                    output.put(key, new JSONObject(value.toString()));
+                else if (value instanceof JSONArray)
+                    legacyHandleJsonArray(key, (JSONArray) value, null, output);
+                else
+                    output.put(key, value);
+            }
+        }
+        return output;
+    }
+
+    private static void legacyHandleJsonArray(String key, JSONArray newArray, JSONArray curArray, JSONObject output) throws Exception {
+        if (key.endsWith("_a") || key.endsWith("_d")) {
+            output.put(key, newArray);
+            return;
+        }
+
+        String arrayStr = legacyToStringNE(newArray);
+        JSONArray newOutArray = new JSONArray();
+        JSONArray remOutArray = new JSONArray();
+        String curArrayStr = curArray == null ? null : legacyToStringNE(curArray);
+
+        for (int i = 0; i < newArray.length(); i++) {
+            String arrayValue = (String) newArray.get(i);
+            if (curArray == null || !curArrayStr.contains(arrayValue))
+                newOutArray.put(arrayValue);
+        }
+
+        if (curArray != null) {
+            for (int i = 0; i < curArray.length(); i++) {
+                String arrayValue = curArray.getString(i);
+                if (!arrayStr.contains(arrayValue))
+                    remOutArray.put(arrayValue);
+            }
+        }
+
+        if (!newOutArray.toString().equals("[]"))
+            output.put(key + "_a", newOutArray);
+        if (!remOutArray.toString().equals("[]"))
+            output.put(key + "_d", remOutArray);
+    }
+
+    private static String legacyToStringNE(JSONArray jsonArray) throws Exception {
+        String strArray = "[";
+        for (int i = 0; i < jsonArray.length(); i++)
+            strArray += "\"" + jsonArray.getString(i) + "\"";
+        return strArray + "]";
+    }
+
     private void OneSignalInit() {
         OneSignal.setLogLevel(OneSignal.LOG_LEVEL.VERBOSE, OneSignal.LOG_LEVEL.NONE);
         ShadowOSUtils.subscribableStatus = 1;
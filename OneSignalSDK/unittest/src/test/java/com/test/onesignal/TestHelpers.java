@@ -14,7 +14,10 @@ import android.util.Log;
 import androidx.annotation.Nullable;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.work.Configuration;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
 import androidx.work.testing.SynchronousExecutor;
+import androidx.work.testing.TestDriver;
 import androidx.work.testing.WorkManagerTestInitHelper;
 
 import com.onesignal.MockOSTimeImpl;
@@ -496,6 +499,18 @@ public class TestHelpers {
       WorkManagerTestInitHelper.initializeTestWorkManager(context, config);
    }
 
+   /**
+    * Runs the enqueued notification cache cleaner as if the device just went idle
+    */
+   static void runNotificationCacheCleanerWork(Context context) throws Exception {
+      List<WorkInfo> workInfos = WorkManager.getInstance(context)
+              .getWorkInfosForUniqueWork(OneSignalPackagePrivateHelper.OSNotificationCacheCleaner_WORK_NAME)
+              .get();
+      TestDriver testDriver = WorkManagerTestInitHelper.getTestDriver(context);
+      for (WorkInfo workInfo : workInfos)
+         testDriver.setAllConstraintsMet(workInfo.getId());
+   }
+
    private static void resetAlarmManager() {
       AlarmManager alarmManager = (AlarmManager) ApplicationProvider.getApplicationContext()
               .getSystemService(Context.ALARM_SERVICE);